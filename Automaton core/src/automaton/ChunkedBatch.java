@@ -0,0 +1,145 @@
+package automaton;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Processes many inputs, one per line, on a fixed pool of threads.
+ * <p>
+ * The inputs are read in chunks, and every chunk is processed on one of the
+ * threads by a worker which that thread owns, so the buffers of a worker are
+ * reused from one input to the next and no worker is shared between threads.
+ * Only a bounded number of chunks is in flight at any time, and the results
+ * of the chunks are handed over in the order of the inputs.
+ * 
+ * @author Filip Nemec
+ * @param <W> the type of the workers
+ * @param <R> the type of the results of a chunk
+ */
+public class ChunkedBatch<W, R> {
+	
+	/** Number of threads processing the chunks. */
+	private final int threads;
+	
+	/** Number of inputs processed by a single task. */
+	private final int chunkSize;
+	
+	/** Creates the worker of every thread. */
+	private final Supplier<W> workers;
+	
+	/**
+	 * Processes a single chunk of inputs.
+	 * 
+	 * @author Filip Nemec
+	 * @param <W> the type of the workers
+	 * @param <R> the type of the results of a chunk
+	 */
+	@FunctionalInterface
+	public interface Task<W, R> {
+		
+		/**
+		 * Processes the given inputs with the given worker.
+		 * 
+		 * @param worker    the worker of the current thread
+		 * @param inputs    the inputs of the chunk
+		 * @param firstLine number of the line holding the first input, counted from 1
+		 * @return the results of the chunk
+		 */
+		R process(W worker, List<String> inputs, long firstLine);
+	}
+	
+	/**
+	 * Constructs a new batch.
+	 * 
+	 * @param threads   number of threads processing the chunks
+	 * @param chunkSize number of inputs processed by a single task
+	 * @param workers   creates the worker of every thread
+	 * @throws IllegalArgumentException if the number of threads or the chunk size is not positive
+	 */
+	public ChunkedBatch(int threads, int chunkSize, Supplier<W> workers) {
+		if(threads <= 0)
+			throw new IllegalArgumentException("Invalid number of threads '" + threads + "'");
+		
+		if(chunkSize <= 0)
+			throw new IllegalArgumentException("Invalid chunk size '" + chunkSize + "'");
+		
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+		this.workers = workers;
+	}
+	
+	/**
+	 * Processes every line by the given task, and passes the results of the
+	 * chunks to the given sink in the order of the lines. An exception thrown
+	 * by the task is rethrown here once the results of all of the chunks before
+	 * it have been passed to the sink.
+	 * 
+	 * @param lines the inputs
+	 * @param task  processes a single chunk
+	 * @param sink  receives the results of the chunks, on the calling thread
+	 * @return number of processed lines
+	 */
+	public long run(Iterator<String> lines, Task<W, R> task, Consumer<R> sink) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ThreadLocal<W> worker = ThreadLocal.withInitial(workers);
+		Deque<Future<R>> pending = new ArrayDeque<>();
+		long lineCount = 0;
+		
+		try {
+			while(lines.hasNext()) {
+				List<String> inputs = new ArrayList<>(chunkSize);
+				long firstLine = lineCount + 1;
+				
+				while(inputs.size() < chunkSize && lines.hasNext()) {
+					inputs.add(lines.next());
+				}
+				
+				pending.add(executor.submit(() -> task.process(worker.get(), inputs, firstLine)));
+				lineCount += inputs.size();
+				
+				if(pending.size() >= 2 * threads) {
+					sink.accept(result(pending.poll()));
+				}
+			}
+			
+			while(!pending.isEmpty()) {
+				sink.accept(result(pending.poll()));
+			}
+		
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		return lineCount;
+	}
+	
+	/**
+	 * Waits for the given chunk and returns its results.
+	 * 
+	 * @param <R>    the type of the results
+	 * @param future the chunk being processed
+	 * @return the results of the chunk
+	 */
+	private static <R> R result(Future<R> future) {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The batch was interrupted", e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package automaton;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter which many threads can add to at once without contending for a
+ * single memory location: the additions are spread over several cells, which
+ * are summed only when the counter is read.
+ * 
+ * @author Filip Nemec
+ * @see MetricRegistry
+ */
+public final class Counter {
+	
+	/** The cells of the counter. */
+	private final LongAdder cells = new LongAdder();
+	
+	/**
+	 * Adds the given amount to the counter.
+	 * 
+	 * @param amount the amount
+	 */
+	public void add(long amount) {
+		cells.add(amount);
+	}
+	
+	/**
+	 * Adds one to the counter.
+	 */
+	public void increment() {
+		cells.increment();
+	}
+	
+	/**
+	 * Returns the sum of everything added to the counter.
+	 * 
+	 * @return the sum
+	 */
+	public long get() {
+		return cells.sum();
+	}
+	
+	/**
+	 * Returns the sum of everything added to the counter.
+	 */
+	@Override
+	public String toString() {
+		return Long.toString(get());
+	}
+}
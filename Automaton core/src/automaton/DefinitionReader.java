@@ -0,0 +1,611 @@
+package automaton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the line-oriented definitions of the automata.
+ * <p>
+ * The definition is read as UTF-8 bytes, either from a memory-mapped file
+ * or through a fixed buffer from a stream, and every line is decoded into
+ * a reused array of characters. Lines can be taken whole, by
+ * {@link #nextLine()}, or read by {@link #readLine()} and then split into
+ * fields which are interned straight into a {@link SymbolTable}, so a
+ * definition is loaded without creating a {@code String} for every name it
+ * mentions.
+ * <p>
+ * The fields of a line are split exactly as {@link String#split(String)}
+ * would split them, and every error is reported together with the line and
+ * the column at which it occurred.
+ * 
+ * @author Filip Nemec
+ */
+public class DefinitionReader implements Closeable {
+	
+	/** Size of the buffer used to read a stream. */
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/** Largest part of a file that is mapped at once. */
+	private static final long WINDOW_SIZE = 1 << 30;
+	
+	/** The stream being read, or {@code null} if the bytes are not read from a stream. */
+	private final InputStream in;
+	
+	/** The file being mapped, or {@code null} if the bytes are not mapped. */
+	private final FileChannel channel;
+	
+	/** The bytes being read, either the buffer of the stream or the mapped part of the file. */
+	private ByteBuffer buffer;
+	
+	/** Position of the first byte of {@link #buffer} in the file. */
+	private long windowStart;
+	
+	/** Index of the next unread byte in {@link #buffer}. */
+	private int position;
+	
+	/** Index after the last read byte in {@link #buffer}. */
+	private int limit;
+	
+	/** Whether all of the bytes were read into {@link #buffer}. */
+	private boolean exhausted;
+	
+	/** Whether the last line ended with a carriage return, so a line feed after it is skipped. */
+	private boolean skipLineFeed;
+	
+	/** The characters of the current line. */
+	private char[] chars = new char[256];
+	
+	/** Number of characters of the current line. */
+	private int length;
+	
+	/** Whether the current line was fetched by {@link #hasNextLine()} and not returned yet. */
+	private boolean pending;
+	
+	/** Number of lines returned so far. */
+	private int lineNumber;
+	
+	/** Index of the next field of the current line. */
+	private int cursor;
+	
+	/** Index after the last character of the current section of the line. */
+	private int end;
+	
+	/** Index of the first character of the current line, without the leading whitespace. */
+	private int lineStart;
+	
+	/** Index after the last character of the current line, without the trailing whitespace. */
+	private int lineEnd;
+	
+	/** Index at which the line continues after the current section. */
+	private int sectionNext;
+	
+	/** Whether no field of the current section was read yet. */
+	private boolean sectionStart;
+	
+	/** Index of the last field read, or {@code -1} if the line was not split into fields. */
+	private int fieldStart = -1;
+	
+	/**
+	 * Constructs a new reader of the definition given by the stream.
+	 * 
+	 * @param in the stream
+	 */
+	public DefinitionReader(InputStream in) {
+		this.in = in;
+		this.channel = null;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+	
+	/**
+	 * Constructs a new reader of the definition held by the remaining bytes of
+	 * the given buffer.
+	 * 
+	 * @param bytes the bytes of the definition
+	 */
+	public DefinitionReader(ByteBuffer bytes) {
+		this.in = null;
+		this.channel = null;
+		this.buffer = bytes.slice();
+		this.limit = buffer.limit();
+		this.exhausted = true;
+	}
+	
+	/**
+	 * Constructs a new reader which maps the given channel, from its current
+	 * position on.
+	 * 
+	 * @param channel the channel of a regular file
+	 * @throws IOException if the channel cannot be mapped
+	 */
+	private DefinitionReader(FileChannel channel) throws IOException {
+		this.in = null;
+		this.channel = channel;
+		this.windowStart = channel.position();
+		map(windowStart);
+	}
+	
+	/**
+	 * Constructs a new reader of the given definition.
+	 * 
+	 * @param definition the definition
+	 * @return the reader
+	 */
+	public static DefinitionReader of(String definition) {
+		return new DefinitionReader(ByteBuffer.wrap(definition.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Constructs a new reader of the definition held by the given file, which
+	 * is memory-mapped instead of read.
+	 * 
+	 * @param file the file
+	 * @return the reader
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static DefinitionReader open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		
+		try {
+			return new DefinitionReader(channel);
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Checks whether there is another line.
+	 * 
+	 * @return {@code true} if there is another line, {@code false} otherwise
+	 */
+	public boolean hasNextLine() {
+		if(!pending) {
+			pending = fetch();
+		}
+		return pending;
+	}
+	
+	/**
+	 * Returns the next line, without the line terminator.
+	 * 
+	 * @return the next line
+	 * @throws IllegalArgumentException if there are no more lines
+	 */
+	public String nextLine() {
+		if(!hasNextLine()) {
+			throw new IllegalArgumentException("The definition ends before line " + (lineNumber + 1));
+		}
+		
+		pending = false;
+		lineNumber++;
+		fieldStart = -1;
+		return new String(chars, 0, length);
+	}
+	
+	/**
+	 * Moves to the next line, to be split into fields. Like {@code trim()},
+	 * the leading and trailing whitespace of the line is skipped.
+	 * 
+	 * @return {@code true} if there was another line, {@code false} otherwise
+	 */
+	public boolean readLine() {
+		if(!hasNextLine()) return false;
+		
+		pending = false;
+		lineNumber++;
+		
+		lineStart = 0;
+		lineEnd = length;
+		while(lineStart < lineEnd && chars[lineStart] <= ' ') lineStart++;
+		while(lineEnd > lineStart && chars[lineEnd - 1] <= ' ') lineEnd--;
+		
+		cursor = lineStart;
+		end = lineEnd;
+		sectionNext = lineEnd;
+		sectionStart = true;
+		fieldStart = lineStart;
+		return true;
+	}
+	
+	/**
+	 * Moves to the next line, to be split into fields.
+	 * 
+	 * @throws IllegalArgumentException if there are no more lines
+	 */
+	public void requireLine() {
+		if(!readLine()) {
+			throw new IllegalArgumentException("The definition ends before line " + (lineNumber + 1));
+		}
+	}
+	
+	/**
+	 * Checks whether the line read by {@link #readLine()} is empty, apart from
+	 * whitespace.
+	 * 
+	 * @return {@code true} if the line is empty, {@code false} otherwise
+	 */
+	public boolean isLineEmpty() {
+		return lineStart == lineEnd;
+	}
+	
+	/**
+	 * Restricts the fields to the part of the line before the next occurrence
+	 * of the given delimiter, or to the rest of the line if there is none.
+	 * {@link #endSection()} continues after the delimiter.
+	 * 
+	 * @param delimiter the delimiter ending the section
+	 * @return {@code true} if the delimiter was found, {@code false} otherwise
+	 */
+	public boolean beginSection(String delimiter) {
+		int found = indexOf(delimiter, cursor, lineEnd);
+		
+		end = found < 0 ? lineEnd : found;
+		sectionNext = found < 0 ? lineEnd : found + delimiter.length();
+		sectionStart = true;
+		return found >= 0;
+	}
+	
+	/**
+	 * Continues after the current section, up to the end of the line.
+	 */
+	public void endSection() {
+		cursor = sectionNext;
+		end = lineEnd;
+		sectionNext = lineEnd;
+		sectionStart = true;
+	}
+	
+	/**
+	 * Checks whether there is another field in the current section, separated
+	 * by the given delimiter. As with {@link String#split(String)}, an empty
+	 * section has a single empty field, and the trailing empty fields are
+	 * omitted.
+	 * 
+	 * @param delimiter the delimiter separating the fields
+	 * @return {@code true} if there is another field, {@code false} otherwise
+	 */
+	public boolean hasField(String delimiter) {
+		if(sectionStart && cursor == end) return true;
+		
+		// Only the trailing empty fields are left if the rest is all delimiters.
+		for(int i = cursor; i < end; i += delimiter.length()) {
+			if(indexOf(delimiter, i, Math.min(end, i + delimiter.length())) != i) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the id of the next field of the current section, adding it to
+	 * the given table if it is not there yet.
+	 * 
+	 * @param table     the table of the names
+	 * @param delimiter the delimiter separating the fields
+	 * @return the id of the field
+	 */
+	public int field(SymbolTable table, String delimiter) {
+		int start = cursor;
+		int fieldEnd = skipField(delimiter);
+		return table.intern(chars, start, fieldEnd);
+	}
+	
+	/**
+	 * Returns the id of the next field of the current section in the given
+	 * table, without adding the field to it.
+	 * 
+	 * @param table     the table of the names
+	 * @param delimiter the delimiter separating the fields
+	 * @return the id of the field, or {@link SymbolTable#NONE} if it is not
+	 *         in the table
+	 */
+	public int fieldId(SymbolTable table, String delimiter) {
+		int start = cursor;
+		int fieldEnd = skipField(delimiter);
+		return table.id(chars, start, fieldEnd);
+	}
+	
+	/**
+	 * Returns the next field of the current section.
+	 * 
+	 * @param delimiter the delimiter separating the fields
+	 * @return the field
+	 */
+	public String field(String delimiter) {
+		int start = cursor;
+		int fieldEnd = skipField(delimiter);
+		return new String(chars, start, fieldEnd - start);
+	}
+	
+	/**
+	 * Returns the rest of the current section, without splitting it.
+	 * 
+	 * @return the rest of the section
+	 */
+	public String rest() {
+		fieldStart = cursor;
+		sectionStart = false;
+		
+		String rest = new String(chars, cursor, end - cursor);
+		cursor = end;
+		return rest;
+	}
+	
+	/**
+	 * Returns the id of the rest of the current section, without splitting it,
+	 * adding it to the given table if it is not there yet.
+	 * 
+	 * @param table the table of the names
+	 * @return the id of the rest of the section
+	 */
+	public int rest(SymbolTable table) {
+		fieldStart = cursor;
+		sectionStart = false;
+		
+		int start = cursor;
+		cursor = end;
+		return table.intern(chars, start, end);
+	}
+	
+	/**
+	 * Returns the line read by {@link #readLine()}, without the leading and
+	 * trailing whitespace, for the messages of the errors.
+	 * 
+	 * @return the line
+	 */
+	public String getLine() {
+		return new String(chars, lineStart, lineEnd - lineStart);
+	}
+	
+	/**
+	 * Moves past the next field of the current section and the delimiter
+	 * following it.
+	 * 
+	 * @param delimiter the delimiter separating the fields
+	 * @return index after the last character of the field
+	 */
+	private int skipField(String delimiter) {
+		int found = indexOf(delimiter, cursor, end);
+		int fieldEnd = found < 0 ? end : found;
+		
+		fieldStart = cursor;
+		sectionStart = false;
+		cursor = found < 0 ? end : found + delimiter.length();
+		return fieldEnd;
+	}
+	
+	/**
+	 * Finds the given delimiter in the given range of the current line.
+	 * 
+	 * @param delimiter the delimiter
+	 * @param from      index at which the search starts
+	 * @param to        index at which the search ends
+	 * @return index of the delimiter, or {@code -1} if it was not found
+	 */
+	private int indexOf(String delimiter, int from, int to) {
+		char first = delimiter.charAt(0);
+		int last = to - delimiter.length();
+		
+		outer:
+		for(int i = from; i <= last; i++) {
+			if(chars[i] != first) continue;
+			
+			for(int j = 1; j < delimiter.length(); j++) {
+				if(chars[i + j] != delimiter.charAt(j)) continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the number of the last returned line, counting from 1.
+	 * 
+	 * @return the line number
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+	
+	/**
+	 * Creates an exception describing an error on the last returned line. If
+	 * the line was split into fields, the error is placed at the column of the
+	 * last field read.
+	 * 
+	 * @param message the description of the error
+	 * @return the exception, to be thrown by the caller
+	 */
+	public IllegalArgumentException error(String message) {
+		if(fieldStart < 0) {
+			return new IllegalArgumentException("Line " + lineNumber + ": " + message);
+		}
+		return new IllegalArgumentException("Line " + lineNumber + ", column " + (fieldStart + 1) + ": " + message);
+	}
+	
+	/**
+	 * Splits the given string around the given delimiter, exactly as
+	 * {@link String#split(String)} would with the quoted delimiter: the
+	 * trailing empty parts are removed, and an empty string gives a single
+	 * empty part.
+	 * 
+	 * @param string    the string
+	 * @param delimiter the delimiter
+	 * @return the parts
+	 */
+	public static String[] split(String string, String delimiter) {
+		if(string.isEmpty()) return new String[] { "" };
+		
+		List<String> parts = new ArrayList<>();
+		int start = 0;
+		
+		for(int end; (end = string.indexOf(delimiter, start)) >= 0; start = end + delimiter.length()) {
+			parts.add(string.substring(start, end));
+		}
+		parts.add(string.substring(start));
+		
+		int size = parts.size();
+		while(size > 0 && parts.get(size - 1).isEmpty()) {
+			size--;
+		}
+		return parts.subList(0, size).toArray(new String[0]);
+	}
+	
+	/**
+	 * Decodes the next line into {@link #chars}. A line ends with a line feed,
+	 * a carriage return, both of them or the end of the definition, as with
+	 * {@link java.io.BufferedReader#readLine()}.
+	 * 
+	 * @return {@code true} if there was another line, {@code false} otherwise
+	 */
+	private boolean fetch() {
+		while(true) {
+			if(skipLineFeed) {
+				if(position == limit && !refill(position)) return false;
+				
+				skipLineFeed = false;
+				if(buffer.get(position) == '\n') position++;
+			}
+			
+			int start = position;
+			boolean ascii = true;
+			length = 0;
+			
+			for(int i = start; i < limit; i++) {
+				byte b = buffer.get(i);
+				
+				if(b == '\n' || b == '\r') {
+					if(!ascii) decode(start, i);
+					
+					skipLineFeed = b == '\r';
+					position = i + 1;
+					return true;
+				}
+				
+				if(b < 0) {
+					ascii = false;
+				} else if(ascii) {
+					if(length == chars.length) chars = Arrays.copyOf(chars, length * 2);
+					chars[length++] = (char) b;
+				}
+			}
+			
+			// The line continues past the bytes read so far.
+			if(refill(start)) continue;
+			
+			start = position;
+			if(start == limit) return false;
+			
+			if(!ascii) decode(start, limit);
+			position = limit;
+			return true;
+		}
+	}
+	
+	/**
+	 * Decodes the given range of {@link #buffer}, which is not all ASCII, into
+	 * {@link #chars}.
+	 * 
+	 * @param from index of the first byte
+	 * @param to   index after the last byte
+	 */
+	private void decode(int from, int to) {
+		byte[] bytes = new byte[to - from];
+		for(int i = from; i < to; i++) {
+			bytes[i - from] = buffer.get(i);
+		}
+		
+		String line = new String(bytes, StandardCharsets.UTF_8);
+		length = line.length();
+		if(length > chars.length) chars = new char[Math.max(length, chars.length * 2)];
+		line.getChars(0, length, chars, 0);
+	}
+	
+	/**
+	 * Reads more bytes, keeping the ones from the given index on, which must
+	 * be {@link #position}. The kept bytes may be moved, and {@link #position}
+	 * is moved together with them.
+	 * 
+	 * @param keep index of the first byte to keep
+	 * @return {@code true} if more bytes were read, {@code false} if there are none
+	 */
+	private boolean refill(int keep) {
+		if(exhausted) return false;
+		
+		try {
+			if(channel != null) {
+				long size = channel.size();
+				if(windowStart + limit >= size) {
+					exhausted = true;
+					return false;
+				}
+				
+				int kept = limit - keep;
+				map(windowStart + keep);
+				
+				if(limit == kept) {
+					throw new IllegalArgumentException("Line " + (lineNumber + 1) + " is longer than " + WINDOW_SIZE + " bytes");
+				}
+			} else {
+				byte[] array = buffer.array();
+				int kept = limit - keep;
+				
+				if(keep == 0 && limit == array.length) {
+					array = Arrays.copyOf(array, array.length * 2);
+					buffer = ByteBuffer.wrap(array);
+				} else {
+					System.arraycopy(array, keep, array, 0, kept);
+				}
+				
+				int read = in.read(array, kept, array.length - kept);
+				position = 0;
+				limit = kept;
+				
+				if(read < 0) {
+					exhausted = true;
+					return false;
+				}
+				limit += read;
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		position = 0;
+		return true;
+	}
+	
+	/**
+	 * Maps the part of the file starting at the given position.
+	 * 
+	 * @param start position of the first mapped byte in the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private void map(long start) throws IOException {
+		long size = Math.min(WINDOW_SIZE, channel.size() - start);
+		
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		windowStart = start;
+		position = 0;
+		limit = (int) size;
+	}
+	
+	@Override
+	public void close() {
+		try {
+			if(in != null) in.close();
+			if(channel != null) channel.close();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package automaton;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Publishes the metrics of a registry as the attributes of an MBean of the
+ * platform MBean server, named <b>automaton:type=Metrics,name=</b> followed
+ * by the name of the exporter.
+ * <p>
+ * The attributes are read from the metrics whenever they are requested, so
+ * the registry has to be exported only once, and the metrics created after
+ * that appear as new attributes. A counter or a maximum is an attribute of
+ * its own name, and a histogram is published as the attributes of its name
+ * followed by <b>.count</b>, <b>.mean</b>, <b>.p50</b>, <b>.p90</b>,
+ * <b>.p99</b> and <b>.max</b>, in nanoseconds.
+ * 
+ * @author Filip Nemec
+ */
+public final class JmxExporter implements MetricExporter {
+	
+	/** The suffixes of the attributes of a histogram. */
+	private static final String[] HISTOGRAM_SUFFIXES = { ".count", ".mean", ".p50", ".p90", ".p99", ".max" };
+	
+	/** The name of the MBean. */
+	private final ObjectName name;
+	
+	/**
+	 * Constructs a new exporter.
+	 * 
+	 * @param name the name of the MBean, which tells apart the registries of a JVM
+	 * @throws IllegalArgumentException if the name cannot be part of the name of an MBean
+	 */
+	public JmxExporter(String name) {
+		try {
+			this.name = new ObjectName("automaton:type=Metrics,name=" + ObjectName.quote(name));
+		} catch(JMException e) {
+			throw new IllegalArgumentException("Invalid name '" + name + "'", e);
+		}
+	}
+	
+	/**
+	 * Registers the MBean of the given registry, replacing the MBean of this
+	 * exporter if it was registered before.
+	 */
+	@Override
+	public void export(MetricRegistry registry) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		try {
+			try {
+				server.registerMBean(new MetricsBean(registry), name);
+			} catch(InstanceAlreadyExistsException e) {
+				server.unregisterMBean(name);
+				server.registerMBean(new MetricsBean(registry), name);
+			}
+		} catch(JMException e) {
+			throw new IllegalStateException("The metrics cannot be registered as '" + name + "'", e);
+		}
+	}
+	
+	/**
+	 * Unregisters the MBean of this exporter, if it is registered.
+	 */
+	public void unexport() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch(InstanceNotFoundException e) {
+			// Nothing was exported.
+		} catch(JMException e) {
+			throw new IllegalStateException("The metrics cannot be unregistered from '" + name + "'", e);
+		}
+	}
+	
+	/**
+	 * The MBean whose read-only attributes are the current values of the
+	 * metrics of a registry.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class MetricsBean implements DynamicMBean {
+		
+		/** The registry. */
+		private final MetricRegistry registry;
+		
+		/**
+		 * Constructs a new MBean.
+		 * 
+		 * @param registry the registry
+		 */
+		MetricsBean(MetricRegistry registry) {
+			this.registry = registry;
+		}
+		
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Map<String, Object> metrics = registry.getMetrics();
+			Object metric = metrics.get(attribute);
+			
+			if(metric instanceof Counter) return ((Counter) metric).get();
+			if(metric instanceof Maximum) return ((Maximum) metric).get();
+			
+			int dot = attribute.lastIndexOf('.');
+			if(dot > 0 && metrics.get(attribute.substring(0, dot)) instanceof LatencyHistogram) {
+				LatencyHistogram histogram = (LatencyHistogram) metrics.get(attribute.substring(0, dot));
+				
+				switch(attribute.substring(dot)) {
+					case ".count":	return histogram.getCount();
+					case ".mean":	return histogram.getCount() == 0 ? 0.0 : histogram.getSum() / (double) histogram.getCount();
+					case ".p50":	return histogram.percentile(0.5);
+					case ".p90":	return histogram.percentile(0.9);
+					case ".p99":	return histogram.percentile(0.99);
+					case ".max":	return histogram.getMax();
+					default: break;
+				}
+			}
+			
+			throw new AttributeNotFoundException("Invalid attribute '" + attribute + "'");
+		}
+		
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			
+			for(String attribute : attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch(AttributeNotFoundException e) {
+					// An unknown attribute is left out of the list.
+				}
+			}
+			return list;
+		}
+		
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("The attribute '" + attribute.getName() + "' is read-only");
+		}
+		
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+		
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName), "Invalid operation '" + actionName + "'");
+		}
+		
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+			
+			for(Map.Entry<String, Object> entry : registry.getMetrics().entrySet()) {
+				String metric = entry.getKey();
+				
+				if(entry.getValue() instanceof LatencyHistogram) {
+					for(String suffix : HISTOGRAM_SUFFIXES) {
+						String type = suffix.equals(".mean") ? "double" : "long";
+						attributes.add(new MBeanAttributeInfo(metric + suffix, type, metric + suffix, true, false, false));
+					}
+				} else {
+					attributes.add(new MBeanAttributeInfo(metric, "long", metric, true, false, false));
+				}
+			}
+			
+			return new MBeanInfo(MetricsBean.class.getName(), "The metrics of the simulators",
+					attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+		}
+	}
+}
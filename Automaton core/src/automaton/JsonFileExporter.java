@@ -0,0 +1,44 @@
+package automaton;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the metrics of a registry to a file, in the format of
+ * {@link MetricRegistry#toJson()}.
+ * <p>
+ * The metrics are first written to a temporary file next to the given one,
+ * which then replaces it, so a reader of the file never sees a partly
+ * written export.
+ * 
+ * @author Filip Nemec
+ */
+public final class JsonFileExporter implements MetricExporter {
+	
+	/** The file to which the metrics are written. */
+	private final Path file;
+	
+	/**
+	 * Constructs a new exporter.
+	 * 
+	 * @param file the file to which the metrics are written
+	 */
+	public JsonFileExporter(Path file) {
+		this.file = file.toAbsolutePath();
+	}
+	
+	@Override
+	public void export(MetricRegistry registry) throws IOException {
+		Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		
+		try {
+			Files.write(temporary, registry.toJson().getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
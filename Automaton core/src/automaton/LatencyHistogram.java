@@ -0,0 +1,152 @@
+package automaton;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies, which many threads can record into at once
+ * without locking.
+ * <p>
+ * The latencies are counted in buckets whose width grows with the latency:
+ * every power of two is split into eight buckets of equal width, so a
+ * percentile is never overestimated by more than an eighth of itself, and
+ * every {@code long} falls into one of less than five hundred buckets.
+ * 
+ * @author Filip Nemec
+ * @see MetricRegistry
+ */
+public final class LatencyHistogram {
+	
+	/** Number of bits of a latency, after its highest one, which select its bucket. */
+	private static final int SUB_BUCKET_BITS = 3;
+	
+	/** Number of buckets into which every power of two is split. */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/** Number of latencies in every bucket. */
+	private final AtomicLongArray counts = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+	
+	/** Sum of all of the latencies. */
+	private final LongAdder sum = new LongAdder();
+	
+	/** The largest latency. */
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records a single latency.
+	 * 
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) nanos = 0;
+		
+		counts.incrementAndGet(bucket(nanos));
+		sum.add(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+	
+	/**
+	 * Returns the number of recorded latencies.
+	 * 
+	 * @return the number of latencies
+	 */
+	public long getCount() {
+		long count = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the sum of the recorded latencies.
+	 * 
+	 * @return the sum in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * Returns the largest recorded latency.
+	 * 
+	 * @return the latency in nanoseconds, or 0 if none were recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the latency below which the given fraction of the latencies
+	 * lies, rounded up to the end of its bucket.
+	 * 
+	 * @param fraction the fraction, between 0 and 1
+	 * @return the latency in nanoseconds, or 0 if none were recorded
+	 * @throws IllegalArgumentException if the fraction is out of range
+	 */
+	public long percentile(double fraction) {
+		if(!(fraction >= 0 && fraction <= 1))
+			throw new IllegalArgumentException("Invalid fraction '" + fraction + "'");
+		
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		for(int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if(count == 0) return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		
+		for(int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if(seen >= rank) return Math.min(upperBound(i), max.get());
+		}
+		return max.get();
+	}
+	
+	/**
+	 * Returns the number of latencies, their mean, a few of their percentiles
+	 * and their maximum, in microseconds.
+	 */
+	@Override
+	public String toString() {
+		long count = getCount();
+		double mean = count == 0 ? 0 : sum.doubleValue() / count;
+		
+		return String.format(Locale.ROOT, "count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+				count, mean / 1000, percentile(0.5) / 1000.0, percentile(0.9) / 1000.0,
+				percentile(0.99) / 1000.0, max.get() / 1000.0);
+	}
+	
+	/**
+	 * Returns the bucket of the given latency.
+	 * 
+	 * @param value the latency, not negative
+	 * @return index of the bucket
+	 */
+	private static int bucket(long value) {
+		if(value < SUB_BUCKETS) return (int) value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	/**
+	 * Returns the largest latency which falls into the given bucket.
+	 * 
+	 * @param bucket index of the bucket
+	 * @return the largest latency of the bucket
+	 */
+	private static long upperBound(int bucket) {
+		if(bucket < SUB_BUCKETS) return bucket;
+		
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,43 @@
+package automaton;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * The largest of the values recorded by any number of threads, such as the
+ * deepest stack of a pushdown automaton. Like a {@link Counter}, it spreads
+ * the records over several cells.
+ * 
+ * @author Filip Nemec
+ * @see MetricRegistry
+ */
+public final class Maximum {
+	
+	/** The cells of the maximum. */
+	private final LongAccumulator cells = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * Records the given value.
+	 * 
+	 * @param value the value, not negative
+	 */
+	public void record(long value) {
+		cells.accumulate(value);
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 * 
+	 * @return the value, or 0 if none were recorded
+	 */
+	public long get() {
+		return cells.get();
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 */
+	@Override
+	public String toString() {
+		return Long.toString(get());
+	}
+}
@@ -0,0 +1,21 @@
+package automaton;
+
+import java.io.IOException;
+
+/**
+ * Publishes the metrics of a {@link MetricRegistry}, such as
+ * {@link JsonFileExporter} and {@link JmxExporter}.
+ * 
+ * @author Filip Nemec
+ */
+@FunctionalInterface
+public interface MetricExporter {
+	
+	/**
+	 * Publishes the current values of the metrics of the given registry.
+	 * 
+	 * @param registry the registry
+	 * @throws IOException if the metrics cannot be published
+	 */
+	void export(MetricRegistry registry) throws IOException;
+}
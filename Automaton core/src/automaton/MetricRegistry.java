@@ -0,0 +1,146 @@
+package automaton;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * The named metrics of the simulators: {@link Counter}s, {@link Maximum}s
+ * and {@link LatencyHistogram}s, published by any {@link MetricExporter}.
+ * <p>
+ * A simulator collects its metrics only when it is given a registry. It then
+ * looks its metrics up once, counts the events of a simulation in local
+ * variables and adds them to the metrics when the simulation ends, so a
+ * simulator without a registry does no more than check a field for
+ * {@code null} once per simulation. The names of the metrics of a simulator
+ * start with the kind of its automaton, such as <b>dfa.</b> or <b>tm.</b>,
+ * and many simulators may share a registry and its metrics.
+ * 
+ * @author Filip Nemec
+ */
+public final class MetricRegistry {
+	
+	/** The metrics, mapped by their names. */
+	private final ConcurrentSkipListMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+	
+	/**
+	 * Returns the counter of the given name, creating it if it does not exist.
+	 * 
+	 * @param name the name
+	 * @return the counter
+	 * @throws IllegalArgumentException if the name belongs to another kind of metric
+	 */
+	public Counter counter(String name) {
+		return metric(name, Counter.class, Counter::new);
+	}
+	
+	/**
+	 * Returns the maximum of the given name, creating it if it does not exist.
+	 * 
+	 * @param name the name
+	 * @return the maximum
+	 * @throws IllegalArgumentException if the name belongs to another kind of metric
+	 */
+	public Maximum maximum(String name) {
+		return metric(name, Maximum.class, Maximum::new);
+	}
+	
+	/**
+	 * Returns the histogram of the given name, creating it if it does not exist.
+	 * 
+	 * @param name the name
+	 * @return the histogram
+	 * @throws IllegalArgumentException if the name belongs to another kind of metric
+	 */
+	public LatencyHistogram histogram(String name) {
+		return metric(name, LatencyHistogram.class, LatencyHistogram::new);
+	}
+	
+	/**
+	 * Returns the metric of the given name and type, creating it if it does
+	 * not exist.
+	 * 
+	 * @param <T>     the type of the metric
+	 * @param name    the name
+	 * @param type    the type of the metric
+	 * @param factory creates a new metric
+	 * @return the metric
+	 * @throws IllegalArgumentException if the name belongs to another kind of metric
+	 */
+	private <T> T metric(String name, Class<T> type, Supplier<T> factory) {
+		Object metric = metrics.get(name);
+		if(metric == null) {
+			metric = metrics.computeIfAbsent(name, n -> factory.get());
+		}
+		
+		if(!type.isInstance(metric))
+			throw new IllegalArgumentException("Invalid metric '" + name + "', which is a " + metric.getClass().getSimpleName());
+		
+		return type.cast(metric);
+	}
+	
+	/**
+	 * Returns the metrics, mapped by their names in alphabetical order. The
+	 * map reflects the metrics created later.
+	 * 
+	 * @return the metrics
+	 */
+	public Map<String, Object> getMetrics() {
+		return Collections.unmodifiableSortedMap(metrics);
+	}
+	
+	/**
+	 * Returns the current values of the metrics as a JSON object, whose
+	 * members are named by the metrics. A counter and a maximum are numbers,
+	 * and a histogram is an object of the number of the latencies, their mean,
+	 * a few of their percentiles and their maximum, all in nanoseconds.
+	 * 
+	 * @return the JSON text
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder("{");
+		boolean first = true;
+		
+		for(Map.Entry<String, Object> entry : metrics.entrySet()) {
+			sb.append(first ? "\n" : ",\n").append("  ").append(quote(entry.getKey())).append(": ");
+			first = false;
+			
+			if(entry.getValue() instanceof LatencyHistogram) {
+				LatencyHistogram histogram = (LatencyHistogram) entry.getValue();
+				long count = histogram.getCount();
+				
+				sb.append(String.format(Locale.ROOT, "{ \"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"max\": %d }",
+						count, count == 0 ? 0.0 : histogram.getSum() / (double) count, histogram.percentile(0.5),
+						histogram.percentile(0.9), histogram.percentile(0.99), histogram.getMax()));
+			} else {
+				sb.append(entry.getValue());
+			}
+		}
+		
+		return sb.append(first ? "}\n" : "\n}\n").toString();
+	}
+	
+	/**
+	 * Returns the given text as a JSON string literal.
+	 * 
+	 * @param text the text
+	 * @return the quoted and escaped text
+	 */
+	private static String quote(String text) {
+		StringBuilder sb = new StringBuilder("\"");
+		
+		for(char c : text.toCharArray()) {
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,184 @@
+package automaton;
+
+import java.util.Arrays;
+
+/**
+ * A set of states of an automaton, stored as a bitset with a bit for every
+ * state id.
+ * <p>
+ * Two sets are equal when they hold the same states, so sets can be used as
+ * keys of hash tables, for example to give every set reached by a subset
+ * construction its own id.
+ * 
+ * @author Filip Nemec
+ */
+public final class StateSet {
+	
+	/** The bits of the states, 64 states per word. */
+	private final long[] words;
+	
+	/** Number of states which the set can hold. */
+	private final int capacity;
+	
+	/**
+	 * Constructs a new empty set.
+	 * 
+	 * @param capacity number of states which the set can hold
+	 */
+	public StateSet(int capacity) {
+		this.capacity = capacity;
+		this.words = new long[(capacity + 63) >>> 6];
+	}
+	
+	/**
+	 * Constructs a copy of the given set.
+	 * 
+	 * @param other the set to copy
+	 */
+	public StateSet(StateSet other) {
+		this.capacity = other.capacity;
+		this.words = other.words.clone();
+	}
+	
+	/**
+	 * Adds the given state.
+	 * 
+	 * @param state the state
+	 * @return {@code true} if the state was not in the set, {@code false} otherwise
+	 */
+	public boolean add(int state) {
+		long bit = 1L << state;
+		long word = words[state >>> 6];
+		words[state >>> 6] = word | bit;
+		return (word & bit) == 0;
+	}
+	
+	/**
+	 * Removes the given state.
+	 * 
+	 * @param state the state
+	 */
+	public void remove(int state) {
+		words[state >>> 6] &= ~(1L << state);
+	}
+	
+	/**
+	 * Checks whether the set holds the given state.
+	 * 
+	 * @param state the state
+	 * @return {@code true} if the state is in the set, {@code false} otherwise
+	 */
+	public boolean contains(int state) {
+		return (words[state >>> 6] & (1L << state)) != 0;
+	}
+	
+	/**
+	 * Adds all of the states of the given set.
+	 * 
+	 * @param other the set of the same capacity
+	 * @return {@code true} if any state was added, {@code false} otherwise
+	 */
+	public boolean addAll(StateSet other) {
+		long added = 0;
+		for(int i = 0; i < words.length; i++) {
+			long word = words[i];
+			words[i] = word | other.words[i];
+			added |= other.words[i] & ~word;
+		}
+		return added != 0;
+	}
+	
+	/**
+	 * Replaces the states with the states of the given set.
+	 * 
+	 * @param other the set of the same capacity
+	 */
+	public void copyFrom(StateSet other) {
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+	
+	/**
+	 * Removes all of the states.
+	 */
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+	
+	/**
+	 * Checks whether the set is empty.
+	 * 
+	 * @return {@code true} if the set holds no states, {@code false} otherwise
+	 */
+	public boolean isEmpty() {
+		for(long word : words) {
+			if(word != 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the number of states in the set.
+	 * 
+	 * @return the number of states
+	 */
+	public int size() {
+		int size = 0;
+		for(long word : words) {
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns the smallest state in the set which is not smaller than the
+	 * given one. All of the states are visited by
+	 * {@code for(int s = set.next(0); s >= 0; s = set.next(s + 1))}.
+	 * 
+	 * @param from the smallest state to return
+	 * @return the state, or {@code -1} if there is none
+	 */
+	public int next(int from) {
+		if(from >= capacity) return -1;
+		
+		int index = from >>> 6;
+		long word = words[index] & (-1L << from);
+		
+		while(word == 0) {
+			if(++index == words.length) return -1;
+			word = words[index];
+		}
+		return (index << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * Returns the number of states which the set can hold.
+	 * 
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(words);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) return true;
+		if(!(obj instanceof StateSet)) return false;
+		
+		return Arrays.equals(words, ((StateSet) obj).words);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for(int state = next(0); state >= 0; state = next(state + 1)) {
+			if(sb.length() > 1) sb.append(", ");
+			sb.append(state);
+		}
+		return sb.append('}').toString();
+	}
+}
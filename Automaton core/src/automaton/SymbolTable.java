@@ -0,0 +1,308 @@
+package automaton;
+
+import java.util.Arrays;
+
+/**
+ * Assigns consecutive {@code int} ids to names, in the order in which the
+ * names are first seen.
+ * <p>
+ * The ids are kept in an open addressing hash table whose slots hold the
+ * hash of the name next to its id, and the characters of all of the names
+ * are kept one after another in a single array. Looking up a name therefore
+ * allocates nothing and rarely touches more than two cache lines, and a
+ * name given as a range of characters is turned into a {@code String} only
+ * when it is asked for.
+ * 
+ * @author Filip Nemec
+ */
+public final class SymbolTable {
+	
+	/** Id of a name which is not in the table. */
+	public static final int NONE = -1;
+	
+	/** The characters of all of the names, one after another. */
+	private char[] pool = new char[256];
+	
+	/** Index of the first character of every name in the pool, with an extra entry at the end. */
+	private int[] starts = new int[17];
+	
+	/** The names created so far, indexed by their ids, or {@code null} where not created yet. */
+	private String[] names = new String[16];
+	
+	/** The hash table, holding pairs of a hash and {@code id + 1} in used slots and {@code 0} in free ones. */
+	private int[] slots = new int[64];
+	
+	/** Number of names. */
+	private int size;
+	
+	/**
+	 * Constructs a new empty table.
+	 */
+	public SymbolTable() {
+	}
+	
+	/**
+	 * Constructs a new table holding the given names, with ids in the order
+	 * of the names.
+	 * 
+	 * @param names the names
+	 */
+	public SymbolTable(String... names) {
+		for(String name : names) {
+			intern(name);
+		}
+	}
+	
+	/**
+	 * Returns the id of the given name, adding the name if it is not in the
+	 * table yet.
+	 * 
+	 * @param name the name
+	 * @return the id of the name
+	 */
+	public int intern(String name) {
+		int hash = name.hashCode();
+		int slot = find(name, hash);
+		if(slots[slot + 1] != 0) return slots[slot + 1] - 1;
+		
+		int start = starts[size];
+		reserve(name.length());
+		name.getChars(0, name.length(), pool, start);
+		
+		int id = add(slot, hash, name.length());
+		names[id] = name;
+		return id;
+	}
+	
+	/**
+	 * Returns the id of the name made of the given range of characters,
+	 * adding the name if it is not in the table yet.
+	 * 
+	 * @param chars the characters
+	 * @param start index of the first character of the name
+	 * @param end   index after the last character of the name
+	 * @return the id of the name
+	 */
+	public int intern(char[] chars, int start, int end) {
+		int hash = hash(chars, start, end);
+		int slot = find(chars, start, end, hash);
+		if(slots[slot + 1] != 0) return slots[slot + 1] - 1;
+		
+		reserve(end - start);
+		System.arraycopy(chars, start, pool, starts[size], end - start);
+		return add(slot, hash, end - start);
+	}
+	
+	/**
+	 * Returns the id of the given name.
+	 * 
+	 * @param name the name
+	 * @return the id of the name, or {@link #NONE} if the name is not in the table
+	 */
+	public int id(String name) {
+		return slots[find(name, name.hashCode()) + 1] - 1;
+	}
+	
+	/**
+	 * Returns the id of the name made of the given range of characters.
+	 * 
+	 * @param chars the characters
+	 * @param start index of the first character of the name
+	 * @param end   index after the last character of the name
+	 * @return the id of the name, or {@link #NONE} if the name is not in the table
+	 */
+	public int id(char[] chars, int start, int end) {
+		return slots[find(chars, start, end, hash(chars, start, end)) + 1] - 1;
+	}
+	
+	/**
+	 * Returns the name with the given id.
+	 * 
+	 * @param id the id
+	 * @return the name
+	 */
+	public String name(int id) {
+		String name = names[id];
+		if(name == null) {
+			name = names[id] = new String(pool, starts[id], starts[id + 1] - starts[id]);
+		}
+		return name;
+	}
+	
+	/**
+	 * Returns all of the names, indexed by their ids.
+	 * 
+	 * @return a new array of the names
+	 */
+	public String[] names() {
+		String[] all = new String[size];
+		for(int id = 0; id < size; id++) {
+			all[id] = name(id);
+		}
+		return all;
+	}
+	
+	/**
+	 * Returns the number of names.
+	 * 
+	 * @return the number of names
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Finds the slot of the given name.
+	 * 
+	 * @param name the name
+	 * @param hash the hash of the name
+	 * @return index of the slot holding the name, or of the free slot where it belongs
+	 */
+	private int find(String name, int hash) {
+		int mask = slots.length - 2;
+		for(int slot = (mix(hash) << 1) & mask; ; slot = (slot + 2) & mask) {
+			int id = slots[slot + 1] - 1;
+			if(id < 0 || slots[slot] == hash && equals(id, name)) return slot;
+		}
+	}
+	
+	/**
+	 * Finds the slot of the name made of the given range of characters.
+	 * 
+	 * @param chars the characters
+	 * @param start index of the first character of the name
+	 * @param end   index after the last character of the name
+	 * @param hash  the hash of the name
+	 * @return index of the slot holding the name, or of the free slot where it belongs
+	 */
+	private int find(char[] chars, int start, int end, int hash) {
+		int mask = slots.length - 2;
+		for(int slot = (mix(hash) << 1) & mask; ; slot = (slot + 2) & mask) {
+			int id = slots[slot + 1] - 1;
+			if(id < 0 || slots[slot] == hash && equals(id, chars, start, end)) return slot;
+		}
+	}
+	
+	/**
+	 * Computes the hash of the given range of characters, equal to the
+	 * {@link String#hashCode()} of the name they make.
+	 * 
+	 * @param chars the characters
+	 * @param start index of the first character
+	 * @param end   index after the last character
+	 * @return the hash
+	 */
+	private static int hash(char[] chars, int start, int end) {
+		int hash = 0;
+		for(int i = start; i < end; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		return hash;
+	}
+	
+	/**
+	 * Makes room in the pool for the characters of a new name.
+	 * 
+	 * @param length number of characters of the name
+	 */
+	private void reserve(int length) {
+		int needed = starts[size] + length;
+		if(needed > pool.length) {
+			pool = Arrays.copyOf(pool, Math.max(needed, 2 * pool.length));
+		}
+	}
+	
+	/**
+	 * Adds a new name, whose characters were already put into the pool, to the
+	 * given free slot, growing the table if needed.
+	 * 
+	 * @param slot   index of the free slot where the name belongs
+	 * @param hash   the hash of the name
+	 * @param length number of characters of the name
+	 * @return the id of the name
+	 */
+	private int add(int slot, int hash, int length) {
+		if(size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			starts = Arrays.copyOf(starts, size * 2 + 1);
+		}
+		
+		int id = size++;
+		starts[size] = starts[id] + length;
+		slots[slot] = hash;
+		slots[slot + 1] = id + 1;
+		
+		if(4 * size > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+	
+	/**
+	 * Doubles the hash table.
+	 */
+	private void rehash() {
+		int[] old = slots;
+		slots = new int[old.length * 2];
+		int mask = slots.length - 2;
+		
+		for(int i = 0; i < old.length; i += 2) {
+			if(old[i + 1] == 0) continue;
+			
+			int slot = (mix(old[i]) << 1) & mask;
+			while(slots[slot + 1] != 0) {
+				slot = (slot + 2) & mask;
+			}
+			slots[slot] = old[i];
+			slots[slot + 1] = old[i + 1];
+		}
+	}
+	
+	/**
+	 * Spreads the bits of a hash, so that similar names do not cluster.
+	 * 
+	 * @param hash the hash
+	 * @return the mixed hash
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * Checks whether the name with the given id is the given name.
+	 * 
+	 * @param id   the id
+	 * @param name the name
+	 * @return {@code true} if they are equal, {@code false} otherwise
+	 */
+	private boolean equals(int id, String name) {
+		int start = starts[id];
+		if(starts[id + 1] - start != name.length()) return false;
+		
+		for(int i = 0; i < name.length(); i++) {
+			if(pool[start + i] != name.charAt(i)) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether the name with the given id consists of the given range
+	 * of characters.
+	 * 
+	 * @param id    the id
+	 * @param chars the characters
+	 * @param start index of the first character
+	 * @param end   index after the last character
+	 * @return {@code true} if they are equal, {@code false} otherwise
+	 */
+	private boolean equals(int id, char[] chars, int start, int end) {
+		int from = starts[id];
+		if(starts[id + 1] - from != end - start) return false;
+		
+		for(int i = start; i < end; i++) {
+			if(pool[from + i - start] != chars[i]) return false;
+		}
+		return true;
+	}
+}
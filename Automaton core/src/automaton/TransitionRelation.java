@@ -0,0 +1,82 @@
+package automaton;
+
+/**
+ * A nondeterministic transition relation, mapping every pair of a state and
+ * a symbol to a set of next states. The next states of every pair are kept
+ * in an {@code int} array, indexed by {@code state * symbolCount + symbol}.
+ * 
+ * @author Filip Nemec
+ */
+public final class TransitionRelation {
+	
+	/** The next states of the pairs without any. */
+	private static final int[] NO_STATES = new int[0];
+	
+	/** The next states, indexed by {@code state * symbolCount + symbol}. */
+	private final int[][] targets;
+	
+	/** Number of states. */
+	private final int stateCount;
+	
+	/** Number of symbols. */
+	private final int symbolCount;
+	
+	/**
+	 * Constructs a new relation without any transitions.
+	 * 
+	 * @param stateCount  number of states
+	 * @param symbolCount number of symbols
+	 * @throws IllegalArgumentException if the relation would be too large
+	 */
+	public TransitionRelation(int stateCount, int symbolCount) {
+		long length = (long) stateCount * symbolCount;
+		if(length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(stateCount + " states and " + symbolCount + " symbols do not fit in a transition relation");
+		}
+		
+		this.stateCount = stateCount;
+		this.symbolCount = symbolCount;
+		this.targets = new int[(int) length][];
+	}
+	
+	/**
+	 * Returns the next states of the given state and symbol.
+	 * 
+	 * @param state  the state
+	 * @param symbol the symbol
+	 * @return the next states, which must not be modified
+	 */
+	public int[] get(int state, int symbol) {
+		int[] next = targets[state * symbolCount + symbol];
+		return next == null ? NO_STATES : next;
+	}
+	
+	/**
+	 * Sets the next states of the given state and symbol.
+	 * 
+	 * @param state  the state
+	 * @param symbol the symbol
+	 * @param next   the next states, which are kept by the relation
+	 */
+	public void set(int state, int symbol, int[] next) {
+		targets[state * symbolCount + symbol] = next;
+	}
+	
+	/**
+	 * Returns the number of states.
+	 * 
+	 * @return the number of states
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+	
+	/**
+	 * Returns the number of symbols.
+	 * 
+	 * @return the number of symbols
+	 */
+	public int getSymbolCount() {
+		return symbolCount;
+	}
+}
@@ -0,0 +1,98 @@
+package automaton;
+
+import java.util.Arrays;
+
+/**
+ * A deterministic transition function, mapping every pair of a state and a
+ * symbol to an {@code int}, stored in a single array indexed by
+ * {@code state * symbolCount + symbol}.
+ * <p>
+ * The value is usually the next state, but automata whose transitions carry
+ * more than that, such as pushdown automata, store the index of the
+ * transition instead.
+ * 
+ * @author Filip Nemec
+ */
+public final class TransitionTable {
+	
+	/** Value of the pairs without a transition. */
+	public static final int NONE = -1;
+	
+	/** The values, indexed by {@code state * symbolCount + symbol}. */
+	private final int[] table;
+	
+	/** Number of states. */
+	private final int stateCount;
+	
+	/** Number of symbols. */
+	private final int symbolCount;
+	
+	/**
+	 * Constructs a new table without any transitions.
+	 * 
+	 * @param stateCount  number of states
+	 * @param symbolCount number of symbols
+	 * @throws IllegalArgumentException if the table would be too large
+	 */
+	public TransitionTable(int stateCount, int symbolCount) {
+		long length = (long) stateCount * symbolCount;
+		if(length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(stateCount + " states and " + symbolCount + " symbols do not fit in a transition table");
+		}
+		
+		this.stateCount = stateCount;
+		this.symbolCount = symbolCount;
+		this.table = new int[(int) length];
+		Arrays.fill(table, NONE);
+	}
+	
+	/**
+	 * Returns the value of the given state and symbol.
+	 * 
+	 * @param state  the state
+	 * @param symbol the symbol
+	 * @return the value, or {@link #NONE} if there is no transition
+	 */
+	public int get(int state, int symbol) {
+		return table[state * symbolCount + symbol];
+	}
+	
+	/**
+	 * Sets the value of the given state and symbol.
+	 * 
+	 * @param state  the state
+	 * @param symbol the symbol
+	 * @param value  the value
+	 */
+	public void set(int state, int symbol, int value) {
+		table[state * symbolCount + symbol] = value;
+	}
+	
+	/**
+	 * Returns the array holding the values, for loops which index it
+	 * directly.
+	 * 
+	 * @return the values, indexed by {@code state * symbolCount + symbol}
+	 */
+	public int[] array() {
+		return table;
+	}
+	
+	/**
+	 * Returns the number of states.
+	 * 
+	 * @return the number of states
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+	
+	/**
+	 * Returns the number of symbols.
+	 * 
+	 * @return the number of symbols
+	 */
+	public int getSymbolCount() {
+		return symbolCount;
+	}
+}
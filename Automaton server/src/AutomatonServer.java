@@ -0,0 +1,521 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import automaton.JmxExporter;
+import automaton.JsonFileExporter;
+import automaton.MetricExporter;
+import automaton.MetricRegistry;
+
+/**
+ * A long-running server which loads and compiles automata once, each under
+ * its own handle, and then evaluates them on the inputs sent by its clients,
+ * so that an evaluation pays neither the start of the JVM nor the reading of
+ * the definition.
+ * <p>
+ * The server listens on a TCP socket of the loopback address. A client sends
+ * requests, one per line, and receives exactly one response line for every
+ * request, in the order of the requests. A client does not have to wait for
+ * a response before sending the next request: the requests are evaluated on
+ * a fixed pool of threads as soon as they are read, and only a bounded number
+ * of them is in flight for a single client, after which the server stops
+ * reading until the oldest response is sent. The requests are:
+ * <ul>
+ * <li><b>LOAD handle kind lines</b>, followed by the given number of lines of
+ * the definition - loads the automaton of a kind described by
+ * {@link LoadedAutomaton} under the handle, replacing any automaton already
+ * loaded under it. The number of lines is always the last argument, so the
+ * definition is skipped even if the other arguments are invalid. If the
+ * number itself is invalid, the connection is closed after the error, since
+ * the lines of the definition cannot be told from the requests.</li>
+ * <li><b>RUN handle input</b> - evaluates the automaton on the rest of the
+ * line</li>
+ * <li><b>STATS handle</b> - returns the latencies of the evaluations of the
+ * automaton, once all of the earlier requests on the same connection are
+ * answered</li>
+ * <li><b>UNLOAD handle</b> - removes the automaton</li>
+ * </ul>
+ * A response is either <b>OK</b> followed by the result, or <b>ERROR</b>
+ * followed by the reason. A request may refer to an automaton loaded by an
+ * earlier request on the same connection even before that one is answered.
+ * <p>
+ * Every connection is served by a pair of threads of its own, so only a
+ * bounded number of connections is served at once. Further connections wait
+ * in the backlog of the socket until one of them is closed.
+ * <p>
+ * The simulators of the loaded automata add their metrics to a single
+ * {@link MetricRegistry} of the server, which can be exported to a JSON file
+ * and as an MBean.
+ * 
+ * @author Filip Nemec
+ */
+public class AutomatonServer {
+	
+	/** The port listened on when no other is given. */
+	private static final int DEFAULT_PORT = 7687;
+	
+	/** The step limit of a Turing machine evaluation when no other is given. */
+	private static final long DEFAULT_STEP_LIMIT = 1_000_000_000L;
+	
+	/** Maximum number of requests of a single connection which are not answered yet. */
+	private static final int PIPELINE_DEPTH = 256;
+	
+	/** Maximum number of connections served at once when no other is given. */
+	private static final int DEFAULT_MAX_CONNECTIONS = 64;
+	
+	/** Number of seconds between two exports of the metrics to a file. */
+	private static final long METRICS_INTERVAL = 10;
+	
+	/** Marks the end of the responses of a connection. */
+	private static final CompletableFuture<String> END = new CompletableFuture<>();
+	
+	/** The loaded automata, mapped by their handles. */
+	private final ConcurrentHashMap<String, CompletableFuture<LoadedAutomaton>> automata = new ConcurrentHashMap<>();
+	
+	/** The threads loading and evaluating the automata. */
+	private final ExecutorService executor;
+	
+	/** Maximum number of steps of a single Turing machine evaluation. */
+	private final long stepLimit;
+	
+	/** The metrics of the simulators and of the evaluations. */
+	private final MetricRegistry metrics = new MetricRegistry();
+	
+	/** Permits of the connections which can still be served at once. */
+	private final Semaphore connections;
+	
+	/**
+	 * Constructs a new server which serves at most
+	 * {@value #DEFAULT_MAX_CONNECTIONS} connections at once.
+	 * 
+	 * @param threads   number of threads loading and evaluating the automata
+	 * @param stepLimit maximum number of steps of a single Turing machine evaluation
+	 * @throws IllegalArgumentException if the number of threads or the step limit is not positive
+	 */
+	public AutomatonServer(int threads, long stepLimit) {
+		this(threads, stepLimit, DEFAULT_MAX_CONNECTIONS);
+	}
+	
+	/**
+	 * Constructs a new server.
+	 * 
+	 * @param threads        number of threads loading and evaluating the automata
+	 * @param stepLimit      maximum number of steps of a single Turing machine evaluation
+	 * @param maxConnections maximum number of connections served at once
+	 * @throws IllegalArgumentException if any of the arguments is not positive
+	 */
+	public AutomatonServer(int threads, long stepLimit, int maxConnections) {
+		if(threads <= 0)
+			throw new IllegalArgumentException("Invalid number of threads '" + threads + "'");
+		
+		if(stepLimit <= 0)
+			throw new IllegalArgumentException("Invalid step limit '" + stepLimit + "'");
+		
+		if(maxConnections <= 0)
+			throw new IllegalArgumentException("Invalid number of connections '" + maxConnections + "'");
+		
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.stepLimit = stepLimit;
+		this.connections = new Semaphore(maxConnections);
+	}
+	
+	/**
+	 * Returns the metrics of the simulators and of the evaluations.
+	 * 
+	 * @return the registry of the metrics
+	 */
+	public MetricRegistry getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Accepts the connections of the given socket until it is closed, and
+	 * serves every connection on its own pair of threads, one reading its
+	 * requests and the other writing its responses. A connection is accepted
+	 * only once fewer than the maximum number of connections are served.
+	 * 
+	 * @param serverSocket the socket
+	 * @throws IOException if a connection cannot be accepted
+	 */
+	public void serve(ServerSocket serverSocket) throws IOException {
+		try {
+			while(true) {
+				connections.acquireUninterruptibly();
+				
+				Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch(IOException e) {
+					connections.release();
+					throw e;
+				}
+				
+				new Thread(() -> serve(socket), "Connection " + socket.getRemoteSocketAddress()).start();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Reads the requests of the given connection until it is closed.
+	 * 
+	 * @param socket the connection
+	 */
+	private void serve(Socket socket) {
+		BlockingQueue<CompletableFuture<String>> responses = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+		Thread reader = Thread.currentThread();
+		Thread writer = new Thread(() -> {
+			try {
+				write(socket, responses, reader);
+			} finally {
+				connections.release();
+			}
+		}, reader.getName() + " writer");
+		writer.start();
+		
+		CompletableFuture<?> answered = CompletableFuture.completedFuture(null);
+		
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String line;
+			
+			while((line = in.readLine()) != null) {
+				if(line.isBlank()) continue;
+				
+				CompletableFuture<String> response;
+				boolean framed = true;
+				
+				try {
+					response = execute(line, in, answered);
+				} catch(FramingException e) {
+					response = CompletableFuture.failedFuture(e);
+					framed = false;
+				}
+				
+				responses.put(response);
+				answered = CompletableFuture.allOf(answered, response);
+				
+				// The rest of the stream can no longer be split into requests.
+				if(!framed) break;
+			}
+		} catch(IOException | InterruptedException e) {
+			// The connection was closed, or the responses can no longer be written.
+		} finally {
+			try {
+				responses.put(END);
+			} catch(InterruptedException e) {
+				// The writer has stopped and closed the connection.
+			}
+		}
+	}
+	
+	/**
+	 * Starts executing a single request.
+	 * 
+	 * @param line     the request
+	 * @param in       the reader of the connection, from which the lines of a
+	 *                 definition are read
+	 * @param answered completes once all of the earlier requests of the
+	 *                 connection are answered
+	 * @return the response to the request
+	 * @throws FramingException if it is not known where the request ends
+	 * @throws IOException      if the lines of a definition cannot be read
+	 */
+	private CompletableFuture<String> execute(String line, BufferedReader in, CompletableFuture<?> answered) throws IOException {
+		String[] parts = line.trim().split(" ", 3);
+		
+		try {
+			switch(parts[0]) {
+				case "LOAD":	return load(parts, in);
+				case "RUN":		return run(parts);
+				case "STATS":	return stats(parts, answered);
+				case "UNLOAD":	return unload(parts);
+				default: throw new IllegalArgumentException("Invalid request '" + parts[0] + "'");
+			}
+		} catch(IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	/**
+	 * Reads the definition of an automaton and starts loading it. The number
+	 * of lines of the definition is parsed first, and the definition is read
+	 * even if the rest of the request is invalid.
+	 * 
+	 * @param parts the request, the handle and the rest of the request line
+	 * @param in    the reader of the connection
+	 * @return the response to the request
+	 * @throws FramingException         if the number of lines is missing or invalid
+	 * @throws IOException              if the definition cannot be read
+	 * @throws IllegalArgumentException if the request is invalid
+	 */
+	private CompletableFuture<String> load(String[] parts, BufferedReader in) throws IOException {
+		String[] arguments = parts.length == 3 ? parts[2].trim().split("\\s+") : new String[0];
+		String count = arguments.length > 0 ? arguments[arguments.length - 1] : parts.length == 2 ? parts[1] : "";
+		
+		int lineCount;
+		try {
+			lineCount = Integer.parseInt(count);
+		} catch(NumberFormatException e) {
+			throw new FramingException("Invalid number of lines '" + count + "'");
+		}
+		
+		if(lineCount < 0)
+			throw new FramingException("Invalid number of lines '" + count + "'");
+		
+		StringBuilder definition = new StringBuilder();
+		for(int i = 0; i < lineCount; i++) {
+			String line = in.readLine();
+			if(line == null) throw new IOException("The definition ended too early");
+			
+			definition.append(line).append('\n');
+		}
+		
+		if(arguments.length != 2)
+			throw new IllegalArgumentException("Expected the handle, the kind and the number of lines of the definition");
+		
+		String handle = parts[1];
+		String kind = arguments[0];
+		CompletableFuture<LoadedAutomaton> automaton = CompletableFuture.supplyAsync(
+				() -> LoadedAutomaton.compile(kind, definition.toString(), stepLimit, metrics), executor);
+		
+		automata.put(handle, automaton);
+		automaton.whenComplete((loaded, e) -> {
+			if(e != null) automata.remove(handle, automaton);
+		});
+		
+		return automaton.thenApply(loaded -> "OK " + handle);
+	}
+	
+	/**
+	 * Starts evaluating an automaton.
+	 * 
+	 * @param parts the request, the handle and the input
+	 * @return the response to the request
+	 * @throws IllegalArgumentException if the request is invalid
+	 */
+	private CompletableFuture<String> run(String[] parts) {
+		String input = parts.length == 3 ? parts[2] : "";
+		return loaded(parts, 3).thenApplyAsync(automaton -> "OK " + automaton.evaluate(input), executor);
+	}
+	
+	/**
+	 * Returns the latencies of an automaton once all of the earlier requests
+	 * are answered, so that they include the evaluations requested earlier.
+	 * 
+	 * @param parts    the request and the handle
+	 * @param answered completes once all of the earlier requests are answered
+	 * @return the response to the request
+	 * @throws IllegalArgumentException if the request is invalid
+	 */
+	private CompletableFuture<String> stats(String[] parts, CompletableFuture<?> answered) {
+		CompletableFuture<LoadedAutomaton> automaton = loaded(parts, 2);
+		return answered.handle((ignored, e) -> null).thenCombine(automaton, (ignored, loaded) -> "OK " + loaded.getLatencies());
+	}
+	
+	/**
+	 * Removes an automaton.
+	 * 
+	 * @param parts the request and the handle
+	 * @return the response to the request
+	 * @throws IllegalArgumentException if the request is invalid
+	 */
+	private CompletableFuture<String> unload(String[] parts) {
+		loaded(parts, 2);
+		automata.remove(parts[1]);
+		return CompletableFuture.completedFuture("OK " + parts[1]);
+	}
+	
+	/**
+	 * Returns the automaton whose handle is given by the request.
+	 * 
+	 * @param parts    the request and its arguments
+	 * @param maxParts maximum number of parts of the request
+	 * @return the automaton, which may still be loading
+	 * @throws IllegalArgumentException if the request is invalid or the handle is unknown
+	 */
+	private CompletableFuture<LoadedAutomaton> loaded(String[] parts, int maxParts) {
+		if(parts.length < 2 || parts.length > maxParts)
+			throw new IllegalArgumentException("Invalid number of arguments of '" + parts[0] + "'");
+		
+		CompletableFuture<LoadedAutomaton> automaton = automata.get(parts[1]);
+		if(automaton == null)
+			throw new IllegalArgumentException("Invalid handle '" + parts[1] + "'");
+		
+		return automaton;
+	}
+	
+	/**
+	 * Writes the responses of a connection in the order of their requests,
+	 * waiting for every one of them to complete, and closes the connection
+	 * after the last one. The responses are flushed whenever no further
+	 * response is ready.
+	 * 
+	 * @param socket    the connection
+	 * @param responses the responses, ending with {@link #END}
+	 * @param reader    the thread reading the requests, which is interrupted
+	 *                  if the responses can no longer be written
+	 */
+	private static void write(Socket socket, BlockingQueue<CompletableFuture<String>> responses, Thread reader) {
+		try(socket; Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+			while(true) {
+				CompletableFuture<String> response = responses.poll();
+				
+				if(response == null) {
+					out.flush();
+					response = responses.take();
+				}
+				
+				if(response == END) break;
+				
+				out.write(reply(response));
+				out.write('\n');
+			}
+		} catch(IOException | InterruptedException e) {
+			reader.interrupt();
+		}
+	}
+	
+	/**
+	 * Waits for the given response and returns its line.
+	 * 
+	 * @param response the response
+	 * @return the line of the response
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static String reply(CompletableFuture<String> response) throws InterruptedException {
+		try {
+			return response.get();
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			String message = cause.getMessage() == null ? cause.toString() : cause.getMessage();
+			return "ERROR " + message.replaceAll("\\R", " ");
+		}
+	}
+	
+	/**
+	 * Thrown when the end of a request cannot be found, so that the requests
+	 * which follow it cannot be read.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class FramingException extends IOException {
+		
+		/** The serial version UID. */
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Constructs a new exception.
+		 * 
+		 * @param message the reason
+		 */
+		FramingException(String message) {
+			super(message);
+		}
+	}
+	
+	/**
+	 * Exports the given metrics every {@link #METRICS_INTERVAL} seconds on a
+	 * daemon thread. A failed export is reported and retried the next time.
+	 * 
+	 * @param exporter the exporter
+	 * @param metrics  the metrics
+	 */
+	private static void exportPeriodically(MetricExporter exporter, MetricRegistry metrics) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Metrics exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				exporter.export(metrics);
+			} catch(IOException e) {
+				System.err.println("The metrics cannot be exported: " + e.getMessage());
+			}
+		}, METRICS_INTERVAL, METRICS_INTERVAL, TimeUnit.SECONDS);
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Starts the server, which runs until it is killed. The options are:
+	 * <ul>
+	 * <li><b>--port=n</b> - the port, or 0 for any free one</li>
+	 * <li><b>--threads=n</b> - number of threads evaluating the automata,
+	 * by default the number of processors</li>
+	 * <li><b>--max-steps=n</b> - maximum number of steps of a single Turing
+	 * machine evaluation</li>
+	 * <li><b>--max-connections=n</b> - maximum number of connections served
+	 * at once, 64 by default</li>
+	 * <li><b>--metrics=file</b> - the metrics are written to the given file
+	 * as JSON every ten seconds</li>
+	 * <li><b>--jmx</b> - the metrics are registered as the MBean
+	 * <b>automaton:type=Metrics,name=server</b></li>
+	 * </ul>
+	 * The address of the server is printed once it is listening.
+	 * 
+	 * @param args the options described above
+	 * @throws IOException if the socket cannot be opened
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long stepLimit = DEFAULT_STEP_LIMIT;
+		int maxConnections = DEFAULT_MAX_CONNECTIONS;
+		Path metricsFile = null;
+		boolean jmx = false;
+		
+		for(String arg : args) {
+			String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--port=":				port = Integer.parseInt(value); break;
+				case "--threads=":			threads = Integer.parseInt(value); break;
+				case "--max-steps=":			stepLimit = Long.parseLong(value); break;
+				case "--max-connections=":	maxConnections = Integer.parseInt(value); break;
+				case "--metrics=":			metricsFile = Paths.get(value); break;
+				case "--jmx":					jmx = true; break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		AutomatonServer server = new AutomatonServer(threads, stepLimit, maxConnections);
+		
+		if(jmx) {
+			new JmxExporter("server").export(server.getMetrics());
+		}
+		if(metricsFile != null) {
+			exportPeriodically(new JsonFileExporter(metricsFile), server.getMetrics());
+		}
+		
+		try(ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+			System.out.println("Listening on " + serverSocket.getLocalSocketAddress());
+			server.serve(serverSocket);
+		}
+	}
+}
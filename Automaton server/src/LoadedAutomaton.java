@@ -0,0 +1,207 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+import automaton.DefinitionReader;
+import automaton.LatencyHistogram;
+import automaton.MetricRegistry;
+
+/**
+ * An automaton whose definition was read and compiled once, and which is
+ * then evaluated by the {@link AutomatonServer} on any number of inputs.
+ * <p>
+ * Most of the simulators keep the state of the current evaluation in the
+ * simulator itself, so every evaluation borrows an idle simulator, creating
+ * a new one only when all of them are busy. The simulators of a single
+ * automaton share whatever part of the compiled definition they can, and the
+ * minimized DFA, which keeps no state at all, is shared by all of them.
+ * <p>
+ * The supported kinds of automata, with the input of a single evaluation and
+ * its output, are:
+ * <ul>
+ * <li><b>enka</b> - an epsilon-NFA in the format of {@link SimEnka}, the
+ * symbols separated by ',', the states after every symbol</li>
+ * <li><b>dfa</b> - a DFA in the format of {@link MinDka}, which is minimized
+ * once, the symbols separated by ',', 1 if accepted or 0 otherwise, which
+ * is also the answer of a DFA missing some of its transitions</li>
+ * <li><b>dpda</b> - a DPDA in the format of {@link SimPa}, the symbols
+ * separated by ',', the configurations followed by 1 or 0</li>
+ * <li><b>tm</b> - a Turing machine in the format of {@link SimTS}, the tapes
+ * optionally followed by whitespace and the head positions, the processing
+ * information</li>
+ * <li><b>ll</b> - an LL(1) grammar in the format of {@link Grammar}, the
+ * sequence, the trace followed by a space and DA or NE</li>
+ * </ul>
+ * The input strings given in the definitions of the epsilon-NFA and the DPDA
+ * are ignored. The simulators add their metrics to the registry of the
+ * server, which also times the evaluations of every kind of automata.
+ * 
+ * @author Filip Nemec
+ */
+class LoadedAutomaton {
+	
+	/** Creates a new simulator whenever all of them are busy. */
+	private final Supplier<Evaluator> factory;
+	
+	/** The simulators not used by any evaluation. */
+	private final Queue<Evaluator> idle = new ConcurrentLinkedQueue<>();
+	
+	/** The latencies of the evaluations. */
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	
+	/** The latencies of the evaluations of all of the automata of the same kind. */
+	private final LatencyHistogram kindLatencies;
+	
+	/**
+	 * Constructs a new automaton and creates its first simulator, so that an
+	 * invalid definition is reported right away.
+	 * 
+	 * @param factory creates a new simulator
+	 * @param kind    the kind of the automaton
+	 * @param metrics the registry to which the metrics are added
+	 */
+	private LoadedAutomaton(Supplier<Evaluator> factory, String kind, MetricRegistry metrics) {
+		this.factory = factory;
+		this.kindLatencies = metrics.histogram("server." + kind + ".evaluationTime");
+		idle.add(factory.get());
+	}
+	
+	/**
+	 * Reads and compiles the given definition.
+	 * 
+	 * @param kind       the kind of the automaton, one of those described above
+	 * @param definition the definition
+	 * @param stepLimit  maximum number of steps of a single Turing machine evaluation
+	 * @param metrics    the registry to which the metrics are added
+	 * @return the compiled automaton
+	 * @throws IllegalArgumentException if the kind or the definition is invalid
+	 */
+	public static LoadedAutomaton compile(String kind, String definition, long stepLimit, MetricRegistry metrics) {
+		switch(kind) {
+			case "enka":
+				return new LoadedAutomaton(() -> {
+					SimEnka automaton = new SimEnka(DefinitionReader.of(definition));
+					automaton.setMetricRegistry(metrics);
+					return automaton::process;
+				}, kind, metrics);
+			
+			case "dfa": {
+				MinDka dfa = new MinDka(DefinitionReader.of(definition));
+				dfa.setMetricRegistry(metrics);
+				dfa.minimize();
+				
+				Evaluator evaluator = input -> dfa.accepts(input) ? "1" : "0";
+				return new LoadedAutomaton(() -> evaluator, kind, metrics);
+			}
+			
+			case "dpda":
+				return new LoadedAutomaton(() -> {
+					SimPa automaton = new SimPa(DefinitionReader.of(definition));
+					automaton.setMetricRegistry(metrics);
+					return automaton::process;
+				}, kind, metrics);
+			
+			case "tm": {
+				SimTS shared = new SimTS(DefinitionReader.of(definition));
+				shared.setStepLimit(stepLimit);
+				shared.setMetricRegistry(metrics);
+				
+				return new LoadedAutomaton(() -> {
+					SimTS machine = new SimTS(shared);
+					return input -> simulate(machine, input);
+				}, kind, metrics);
+			}
+			
+			case "ll": {
+				Grammar grammar = new Grammar(definition);
+				
+				return new LoadedAutomaton(() -> {
+					Parser parser = new Parser(grammar);
+					return input -> {
+						ParseResult result = parser.parse(input);
+						return result.getTrace() + " " + (result.isAccepted() ? "DA" : "NE");
+					};
+				}, kind, metrics);
+			}
+			
+			default:
+				throw new IllegalArgumentException("Invalid kind of automaton '" + kind + "'");
+		}
+	}
+	
+	/**
+	 * Evaluates the automaton on the given input and records the latency of
+	 * the evaluation.
+	 * 
+	 * @param input the input, in the format of the kind of the automaton
+	 * @return the output of the evaluation
+	 * @throws IllegalArgumentException if the input is invalid
+	 * @throws IllegalStateException    if the Turing machine was stopped
+	 */
+	public String evaluate(String input) {
+		Evaluator evaluator = idle.poll();
+		if(evaluator == null) evaluator = factory.get();
+		
+		long start = System.nanoTime();
+		
+		try {
+			return evaluator.evaluate(input);
+		} finally {
+			long latency = System.nanoTime() - start;
+			latencies.record(latency);
+			kindLatencies.record(latency);
+			idle.add(evaluator);
+		}
+	}
+	
+	/**
+	 * Returns the latencies of the evaluations.
+	 * 
+	 * @return the latencies
+	 */
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+	
+	/**
+	 * Runs the given Turing machine on the initial tapes and head positions
+	 * given by the input, in the format of the batch mode of {@link SimTS}.
+	 * 
+	 * @param machine the machine
+	 * @param input   the tapes, optionally followed by the head positions
+	 * @return the processing information
+	 * @throws IllegalArgumentException if the input is invalid
+	 * @throws IllegalStateException    if the machine was stopped before it halted
+	 */
+	private static String simulate(SimTS machine, String input) {
+		String[] parts = input.trim().split("\\s+");
+		
+		if(parts.length > 2)
+			throw new IllegalArgumentException("Expected the tapes and the head positions, but got '" + input + "'");
+		
+		machine.reset(parts[0], parts.length == 2 ? parts[1] : null);
+		String output = machine.simulate();
+		
+		if(machine.getStopReason() != null)
+			throw new IllegalStateException(machine.getStopReason());
+		
+		return output;
+	}
+	
+	/**
+	 * A simulator evaluating the automaton on one input at a time.
+	 * 
+	 * @author Filip Nemec
+	 */
+	@FunctionalInterface
+	private interface Evaluator {
+		
+		/**
+		 * Evaluates the automaton on the given input.
+		 * 
+		 * @param input the input
+		 * @return the output
+		 */
+		String evaluate(String input);
+	}
+}
@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares {@link MinDka#accepts(String)} with the sequences read many at
+ * once by {@link StreamMatcher}, before and after the minimization, and the
+ * minimization of {@link MinDka} with the one of {@link ExternalMinimization}
+ * on a memory budget small enough to sort the signatures in several runs.
+ * <p>
+ * A quarter of the generated DFAs miss some of their transitions, which both
+ * minimizations treat as moves into an implicit dead state.
+ * 
+ * @author Filip Nemec
+ */
+class DfaCheck extends DifferentialCheck {
+	
+	/** The symbols of the generated DFAs. */
+	private static final String[] SYMBOLS = { "a", "b", "c" };
+	
+	/** A symbol which is not in the alphabet of the generated DFAs. */
+	private static final String UNKNOWN_SYMBOL = "z";
+	
+	/** The memory budget of the external minimization, in bytes. */
+	private static final long EXTERNAL_MEMORY = 1 << 12;
+	
+	@Override
+	String getName() {
+		return "dfa";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		List<String> states = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(8); i < count; i++) {
+			states.add("p" + i);
+		}
+		
+		String[] symbols = random.nextBoolean() ? SYMBOLS : new String[] { "a", "b" };
+		List<String> finals = new ArrayList<>();
+		for(String state : states) {
+			if(random.nextInt(3) == 0) finals.add(state);
+		}
+		
+		boolean complete = random.nextInt(4) != 0;
+		List<String> rules = new ArrayList<>();
+		for(String state : states) {
+			for(String symbol : symbols) {
+				if(complete || random.nextInt(5) != 0) {
+					rules.add(state + "," + symbol + "->" + pick(random, states.toArray(new String[0])));
+				}
+			}
+		}
+		
+		// More sequences than the lanes of the matcher, so that they are read in groups.
+		List<String> inputs = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(3 * StreamMatcher.LANES); i < count; i++) {
+			List<String> sequence = new ArrayList<>();
+			for(int j = 0, length = random.nextInt(10); j < length; j++) {
+				sequence.add(random.nextInt(30) == 0 ? UNKNOWN_SYMBOL : pick(random, symbols));
+			}
+			inputs.add(String.join(",", sequence));
+		}
+		
+		List<String> header = List.of(String.join(",", states), String.join(",", symbols), String.join(",", finals), pick(random, states.toArray(new String[0])));
+		return new TestCase(header, rules, inputs, ",");
+	}
+	
+	/**
+	 * Returns the definition of the DFA of the given test case.
+	 * 
+	 * @param test the test case
+	 * @return the definition
+	 */
+	static String definition(TestCase test) {
+		List<String> lines = new ArrayList<>(test.getHeader());
+		lines.addAll(test.getRules());
+		return String.join("\n", lines) + "\n";
+	}
+	
+	@Override
+	String compare(TestCase test) throws IOException {
+		String definition = definition(test);
+		List<String> inputs = test.getInputs();
+		
+		MinDka dfa = new MinDka(DefinitionReader.of(definition));
+		String[] expected = new String[inputs.size()];
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			expected[i] = outcome(() -> dfa.accepts(input));
+		}
+		
+		String mismatch = compareMatcher("StreamMatcher", dfa.matcher(), inputs, expected);
+		if(mismatch != null) return mismatch;
+		
+		MinDka minimal = new MinDka(DefinitionReader.of(definition));
+		minimal.minimize();
+		
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			mismatch = mismatch("minimized MinDka", input, expected[i], outcome(() -> minimal.accepts(input)));
+			if(mismatch != null) return mismatch;
+		}
+		
+		mismatch = compareMatcher("StreamMatcher of the minimized DFA", minimal.matcher(), inputs, expected);
+		if(mismatch != null) return mismatch;
+		
+		return mismatch("ExternalMinimization", null, minimal.getDefinition(), minimizeExternally(definition));
+	}
+	
+	/**
+	 * Compares the acceptance of the given sequences by the given matcher,
+	 * one at a time and all at once, with the expected one.
+	 * 
+	 * @param mode     the name of the mode
+	 * @param matcher  the matcher
+	 * @param inputs   the sequences
+	 * @param expected the expected acceptance of every sequence
+	 * @return the description of the first mismatch, or {@code null} if the acceptance is the same
+	 */
+	private static String compareMatcher(String mode, StreamMatcher matcher, List<String> inputs, String[] expected) {
+		int[][] sequences = new int[inputs.size()][];
+		for(int i = 0; i < sequences.length; i++) {
+			sequences[i] = matcher.encode(inputs.get(i));
+		}
+		
+		for(int i = 0; i < sequences.length; i++) {
+			int[] sequence = sequences[i];
+			String mismatch = mismatch(mode, inputs.get(i), expected[i], outcome(() -> matcher.accepts(sequence)));
+			if(mismatch != null) return mismatch;
+		}
+		
+		boolean[] accepted = matcher.acceptsAll(sequences);
+		for(int i = 0; i < sequences.length; i++) {
+			String mismatch = mismatch(mode + ", all at once", inputs.get(i), expected[i], String.valueOf(accepted[i]));
+			if(mismatch != null) return mismatch;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Minimizes the DFA of the given definition by {@link ExternalMinimization}
+	 * in a temporary directory.
+	 * 
+	 * @param definition the definition
+	 * @return the definition of the minimal DFA
+	 * @throws IOException if a file cannot be read or written
+	 */
+	private static String minimizeExternally(String definition) throws IOException {
+		Path directory = Files.createTempDirectory("differential");
+		Path file = directory.resolve("dfa.txt");
+		
+		try {
+			Files.write(file, definition.getBytes(StandardCharsets.UTF_8));
+			
+			ExternalMinimization minimization = new ExternalMinimization(directory.resolve("work"), EXTERNAL_MEMORY);
+			try {
+				minimization.minimize(file);
+				
+				StringBuilder sb = new StringBuilder();
+				minimization.writeDefinition(sb);
+				return sb.toString();
+			} finally {
+				minimization.deleteFiles();
+			}
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(directory);
+		}
+	}
+	
+	@Override
+	String getProject() {
+		return "Minimization of DFA";
+	}
+	
+	@Override
+	String replay(Path example) throws Exception {
+		String definition = read(example.resolve("t.ul"));
+		String expected = normalize(read(example.resolve("t.iz")));
+		
+		MinDka dfa = new MinDka(DefinitionReader.of(definition));
+		dfa.minimize();
+		
+		String mismatch = mismatch("MinDka", null, expected, normalize(dfa.getDefinition()));
+		return mismatch != null ? mismatch : mismatch("ExternalMinimization", null, expected, normalize(minimizeExternally(definition)));
+	}
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the reference simulation of one kind of automata with its
+ * optimized modes on generated test cases.
+ * <p>
+ * The reference is the simplest simulation of an automaton: either the
+ * original step-by-step simulation or a model written for this purpose
+ * straight from the definition of the automaton. Every optimized mode must
+ * give exactly the same output, or fail with the same exception.
+ * <p>
+ * A check can also replay the examples of its project, whose expected
+ * outputs are then the reference.
+ * 
+ * @author Filip Nemec
+ */
+abstract class DifferentialCheck {
+	
+	/** Longest output quoted by the description of a mismatch. */
+	private static final int MAX_QUOTED_LENGTH = 200;
+	
+	/**
+	 * Returns the name of this check, by which it is selected.
+	 * 
+	 * @return the name
+	 */
+	abstract String getName();
+	
+	/**
+	 * Generates a random test case.
+	 * 
+	 * @param random the source of randomness
+	 * @return the test case
+	 */
+	abstract TestCase generate(Random random);
+	
+	/**
+	 * Runs the reference and every optimized mode on the given test case.
+	 * 
+	 * @param test the test case
+	 * @return the description of the first mismatch, or {@code null} if all of
+	 *         the modes agree
+	 * @throws Exception if the modes cannot be run at all
+	 */
+	abstract String compare(TestCase test) throws Exception;
+	
+	/**
+	 * Returns the given test case in the format in which its program reads
+	 * it, if there is one.
+	 * 
+	 * @param test the test case
+	 * @return the description of the test case
+	 */
+	String describe(TestCase test) {
+		return test.toString();
+	}
+	
+	/**
+	 * Returns the name of the project whose examples are replayed by this
+	 * check.
+	 * 
+	 * @return the name of the project, or {@code null} if there are no examples
+	 */
+	String getProject() {
+		return null;
+	}
+	
+	/**
+	 * Runs every mode on the given example and compares its output with the
+	 * expected one.
+	 * 
+	 * @param example the directory of the example
+	 * @return the description of the first mismatch, or {@code null} if all of
+	 *         the modes give the expected output
+	 * @throws Exception if the example cannot be read or the modes cannot be run at all
+	 */
+	String replay(Path example) throws Exception {
+		return null;
+	}
+	
+	/**
+	 * Runs the given mode and returns its output, or the name of the class of
+	 * the exception it failed with.
+	 * 
+	 * @param mode the mode
+	 * @return the outcome of the mode
+	 */
+	static String outcome(Callable<?> mode) {
+		try {
+			return String.valueOf(mode.call());
+		} catch(Exception e) {
+			return "exception " + e.getClass().getName();
+		}
+	}
+	
+	/**
+	 * Compares the outcome of a mode with the expected one.
+	 * 
+	 * @param mode     the name of the mode
+	 * @param input    the input, or {@code null} if the mode is not run on a single input
+	 * @param expected the expected outcome
+	 * @param actual   the outcome of the mode
+	 * @return the description of the mismatch, or {@code null} if the outcomes are equal
+	 */
+	static String mismatch(String mode, String input, String expected, String actual) {
+		if(expected.equals(actual)) return null;
+		
+		return mode + (input == null ? "" : " on '" + input + "'") + ": expected '" + quote(expected) + "' but was '" + quote(actual) + "'";
+	}
+	
+	/**
+	 * Shortens the given output to its start if it is too long to be quoted.
+	 * 
+	 * @param output the output
+	 * @return the quoted output
+	 */
+	private static String quote(String output) {
+		return output.length() <= MAX_QUOTED_LENGTH ? output : output.substring(0, MAX_QUOTED_LENGTH) + "...";
+	}
+	
+	/**
+	 * Reads the given file of an example, with its lines terminated by line
+	 * feeds only.
+	 * 
+	 * @param file the file
+	 * @return the contents
+	 * @throws IOException if the file cannot be read
+	 */
+	static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).replace("\r\n", "\n");
+	}
+	
+	/**
+	 * Removes the whitespace from the ends of the lines of the given output,
+	 * and the empty lines from its end, as they are not part of the expected
+	 * outputs of the examples.
+	 * 
+	 * @param output the output
+	 * @return the normalized output
+	 */
+	static String normalize(String output) {
+		StringBuilder sb = new StringBuilder();
+		
+		for(String line : output.replace("\r\n", "\n").split("\n")) {
+			int end = line.length();
+			while(end > 0 && Character.isWhitespace(line.charAt(end - 1))) end--;
+			sb.append(line, 0, end).append('\n');
+		}
+		
+		int end = sb.length();
+		while(end > 0 && sb.charAt(end - 1) == '\n') end--;
+		return sb.substring(0, end);
+	}
+	
+	/**
+	 * Returns a random element of the given array.
+	 * 
+	 * @param random   the source of randomness
+	 * @param elements the elements
+	 * @return the chosen element
+	 */
+	@SafeVarargs
+	static <T> T pick(Random random, T... elements) {
+		return elements[random.nextInt(elements.length)];
+	}
+}
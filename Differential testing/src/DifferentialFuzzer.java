@@ -0,0 +1,275 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the reference simulators and their optimized modes side by side on
+ * random automata and inputs, and reports every difference of their outputs
+ * together with the smallest test case which still shows it.
+ * <p>
+ * Before the random test cases, the examples of every project are replayed,
+ * and the output of every mode is compared with the expected output of the
+ * example. The random test cases are then generated by the
+ * {@link DifferentialCheck}s in turn until the time runs out. A test case on
+ * which the modes differ is reduced by leaving out its rules, its inputs and
+ * the symbols of its inputs one at a time, for as long as the modes still
+ * differ on it.
+ * <p>
+ * Every test case is run on a thread of its own and is given at most
+ * {@link #CASE_TIMEOUT} seconds, since a broken mode may never stop. A test
+ * case which runs out of time is reported as it was generated.
+ * 
+ * @author Filip Nemec
+ */
+public class DifferentialFuzzer {
+	
+	/** Number of seconds a single test case may run. */
+	private static final long CASE_TIMEOUT = 10;
+	
+	/** Number of seconds spent on reducing a single test case. */
+	private static final long SHRINK_TIME = 30;
+	
+	/** Number of mismatches after which no more test cases are generated. */
+	private static final int MAX_MISMATCHES = 10;
+	
+	/** The description of a test case which ran out of time. */
+	private static final String TIMED_OUT = "timed out after " + CASE_TIMEOUT + " s";
+	
+	/** The checks. */
+	private final List<DifferentialCheck> checks;
+	
+	/**
+	 * The standard output, to which the results are printed in UTF-8. The
+	 * checks may replace {@link System#out} while they run.
+	 */
+	private final PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+	
+	/** Runs the test cases, replaced whenever a test case runs out of time. */
+	private ExecutorService executor = newExecutor();
+	
+	/**
+	 * Constructs a new fuzzer of the given checks.
+	 * 
+	 * @param checks the checks
+	 */
+	public DifferentialFuzzer(List<DifferentialCheck> checks) {
+		this.checks = checks;
+	}
+	
+	/**
+	 * Returns a new executor whose single thread does not keep the program
+	 * running, so that a test case which never stops can be abandoned.
+	 * 
+	 * @return the executor
+	 */
+	private static ExecutorService newExecutor() {
+		return Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "differential-case");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Replays the examples of the projects in the given directory, and prints
+	 * every example on which a mode does not give the expected output.
+	 * 
+	 * @param root the directory of the projects
+	 * @return the number of the failed examples
+	 * @throws IOException if the directories of the examples cannot be listed
+	 * @throws InterruptedException if the thread is interrupted while waiting for an example
+	 */
+	public int replayExamples(Path root) throws IOException, InterruptedException {
+		int replayed = 0;
+		int failed = 0;
+		
+		for(DifferentialCheck check : checks) {
+			if(check.getProject() == null) continue;
+			
+			Path directory = root.resolve(check.getProject()).resolve("examples");
+			if(!Files.isDirectory(directory)) continue;
+			
+			List<Path> examples;
+			try(Stream<Path> files = Files.list(directory)) {
+				examples = files.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+			}
+			
+			for(Path example : examples) {
+				String mismatch = run(() -> check.replay(example));
+				replayed++;
+				
+				if(mismatch != null) {
+					out.println("MISMATCH in example " + root.relativize(example) + ": " + mismatch);
+					failed++;
+				}
+			}
+		}
+		
+		out.println("Replayed " + replayed + " examples, " + failed + " failed");
+		return failed;
+	}
+	
+	/**
+	 * Runs random test cases until the given time, and prints every mismatch
+	 * with its reduced test case.
+	 * 
+	 * @param seed     the seed of the random test cases
+	 * @param deadline the value of {@link System#nanoTime()} after which no
+	 *                 more test cases are generated
+	 * @return the number of the mismatches
+	 * @throws InterruptedException if the thread is interrupted while waiting for a test case
+	 */
+	public int fuzz(long seed, long deadline) throws InterruptedException {
+		Random random = new Random(seed);
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		int mismatches = 0;
+		
+		for(int n = 0; System.nanoTime() < deadline && mismatches < MAX_MISMATCHES; n++) {
+			DifferentialCheck check = checks.get(n % checks.size());
+			TestCase test = check.generate(random);
+			counts.merge(check.getName(), 1, Integer::sum);
+			
+			String mismatch = run(() -> check.compare(test));
+			if(mismatch == null) continue;
+			
+			mismatches++;
+			out.println("MISMATCH in check '" + check.getName() + "', test case " + n + " of seed " + seed + ": " + mismatch);
+			
+			if(!mismatch.equals(TIMED_OUT)) {
+				TestCase reduced = shrink(check, test);
+				out.println("Reduced from size " + test.size() + " to size " + reduced.size() + ": " + run(() -> check.compare(reduced)));
+				out.print(check.describe(reduced));
+			} else {
+				out.print(check.describe(test));
+			}
+			out.println();
+		}
+		
+		out.println("Ran " + counts + " test cases of seed " + seed + ", " + mismatches + " mismatches");
+		return mismatches;
+	}
+	
+	/**
+	 * Reduces the given test case, on which the modes of the given check
+	 * differ, for as long as they still differ on it.
+	 * 
+	 * @param check the check
+	 * @param test  the test case
+	 * @return the smallest test case found on which the modes differ
+	 * @throws InterruptedException if the thread is interrupted while waiting for a test case
+	 */
+	private TestCase shrink(DifferentialCheck check, TestCase test) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHRINK_TIME);
+		TestCase smallest = test;
+		
+		for(boolean reduced = true; reduced && System.nanoTime() < deadline; ) {
+			reduced = false;
+			
+			for(TestCase candidate : smallest.reductions()) {
+				String mismatch = run(() -> check.compare(candidate));
+				
+				if(mismatch != null && !mismatch.equals(TIMED_OUT)) {
+					smallest = candidate;
+					reduced = true;
+					break;
+				}
+			}
+		}
+		return smallest;
+	}
+	
+	/**
+	 * Runs the given comparison on the thread of the test cases.
+	 * 
+	 * @param comparison the comparison
+	 * @return the description of the mismatch, {@code null} if there is none
+	 * @throws InterruptedException if the thread is interrupted while waiting for the comparison
+	 */
+	private String run(Callable<String> comparison) throws InterruptedException {
+		Future<String> future = executor.submit(comparison);
+		
+		try {
+			return future.get(CASE_TIMEOUT, TimeUnit.SECONDS);
+		} catch(ExecutionException e) {
+			return "the comparison failed with " + e.getCause();
+		} catch(TimeoutException e) {
+			future.cancel(true);
+			executor.shutdownNow();
+			executor = newExecutor();
+			return TIMED_OUT;
+		}
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Replays the examples and runs random test cases. The options are:
+	 * <ul>
+	 * <li><b>--time=n</b> - the time budget in seconds, which includes the
+	 * replay of the examples, 60 by default</li>
+	 * <li><b>--seed=n</b> - the seed of the random test cases, a random one by
+	 * default, which is printed so that the test cases can be repeated</li>
+	 * <li><b>--examples=path</b> - the directory of the projects whose
+	 * examples are replayed, the current directory by default</li>
+	 * <li><b>--check=name</b> - runs only the named check, one of
+	 * <i>enka</i>, <i>dfa</i>, <i>dpda</i>, <i>tm</i>, <i>ll</i>,
+	 * <i>grep</i> and <i>server</i>, and can be given more than once</li>
+	 * </ul>
+	 * The program exits with the status 1 if any mode differed from the
+	 * reference, and with 0 otherwise.
+	 * 
+	 * @param args the options
+	 * @throws IOException if the directories of the examples cannot be listed
+	 * @throws InterruptedException if the thread is interrupted while waiting for a test case
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<DifferentialCheck> all = List.of(new EnkaCheck(), new DfaCheck(), new PdaCheck(), new TuringCheck(), new GrammarCheck(), new GrepCheck(), new ServerCheck());
+		List<DifferentialCheck> checks = new ArrayList<>();
+		long seconds = 60;
+		long seed = new Random().nextLong();
+		Path examples = Paths.get("");
+		
+		for(String arg : args) {
+			String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--time=":		seconds = Long.parseLong(value); break;
+				case "--seed=":		seed = Long.parseLong(value); break;
+				case "--examples=":	examples = Paths.get(value); break;
+				case "--check=":	checks.add(all.stream().filter(c -> c.getName().equals(value)).findFirst()
+										.orElseThrow(() -> new IllegalArgumentException("Unknown check '" + value + "'"))); break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		DifferentialFuzzer fuzzer = new DifferentialFuzzer(checks.isEmpty() ? all : checks);
+		
+		int failures = fuzzer.replayExamples(examples.toAbsolutePath());
+		failures += fuzzer.fuzz(seed, deadline);
+		
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
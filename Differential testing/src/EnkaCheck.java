@@ -0,0 +1,280 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares {@link SimEnka}, which interns the sets of states and remembers
+ * the transitions between them, with a model which keeps the current states
+ * in a sorted set of their names.
+ * <p>
+ * The acceptance of every sequence is also compared with the DFA built from
+ * the same epsilon-NFA by {@link SubsetConstruction}, on one thread and on
+ * several, which must build the same DFA.
+ * 
+ * @author Filip Nemec
+ */
+class EnkaCheck extends DifferentialCheck {
+	
+	/** The symbols of the generated epsilon-NFAs. */
+	private static final String[] SYMBOLS = { "a", "b", "c" };
+	
+	/** A symbol which is not in the alphabet of the generated epsilon-NFAs. */
+	private static final String UNKNOWN_SYMBOL = "d";
+	
+	@Override
+	String getName() {
+		return "enka";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		List<String> states = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(6); i < count; i++) {
+			// Names of different lengths are sorted differently than their numbers.
+			states.add("s" + random.nextInt(3 * count));
+		}
+		states = new ArrayList<>(new TreeSet<>(states));
+		
+		List<String> finals = new ArrayList<>();
+		for(String state : states) {
+			if(random.nextInt(3) == 0) finals.add(state);
+		}
+		
+		List<String> rules = new ArrayList<>();
+		for(String state : states) {
+			for(String symbol : new String[] { "a", "b", "c", "$" }) {
+				if(random.nextInt(5) >= 2) continue;
+				
+				List<String> next = new ArrayList<>();
+				for(int i = 0, count = 1 + random.nextInt(3); i < count; i++) {
+					next.add(random.nextInt(20) == 0 ? "#" : pick(random, states.toArray(new String[0])));
+				}
+				rules.add(state + "," + symbol + "->" + String.join(",", next));
+			}
+		}
+		
+		List<String> inputs = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(4); i < count; i++) {
+			List<String> symbols = new ArrayList<>();
+			for(int j = 0, length = 1 + random.nextInt(6); j < length; j++) {
+				symbols.add(random.nextInt(20) == 0 ? UNKNOWN_SYMBOL : pick(random, SYMBOLS));
+			}
+			inputs.add(String.join(",", symbols));
+		}
+		
+		List<String> header = List.of(String.join(",", states), String.join(",", SYMBOLS), String.join(",", finals), pick(random, states.toArray(new String[0])));
+		return new TestCase(header, rules, inputs, ",");
+	}
+	
+	@Override
+	String describe(TestCase test) {
+		return definition(test);
+	}
+	
+	/**
+	 * Returns the definition of the epsilon-NFA of the given test case, whose
+	 * first line holds the inputs.
+	 * 
+	 * @param test the test case
+	 * @return the definition
+	 */
+	private static String definition(TestCase test) {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.join("|", test.getInputs()));
+		lines.addAll(test.getHeader());
+		lines.addAll(test.getRules());
+		return String.join("\n", lines) + "\n";
+	}
+	
+	@Override
+	String compare(TestCase test) {
+		String definition = definition(test);
+		Reference reference = new Reference(definition);
+		List<String> inputs = test.getInputs();
+		
+		String[] expected = new String[inputs.size()];
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			expected[i] = outcome(() -> reference.process(input));
+		}
+		
+		// One simulator for all of the inputs reuses the sets interned by the ones before.
+		SimEnka shared = new SimEnka(DefinitionReader.of(definition));
+		for(int pass = 0; pass < 2; pass++) {
+			for(int i = 0; i < expected.length; i++) {
+				String input = inputs.get(i);
+				String mismatch = mismatch(pass == 0 ? "SimEnka" : "SimEnka, second pass", input, expected[i], outcome(() -> shared.process(input)));
+				if(mismatch != null) return mismatch;
+			}
+		}
+		
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			String mismatch = mismatch("SimEnka, new simulator", input, expected[i], outcome(() -> new SimEnka(DefinitionReader.of(definition)).process(input)));
+			if(mismatch != null) return mismatch;
+		}
+		
+		SubsetConstruction sequential = new SubsetConstruction(DefinitionReader.of(definition), SubsetConstruction.DEFAULT_MAX_STATES, 1);
+		SubsetConstruction parallel = new SubsetConstruction(DefinitionReader.of(definition), SubsetConstruction.DEFAULT_MAX_STATES, 4);
+		
+		String mismatch = mismatch("SubsetConstruction on 4 threads", null, sequential.getDefinition(), parallel.getDefinition());
+		if(mismatch != null) return mismatch;
+		
+		MinDka dfa = sequential.minimize();
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			if(input.isEmpty()) continue; // The epsilon-NFA reads the empty sequence as a single unknown symbol.
+			
+			mismatch = mismatch("SubsetConstruction", input, String.valueOf(reference.accepts(input)), outcome(() -> dfa.accepts(input)));
+			if(mismatch != null) return mismatch;
+		}
+		
+		return null;
+	}
+	
+	@Override
+	String getProject() {
+		return "Simulation of epsilon-NFA";
+	}
+	
+	@Override
+	String replay(Path example) throws Exception {
+		String definition = read(example.resolve("test.a"));
+		String expected = normalize(read(example.resolve("test.b")));
+		String[] inputs = DefinitionReader.split(definition.substring(0, definition.indexOf('\n')).trim(), "|");
+		
+		Reference reference = new Reference(definition);
+		SimEnka simulator = new SimEnka(DefinitionReader.of(definition));
+		StringBuilder modelOutput = new StringBuilder();
+		StringBuilder simulatorOutput = new StringBuilder();
+		
+		for(String input : inputs) {
+			modelOutput.append(reference.process(input)).append('\n');
+			simulatorOutput.append(simulator.process(input)).append('\n');
+		}
+		
+		String mismatch = mismatch("model", null, expected, normalize(modelOutput.toString()));
+		return mismatch != null ? mismatch : mismatch("SimEnka", null, expected, normalize(simulatorOutput.toString()));
+	}
+	
+	/**
+	 * The model of an epsilon-NFA, which follows its definition as directly
+	 * as possible.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class Reference {
+		
+		/** The next states of every state and symbol, keyed by {@code "state,symbol"}. */
+		private final Map<String, List<String>> transitions = new HashMap<>();
+		
+		/** The final states. */
+		private final Set<String> finalStates;
+		
+		/** The initial state. */
+		private final String initialState;
+		
+		/**
+		 * Constructs the model of the epsilon-NFA of the given definition.
+		 * 
+		 * @param definition the definition, in the format of {@link SimEnka}
+		 */
+		Reference(String definition) {
+			String[] lines = definition.split("\n");
+			
+			finalStates = new TreeSet<>(Arrays.asList(lines[3].trim().split(",")));
+			initialState = lines[4].trim();
+			
+			for(int i = 5; i < lines.length && !lines[i].trim().isEmpty(); i++) {
+				String[] sides = lines[i].trim().split("->");
+				transitions.put(sides[0], Arrays.asList(sides[1].split(",")));
+			}
+		}
+		
+		/**
+		 * Returns the states before the first symbol and after every symbol of
+		 * the given sequence, in the format of {@link SimEnka#process(String)}.
+		 * 
+		 * @param sequence the sequence of symbols separated by ','
+		 * @return the states
+		 */
+		String process(String sequence) {
+			StringBuilder sb = new StringBuilder();
+			TreeSet<String> current = closure(new TreeSet<>(Set.of(initialState)));
+			sb.append(String.join(",", current));
+			
+			for(String symbol : DefinitionReader.split(sequence, ",")) {
+				current = step(current, symbol);
+				sb.append('|').append(String.join(",", current));
+			}
+			return sb.toString();
+		}
+		
+		/**
+		 * Checks whether the epsilon-NFA ends in a final state after the given
+		 * sequence.
+		 * 
+		 * @param sequence the sequence of symbols separated by ','
+		 * @return {@code true} if the sequence is accepted, {@code false} otherwise
+		 */
+		boolean accepts(String sequence) {
+			TreeSet<String> current = closure(new TreeSet<>(Set.of(initialState)));
+			for(String symbol : DefinitionReader.split(sequence, ",")) {
+				current = step(current, symbol);
+			}
+			
+			current.retainAll(finalStates);
+			return !current.isEmpty();
+		}
+		
+		/**
+		 * Returns the states reached from the given ones by the given symbol and
+		 * the epsilon transitions after it, or the empty set state <b>#</b>.
+		 * 
+		 * @param states the states
+		 * @param symbol the symbol
+		 * @return the next states
+		 */
+		private TreeSet<String> step(TreeSet<String> states, String symbol) {
+			TreeSet<String> next = new TreeSet<>();
+			
+			for(String state : states) {
+				List<String> targets = transitions.get(state + "," + symbol);
+				// A list of next states with the empty set state in it stands for the empty set.
+				if(targets != null && !targets.contains("#")) next.addAll(targets);
+			}
+			
+			if(next.isEmpty()) next.add("#");
+			return closure(next);
+		}
+		
+		/**
+		 * Adds to the given states all of the states reachable from them by
+		 * epsilon transitions.
+		 * 
+		 * @param states the states
+		 * @return the given set
+		 */
+		private TreeSet<String> closure(TreeSet<String> states) {
+			List<String> pending = new ArrayList<>(states);
+			
+			while(!pending.isEmpty()) {
+				List<String> targets = transitions.get(pending.remove(pending.size() - 1) + ",$");
+				if(targets == null || targets.contains("#")) continue;
+				
+				for(String target : targets) {
+					if(states.add(target)) pending.add(target);
+				}
+			}
+			return states;
+		}
+	}
+}
@@ -0,0 +1,351 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the parsing of a sequence by {@link Parser} with the parsing of
+ * the same sequence read from a stream in small pieces, with the parsing
+ * which builds the parse tree, with {@link IncrementalParser} reaching the
+ * sequence by an edit of the one before it, and with {@link BatchParser}.
+ * <p>
+ * The reference is a new parser for every sequence. The parse trees are
+ * compared with each other, since there is no other reference for them.
+ * 
+ * @author Filip Nemec
+ */
+class GrammarCheck extends DifferentialCheck {
+	
+	/** The nonterminals of the generated grammars. */
+	private static final String NONTERMINALS = "SABC";
+	
+	/** The terminals of the generated grammars. */
+	private static final String TERMINALS = "abcd";
+	
+	/** A character which is not a terminal of the generated grammars. */
+	private static final char UNKNOWN_TERMINAL = 'x';
+	
+	/** Number of attempts to generate a grammar which is LL(1). */
+	private static final int MAX_ATTEMPTS = 100;
+	
+	/** Longest sequence derived from a generated grammar. */
+	private static final int MAX_DERIVED_LENGTH = 40;
+	
+	/** Least number of sequences given to the batch parser, so that they are split into several chunks. */
+	private static final int BATCH_SIZE = 3000;
+	
+	@Override
+	String getName() {
+		return "ll";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		List<String> rules = null;
+		
+		for(int attempt = 0; attempt < MAX_ATTEMPTS && rules == null; attempt++) {
+			List<String> candidate = grammar(random);
+			
+			try {
+				new Grammar(String.join("\n", candidate));
+				rules = candidate;
+			} catch(IllegalArgumentException e) {
+				// The grammar is not LL(1), so another one is generated.
+			}
+		}
+		
+		if(rules == null) rules = List.of(Parser.DEFAULT_GRAMMAR.split("\n"));
+		
+		List<String> inputs = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(5); i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			if(!derive(rules, rules.get(0).charAt(0), 0, random, sb)) sb.setLength(0);
+			
+			// Half of the sequences are changed, so that most of them are rejected.
+			if(sb.length() == 0 || random.nextBoolean()) {
+				int position = random.nextInt(sb.length() + 1);
+				char c = random.nextInt(5) == 0 ? UNKNOWN_TERMINAL : TERMINALS.charAt(random.nextInt(TERMINALS.length()));
+				
+				switch(random.nextInt(3)) {
+					case 0:  sb.insert(position, c); break;
+					case 1:  if(position < sb.length()) sb.setCharAt(position, c); break;
+					default: if(position < sb.length()) sb.deleteCharAt(position); break;
+				}
+			}
+			inputs.add(sb.toString());
+		}
+		
+		return new TestCase(List.of(), rules, inputs, "");
+	}
+	
+	/**
+	 * Generates the rules of a random grammar, which may not be LL(1).
+	 * 
+	 * @param random the source of randomness
+	 * @return the rules, one line per nonterminal
+	 */
+	private static List<String> grammar(Random random) {
+		int nonterminals = 1 + random.nextInt(NONTERMINALS.length());
+		List<String> rules = new ArrayList<>();
+		
+		for(int n = 0; n < nonterminals; n++) {
+			List<String> alternatives = new ArrayList<>();
+			
+			for(int a = 0, count = 1 + random.nextInt(3); a < count; a++) {
+				if(random.nextInt(5) == 0 && !alternatives.contains("$")) {
+					alternatives.add("$");
+					continue;
+				}
+				
+				StringBuilder sb = new StringBuilder();
+				for(int i = 0, length = 1 + random.nextInt(3); i < length; i++) {
+					boolean terminal = i == 0 ? random.nextInt(10) < 7 : random.nextBoolean();
+					sb.append(terminal ? TERMINALS.charAt(random.nextInt(TERMINALS.length())) : NONTERMINALS.charAt(random.nextInt(nonterminals)));
+				}
+				alternatives.add(sb.toString());
+			}
+			rules.add(NONTERMINALS.charAt(n) + " -> " + String.join(" | ", alternatives));
+		}
+		return rules;
+	}
+	
+	/**
+	 * Appends a random sequence derived from the given symbol.
+	 * 
+	 * @param rules  the rules of the grammar
+	 * @param symbol the symbol
+	 * @param depth  number of the symbols from which the given one is derived
+	 * @param random the source of randomness
+	 * @param sb     the builder to which the sequence is appended
+	 * @return {@code true} if the sequence was derived, {@code false} if it
+	 *         grew longer than {@link #MAX_DERIVED_LENGTH} or deeper than that
+	 */
+	private static boolean derive(List<String> rules, char symbol, int depth, Random random, StringBuilder sb) {
+		if(sb.length() > MAX_DERIVED_LENGTH || depth > MAX_DERIVED_LENGTH) return false;
+		
+		for(String rule : rules) {
+			if(rule.charAt(0) != symbol) continue;
+			
+			String[] alternatives = rule.substring(rule.indexOf("->") + 2).split("\\|");
+			String alternative = alternatives[random.nextInt(alternatives.length)].trim();
+			if(alternative.equals("$")) return true;
+			
+			for(char c : alternative.toCharArray()) {
+				if(!derive(rules, c, depth + 1, random, sb)) return false;
+			}
+			return true;
+		}
+		
+		sb.append(symbol);
+		return true;
+	}
+	
+	@Override
+	String compare(TestCase test) throws IOException {
+		Grammar grammar;
+		try {
+			grammar = new Grammar(String.join("\n", test.getRules()));
+		} catch(IllegalArgumentException e) {
+			return null;
+		}
+		
+		List<String> inputs = test.getInputs();
+		Parser shared = new Parser(grammar);
+		IncrementalParser incremental = new IncrementalParser(grammar);
+		String previous = "";
+		incremental.parse(previous);
+		
+		for(String input : inputs) {
+			ParseResult expected = new Parser(grammar).parse(input);
+			String mismatch = mismatch("Parser", input, format(expected), format(shared.parse(input)));
+			if(mismatch != null) return mismatch;
+			
+			StringBuilder trace = new StringBuilder();
+			ParseTree streamTree = new ParseTree();
+			ParseResult streamed = shared.parse(new ChunkedReader(input), trace, streamTree);
+			mismatch = mismatch("stream", input, format(expected), format(new ParseResult(streamed.isAccepted(), streamed.getFailingIndex(), trace.toString())));
+			if(mismatch != null) return mismatch;
+			
+			ParseTree tree = new ParseTree();
+			mismatch = mismatch("tree", input, format(expected), format(shared.parse(input, tree)));
+			if(mismatch != null) return mismatch;
+			
+			mismatch = mismatch("stream tree", input, describe(tree), describe(streamTree));
+			if(mismatch != null) return mismatch;
+			
+			// The edit replaces everything between the common prefix and suffix of the sequences.
+			int prefix = 0;
+			while(prefix < Math.min(previous.length(), input.length()) && previous.charAt(prefix) == input.charAt(prefix)) prefix++;
+			
+			int suffix = 0;
+			while(suffix < Math.min(previous.length(), input.length()) - prefix
+					&& previous.charAt(previous.length() - 1 - suffix) == input.charAt(input.length() - 1 - suffix)) suffix++;
+			
+			ParseResult edited = incremental.edit(prefix, previous.length() - suffix, input.substring(prefix, input.length() - suffix));
+			mismatch = mismatch("IncrementalParser", input, expected.isAccepted() + "@" + expected.getFailingIndex(), edited.isAccepted() + "@" + edited.getFailingIndex());
+			if(mismatch != null) return mismatch;
+			
+			if(expected.isAccepted()) {
+				mismatch = mismatch("IncrementalParser tree", input, describe(tree), describe(incremental.getTree()));
+				if(mismatch != null) return mismatch;
+			}
+			previous = input;
+		}
+		
+		return compareBatch(grammar, inputs);
+	}
+	
+	/**
+	 * Compares the output of {@link BatchParser} on two threads with the
+	 * output expected from the results of a new parser for every sequence.
+	 * The sequences are repeated until there are enough of them to be split
+	 * into several chunks.
+	 * 
+	 * @param grammar the grammar
+	 * @param inputs  the sequences
+	 * @return the description of the mismatch, or {@code null} if the output is the same
+	 */
+	private static String compareBatch(Grammar grammar, List<String> inputs) {
+		if(inputs.isEmpty()) return null;
+		
+		List<String> lines = new ArrayList<>();
+		StringBuilder expected = new StringBuilder();
+		
+		while(lines.size() < BATCH_SIZE) {
+			for(String input : inputs) {
+				ParseResult result = new Parser(grammar).parse(input);
+				expected.append(result.getTrace()).append(' ').append(result.isAccepted() ? "DA" : "NE").append(System.lineSeparator());
+				lines.add(input);
+			}
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		
+		try(PrintStream captured = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+				PrintStream statistics = new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8)) {
+			System.setOut(captured);
+			System.setErr(statistics);
+			new BatchParser(grammar, 2, true).run(lines.iterator());
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+		}
+		
+		return mismatch("BatchParser", null, expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Returns the given result in a form in which the results are compared.
+	 * 
+	 * @param result the result
+	 * @return the formatted result
+	 */
+	private static String format(ParseResult result) {
+		return (result.isAccepted() ? "accepted" : "rejected at " + result.getFailingIndex()) + ", " + result.getTrace();
+	}
+	
+	/**
+	 * Returns the given parse tree as the symbol and the span of every node
+	 * followed by its children in parentheses, starting from the root.
+	 * 
+	 * @param tree the tree
+	 * @return the description of the tree
+	 */
+	private static String describe(ParseTree tree) {
+		StringBuilder sb = new StringBuilder();
+		if(tree.size() > 0) describe(tree, 0, sb);
+		return sb.toString();
+	}
+	
+	/**
+	 * Appends the given node of the given tree and all of its descendants.
+	 * 
+	 * @param tree the tree
+	 * @param node the node
+	 * @param sb   the builder to which the node is appended
+	 */
+	private static void describe(ParseTree tree, int node, StringBuilder sb) {
+		sb.append(tree.getSymbol(node)).append('[').append(tree.getStart(node)).append(',').append(tree.getEnd(node)).append(')');
+		
+		int child = tree.getFirstChild(node);
+		if(child == ParseTree.NONE) return;
+		
+		sb.append('(');
+		for(; child != ParseTree.NONE; child = tree.getNextSibling(child)) {
+			describe(tree, child, sb);
+			sb.append(' ');
+		}
+		sb.append(')');
+	}
+	
+	@Override
+	String getProject() {
+		return "LL Grammar Parser";
+	}
+	
+	@Override
+	String replay(Path example) throws Exception {
+		String input = read(example.resolve("test.in"));
+		String expected = normalize(read(example.resolve("test.out")));
+		
+		StringBuilder trace = new StringBuilder();
+		ParseResult result = new Parser().parse(new StringReader(input), trace);
+		String mismatch = mismatch("stream", null, expected, normalize(trace + "\n" + (result.isAccepted() ? "DA" : "NE")));
+		if(mismatch != null) return mismatch;
+		
+		String[] words = input.trim().split("\\s+");
+		return mismatch("Parser", null, expected, normalize(new Parser().parse(words[0]).toString()));
+	}
+	
+	/**
+	 * A reader of a string which returns at most a few characters at once, so
+	 * that the parser has to refill its buffer at every position.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class ChunkedReader extends Reader {
+		
+		/** Largest number of characters returned by a read. */
+		private static final int MAX_CHUNK = 7;
+		
+		/** The string. */
+		private final String string;
+		
+		/** Index of the next character to be read. */
+		private int position;
+		
+		/** Number of reads so far, which determines the size of the next one. */
+		private int reads;
+		
+		/**
+		 * Constructs a new reader of the given string.
+		 * 
+		 * @param string the string
+		 */
+		ChunkedReader(String string) {
+			this.string = string;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if(position == string.length()) return -1;
+			
+			int count = Math.min(Math.min(length, 1 + reads++ % MAX_CHUNK), string.length() - position);
+			string.getChars(position, position + count, buffer, offset);
+			position += count;
+			return count;
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+}
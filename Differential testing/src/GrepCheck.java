@@ -0,0 +1,253 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares the lines found by {@link DfaScanner} in a file with the lines in
+ * which {@link java.util.regex} finds the same regular expression, translated
+ * to its syntax.
+ * <p>
+ * The lines are matched as their bytes followed by the line terminator, each
+ * byte read as a single character. The lines on which {@link SimEnka},
+ * simulating the epsilon-NFA compiled from the expression by
+ * {@link RegexCompiler}, goes through a final state are compared as well. The
+ * scanner is built both by the whole pipeline of {@link Grep} and straight
+ * from the DFA of {@link SubsetConstruction}, without the minimization.
+ * 
+ * @author Filip Nemec
+ */
+class GrepCheck extends DifferentialCheck {
+	
+	/** The atoms of the generated expressions. */
+	private static final String[] ATOMS = { "a", "b", "c", "\u00e9", ".", "[ab]", "[^a]", "[a-c1]", "\\d", "\\w", "\\s", " " };
+	
+	/** The repetitions of the generated expressions. */
+	private static final String[] REPETITIONS = { "*", "+", "?", "{2}", "{1,3}", "{0,}" };
+	
+	/** The characters of the generated lines. */
+	private static final String CHARACTERS = "abc1 \u00e9\t";
+	
+	/** Longest generated line. */
+	private static final int MAX_LINE_LENGTH = 12;
+	
+	@Override
+	String getName() {
+		return "grep";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		StringBuilder pattern = new StringBuilder();
+		if(random.nextInt(4) == 0) pattern.append('^');
+		expression(random, 2, pattern);
+		if(random.nextInt(4) == 0) pattern.append('$');
+		
+		List<String> lines = new ArrayList<>();
+		for(int i = 0, count = random.nextInt(10); i < count; i++) {
+			StringBuilder line = new StringBuilder();
+			for(int j = 0, length = random.nextInt(MAX_LINE_LENGTH + 1); j < length; j++) {
+				line.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+			}
+			lines.add(line.toString());
+		}
+		
+		return new TestCase(List.of(pattern.toString()), List.of(), lines, "");
+	}
+	
+	/**
+	 * Appends a random expression.
+	 * 
+	 * @param random the source of randomness
+	 * @param depth  how deeply the expression may still be nested
+	 * @param sb     the builder to which the expression is appended
+	 */
+	private static void expression(Random random, int depth, StringBuilder sb) {
+		for(int alternative = 0, alternatives = random.nextInt(4) == 0 ? 2 : 1; alternative < alternatives; alternative++) {
+			if(alternative > 0) sb.append('|');
+			
+			for(int i = 0, length = 1 + random.nextInt(3); i < length; i++) {
+				if(depth > 0 && random.nextInt(4) == 0) {
+					sb.append('(');
+					expression(random, depth - 1, sb);
+					sb.append(')');
+				} else {
+					sb.append(pick(random, ATOMS));
+				}
+				
+				if(random.nextInt(3) == 0) sb.append(pick(random, REPETITIONS));
+			}
+		}
+	}
+	
+	@Override
+	String compare(TestCase test) throws IOException {
+		String pattern = test.getHeader().get(0);
+		String nfa;
+		try {
+			nfa = new RegexCompiler(pattern).getDefinition();
+		} catch(IllegalArgumentException e) {
+			return null;
+		}
+		
+		Pattern reference = Pattern.compile(translate(pattern));
+		SimEnka simulator = new SimEnka(DefinitionReader.of(nfa));
+		StringBuilder expected = new StringBuilder();
+		StringBuilder simulated = new StringBuilder();
+		long expectedCount = 0;
+		
+		for(String line : test.getInputs()) {
+			String bytes = new String((line + "\n").getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+			if(reference.matcher(bytes).find()) {
+				expected.append(line).append('\n');
+				expectedCount++;
+			}
+			
+			if(matches(simulator, line)) {
+				simulated.append(line).append('\n');
+			}
+		}
+		
+		String mismatch = mismatch("SimEnka", null, expected.toString(), simulated.toString());
+		if(mismatch != null) return mismatch;
+		
+		Path file = Files.createTempFile("differential", ".txt");
+		try {
+			StringBuilder contents = new StringBuilder();
+			for(String line : test.getInputs()) {
+				contents.append(line).append('\n');
+			}
+			Files.write(file, contents.toString().getBytes(StandardCharsets.UTF_8));
+			
+			DfaScanner minimal = Grep.compile(pattern);
+			DfaScanner direct = new DfaScanner(DefinitionReader.of(new SubsetConstruction(DefinitionReader.of(nfa)).getDefinition()));
+			
+			mismatch = compareScanner("Grep", minimal, file, expected.toString(), expectedCount);
+			return mismatch != null ? mismatch : compareScanner("DfaScanner without the minimization", direct, file, expected.toString(), expectedCount);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	/**
+	 * Translates the given expression in the syntax of {@link RegexCompiler} to
+	 * the syntax of {@link Pattern}, matched against the bytes of a line and
+	 * its terminator, each of them read as a single character.
+	 * 
+	 * @param pattern the expression
+	 * @return the translated expression
+	 */
+	private static String translate(String pattern) {
+		StringBuilder sb = new StringBuilder();
+		int setStart = -1;
+		boolean negated = false;
+		
+		for(int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			
+			if(c == '\\') {
+				char escaped = pattern.charAt(++i);
+				
+				// A class inside a set is nested in it, which is its union with the set.
+				switch(escaped) {
+					case 'd':	sb.append("[0-9]"); break;
+					case 'w':	sb.append("[0-9A-Za-z_]"); break;
+					case 's':	sb.append("[ \\t\\r\\f\\x0B]"); break;
+					case 'D':	sb.append("[^0-9\\n]"); break;
+					case 'W':	sb.append("[^0-9A-Za-z_\\n]"); break;
+					case 'S':	sb.append("[^ \\t\\r\\f\\x0B\\n]"); break;
+					case 'v':	sb.append("\\x0B"); break;
+					default:	sb.append('\\').append(escaped); break;
+				}
+			
+			} else if(setStart >= 0) {
+				if(c == ']' && i > setStart) {
+					// A negated set never holds the line terminator.
+					sb.append(negated ? "\\n]" : "]");
+					setStart = -1;
+				} else {
+					sb.append(c == '[' || c == '&' || c == ']' ? "\\" + c : String.valueOf(c));
+				}
+			
+			} else if(c == '[') {
+				negated = i + 1 < pattern.length() && pattern.charAt(i + 1) == '^';
+				if(negated) i++;
+				setStart = i + 1;
+				sb.append(negated ? "[^" : "[");
+			
+			} else if(c == '.') {
+				sb.append("[^\\n]");
+			
+			} else if(c == '$') {
+				sb.append("\\n");
+			
+			} else if(c == '(') {
+				sb.append("(?:");
+			
+			} else if(c >= 0x80) {
+				int codePoint = pattern.codePointAt(i);
+				i += Character.charCount(codePoint) - 1;
+				
+				sb.append("(?:");
+				for(byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+					sb.append(String.format("\\x%02X", b & 0xFF));
+				}
+				sb.append(')');
+			
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Compares the lines found and counted by the given scanner with the
+	 * expected ones.
+	 * 
+	 * @param mode          the name of the mode
+	 * @param scanner       the scanner
+	 * @param file          the file of the lines
+	 * @param expected      the expected lines, each followed by a line feed
+	 * @param expectedCount the expected number of lines
+	 * @return the description of the mismatch, or {@code null} if the lines are the same
+	 * @throws IOException if the file cannot be read
+	 */
+	private static String compareScanner(String mode, DfaScanner scanner, Path file, String expected, long expectedCount) throws IOException {
+		ByteArrayOutputStream found = new ByteArrayOutputStream();
+		scanner.scan(file, found, null);
+		
+		String mismatch = mismatch(mode, null, expected, new String(found.toByteArray(), StandardCharsets.UTF_8));
+		return mismatch != null ? mismatch : mismatch(mode + ", count", null, String.valueOf(expectedCount), String.valueOf(scanner.count(file)));
+	}
+	
+	/**
+	 * Checks whether the given epsilon-NFA goes through a final state while
+	 * reading the bytes of the given line and its terminator.
+	 * 
+	 * @param nfa  the epsilon-NFA
+	 * @param line the line
+	 * @return {@code true} if the line matches, {@code false} otherwise
+	 */
+	private static boolean matches(SimEnka nfa, String line) {
+		List<String> symbols = new ArrayList<>();
+		for(byte b : line.getBytes(StandardCharsets.UTF_8)) {
+			symbols.add(ByteAlphabet.name(b & 0xff));
+		}
+		symbols.add(ByteAlphabet.name('\n'));
+		
+		for(String set : nfa.process(String.join(",", symbols)).split("\\|")) {
+			for(String state : set.split(",")) {
+				if(nfa.isAcceptable(state)) return true;
+			}
+		}
+		return false;
+	}
+}
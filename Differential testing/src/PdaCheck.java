@@ -0,0 +1,291 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares {@link SimPa}, which interns the states and the symbols and keeps
+ * the stack as an array of ids, with a model which keeps the names of the
+ * symbols on the stack, both when a new automaton processes every input and
+ * when one automaton processes all of them.
+ * <p>
+ * The generated automata have epsilon transitions, so some of them never stop
+ * reading an input. Such a test case is left out by the model, which gives up
+ * after {@link #MAX_STEPS} steps.
+ * 
+ * @author Filip Nemec
+ */
+class PdaCheck extends DifferentialCheck {
+	
+	/** The input symbols of the generated automata. */
+	private static final String[] SYMBOLS = { "a", "b" };
+	
+	/** The stack symbols of the generated automata, the first of which is initially on the stack. */
+	private static final String[] STACK_SYMBOLS = { "K", "A", "B" };
+	
+	/** Number of steps after which the model gives up on an input. */
+	private static final int MAX_STEPS = 1000;
+	
+	@Override
+	String getName() {
+		return "dpda";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		List<String> states = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(4); i < count; i++) {
+			states.add("q" + i);
+		}
+		
+		List<String> finals = new ArrayList<>();
+		for(String state : states) {
+			if(random.nextInt(3) == 0) finals.add(state);
+		}
+		
+		List<String> rules = new ArrayList<>();
+		for(String state : states) {
+			for(String symbol : new String[] { "a", "b", "$" }) {
+				for(String top : new String[] { "K", "A", "B", "$" }) {
+					if(random.nextInt(10) >= 3) continue;
+					
+					StringBuilder pushed = new StringBuilder();
+					for(int i = 0, length = random.nextInt(3); i < length; i++) {
+						pushed.append(pick(random, STACK_SYMBOLS));
+					}
+					rules.add(state + "," + symbol + "," + top + "->" + pick(random, states.toArray(new String[0])) + "," + (pushed.length() == 0 ? "$" : pushed));
+				}
+			}
+		}
+		
+		List<String> inputs = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(5); i < count; i++) {
+			List<String> symbols = new ArrayList<>();
+			for(int j = 0, length = 1 + random.nextInt(6); j < length; j++) {
+				symbols.add(random.nextInt(20) == 0 ? "c" : pick(random, SYMBOLS));
+			}
+			inputs.add(String.join(",", symbols));
+		}
+		
+		List<String> header = List.of(String.join(",", states), String.join(",", SYMBOLS), String.join(",", STACK_SYMBOLS),
+				String.join(",", finals), pick(random, states.toArray(new String[0])), STACK_SYMBOLS[0]);
+		return new TestCase(header, rules, inputs, ",");
+	}
+	
+	@Override
+	String describe(TestCase test) {
+		return definition(test);
+	}
+	
+	/**
+	 * Returns the definition of the automaton of the given test case, whose
+	 * first line holds the inputs.
+	 * 
+	 * @param test the test case
+	 * @return the definition
+	 */
+	private static String definition(TestCase test) {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.join("|", test.getInputs()));
+		lines.addAll(test.getHeader());
+		lines.addAll(test.getRules());
+		return String.join("\n", lines) + "\n";
+	}
+	
+	@Override
+	String compare(TestCase test) {
+		String definition = definition(test);
+		Reference reference = new Reference(definition);
+		List<String> inputs = test.getInputs();
+		
+		String[] expected = new String[inputs.size()];
+		for(int i = 0; i < expected.length; i++) {
+			expected[i] = reference.process(inputs.get(i));
+			if(expected[i] == null) return null;
+		}
+		
+		// One automaton for all of the inputs reuses the stack of the ones before.
+		SimPa shared = new SimPa(DefinitionReader.of(definition));
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			String mismatch = mismatch("SimPa", input, expected[i], outcome(() -> shared.process(input)));
+			if(mismatch != null) return mismatch;
+		}
+		
+		for(int i = 0; i < expected.length; i++) {
+			String input = inputs.get(i);
+			String mismatch = mismatch("SimPa, new automaton", input, expected[i], outcome(() -> new SimPa(DefinitionReader.of(definition)).process(input)));
+			if(mismatch != null) return mismatch;
+		}
+		
+		// The program reads the inputs from the first line, which leaves out the empty inputs at its end.
+		StringBuilder printed = new StringBuilder();
+		for(String input : DefinitionReader.split(String.join("|", inputs).trim(), "|")) {
+			printed.append(reference.process(input)).append('\n');
+		}
+		return mismatch("SimPa, printed", null, printed.toString(), outcome(() -> printInputStrings(definition)));
+	}
+	
+	/**
+	 * Returns what {@link SimPa#processInputStrings()} prints for the
+	 * automaton of the given definition.
+	 * 
+	 * @param definition the definition
+	 * @return the printed output
+	 */
+	private static String printInputStrings(String definition) {
+		SimPa automaton = new SimPa(DefinitionReader.of(definition));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = System.out;
+		
+		try(PrintStream captured = new PrintStream(bytes, false, StandardCharsets.UTF_8)) {
+			System.setOut(captured);
+			automaton.processInputStrings();
+		} finally {
+			System.setOut(out);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	String getProject() {
+		return "Simulation of deterministic PDA";
+	}
+	
+	@Override
+	String replay(Path example) throws Exception {
+		String definition = read(example.resolve("primjer.in"));
+		String expected = normalize(read(example.resolve("primjer.out")));
+		String[] inputs = DefinitionReader.split(definition.substring(0, definition.indexOf('\n')).trim(), "|");
+		
+		Reference reference = new Reference(definition);
+		SimPa automaton = new SimPa(DefinitionReader.of(definition));
+		StringBuilder modelOutput = new StringBuilder();
+		StringBuilder automatonOutput = new StringBuilder();
+		
+		for(String input : inputs) {
+			modelOutput.append(reference.process(input)).append('\n');
+			automatonOutput.append(automaton.process(input)).append('\n');
+		}
+		
+		String mismatch = mismatch("model", null, expected, normalize(modelOutput.toString()));
+		return mismatch != null ? mismatch : mismatch("SimPa", null, expected, normalize(automatonOutput.toString()));
+	}
+	
+	/**
+	 * The model of a deterministic pushdown automaton, which follows its
+	 * definition as directly as possible.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class Reference {
+		
+		/** The next state and the pushed symbols of every transition, keyed by {@code "state,symbol,stackSymbol"}. */
+		private final Map<String, String[]> transitions = new HashMap<>();
+		
+		/** The final states. */
+		private final Set<String> finalStates;
+		
+		/** The initial state. */
+		private final String initialState;
+		
+		/** The symbol initially on the stack. */
+		private final String initialStackSymbol;
+		
+		/**
+		 * Constructs the model of the automaton of the given definition.
+		 * 
+		 * @param definition the definition, in the format of {@link SimPa}
+		 */
+		Reference(String definition) {
+			String[] lines = definition.split("\n");
+			
+			finalStates = new HashSet<>(Arrays.asList(lines[4].trim().split(",")));
+			initialState = lines[5].trim();
+			initialStackSymbol = lines[6].trim();
+			
+			for(int i = 7; i < lines.length && !lines[i].trim().isEmpty(); i++) {
+				String[] sides = lines[i].trim().split("->");
+				transitions.put(sides[0], sides[1].split(","));
+			}
+		}
+		
+		/**
+		 * Returns the configurations the automaton goes through while reading
+		 * the given input, in the format of {@link SimPa#process(String)}.
+		 * 
+		 * @param input the input, whose symbols are separated by ','
+		 * @return the configurations, or {@code null} if the automaton did not
+		 *         stop within {@link PdaCheck#MAX_STEPS} steps
+		 */
+		String process(String input) {
+			StringBuilder sb = new StringBuilder();
+			List<String> stack = new ArrayList<>(List.of(initialStackSymbol));
+			String state = initialState;
+			append(sb, state, stack);
+			
+			String[] symbols = DefinitionReader.split(input, ",");
+			
+			for(int i = 0, steps = 0; ; i++, steps++) {
+				if(steps == MAX_STEPS) return null;
+				
+				String top = stack.isEmpty() ? "$" : stack.get(stack.size() - 1);
+				String[] transition = null;
+				
+				if(i < symbols.length) {
+					transition = transitions.get(state + "," + symbols[i] + "," + top);
+				} else if(finalStates.contains(state)) {
+					break;
+				}
+				
+				if(transition == null) {
+					transition = transitions.get(state + ",$," + top);
+					
+					if(transition == null) {
+						if(i >= symbols.length) break;
+						return sb.append("fail|0").toString();
+					}
+					i--;
+				}
+				
+				if(!stack.isEmpty()) stack.remove(stack.size() - 1);
+				
+				state = transition[0];
+				for(int c = transition[1].length() - 1; c >= 0; c--) {
+					if(transition[1].charAt(c) != '$') stack.add(String.valueOf(transition[1].charAt(c)));
+				}
+				append(sb, state, stack);
+			}
+			
+			return sb.append(finalStates.contains(state) ? '1' : '0').toString();
+		}
+		
+		/**
+		 * Appends the given configuration: the state, <b>#</b> and the stack
+		 * from its top, or <b>$</b> if it is empty, followed by <b>|</b>.
+		 * 
+		 * @param sb    the builder to which the configuration is appended
+		 * @param state the state
+		 * @param stack the stack, whose top is its last symbol
+		 */
+		private static void append(StringBuilder sb, String state, List<String> stack) {
+			sb.append(state).append('#');
+			if(stack.isEmpty()) sb.append('$');
+			
+			for(int i = stack.size() - 1; i >= 0; i--) {
+				sb.append(stack.get(i));
+			}
+			sb.append('|');
+		}
+	}
+}
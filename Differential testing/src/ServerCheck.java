@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares the answers of an {@link AutomatonServer} to the RUN requests of
+ * an uploaded DFA with {@link MinDka#accepts(String)} of the DFA as it was
+ * defined, before the server minimized it.
+ * <p>
+ * The DFAs are generated as by {@link DfaCheck}, so a quarter of them miss
+ * some of their transitions. The examples of the minimization are uploaded
+ * as well, and run on every sequence of up to {@value #EXAMPLE_LENGTH}
+ * symbols of their alphabet.
+ * <p>
+ * A single server is started on a free port of the loopback address the
+ * first time it is needed, and every test case is sent on a connection of
+ * its own.
+ * 
+ * @author Filip Nemec
+ */
+class ServerCheck extends DifferentialCheck {
+	
+	/** Longest sequence on which an example is run. */
+	private static final int EXAMPLE_LENGTH = 4;
+	
+	/** Generates the DFAs. */
+	private final DfaCheck dfas = new DfaCheck();
+	
+	/** Numbers the handles of the uploaded DFAs. */
+	private final AtomicLong handles = new AtomicLong();
+	
+	/** The port of the server, or 0 if it was not started yet. */
+	private int port;
+	
+	@Override
+	String getName() {
+		return "server";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		return dfas.generate(random);
+	}
+	
+	@Override
+	String compare(TestCase test) throws IOException {
+		return compare(DfaCheck.definition(test), test.getInputs());
+	}
+	
+	/**
+	 * Uploads the DFA of the given definition to the server, runs it on the
+	 * given sequences and compares the answers with the DFA as defined.
+	 * 
+	 * @param definition the definition of the DFA
+	 * @param inputs     the sequences
+	 * @return the description of the first mismatch, or {@code null} if the answers are the same
+	 * @throws IOException if the server cannot be started or reached
+	 */
+	private String compare(String definition, List<String> inputs) throws IOException {
+		MinDka dfa = new MinDka(DefinitionReader.of(definition));
+		String[] lines = definition.split("\n");
+		String handle = "dfa" + handles.incrementAndGet();
+		
+		try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port())) {
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			
+			out.write("LOAD " + handle + " dfa " + lines.length + "\n");
+			for(String line : lines) {
+				out.write(line + "\n");
+			}
+			for(String input : inputs) {
+				out.write("RUN " + handle + " " + input + "\n");
+			}
+			out.write("UNLOAD " + handle + "\n");
+			out.flush();
+			
+			String mismatch = mismatch("LOAD", null, "OK " + handle, String.valueOf(in.readLine()));
+			if(mismatch != null) return mismatch;
+			
+			for(String input : inputs) {
+				String expected = "OK " + (dfa.accepts(input) ? "1" : "0");
+				mismatch = mismatch("AutomatonServer", input, expected, String.valueOf(in.readLine()));
+				if(mismatch != null) return mismatch;
+			}
+			
+			return mismatch("UNLOAD", null, "OK " + handle, String.valueOf(in.readLine()));
+		}
+	}
+	
+	/**
+	 * Returns the port of the server, and starts the server if it is not
+	 * running yet.
+	 * 
+	 * @return the port
+	 * @throws IOException if the server cannot be started
+	 */
+	private synchronized int port() throws IOException {
+		if(port == 0) {
+			ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+			AutomatonServer server = new AutomatonServer(2, 1);
+			
+			Thread thread = new Thread(() -> {
+				try {
+					server.serve(serverSocket);
+				} catch(IOException e) {
+					// The socket was closed when the program exited.
+				}
+			}, "automaton server");
+			thread.setDaemon(true);
+			thread.start();
+			
+			port = serverSocket.getLocalPort();
+		}
+		return port;
+	}
+	
+	@Override
+	String getProject() {
+		return "Minimization of DFA";
+	}
+	
+	@Override
+	String replay(Path example) throws Exception {
+		String definition = read(example.resolve("t.ul"));
+		String[] alphabet = definition.split("\n")[1].split(",");
+		
+		List<String> sequences = List.of("");
+		List<String> inputs = new ArrayList<>(sequences);
+		
+		for(int length = 1; length <= EXAMPLE_LENGTH; length++) {
+			List<String> longer = new ArrayList<>();
+			for(String sequence : sequences) {
+				for(String symbol : alphabet) {
+					longer.add(sequence.isEmpty() ? symbol : sequence + "," + symbol);
+				}
+			}
+			inputs.addAll(longer);
+			sequences = longer;
+		}
+		
+		return compare(definition, inputs);
+	}
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated test case of a {@link DifferentialCheck}: a definition of an
+ * automaton and the inputs given to it.
+ * <p>
+ * The definition is split into the header, which every definition needs, and
+ * the rules, such as the transitions, any of which can be left out. Every
+ * input is a sequence of symbols separated by the separator of the case, or
+ * a sequence of characters if the separator is empty. The case can therefore
+ * be reduced without knowing what it defines, by leaving out a rule, an input
+ * or a symbol of an input.
+ * 
+ * @author Filip Nemec
+ */
+final class TestCase {
+	
+	/** The lines of the definition which cannot be left out. */
+	private final List<String> header;
+	
+	/** The lines of the definition which can be left out. */
+	private final List<String> rules;
+	
+	/** The inputs. */
+	private final List<String> inputs;
+	
+	/** The separator of the symbols of the inputs, empty if every character is a symbol. */
+	private final String separator;
+	
+	/**
+	 * Constructs a new test case.
+	 * 
+	 * @param header    the lines of the definition which cannot be left out
+	 * @param rules     the lines of the definition which can be left out
+	 * @param inputs    the inputs
+	 * @param separator the separator of the symbols of the inputs, empty if
+	 *                  every character is a symbol
+	 */
+	TestCase(List<String> header, List<String> rules, List<String> inputs, String separator) {
+		this.header = Collections.unmodifiableList(new ArrayList<>(header));
+		this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+		this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+		this.separator = separator;
+	}
+	
+	/**
+	 * Returns the lines of the definition which cannot be left out.
+	 * 
+	 * @return the header
+	 */
+	List<String> getHeader() {
+		return header;
+	}
+	
+	/**
+	 * Returns the lines of the definition which can be left out.
+	 * 
+	 * @return the rules
+	 */
+	List<String> getRules() {
+		return rules;
+	}
+	
+	/**
+	 * Returns the inputs.
+	 * 
+	 * @return the inputs
+	 */
+	List<String> getInputs() {
+		return inputs;
+	}
+	
+	/**
+	 * Returns the number of the rules, the inputs and the symbols of the
+	 * inputs, which a smaller case has less of.
+	 * 
+	 * @return the size of the case
+	 */
+	int size() {
+		int size = rules.size() + inputs.size();
+		for(String input : inputs) {
+			size += symbols(input).size();
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns every case which has one rule, one input or one symbol of an
+	 * input less than this one, the ones left out the most first.
+	 * 
+	 * @return the smaller cases
+	 */
+	List<TestCase> reductions() {
+		List<TestCase> reductions = new ArrayList<>();
+		
+		for(int i = 0; i < inputs.size(); i++) {
+			List<String> fewer = new ArrayList<>(inputs);
+			fewer.remove(i);
+			reductions.add(new TestCase(header, rules, fewer, separator));
+		}
+		
+		for(int i = 0; i < rules.size(); i++) {
+			List<String> fewer = new ArrayList<>(rules);
+			fewer.remove(i);
+			reductions.add(new TestCase(header, fewer, inputs, separator));
+		}
+		
+		for(int i = 0; i < inputs.size(); i++) {
+			List<String> symbols = symbols(inputs.get(i));
+			
+			for(int s = 0; s < symbols.size(); s++) {
+				List<String> fewer = new ArrayList<>(symbols);
+				fewer.remove(s);
+				
+				List<String> changed = new ArrayList<>(inputs);
+				changed.set(i, String.join(separator, fewer));
+				reductions.add(new TestCase(header, rules, changed, separator));
+			}
+		}
+		
+		return reductions;
+	}
+	
+	/**
+	 * Returns the symbols of the given input.
+	 * 
+	 * @param input the input
+	 * @return the symbols
+	 */
+	private List<String> symbols(String input) {
+		List<String> symbols = new ArrayList<>();
+		if(input.isEmpty()) return symbols;
+		
+		if(separator.isEmpty()) {
+			for(int i = 0; i < input.length(); i++) {
+				symbols.add(String.valueOf(input.charAt(i)));
+			}
+		} else {
+			for(int start = 0, end; ; start = end + separator.length()) {
+				end = input.indexOf(separator, start);
+				if(end < 0) {
+					symbols.add(input.substring(start));
+					break;
+				}
+				symbols.add(input.substring(start, end));
+			}
+		}
+		return symbols;
+	}
+	
+	/**
+	 * Returns the definition followed by the inputs, one per line, each
+	 * preceded by <b>&gt;</b>.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		String lineSeparator = System.lineSeparator();
+		
+		for(String line : header) {
+			sb.append(line).append(lineSeparator);
+		}
+		for(String line : rules) {
+			sb.append(line).append(lineSeparator);
+		}
+		for(String input : inputs) {
+			sb.append("> ").append(input).append(lineSeparator);
+		}
+		return sb.toString();
+	}
+}
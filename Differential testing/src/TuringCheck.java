@@ -0,0 +1,426 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares a model of a Turing machine, ported from the original simulator of
+ * {@link SimTS}, with the modes of {@link SimTS}: the step-by-step simulation
+ * on a tape of one cell per {@code char} and on a packed tape, the compiled
+ * machine, the instrumented loop which collects the metrics, the cycle
+ * detection, the accelerated simulation on blocks of one and of three cells,
+ * and the same machine given a second tape which it never changes.
+ * <p>
+ * Every mode simulates the initial configuration of the definition, and then
+ * every input tape from the same machine, reset in between, while the model
+ * is new for every tape. Some of the input tapes are longer than
+ * {@link PackedTape#PACKING_THRESHOLD}, so that they are packed by default.
+ * The modes which can be limited stop after {@link #STEP_LIMIT} steps, just
+ * like the model. The accelerated simulation cannot be limited and the cycle
+ * detection may stop a machine before the limit, so they are compared only on
+ * the tapes on which the model halted.
+ * 
+ * @author Filip Nemec
+ */
+class TuringCheck extends DifferentialCheck {
+	
+	/** The tape symbols of the generated machines, the last of which is the empty cell. */
+	private static final String[] SYMBOLS = { "0", "1", "X", "B" };
+	
+	/** Number of steps after which the machines are stopped. */
+	private static final long STEP_LIMIT = 2000;
+	
+	/** The block sizes of the accelerated simulation. */
+	private static final int[] BLOCK_SIZES = { 1, 3 };
+	
+	/** One in how many input tapes is longer than {@link PackedTape#PACKING_THRESHOLD}. */
+	private static final int LONG_TAPE_ODDS = 50;
+	
+	@Override
+	String getName() {
+		return "tm";
+	}
+	
+	@Override
+	TestCase generate(Random random) {
+		List<String> states = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(5); i < count; i++) {
+			states.add("t" + i);
+		}
+		
+		List<String> finals = new ArrayList<>();
+		for(String state : states) {
+			if(random.nextInt(3) == 0) finals.add(state);
+		}
+		
+		List<String> rules = new ArrayList<>();
+		for(String state : states) {
+			for(String symbol : SYMBOLS) {
+				if(random.nextInt(5) >= 3) continue;
+				
+				String shift = random.nextInt(10) == 0 ? "S" : pick(random, "L", "R");
+				rules.add(state + "," + symbol + "->" + pick(random, states.toArray(new String[0])) + "," + pick(random, SYMBOLS) + "," + shift);
+			}
+		}
+		
+		int head = random.nextInt(3);
+		List<String> inputs = new ArrayList<>();
+		for(int i = 0, count = 1 + random.nextInt(4); i < count; i++) {
+			int minLength = random.nextInt(LONG_TAPE_ODDS) == 0 ? PackedTape.PACKING_THRESHOLD : head + 1;
+			inputs.add(tape(random, minLength));
+		}
+		
+		List<String> header = List.of(String.join(",", states), "0,1", String.join(",", SYMBOLS), "B", tape(random, head + 1),
+				String.join(",", finals), pick(random, states.toArray(new String[0])), String.valueOf(head));
+		return new TestCase(header, rules, inputs, "");
+	}
+	
+	/**
+	 * Generates a random tape.
+	 * 
+	 * @param random    the source of randomness
+	 * @param minLength the least length of the tape
+	 * @return the tape
+	 */
+	private static String tape(Random random, int minLength) {
+		StringBuilder sb = new StringBuilder(minLength + 12);
+		for(int i = 0, length = minLength + random.nextInt(12); i < length; i++) {
+			sb.append(random.nextInt(4) == 0 ? "B" : pick(random, SYMBOLS));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Returns the definition of the machine of the given test case.
+	 * 
+	 * @param test the test case
+	 * @return the definition
+	 */
+	private static String definition(TestCase test) {
+		List<String> lines = new ArrayList<>(test.getHeader());
+		lines.addAll(test.getRules());
+		return String.join("\n", lines) + "\n";
+	}
+	
+	/**
+	 * Returns the definition of the machine of the given test case with a
+	 * second tape, holding a single empty cell, which every transition reads
+	 * and leaves as it is.
+	 * 
+	 * @param test the test case
+	 * @return the definition
+	 */
+	private static String twoTapeDefinition(TestCase test) {
+		List<String> lines = new ArrayList<>(test.getHeader());
+		lines.set(4, lines.get(4) + "|B");
+		lines.set(7, lines.get(7) + ",0");
+		
+		for(String rule : test.getRules()) {
+			String[] sides = rule.split("->");
+			String[] output = sides[1].split(",", -1);
+			lines.add(sides[0] + ",B->" + output[0] + "," + output[1] + ",B," + output[2] + ",S");
+		}
+		return String.join("\n", lines) + "\n";
+	}
+	
+	@Override
+	String compare(TestCase test) {
+		String definition = definition(test);
+		List<String> inputs = test.getInputs();
+		
+		// The first configuration is the one of the definition.
+		List<String> tapes = new ArrayList<>();
+		tapes.add(null);
+		tapes.addAll(inputs);
+		
+		String[] expected = new String[tapes.size()];
+		boolean[] halted = new boolean[tapes.size()];
+		for(int i = 0; i < expected.length; i++) {
+			Reference reference = new Reference(definition);
+			String tape = tapes.get(i);
+			
+			expected[i] = outcome(() -> reference.run(tape, STEP_LIMIT));
+			halted[i] = reference.halted;
+		}
+		
+		String mismatch = compareMode("SimTS", definition, tapes, expected, null, machine -> machine.setStepLimit(STEP_LIMIT));
+		if(mismatch != null) return mismatch;
+		
+		// The threshold is read whenever a tape is reset or simulated, so it is changed for the whole mode.
+		PackedTape.setPackingThreshold(0);
+		try {
+			mismatch = compareMode("SimTS, packed", definition, tapes, expected, null, machine -> machine.setStepLimit(STEP_LIMIT));
+		} finally {
+			PackedTape.setPackingThreshold(PackedTape.PACKING_THRESHOLD);
+		}
+		if(mismatch != null) return mismatch;
+		
+		mismatch = compareMode("compiled", definition, tapes, expected, null, machine -> {
+			machine.setStepLimit(STEP_LIMIT);
+			machine.setCompilation(true);
+		});
+		if(mismatch != null) return mismatch;
+		
+		mismatch = compareMode("metrics", definition, tapes, expected, null, machine -> {
+			machine.setStepLimit(STEP_LIMIT);
+			machine.setMetricsCollection(true);
+		});
+		if(mismatch != null) return mismatch;
+		
+		mismatch = compareMode("cycle detection", definition, tapes, expected, halted, machine -> {
+			machine.setStepLimit(STEP_LIMIT);
+			machine.setCycleDetection(true);
+		});
+		if(mismatch != null) return mismatch;
+		
+		for(int blockSize : BLOCK_SIZES) {
+			mismatch = compareMode("macro=" + blockSize, definition, tapes, expected, halted, machine -> machine.setBlockSize(blockSize));
+			if(mismatch != null) return mismatch;
+		}
+		
+		// The second tape is printed after the first, and its head after the first one.
+		String[] twoTapeExpected = new String[expected.length];
+		for(int i = 0; i < expected.length; i++) {
+			String[] parts = expected[i].split("\\|", 4);
+			twoTapeExpected[i] = parts.length < 4 ? expected[i] : parts[0] + "|" + parts[1] + ",0|" + parts[2] + "|B|" + parts[3];
+		}
+		
+		List<String> twoTapes = new ArrayList<>();
+		for(String tape : tapes) {
+			twoTapes.add(tape == null ? null : tape + "|B");
+		}
+		return compareMode("second tape", twoTapeDefinition(test), twoTapes, twoTapeExpected, null, machine -> machine.setStepLimit(STEP_LIMIT));
+	}
+	
+	/**
+	 * Simulates every given tape on a single machine set up for a mode, and
+	 * compares the results with the expected ones.
+	 * 
+	 * @param mode       the name of the mode
+	 * @param definition the definition of the machine
+	 * @param tapes      the tapes, the first of which is {@code null} for the
+	 *                   configuration of the definition
+	 * @param expected   the expected result of every tape
+	 * @param compared   whether every tape is simulated, or {@code null} if all of them are
+	 * @param setup      sets up the machine for the mode
+	 * @return the description of the first mismatch, or {@code null} if the results are the same
+	 */
+	private static String compareMode(String mode, String definition, List<String> tapes, String[] expected, boolean[] compared, Consumer<SimTS> setup) {
+		SimTS machine = new SimTS(DefinitionReader.of(definition));
+		setup.accept(machine);
+		
+		for(int i = 0; i < expected.length; i++) {
+			if(compared != null && !compared[i]) continue;
+			
+			String tape = tapes.get(i);
+			String mismatch = mismatch(mode, tape == null ? "the initial tape" : tape, expected[i], run(machine, tape));
+			if(mismatch != null) return mismatch;
+		}
+		return null;
+	}
+	
+	/**
+	 * Simulates the given machine on the given tape, starting from the
+	 * initial state and head position.
+	 * 
+	 * @param machine the machine
+	 * @param tape    the tape, or {@code null} to simulate the configuration
+	 *                the machine is in
+	 * @return the result of the simulation, followed by the reason why it
+	 *         stopped if the machine did not halt
+	 */
+	private static String run(SimTS machine, String tape) {
+		return outcome(() -> {
+			if(tape != null) machine.reset(tape, null);
+			
+			String result = machine.simulate();
+			return machine.getStopReason() == null ? result : result + " (" + machine.getStopReason() + ")";
+		});
+	}
+	
+	/**
+	 * The model of a Turing machine, ported from the original simulator of
+	 * {@link SimTS}, which keeps the names of the states and the tape as they
+	 * are written in the definition. The stay shift <b>S</b> and the step limit
+	 * are added to it.
+	 * 
+	 * @author FICHEKK
+	 */
+	private static class Reference {
+		
+		/** The tape symbols. */
+		private final Set<String> tapeAlphabet = new HashSet<>();
+		
+		/** The final states. */
+		private final Set<String> finalStates = new HashSet<>();
+		
+		/** The next state, the new symbol and the shift of every state and symbol, keyed by {@code "state,symbol"}. */
+		private final Map<String, String[]> transitions = new HashMap<>();
+		
+		/** The tape of the definition. */
+		private final String initialTape;
+		
+		/** The initial state. */
+		private final String initialState;
+		
+		/** The initial tape head position. */
+		private final int initialHead;
+		
+		/** The tape. */
+		private char[] tape;
+		
+		/** The current state. */
+		private String state;
+		
+		/** The tape head position. */
+		private int head;
+		
+		/** Whether the machine halted in the last run. */
+		boolean halted;
+		
+		/**
+		 * Constructs the model of the machine of the given definition.
+		 * 
+		 * @param definition the definition, in the format of {@link SimTS}
+		 */
+		Reference(String definition) {
+			String[] lines = definition.split("\n");
+			
+			tapeAlphabet.addAll(List.of(lines[2].trim().split(",")));
+			initialTape = lines[4].trim();
+			finalStates.addAll(List.of(lines[5].trim().split(",")));
+			initialState = lines[6].trim();
+			initialHead = Integer.parseInt(lines[7].trim());
+			
+			for(int i = 8; i < lines.length && !lines[i].trim().isEmpty(); i++) {
+				String[] transition = lines[i].trim().split("->");
+				transitions.put(transition[0], transition[1].split(","));
+			}
+		}
+		
+		/**
+		 * Runs the machine from the initial state on the given tape until an
+		 * unsupported transition occurs, the head would leave the tape or the
+		 * given number of steps is made.
+		 * 
+		 * @param contents  the tape, or {@code null} for the one of the definition
+		 * @param stepLimit the maximum number of steps
+		 * @return the result in the format of {@link SimTS#start()}, followed
+		 *         by the reason why the machine stopped if it did not halt
+		 * @throws IllegalArgumentException if the tape holds an unknown symbol,
+		 *                                  or the head is not on the tape
+		 */
+		String run(String contents, long stepLimit) {
+			halted = false;
+			tape = (contents == null ? initialTape : contents).toCharArray();
+			state = initialState;
+			head = initialHead;
+			
+			for(char symbol : tape) {
+				if(!tapeAlphabet.contains(String.valueOf(symbol)))
+					throw new IllegalArgumentException("Invalid tape symbol '" + symbol + "'");
+			}
+			
+			if(head >= tape.length)
+				throw new IllegalArgumentException("Invalid head position '" + head + "'");
+			
+			long steps = 0;
+			halted = true;
+			
+			while(true) {
+				String[] output = transitions.get(state + "," + tape[head]);
+				
+				if(output == null) break;
+				
+				if(steps == stepLimit) {
+					halted = false;
+					break;
+				}
+				
+				steps++;
+				state = output[0];
+				overwriteTape(output[1], head);
+				
+				if(!shiftHead(output[2])) break;
+			}
+			
+			boolean accepted = finalStates.contains(state);
+			String result = state + "|" + head + "|" + String.valueOf(tape) + "|" + (accepted ? "1" : "0");
+			return halted ? result : result + " (Stopped after reaching the limit of " + stepLimit + " steps)";
+		}
+		
+		/**
+		 * Shifts the tape head left or right, or leaves it where it is.
+		 * 
+		 * @param shift the shifting argument
+		 * @return {@code true} if the head is still on the tape, {@code false} otherwise
+		 */
+		private boolean shiftHead(String shift) {
+			if(shift.equals("L")) {
+				if(head == 0) return false;
+				
+				head = head - 1;
+				
+			} else if(shift.equals("R")) {
+				if(head == tape.length - 1) return false;
+				
+				head = head + 1;
+				
+			} else if(!shift.equals("S")) {
+				String msg = "Valid shifts are 'L' (left), 'R' (right) and 'S' (stay). Given shift was '" + shift + "'";
+				throw new IllegalArgumentException(msg);
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Overwrites the tape symbol at the given tape position.
+		 * 
+		 * @param symbol the new symbol
+		 * @param index  the tape position
+		 * @throws IllegalArgumentException if the given tape symbol is not a part of the tape alphabet
+		 */
+		private void overwriteTape(String symbol, int index) {
+			if(!tapeAlphabet.contains(symbol))
+				throw new IllegalArgumentException("Invalid tape symbol '" + symbol + "'");
+			
+			tape[index] = symbol.charAt(0);
+		}
+	}
+	
+	@Override
+	String getProject() {
+		return "Turing Machine simulation";
+	}
+	
+	@Override
+	String replay(Path example) throws Exception {
+		String definition = read(example.resolve("test.in"));
+		String expected = normalize(read(example.resolve("test.out")));
+		
+		String mismatch = mismatch("SimTS", null, expected, normalize(new SimTS(DefinitionReader.of(definition)).simulate()));
+		if(mismatch != null) return mismatch;
+		
+		SimTS compiled = new SimTS(DefinitionReader.of(definition));
+		compiled.setCompilation(true);
+		mismatch = mismatch("compiled", null, expected, normalize(compiled.simulate()));
+		if(mismatch != null) return mismatch;
+		
+		for(int blockSize : BLOCK_SIZES) {
+			SimTS accelerated = new SimTS(DefinitionReader.of(definition));
+			accelerated.setBlockSize(blockSize);
+			
+			mismatch = mismatch("macro=" + blockSize, null, expected, normalize(accelerated.simulate()));
+			if(mismatch != null) return mismatch;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,103 @@
+import java.util.Iterator;
+import java.util.List;
+
+import automaton.ChunkedBatch;
+
+/**
+ * Parses many sequences against a single {@link Grammar}.
+ * <p>
+ * The sequences are parsed in chunks by a {@link ChunkedBatch}. Each thread
+ * owns its own {@link Parser}, so the parser stacks are reused from one
+ * sequence to the next, and only the immutable grammar is shared. The
+ * results are printed in the order of the sequences.
+ * 
+ * @author Filip Nemec
+ */
+class BatchParser {
+	
+	/** Number of sequences parsed by a single task. */
+	private static final int CHUNK_SIZE = 1024;
+	
+	/** The chunks of sequences, parsed in parallel. */
+	private final ChunkedBatch<Parser, Chunk> batch;
+	
+	/** Whether the trace is printed before the result of every sequence. */
+	private final boolean printTraces;
+	
+	/**
+	 * Constructs a new batch parser.
+	 * 
+	 * @param grammar     the grammar of the accepted sequences
+	 * @param threads     number of parsing threads
+	 * @param printTraces whether the traces are printed as well
+	 * @throws IllegalArgumentException if the number of threads is not positive
+	 */
+	public BatchParser(Grammar grammar, int threads, boolean printTraces) {
+		this.batch = new ChunkedBatch<>(threads, CHUNK_SIZE, () -> new Parser(grammar));
+		this.printTraces = printTraces;
+	}
+	
+	/**
+	 * Parses every line as a sequence and prints "DA" or "NE" for each of
+	 * them, in the order of the lines. With traces, the result is preceded by
+	 * the trace and a space. The number of parsed sequences and the throughput
+	 * are printed to the standard error at the end.
+	 * 
+	 * @param lines the sequences
+	 */
+	public void run(Iterator<String> lines) {
+		long startTime = System.nanoTime();
+		long[] accepted = new long[1];
+		
+		long sequences = batch.run(lines, (parser, inputs, firstLine) -> parse(parser, inputs), chunk -> {
+			System.out.print(chunk.output);
+			accepted[0] += chunk.accepted;
+		});
+		
+		System.out.flush();
+		double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+		System.err.printf("Parsed %d sequences (%d accepted) in %.3f s, %.0f sequences/s%n",
+				sequences, accepted[0], seconds, sequences / seconds);
+	}
+	
+	/**
+	 * Parses every sequence of a chunk with the given parser.
+	 * 
+	 * @param parser the parser
+	 * @param inputs the sequences of the chunk
+	 * @return the results of the chunk
+	 */
+	private Chunk parse(Parser parser, List<String> inputs) {
+		Chunk chunk = new Chunk();
+		
+		for(String input : inputs) {
+			ParseResult result = parser.parse(input.trim());
+			
+			if(printTraces) {
+				chunk.output.append(result.getTrace()).append(' ');
+			}
+			
+			chunk.output.append(result.isAccepted() ? "DA" : "NE").append(System.lineSeparator());
+			
+			if(result.isAccepted()) {
+				chunk.accepted++;
+			}
+		}
+		
+		return chunk;
+	}
+	
+	/**
+	 * The results of a single chunk of sequences.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class Chunk {
+		
+		/** The results, one line per sequence. */
+		final StringBuilder output = new StringBuilder();
+		
+		/** Number of accepted sequences. */
+		int accepted;
+	}
+}
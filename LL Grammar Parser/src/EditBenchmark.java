@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the edits of {@link IncrementalParser} with parsing the whole
+ * sequence again, and checks that the edits take a small part of the time.
+ * <p>
+ * The sequence is a list of blocks of a simple grammar, and every edit is
+ * made near its start, where the parse tree is shallow, so that an edit costs
+ * little besides keeping the rest of the tree. The edits replace a character
+ * by the same one, which keeps the length of the sequence, and insert a
+ * character which is deleted again right after, which changes it. The best
+ * time of several runs is printed for every kind of edit.
+ * 
+ * @author Filip Nemec
+ */
+public class EditBenchmark {
+	
+	/** The grammar of the sequences. */
+	private static final String GRAMMAR =
+			"S -> aAS | $\n" +
+			"A -> bA | c\n";
+	
+	/** The block of which the sequences are made. */
+	private static final String BLOCK = "abbc";
+	
+	/** Index of the edited character, which is a {@code b}. */
+	private static final int EDIT_INDEX = 2;
+	
+	/** Number of edits of every run. */
+	private static final int EDITS = 1000;
+	
+	/** Least number of times an edit has to be faster than a parse of the whole sequence. */
+	private static final int MIN_SPEEDUP = 10;
+	
+	/** Least length of the sequences whose edits are checked, since shorter ones are parsed too fast. */
+	private static final int MIN_CHECKED_LENGTH = 1 << 15;
+	
+	/** The sequence lengths measured when none are given. */
+	private static final int[] DEFAULT_LENGTHS = { 1 << 12, 1 << 15, 1 << 18 };
+	
+	/**
+	 * Prevents the construction of this class.
+	 */
+	private EditBenchmark() {
+	}
+	
+	/**
+	 * Measures a sequence of the given length and prints the results.
+	 * 
+	 * @param grammar the grammar
+	 * @param length  the length of the sequence
+	 * @param runs    number of runs
+	 * @return {@code true} if every edit was fast enough, {@code false} otherwise
+	 */
+	private static boolean measure(Grammar grammar, int length, int runs) {
+		String sequence = BLOCK.repeat(Math.max(1, length / BLOCK.length()));
+		IncrementalParser parser = new IncrementalParser(grammar);
+		
+		long parse = Long.MAX_VALUE;
+		long replace = Long.MAX_VALUE;
+		long insert = Long.MAX_VALUE;
+		long delete = Long.MAX_VALUE;
+		
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			if(!parser.parse(sequence).isAccepted())
+				throw new IllegalStateException("The sequence is not accepted");
+			parse = Math.min(parse, System.nanoTime() - start);
+			
+			long replaceTime = 0;
+			long insertTime = 0;
+			long deleteTime = 0;
+			
+			for(int i = 0; i < EDITS; i++) {
+				start = System.nanoTime();
+				parser.edit(EDIT_INDEX, EDIT_INDEX + 1, "b");
+				replaceTime += System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				parser.edit(EDIT_INDEX, EDIT_INDEX, "b");
+				insertTime += System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				if(!parser.edit(EDIT_INDEX, EDIT_INDEX + 1, "").isAccepted())
+					throw new IllegalStateException("The edited sequence is not accepted");
+				deleteTime += System.nanoTime() - start;
+			}
+			
+			replace = Math.min(replace, replaceTime / EDITS);
+			insert = Math.min(insert, insertTime / EDITS);
+			delete = Math.min(delete, deleteTime / EDITS);
+		}
+		
+		System.out.println(sequence.length() + " characters");
+		System.out.println(String.format(Locale.ROOT, "  %-8s %10.1f us", "parse", parse / 1e3));
+		boolean fast = print("replace", replace, parse);
+		fast &= print("insert", insert, parse);
+		fast &= print("delete", delete, parse);
+		return fast;
+	}
+	
+	/**
+	 * Prints the time of an edit, and checks that it is fast enough.
+	 * 
+	 * @param name  the name of the edit
+	 * @param time  the time of the edit in nanoseconds
+	 * @param parse the time of a parse of the whole sequence in nanoseconds
+	 * @return {@code true} if the edit was fast enough, {@code false} otherwise
+	 */
+	private static boolean print(String name, long time, long parse) {
+		boolean fast = time * MIN_SPEEDUP <= parse;
+		System.out.println(String.format(Locale.ROOT, "  %-8s %10.1f us, %8.1f times faster%s",
+				name, time / 1e3, (double) parse / Math.max(time, 1), fast ? "" : ", TOO SLOW"));
+		return fast;
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Runs the benchmark, and exits with the status 1 if an edit of a sequence
+	 * of at least {@value #MIN_CHECKED_LENGTH} characters was not at least
+	 * {@value #MIN_SPEEDUP} times faster than a parse of the whole sequence.
+	 * The options, which may be followed by the measured sequence lengths, are:
+	 * <ul>
+	 * <li><b>--runs=n</b> - number of runs of every length, 5 by default</li>
+	 * </ul>
+	 * 
+	 * @param args the options and the sequence lengths
+	 */
+	public static void main(String[] args) {
+		int runs = 5;
+		List<Integer> lengths = new ArrayList<>();
+		
+		for(String arg : args) {
+			String option = arg.startsWith("--") && arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : "";
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--runs=":		runs = Integer.parseInt(value); break;
+				case "":			lengths.add(Integer.parseInt(arg)); break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		if(lengths.isEmpty()) {
+			for(int length : DEFAULT_LENGTHS) lengths.add(length);
+		}
+		
+		Grammar grammar = new Grammar(GRAMMAR);
+		boolean fast = true;
+		
+		for(int length : lengths) {
+			boolean lengthFast = measure(grammar, length, runs);
+			if(length >= MIN_CHECKED_LENGTH) fast &= lengthFast;
+		}
+		
+		if(!fast) System.exit(1);
+	}
+}
@@ -0,0 +1,477 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import automaton.DefinitionReader;
+import automaton.SymbolTable;
+
+/**
+ * A context-free grammar compiled into an LL(1) predictive parse table.
+ * <p>
+ * The grammar is defined by one line per nonterminal, in the same notation
+ * used by the documentation of {@link Parser}:
+ * <p>
+ * <br> S -> aAB | bBA
+ * <br> A -> bC | a
+ * <br> B -> ccSbc | $
+ * <br> C -> AA
+ * <p>
+ * Every symbol is a single character. The symbols on the left side of the
+ * lines are the nonterminals, all of the other symbols are terminals, and
+ * <b>$</b> on its own stands for the empty sequence. The nonterminal of the
+ * first line is the start symbol.
+ * <p>
+ * When the grammar is loaded, its FIRST and FOLLOW sets are computed and
+ * every production is entered into the table for every terminal that
+ * predicts it. Two productions predicted by the same terminal are a conflict
+ * and the grammar is rejected. The remaining empty entries of a nonterminal
+ * are filled with its <i>default production</i>: its empty production if it
+ * has one, or its only production if there is just one. This delays the
+ * detection of an error until the next terminal is matched, but never
+ * changes the accepted language.
+ * <p>
+ * Symbols are interned to integers by a {@link SymbolTable}. The nonterminals
+ * are numbered from zero, and the terminals follow them, starting with the end
+ * of the input and a terminal that stands for every character not used by the
+ * grammar.
+ * 
+ * @author Filip Nemec
+ */
+public class Grammar {
+	
+	/** The symbol marking the empty sequence and the end of the input. */
+	public static final char EOF = '$';
+	
+	/** Terminal id of the end of the input. */
+	static final int END = 0;
+	
+	/** Terminal id of all the characters not used by the grammar. */
+	static final int OTHER = 1;
+	
+	/** Marks an empty entry of the parse table. */
+	static final int NO_PRODUCTION = -1;
+	
+	/** Names of the nonterminals, indexed by the symbol id. */
+	private final char[] nonterminals;
+	
+	/** Names of the terminals, indexed by the terminal id. */
+	private final char[] terminals;
+	
+	/** Terminal ids, indexed by the character, {@link #OTHER} for unused characters. */
+	private final int[] terminalIds;
+	
+	/** The parse table, indexed by {@code nonterminal * terminalCount + terminal}. */
+	private final int[] table;
+	
+	/** Start of the symbols of every production, with an extra entry at the end. */
+	private final int[] productionStart;
+	
+	/** The symbols of all of the productions, each production stored in reverse. */
+	private final int[] productionSymbols;
+	
+	/** Nonterminal on the left side of every production. */
+	private final int[] productionOwner;
+	
+	/**
+	 * Loads the grammar from the given definition.
+	 * 
+	 * @param definition the grammar, one nonterminal per line
+	 * @throws IllegalArgumentException if the definition is invalid or the
+	 *                                  grammar is not LL(1)
+	 */
+	public Grammar(String definition) {
+		this(DefinitionReader.of(definition));
+	}
+	
+	/**
+	 * Loads the grammar from the definition read by the given reader.
+	 * 
+	 * @param reader the reader of the grammar, one nonterminal per line
+	 * @throws IllegalArgumentException if the definition is invalid or the
+	 *                                  grammar is not LL(1)
+	 */
+	public Grammar(DefinitionReader reader) {
+		// The nonterminals are interned first, in the order of their rules.
+		SymbolTable symbols = new SymbolTable();
+		List<List<char[]>> rules = new ArrayList<>();
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) continue;
+			
+			boolean arrow = reader.beginSection("->");
+			String left = reader.rest().trim();
+			
+			if(!arrow || left.length() != 1 || left.charAt(0) == EOF)
+				throw reader.error("Invalid rule '" + reader.getLine() + "'");
+			
+			reader.endSection();
+			if(reader.beginSection("->"))
+				throw reader.error("Invalid rule '" + reader.getLine() + "'");
+			
+			int nonterminal = symbols.intern(left);
+			if(nonterminal == rules.size()) rules.add(new ArrayList<>());
+			
+			while(reader.hasField("|")) {
+				String alternative = reader.field("|");
+				String production = alternative.replaceAll("\\s", "");
+				
+				if(production.isEmpty() || production.indexOf('\0') >= 0
+						|| production.indexOf(EOF) >= 0 && !production.equals(String.valueOf(EOF)))
+					throw reader.error("Invalid production '" + alternative.trim() + "' in rule '" + reader.getLine() + "'");
+				
+				rules.get(nonterminal).add(production.equals(String.valueOf(EOF)) ? new char[0] : production.toCharArray());
+			}
+		}
+		
+		if(rules.isEmpty())
+			throw new IllegalArgumentException("The grammar has no rules");
+		
+		// The terminals follow, starting with the end of the input and the unused characters.
+		int nonterminalCount = symbols.size();
+		symbols.intern(String.valueOf(EOF));
+		symbols.intern("\0");
+		int maxTerminal = 0;
+		
+		for(List<char[]> alternatives : rules) {
+			for(char[] alternative : alternatives) {
+				for(int i = 0; i < alternative.length; i++) {
+					if(symbols.intern(alternative, i, i + 1) >= nonterminalCount) {
+						maxTerminal = Math.max(maxTerminal, alternative[i]);
+					}
+				}
+			}
+		}
+		
+		nonterminals = new char[nonterminalCount];
+		for(int n = 0; n < nonterminalCount; n++) {
+			nonterminals[n] = symbols.name(n).charAt(0);
+		}
+		
+		terminals = new char[symbols.size() - nonterminalCount];
+		terminalIds = new int[Math.max(maxTerminal, EOF) + 1];
+		Arrays.fill(terminalIds, OTHER);
+		for(int t = 0; t < terminals.length; t++) {
+			terminals[t] = symbols.name(nonterminalCount + t).charAt(0);
+			if(t != OTHER) terminalIds[terminals[t]] = t;
+		}
+		
+		// Store the productions, every one of them in reverse.
+		List<int[]> productions = new ArrayList<>();
+		List<Integer> owners = new ArrayList<>();
+		
+		for(int nonterminal = 0; nonterminal < nonterminalCount; nonterminal++) {
+			for(char[] alternative : rules.get(nonterminal)) {
+				int[] ids = new int[alternative.length];
+				for(int i = 0; i < ids.length; i++) {
+					ids[ids.length - 1 - i] = symbols.id(alternative, i, i + 1);
+				}
+				productions.add(ids);
+				owners.add(nonterminal);
+			}
+		}
+		
+		productionStart = new int[productions.size() + 1];
+		productionOwner = new int[productions.size()];
+		for(int p = 0; p < productions.size(); p++) {
+			productionStart[p + 1] = productionStart[p] + productions.get(p).length;
+			productionOwner[p] = owners.get(p);
+		}
+		
+		productionSymbols = new int[productionStart[productions.size()]];
+		for(int p = 0; p < productions.size(); p++) {
+			System.arraycopy(productions.get(p), 0, productionSymbols, productionStart[p], productions.get(p).length);
+		}
+		
+		checkLeftRecursion();
+		table = buildTable();
+	}
+	
+	/**
+	 * Computes the FIRST and FOLLOW sets and builds the parse table.
+	 * 
+	 * @return the parse table
+	 * @throws IllegalArgumentException if the grammar is not LL(1)
+	 */
+	private int[] buildTable() {
+		int nonterminalCount = nonterminals.length;
+		int terminalCount = terminals.length;
+		int productionCount = productionOwner.length;
+		
+		boolean[] nullable = new boolean[nonterminalCount];
+		BitSet[] first = new BitSet[nonterminalCount];
+		BitSet[] follow = new BitSet[nonterminalCount];
+		for(int n = 0; n < nonterminalCount; n++) {
+			first[n] = new BitSet(terminalCount);
+			follow[n] = new BitSet(terminalCount);
+		}
+		follow[0].set(END);
+		
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			
+			for(int p = 0; p < productionCount; p++) {
+				int owner = productionOwner[p];
+				BitSet before = (BitSet) first[owner].clone();
+				
+				if(firstOf(p, productionStart[p + 1], nullable, first, first[owner]) && !nullable[owner]) {
+					nullable[owner] = true;
+					changed = true;
+				}
+				changed |= !before.equals(first[owner]);
+			}
+		}
+		
+		changed = true;
+		while(changed) {
+			changed = false;
+			
+			for(int p = 0; p < productionCount; p++) {
+				for(int i = productionStart[p]; i < productionStart[p + 1]; i++) {
+					int symbol = productionSymbols[i];
+					if(symbol >= nonterminalCount) continue;
+					
+					BitSet before = (BitSet) follow[symbol].clone();
+					if(firstOf(p, i, nullable, first, follow[symbol])) {
+						follow[symbol].or(follow[productionOwner[p]]);
+					}
+					changed |= !before.equals(follow[symbol]);
+				}
+			}
+		}
+		
+		int[] table = new int[nonterminalCount * terminalCount];
+		Arrays.fill(table, NO_PRODUCTION);
+		
+		for(int p = 0; p < productionCount; p++) {
+			int owner = productionOwner[p];
+			BitSet predict = new BitSet(terminalCount);
+			
+			if(firstOf(p, productionStart[p + 1], nullable, first, predict)) {
+				predict.or(follow[owner]);
+			}
+			
+			for(int t = predict.nextSetBit(0); t >= 0; t = predict.nextSetBit(t + 1)) {
+				int entry = owner * terminalCount + t;
+				
+				if(table[entry] != NO_PRODUCTION) {
+					String msg = "The grammar is not LL(1): the productions '" + productionToString(table[entry])
+							+ "' and '" + productionToString(p) + "' are both predicted by '" + terminals[t] + "'";
+					throw new IllegalArgumentException(msg);
+				}
+				table[entry] = p;
+			}
+		}
+		
+		for(int n = 0; n < nonterminalCount; n++) {
+			int defaultProduction = defaultProduction(n);
+			if(defaultProduction == NO_PRODUCTION) continue;
+			
+			for(int t = 0; t < terminalCount; t++) {
+				if(table[n * terminalCount + t] == NO_PRODUCTION) {
+					table[n * terminalCount + t] = defaultProduction;
+				}
+			}
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Adds the FIRST set of a part of a production to the given set. The part
+	 * consists of the symbols stored before the given index, which are the
+	 * symbols following it in the production, because the production is
+	 * stored in reverse.
+	 * 
+	 * @param production the production
+	 * @param from       index in {@link #productionSymbols} where the part ends
+	 * @param nullable   marks the nullable nonterminals
+	 * @param first      the FIRST set of every nonterminal
+	 * @param result     the set to add to
+	 * @return {@code true} if all of the symbols can derive the empty sequence
+	 */
+	private boolean firstOf(int production, int from, boolean[] nullable, BitSet[] first, BitSet result) {
+		for(int i = from - 1; i >= productionStart[production]; i--) {
+			int symbol = productionSymbols[i];
+			
+			if(symbol >= nonterminals.length) {
+				result.set(symbol - nonterminals.length);
+				return false;
+			}
+			
+			result.or(first[symbol]);
+			if(!nullable[symbol]) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the production used for the lookaheads that predict none of the
+	 * productions of the given nonterminal.
+	 * 
+	 * @param nonterminal the nonterminal
+	 * @return the empty production, the only production, or
+	 *         {@link #NO_PRODUCTION} if there is neither
+	 */
+	private int defaultProduction(int nonterminal) {
+		int only = NO_PRODUCTION;
+		int count = 0;
+		
+		for(int p = 0; p < productionOwner.length; p++) {
+			if(productionOwner[p] != nonterminal) continue;
+			
+			if(productionStart[p] == productionStart[p + 1]) return p;
+			only = p;
+			count++;
+		}
+		
+		return count == 1 ? only : NO_PRODUCTION;
+	}
+	
+	/**
+	 * Checks that no nonterminal can derive a sequence starting with itself.
+	 * Such a grammar is never LL(1), and its default productions could make
+	 * the parser expand the same nonterminal forever.
+	 * 
+	 * @throws IllegalArgumentException if the grammar is left recursive
+	 */
+	private void checkLeftRecursion() {
+		int count = nonterminals.length;
+		boolean[] nullable = new boolean[count];
+		
+		for(boolean changed = true; changed; ) {
+			changed = false;
+			
+			for(int p = 0; p < productionOwner.length; p++) {
+				if(nullable[productionOwner[p]]) continue;
+				
+				boolean all = true;
+				for(int i = productionStart[p]; i < productionStart[p + 1] && all; i++) {
+					all = productionSymbols[i] < count && nullable[productionSymbols[i]];
+				}
+				if(all) {
+					nullable[productionOwner[p]] = true;
+					changed = true;
+				}
+			}
+		}
+		
+		// leftmost[a][b] holds when b can appear first in a sequence derived from a
+		boolean[][] leftmost = new boolean[count][count];
+		for(int p = 0; p < productionOwner.length; p++) {
+			for(int i = productionStart[p + 1] - 1; i >= productionStart[p]; i--) {
+				int symbol = productionSymbols[i];
+				if(symbol >= count) break;
+				
+				leftmost[productionOwner[p]][symbol] = true;
+				if(!nullable[symbol]) break;
+			}
+		}
+		
+		for(int k = 0; k < count; k++) {
+			for(int a = 0; a < count; a++) {
+				if(!leftmost[a][k]) continue;
+				
+				for(int b = 0; b < count; b++) {
+					leftmost[a][b] |= leftmost[k][b];
+				}
+			}
+		}
+		
+		for(int n = 0; n < count; n++) {
+			if(leftmost[n][n])
+				throw new IllegalArgumentException("The grammar is left recursive in '" + nonterminals[n] + "'");
+		}
+	}
+	
+	/**
+	 * Returns the production in the notation of the definition.
+	 * 
+	 * @param production the production
+	 * @return the production as text
+	 */
+	public String productionToString(int production) {
+		StringBuilder sb = new StringBuilder().append(nonterminals[productionOwner[production]]).append(" -> ");
+		
+		if(productionStart[production] == productionStart[production + 1]) {
+			return sb.append(EOF).toString();
+		}
+		
+		for(int i = productionStart[production + 1] - 1; i >= productionStart[production]; i--) {
+			sb.append(symbolName(productionSymbols[i]));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Returns the terminal id of the given input character.
+	 * 
+	 * @param c the input character
+	 * @return the terminal id
+	 */
+	int terminal(char c) {
+		return c < terminalIds.length ? terminalIds[c] : OTHER;
+	}
+	
+	/**
+	 * Returns the character of the given symbol id.
+	 * 
+	 * @param symbol the symbol id
+	 * @return the symbol
+	 */
+	char symbolName(int symbol) {
+		return symbol < nonterminals.length ? nonterminals[symbol] : terminals[symbol - nonterminals.length];
+	}
+	
+	/**
+	 * Returns the number of nonterminals. Every symbol id at least as large
+	 * is a terminal, whose terminal id is the symbol id minus this count.
+	 * 
+	 * @return the number of nonterminals
+	 */
+	int getNonterminalCount() {
+		return nonterminals.length;
+	}
+	
+	/**
+	 * Returns the number of terminals, including the end of the input and
+	 * the terminal of the unused characters.
+	 * 
+	 * @return the number of terminals
+	 */
+	int getTerminalCount() {
+		return terminals.length;
+	}
+	
+	/**
+	 * Returns the parse table.
+	 * 
+	 * @return the production for every nonterminal and terminal, indexed by
+	 *         {@code nonterminal * terminalCount + terminal}
+	 */
+	int[] getTable() {
+		return table;
+	}
+	
+	/**
+	 * Returns where the symbols of every production start.
+	 * 
+	 * @return the start of every production in {@link #getProductionSymbols()},
+	 *         with an extra entry marking the end of the last one
+	 */
+	int[] getProductionStart() {
+		return productionStart;
+	}
+	
+	/**
+	 * Returns the symbols of all of the productions. Every production is
+	 * stored in reverse, so it can be pushed to the parser stack in order.
+	 * 
+	 * @return the symbol ids
+	 */
+	int[] getProductionSymbols() {
+		return productionSymbols;
+	}
+}
@@ -0,0 +1,350 @@
+import java.util.Arrays;
+
+/**
+ * A parser which keeps the parse tree of its sequence and reparses only the
+ * part of the sequence affected by an edit.
+ * <p>
+ * The state of an LL(1) parser between two input characters is its stack,
+ * and the stack after any character can be rebuilt from the parse tree: it
+ * holds the right siblings of the nodes on the path from the root to the leaf
+ * of that character. After an edit, the stack after the last character before
+ * the edit is rebuilt, and the parsing continues from there. As soon as the
+ * parser pops a node of the old tree, past the edit, at the same position at
+ * which the old parser popped it, both parsers are in the same state, and the
+ * rest of the old tree is kept as it is.
+ * <p>
+ * The work of an edit is proportional to the length of the reparsed region and
+ * the depth of the tree at the edit. If the edit changes the length of the
+ * sequence, the spans of the kept nodes after the edit are shifted as well,
+ * but only the roots of the kept subtrees are visited, since the tree leaves
+ * the shift of their descendants pending.
+ * The nodes of the replaced subtrees stay unused in the tree, so the whole
+ * sequence is parsed again once they outnumber the nodes of the last full
+ * parse. An edit is parsed incrementally only if the sequence before it was
+ * accepted.
+ * 
+ * @author Filip Nemec
+ */
+public class IncrementalParser {
+	
+	/** Number of unused nodes always allowed in the tree before it is rebuilt. */
+	private static final int MIN_UNUSED_NODES = 1024;
+	
+	/** The grammar of the accepted sequences. */
+	private final Grammar grammar;
+	
+	/** The parse tree of the current sequence. */
+	private final ParseTree tree = new ParseTree();
+	
+	/** The current sequence. */
+	private final StringBuilder sequence = new StringBuilder();
+	
+	/** The stack of symbol ids. */
+	private int[] stack = new int[16];
+	
+	/** The tree node of every symbol on the stack. */
+	private int[] nodes = new int[16];
+	
+	/** The old nodes whose spans have to be computed again after an edit. */
+	private int[] dirty = new int[16];
+	
+	/** Number of dirty nodes. */
+	private int dirtyCount;
+	
+	/** Whether the current sequence was accepted. */
+	private boolean accepted;
+	
+	/** Number of nodes after the last full parse. */
+	private int compactSize;
+	
+	/** Number of characters consumed by the last parse. */
+	private int reparsedLength;
+	
+	/**
+	 * Constructs a new {@code IncrementalParser} for the given grammar,
+	 * holding an empty sequence which is not parsed yet.
+	 * 
+	 * @param grammar the grammar
+	 */
+	public IncrementalParser(Grammar grammar) {
+		this.grammar = grammar;
+	}
+	
+	/**
+	 * Replaces the sequence and parses it from the start.
+	 * 
+	 * @param sequence the new sequence
+	 * @return the result of the parsing, without the trace
+	 */
+	public ParseResult parse(CharSequence sequence) {
+		this.sequence.setLength(0);
+		this.sequence.append(sequence);
+		return parseAll();
+	}
+	
+	/**
+	 * Replaces the characters of the sequence in the range
+	 * {@code [start, end)} with the given replacement, and reparses the
+	 * sequence, reusing the parse of the characters not affected by the edit.
+	 * 
+	 * @param start       index of the first replaced character
+	 * @param end         index after the last replaced character
+	 * @param replacement the new characters
+	 * @return the result of the parsing, without the trace
+	 * @throws IllegalArgumentException if the range is not within the sequence
+	 */
+	public ParseResult edit(int start, int end, CharSequence replacement) {
+		if(start < 0 || end < start || end > sequence.length()) {
+			throw new IllegalArgumentException("Invalid edit range [" + start + ", " + end + ")");
+		}
+		
+		boolean incremental = accepted && start > 0 && tree.size() <= 2 * compactSize + MIN_UNUSED_NODES;
+		sequence.replace(start, end, replacement.toString());
+		
+		if(!incremental) {
+			return parseAll();
+		}
+		
+		int firstNewNode = tree.size();
+		int size = restore(start - 1);
+		int delta = replacement.length() - (end - start);
+		long failingIndex = run(size, start, firstNewNode, start + replacement.length(), delta);
+		
+		for(int node = tree.size() - 1; node >= firstNewNode; node--) {
+			tree.computeEnd(node);
+		}
+		
+		Arrays.sort(dirty, 0, dirtyCount);
+		for(int i = dirtyCount - 1; i >= 0; i--) {
+			tree.computeEnd(dirty[i]);
+		}
+		
+		return result(failingIndex);
+	}
+	
+	/**
+	 * Returns the parse tree of the current sequence. The tree is updated in
+	 * place by every parse, and must not be modified.
+	 * 
+	 * @return the parse tree
+	 */
+	public ParseTree getTree() {
+		return tree;
+	}
+	
+	/**
+	 * Returns the current sequence. The sequence is updated in place by every
+	 * edit, and must not be modified.
+	 * 
+	 * @return the current sequence
+	 */
+	public CharSequence getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * Returns the number of characters consumed by the last parse, which is
+	 * the length of the region reparsed by the last edit.
+	 * 
+	 * @return number of consumed characters
+	 */
+	public int getReparsedLength() {
+		return reparsedLength;
+	}
+	
+	/**
+	 * Parses the whole sequence into a new tree.
+	 * 
+	 * @return the result of the parsing
+	 */
+	private ParseResult parseAll() {
+		tree.clear();
+		dirtyCount = 0;
+		stack[0] = 0;
+		nodes[0] = tree.add(0);
+		
+		long failingIndex = run(1, 0, 0, Integer.MAX_VALUE, 0);
+		tree.finish();
+		compactSize = tree.size();
+		return result(failingIndex);
+	}
+	
+	/**
+	 * Creates the result of the last parse.
+	 * 
+	 * @param failingIndex the index at which the parsing failed, or {@code -1}
+	 * @return the result
+	 */
+	private ParseResult result(long failingIndex) {
+		accepted = failingIndex < 0;
+		return new ParseResult(accepted, failingIndex, null);
+	}
+	
+	/**
+	 * Rebuilds the stack of the parser right after the character at the given
+	 * index was consumed. The nodes on the path to the leaf of the character
+	 * lose the ends of their spans, which are computed again after the edit,
+	 * and pass the shifts pending on them to their children.
+	 * 
+	 * @param index index of the last consumed character
+	 * @return the size of the stack
+	 */
+	private int restore(int index) {
+		int size = 0;
+		int node = 0;
+		dirtyCount = 0;
+		
+		while(tree.getFirstChild(node) != ParseTree.NONE) {
+			addDirty(node);
+			tree.pushShift(node);
+			tree.setSpan(node, tree.getLocalStart(node), -1);
+			
+			int child = tree.getFirstChild(node);
+			while(tree.getLocalEnd(child) <= index) {
+				child = tree.getNextSibling(child);
+			}
+			
+			int first = size;
+			for(int sibling = tree.getNextSibling(child); sibling != ParseTree.NONE; sibling = tree.getNextSibling(sibling)) {
+				ensureCapacity(size + 1);
+				stack[size] = tree.getSymbol(sibling);
+				nodes[size++] = sibling;
+			}
+			
+			for(int i = first, j = size - 1; i < j; i++, j--) {
+				int symbol = stack[i];
+				stack[i] = stack[j];
+				stack[j] = symbol;
+				
+				int sibling = nodes[i];
+				nodes[i] = nodes[j];
+				nodes[j] = sibling;
+			}
+			
+			node = child;
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Parses the sequence from the given parser state. Every expanded symbol
+	 * gets new nodes for the symbols of its production. Once a node of the old
+	 * tree is popped at or after the end of the edit, at the position at which
+	 * it started before the edit, the rest of the old tree is kept.
+	 * 
+	 * @param size         the size of the stack
+	 * @param index        index of the lookahead character
+	 * @param firstNewNode the first node which does not belong to the old tree
+	 * @param syncFrom     index of the first character after the edit
+	 * @param delta        change of the length of the sequence
+	 * @return the index at which the parsing failed, or {@code -1} if the sequence was accepted
+	 */
+	private long run(int size, int index, int firstNewNode, int syncFrom, int delta) {
+		final int[] table = grammar.getTable();
+		final int[] productionStart = grammar.getProductionStart();
+		final int[] productionSymbols = grammar.getProductionSymbols();
+		final int nonterminalCount = grammar.getNonterminalCount();
+		final int terminalCount = grammar.getTerminalCount();
+		final int begin = index;
+		
+		int lookahead = terminalAt(index);
+		
+		while(size > 0) {
+			int symbol = stack[--size];
+			int node = nodes[size];
+			
+			if(node < firstNewNode && index >= syncFrom && tree.getLocalStart(node) + delta == index) {
+				if(delta != 0) {
+					for(int i = 0; i <= size; i++) {
+						tree.shiftSubtree(nodes[i], delta);
+					}
+				}
+				reparsedLength = index - begin;
+				return -1;
+			}
+			
+			if(symbol >= nonterminalCount) {
+				if(symbol - nonterminalCount != lookahead) {
+					reparsedLength = index - begin;
+					return index;
+				}
+				tree.setSpan(node, index, index + 1);
+				lookahead = terminalAt(++index);
+				continue;
+			}
+			
+			if(node < firstNewNode) {
+				addDirty(node);
+				tree.removeChildren(node);
+			}
+			
+			tree.setSpan(node, index, -1);
+			int production = table[symbol * terminalCount + lookahead];
+			
+			if(production == Grammar.NO_PRODUCTION) {
+				reparsedLength = index - begin;
+				return index;
+			}
+			
+			int start = productionStart[production];
+			int count = productionStart[production + 1] - start;
+			ensureCapacity(size + count);
+			
+			int previous = ParseTree.NONE;
+			for(int i = start + count - 1; i >= start; i--) {
+				int child = tree.add(productionSymbols[i]);
+				
+				if(previous == ParseTree.NONE) {
+					tree.setFirstChild(node, child);
+				} else {
+					tree.setNextSibling(previous, child);
+				}
+				
+				previous = child;
+				nodes[size + i - start] = child;
+			}
+			
+			System.arraycopy(productionSymbols, start, stack, size, count);
+			size += count;
+		}
+		
+		reparsedLength = index - begin;
+		return lookahead == Grammar.END ? -1 : index;
+	}
+	
+	/**
+	 * Returns the terminal id of the character at the given index.
+	 * 
+	 * @param index the index in the sequence
+	 * @return the terminal id, {@link Grammar#END} after the last character
+	 */
+	private int terminalAt(int index) {
+		return index >= sequence.length() ? Grammar.END : grammar.terminal(sequence.charAt(index));
+	}
+	
+	/**
+	 * Marks the given old node as one whose span is computed again.
+	 * 
+	 * @param node the node
+	 */
+	private void addDirty(int node) {
+		if(dirtyCount == dirty.length) {
+			dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+		}
+		dirty[dirtyCount++] = node;
+	}
+	
+	/**
+	 * Makes sure that the stack can hold the given number of symbols.
+	 * 
+	 * @param capacity the required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity > stack.length) {
+			int newLength = Math.max(stack.length * 2, capacity);
+			stack = Arrays.copyOf(stack, newLength);
+			nodes = Arrays.copyOf(nodes, newLength);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * The result of parsing a single sequence: whether the sequence was
+ * accepted, where the parsing failed and the derivation made until then.
+ * 
+ * @author Filip Nemec
+ */
+public class ParseResult {
+	
+	/** Whether the sequence belongs to the grammar. */
+	private final boolean accepted;
+	
+	/** Index of the input character at which the parsing failed, {@code -1} if accepted. */
+	private final long failingIndex;
+	
+	/** The expanded nonterminals, in the order of expansion, or {@code null} if not recorded. */
+	private final String trace;
+	
+	/**
+	 * Constructs a new result.
+	 * 
+	 * @param accepted     whether the sequence was accepted
+	 * @param failingIndex index at which the parsing failed, {@code -1} if accepted
+	 * @param trace        the expanded nonterminals, or {@code null} if not recorded
+	 */
+	public ParseResult(boolean accepted, long failingIndex, String trace) {
+		this.accepted = accepted;
+		this.failingIndex = failingIndex;
+		this.trace = trace;
+	}
+	
+	/**
+	 * Checks whether the sequence belongs to the grammar.
+	 * 
+	 * @return {@code true} if the sequence was accepted, {@code false} otherwise
+	 */
+	public boolean isAccepted() {
+		return accepted;
+	}
+	
+	/**
+	 * Returns the index of the input character at which the parsing failed.
+	 * The index equals the length of the sequence if the sequence ended too
+	 * early.
+	 * 
+	 * @return the failing index, or {@code -1} if the sequence was accepted
+	 */
+	public long getFailingIndex() {
+		return failingIndex;
+	}
+	
+	/**
+	 * Returns the expanded nonterminals, in the order of expansion.
+	 * 
+	 * @return the derivation trace, or {@code null} if it was written to a sink or not recorded
+	 */
+	public String getTrace() {
+		return trace;
+	}
+	
+	/**
+	 * Returns the result in the format printed by {@link Parser}: the trace,
+	 * and "DA" or "NE" in the next line.
+	 */
+	@Override
+	public String toString() {
+		return trace + System.lineSeparator() + (accepted ? "DA" : "NE");
+	}
+}
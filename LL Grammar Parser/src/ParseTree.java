@@ -0,0 +1,373 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A parse tree stored in flat arrays.
+ * <p>
+ * Every node is an index into the arrays, and the root is node {@code 0}.
+ * A node holds its symbol id, its first child, its next sibling and the span
+ * of the input characters derived from it. The arrays are reused when the tree
+ * is cleared, so a single tree can hold the parse of any number of sequences
+ * one after another without allocating a node object per symbol.
+ * <p>
+ * If the parsing failed, the tree holds the derivation made until then. The
+ * nodes which were never reached have the span {@code [-1, -1)}.
+ * <p>
+ * The spans of a whole subtree can be shifted by the same distance in
+ * constant time: the shift is applied to the root of the subtree, and is left
+ * pending for its descendants. The pending shifts are applied to all of the
+ * nodes at once when a span is read through the public methods.
+ * 
+ * @author Filip Nemec
+ */
+public class ParseTree {
+	
+	/** Marks a missing child or sibling. */
+	public static final int NONE = -1;
+	
+	/** The symbol id of every node. */
+	private int[] symbol = new int[16];
+	
+	/** The first child of every node. */
+	private int[] firstChild = new int[16];
+	
+	/** The next sibling of every node. */
+	private int[] nextSibling = new int[16];
+	
+	/** Index of the first input character derived from every node. */
+	private int[] start = new int[16];
+	
+	/** Index after the last input character derived from every node. */
+	private int[] end = new int[16];
+	
+	/** The shift of the spans of all of the descendants of every node, which is not applied yet. */
+	private int[] shift = new int[16];
+	
+	/** Number of nodes. */
+	private int size;
+	
+	/** Whether any node has a pending shift. */
+	private boolean shifted;
+	
+	/**
+	 * Removes all of the nodes, keeping the arrays.
+	 */
+	public void clear() {
+		size = 0;
+		shifted = false;
+	}
+	
+	/**
+	 * Returns the number of nodes.
+	 * 
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the symbol id of the given node.
+	 * 
+	 * @param node the node
+	 * @return the symbol id
+	 */
+	public int getSymbol(int node) {
+		return symbol[node];
+	}
+	
+	/**
+	 * Returns the first child of the given node.
+	 * 
+	 * @param node the node
+	 * @return the first child, or {@link #NONE}
+	 */
+	public int getFirstChild(int node) {
+		return firstChild[node];
+	}
+	
+	/**
+	 * Returns the next sibling of the given node.
+	 * 
+	 * @param node the node
+	 * @return the next sibling, or {@link #NONE}
+	 */
+	public int getNextSibling(int node) {
+		return nextSibling[node];
+	}
+	
+	/**
+	 * Returns the index of the first input character derived from the given node.
+	 * 
+	 * @param node the node
+	 * @return the start of the span, or {@code -1} if the node was never reached
+	 */
+	public int getStart(int node) {
+		if(shifted) applyShifts();
+		return start[node];
+	}
+	
+	/**
+	 * Returns the index after the last input character derived from the given node.
+	 * 
+	 * @param node the node
+	 * @return the end of the span, or {@code -1} if the node was never reached
+	 */
+	public int getEnd(int node) {
+		if(shifted) applyShifts();
+		return end[node];
+	}
+	
+	/**
+	 * Returns the start of the span of the given node, without the shifts
+	 * still pending on its ancestors.
+	 * 
+	 * @param node the node
+	 * @return the start of the span, or {@code -1} if the node was never reached
+	 */
+	int getLocalStart(int node) {
+		return start[node];
+	}
+	
+	/**
+	 * Returns the end of the span of the given node, without the shifts
+	 * still pending on its ancestors.
+	 * 
+	 * @param node the node
+	 * @return the end of the span, or {@code -1} if the node was never reached
+	 */
+	int getLocalEnd(int node) {
+		return end[node];
+	}
+	
+	/**
+	 * Adds a node without children, siblings or span.
+	 * 
+	 * @param symbolId the symbol id of the node
+	 * @return the new node
+	 */
+	int add(int symbolId) {
+		if(size == symbol.length) {
+			int capacity = size * 2;
+			symbol = Arrays.copyOf(symbol, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			start = Arrays.copyOf(start, capacity);
+			end = Arrays.copyOf(end, capacity);
+			shift = Arrays.copyOf(shift, capacity);
+		}
+		
+		symbol[size] = symbolId;
+		firstChild[size] = NONE;
+		nextSibling[size] = NONE;
+		start[size] = -1;
+		end[size] = -1;
+		shift[size] = 0;
+		return size++;
+	}
+	
+	/**
+	 * Sets the first child of the given node.
+	 * 
+	 * @param node  the node
+	 * @param child the first child
+	 */
+	void setFirstChild(int node, int child) {
+		firstChild[node] = child;
+	}
+	
+	/**
+	 * Removes the children of the given node, together with the shift
+	 * pending on them.
+	 * 
+	 * @param node the node
+	 */
+	void removeChildren(int node) {
+		firstChild[node] = NONE;
+		shift[node] = 0;
+	}
+	
+	/**
+	 * Sets the next sibling of the given node.
+	 * 
+	 * @param node    the node
+	 * @param sibling the next sibling
+	 */
+	void setNextSibling(int node, int sibling) {
+		nextSibling[node] = sibling;
+	}
+	
+	/**
+	 * Sets the span of the given node.
+	 * 
+	 * @param node      the node
+	 * @param spanStart the start of the span
+	 * @param spanEnd   the end of the span, or {@code -1} if it is computed by {@link #finish()}
+	 */
+	void setSpan(int node, int spanStart, int spanEnd) {
+		start[node] = spanStart;
+		end[node] = spanEnd;
+	}
+	
+	/**
+	 * Shifts the spans of the given node and of all of its descendants. Only
+	 * the span of the node is changed at once, and the shift of its
+	 * descendants is left pending.
+	 * 
+	 * @param node  the node
+	 * @param delta the shift
+	 */
+	void shiftSubtree(int node, int delta) {
+		if(start[node] >= 0) start[node] += delta;
+		if(end[node] >= 0) end[node] += delta;
+		shift[node] += delta;
+		shifted = true;
+	}
+	
+	/**
+	 * Applies the shift pending on the children of the given node to them,
+	 * leaving it pending on their own descendants.
+	 * 
+	 * @param node the node
+	 */
+	void pushShift(int node) {
+		int delta = shift[node];
+		if(delta == 0) return;
+		
+		for(int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			shiftSubtree(child, delta);
+		}
+		shift[node] = 0;
+	}
+	
+	/**
+	 * Applies all of the pending shifts. Children are always added after their
+	 * parent, so a single pass from the first node to the last reaches every
+	 * parent before its children.
+	 */
+	private void applyShifts() {
+		shifted = false;
+		
+		for(int node = 0; node < size; node++) {
+			int delta = shift[node];
+			if(delta == 0) continue;
+			
+			for(int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+				if(start[child] >= 0) start[child] += delta;
+				if(end[child] >= 0) end[child] += delta;
+				shift[child] += delta;
+			}
+			shift[node] = 0;
+		}
+	}
+	
+	/**
+	 * Computes the ends of the spans which are still missing. Children are
+	 * always added after their parent, so a single pass from the last node to
+	 * the first sees every child before its parent.
+	 */
+	void finish() {
+		for(int node = size - 1; node >= 0; node--) {
+			computeEnd(node);
+		}
+	}
+	
+	/**
+	 * Computes the end of the span of the given node from the spans of its
+	 * children, if the node was reached and its end is still missing.
+	 * 
+	 * @param node the node
+	 */
+	void computeEnd(int node) {
+		if(start[node] < 0 || end[node] >= 0) return;
+		
+		int spanEnd = start[node];
+		for(int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+			if(end[child] >= 0) {
+				spanEnd = end[child];
+			}
+		}
+		end[node] = spanEnd;
+	}
+	
+	/**
+	 * Writes the tree in a compact binary format: the number of nodes, followed
+	 * by the symbol id, the distances to the first child and to the next
+	 * sibling, the start of the span plus one and the length of the span for
+	 * every node. Every number is written as a variable-length integer of
+	 * 7 bits per byte, and a missing child or sibling is written as {@code 0}.
+	 * 
+	 * @param out the output
+	 * @throws IOException if the output cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		if(shifted) applyShifts();
+		writeVarInt(out, size);
+		
+		for(int node = 0; node < size; node++) {
+			writeVarInt(out, symbol[node]);
+			writeVarInt(out, firstChild[node] == NONE ? 0 : firstChild[node] - node);
+			writeVarInt(out, nextSibling[node] == NONE ? 0 : nextSibling[node] - node);
+			writeVarInt(out, start[node] + 1);
+			writeVarInt(out, end[node] - start[node]);
+		}
+	}
+	
+	/**
+	 * Replaces the tree with the one read in the format of {@link #write(DataOutput)}.
+	 * 
+	 * @param in the input
+	 * @throws IOException if the input cannot be read
+	 */
+	public void read(DataInput in) throws IOException {
+		int count = readVarInt(in);
+		clear();
+		
+		for(int node = 0; node < count; node++) {
+			add(readVarInt(in));
+			
+			int child = readVarInt(in);
+			int sibling = readVarInt(in);
+			firstChild[node] = child == 0 ? NONE : node + child;
+			nextSibling[node] = sibling == 0 ? NONE : node + sibling;
+			start[node] = readVarInt(in) - 1;
+			end[node] = start[node] + readVarInt(in);
+		}
+	}
+	
+	/**
+	 * Writes a non-negative integer in 7 bits per byte, lowest bits first.
+	 * 
+	 * @param out   the output
+	 * @param value the integer
+	 * @throws IOException if the output cannot be written
+	 */
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	
+	/**
+	 * Reads an integer written by {@link #writeVarInt(DataOutput, int)}.
+	 * 
+	 * @param in the input
+	 * @return the integer
+	 * @throws IOException if the input cannot be read or the integer is malformed
+	 */
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		
+		for(int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		
+		throw new IOException("Invalid variable-length integer");
+	}
+}
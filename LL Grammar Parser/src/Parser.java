@@ -1,140 +1,420 @@
-import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import automaton.DefinitionReader;
 
 /**
  * A simple implementation of a parser that determines if
  * the given input sequence belongs to the specified grammar.
- * The grammar used in this parser is defined as:
+ * Unless another grammar is given, the grammar used in this
+ * parser is defined as:
  * <p>
  * <br> S -> aAB | bBA
  * <br> A -> bC | a
  * <br> B -> ccSbc | $
  * <br> C -> AA
- *
+ * <p>
+ * The grammar is compiled into an LL(1) parse table by {@link Grammar},
+ * and the sequence is parsed by a predictive parser with an explicit stack
+ * of symbol ids, so even deeply nested sequences never overflow the thread
+ * stack. Every nonterminal is recorded when it is expanded, so the trace of
+ * the derivation is the sequence of the expanded nonterminals.
+ * <p>
+ * A parser can parse any number of sequences. The stack and the buffers are
+ * reused between them, so a parser must not be shared between threads.
+ * <p>
+ * The input is read through a fixed-size buffer, and the parser never looks
+ * further than the single character of lookahead, so a stream can be parsed
+ * without holding it in memory. The trace of a stream is written to a sink
+ * given by the caller.
+ * <p>
+ * Optionally, the parse tree is built into a reusable {@link ParseTree}. The
+ * tree is built by a separate copy of the parsing loop, so the parsing costs
+ * nothing more when no tree is requested.
+ * 
  * @author Filip Nemec
  */
 public class Parser {
 	
-	/** The end-of-file character. */
-	private static final char EOF = '$';
+	/** The grammar used when no other grammar is given. */
+	public static final String DEFAULT_GRAMMAR =
+			"S -> aAB | bBA\n" +
+			"A -> bC | a\n" +
+			"B -> ccSbc | $\n" +
+			"C -> AA\n";
 	
-	/** The input sequence. */
-	private String sequence;
+	/** Number of characters read from the input at once. */
+	private static final int BUFFER_SIZE = 8192;
 	
-	/** The current input character. */
-	private char input;
-
-	/** The current index of the input in the sequence. */
-	private int index = -1;
+	/** The grammar of the accepted sequences. */
+	private final Grammar grammar;
+	
+	/** The stack of symbol ids, reused between the sequences. */
+	private int[] stack = new int[16];
+	
+	/** The tree node of every symbol on the stack, when building a tree. */
+	private int[] nodes = new int[16];
+	
+	/** The trace of the current sequence. */
+	private final StringBuilder trace = new StringBuilder();
+	
+	/** The buffered input, of which {@code buffer[position..limit)} is not consumed yet. */
+	private final char[] buffer = new char[BUFFER_SIZE];
+	
+	/** Position of the lookahead character in the buffer. */
+	private int position;
+	
+	/** Number of valid characters in the buffer. */
+	private int limit;
+	
+	/** Number of input characters before the start of the buffer. */
+	private long offset;
+	
+	/** The stream being parsed, or {@code null} when parsing a sequence. */
+	private Reader reader;
+	
+	/** The sequence being parsed, or {@code null} when parsing a stream. */
+	private CharSequence sequence;
+	
+	/** Number of characters of the sequence already copied to the buffer. */
+	private int copied;
+	
+	/** The sequence parsed by {@link #parse()}, or {@code null} if none was given. */
+	private final String givenSequence;
+	
+	/**
+	 * Constructs a new {@code Parser} for the default grammar.
+	 */
+	public Parser() {
+		this(new Grammar(DEFAULT_GRAMMAR), null);
+	}
+	
+	/**
+	 * Constructs a new {@code Parser} for the given grammar.
+	 * 
+	 * @param grammar the grammar
+	 */
+	public Parser(Grammar grammar) {
+		this(grammar, null);
+	}
 	
 	/**
 	 * Constructs a new {@code Parser} that will check
-	 * the given input sequence.
+	 * the given input sequence with the default grammar.
 	 * 
 	 * @param sequence the input sequence
 	 */
 	public Parser(String sequence) {
-		this.sequence = sequence;
+		this(new Grammar(DEFAULT_GRAMMAR), sequence);
 	}
 	
 	/**
-	 * Parses the input sequence.
+	 * Constructs a new {@code Parser} for the given grammar and sequence.
+	 * 
+	 * @param grammar       the grammar
+	 * @param givenSequence the sequence parsed by {@link #parse()}, or {@code null}
+	 */
+	private Parser(Grammar grammar, String givenSequence) {
+		this.grammar = grammar;
+		this.givenSequence = givenSequence;
+	}
+	
+	/**
+	 * Parses the input sequence given to the constructor, and prints the
+	 * trace followed by "DA" or "NE" on the next line.
+	 * 
+	 * @throws IllegalStateException if no sequence was given to the constructor
 	 */
 	public void parse() {
-		S();
-		System.out.println();
-		System.out.print(getNextInput() == '$' ? "DA" : "NE");
+		if(givenSequence == null)
+			throw new IllegalStateException("No sequence was given to the parser");
+		
+		ParseResult result = parse(givenSequence);
+		System.out.println(result.getTrace());
+		System.out.print(result.isAccepted() ? "DA" : "NE");
+	}
+	
+	/**
+	 * Parses the given sequence.
+	 * 
+	 * @param sequence the input sequence
+	 * @return the result of the parsing
+	 */
+	public ParseResult parse(CharSequence sequence) {
+		return parse(sequence, null);
 	}
 	
-	/** Processes the state S. */
-	private void S() {
-		if(input == EOF) return;
+	/**
+	 * Parses the given sequence and builds its parse tree.
+	 * 
+	 * @param sequence the input sequence
+	 * @param tree     the tree to replace with the parse tree, or {@code null}
+	 * @return the result of the parsing
+	 */
+	public ParseResult parse(CharSequence sequence, ParseTree tree) {
+		open(null, sequence);
+		trace.setLength(0);
 		
-		System.out.print("S");
-		input = getNextInput();
+		try {
+			long failingIndex = tree == null ? run(trace) : runBuildingTree(trace, tree);
+			return new ParseResult(failingIndex < 0, failingIndex, trace.toString());
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.sequence = null;
+		}
+	}
+	
+	/**
+	 * Parses the sequence read from the given stream. Leading whitespace is
+	 * skipped, and the sequence ends at the end of the stream or at the next
+	 * whitespace character. Byte channels can be parsed through
+	 * {@link java.nio.channels.Channels#newReader}.
+	 * <p>
+	 * The stream is neither buffered any further nor closed.
+	 * 
+	 * @param input the stream
+	 * @param sink  the sink to which the trace is written
+	 * @return the result of the parsing, without the trace
+	 * @throws IOException if the stream cannot be read or the sink cannot be written
+	 */
+	public ParseResult parse(Reader input, Appendable sink) throws IOException {
+		return parse(input, sink, null);
+	}
+	
+	/**
+	 * Parses the sequence read from the given stream, as described by
+	 * {@link #parse(Reader, Appendable)}, and builds its parse tree.
+	 * 
+	 * @param input the stream
+	 * @param sink  the sink to which the trace is written
+	 * @param tree  the tree to replace with the parse tree, or {@code null}
+	 * @return the result of the parsing, without the trace
+	 * @throws IOException if the stream cannot be read or the sink cannot be written
+	 */
+	public ParseResult parse(Reader input, Appendable sink, ParseTree tree) throws IOException {
+		open(input, null);
 		
-		if(input == 'a') {
-			A();
-			B();
-			
-		} else {
-			requireSymbol('b');
-			B();
-			A();
+		try {
+			while((position < limit || fill()) && Character.isWhitespace(buffer[position])) {
+				position++;
+			}
 			
+			long failingIndex = tree == null ? run(sink) : runBuildingTree(sink, tree);
+			return new ParseResult(failingIndex < 0, failingIndex, null);
+		} finally {
+			reader = null;
 		}
 	}
 	
-	/** Processes the state A. */
-	private void A() {
-		if(input == EOF) return;
+	/**
+	 * Prepares the buffer for a new input.
+	 * 
+	 * @param reader   the stream, or {@code null}
+	 * @param sequence the sequence, or {@code null}
+	 */
+	private void open(Reader reader, CharSequence sequence) {
+		this.reader = reader;
+		this.sequence = sequence;
+		copied = 0;
+		position = limit = 0;
+		offset = 0;
+	}
+	
+	/**
+	 * Parses the opened input.
+	 * 
+	 * @param sink the sink to which the trace is written
+	 * @return the index at which the parsing failed, or {@code -1} if the input was accepted
+	 * @throws IOException if the input cannot be read or the sink cannot be written
+	 */
+	private long run(Appendable sink) throws IOException {
+		final int[] table = grammar.getTable();
+		final int[] productionStart = grammar.getProductionStart();
+		final int[] productionSymbols = grammar.getProductionSymbols();
+		final int nonterminalCount = grammar.getNonterminalCount();
+		final int terminalCount = grammar.getTerminalCount();
+		
+		int[] stack = this.stack;
+		int size = 0;
+		stack[size++] = 0;
 		
-		System.out.print("A");
-		input = getNextInput();
+		int lookahead = lookahead();
 		
-		if(input == 'b') {
-			C();
+		while(size > 0) {
+			int symbol = stack[--size];
 			
-		} else {
-			requireSymbol('a');
+			if(symbol >= nonterminalCount) {
+				if(symbol - nonterminalCount != lookahead) {
+					return offset + position;
+				}
+				position++;
+				lookahead = lookahead();
+				continue;
+			}
+			
+			sink.append(grammar.symbolName(symbol));
+			int production = table[symbol * terminalCount + lookahead];
+			
+			if(production == Grammar.NO_PRODUCTION) {
+				return offset + position;
+			}
+			
+			int start = productionStart[production];
+			int count = productionStart[production + 1] - start;
+			
+			if(size + count > stack.length) {
+				stack = this.stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + count));
+			}
+			
+			System.arraycopy(productionSymbols, start, stack, size, count);
+			size += count;
 		}
+		
+		return lookahead == Grammar.END ? -1 : offset + position;
 	}
 	
-	/** Processes the state B. */
-	private void B() {
-		if(input == EOF) return;
+	/**
+	 * Parses the opened input like {@link #run(Appendable)}, and builds the
+	 * parse tree on the way. Every production adds a node for each of its
+	 * symbols, and the tree node of every symbol is kept on a second stack
+	 * next to the symbol.
+	 * 
+	 * @param sink the sink to which the trace is written
+	 * @param tree the tree to replace with the parse tree
+	 * @return the index at which the parsing failed, or {@code -1} if the input was accepted
+	 * @throws IOException if the input cannot be read or the sink cannot be written
+	 */
+	private long runBuildingTree(Appendable sink, ParseTree tree) throws IOException {
+		final int[] table = grammar.getTable();
+		final int[] productionStart = grammar.getProductionStart();
+		final int[] productionSymbols = grammar.getProductionSymbols();
+		final int nonterminalCount = grammar.getNonterminalCount();
+		final int terminalCount = grammar.getTerminalCount();
+		
+		int[] stack = this.stack;
+		int[] nodes = this.nodes;
+		int size = 0;
+		tree.clear();
+		stack[size] = 0;
+		nodes[size++] = tree.add(0);
 		
-		System.out.print("B");
-		input = getNextInput();
+		int lookahead = lookahead();
+		long failingIndex = -1;
 		
-		if(input == 'c') {
-			input = getNextInput();
-			requireSymbol('c');
+		while(size > 0) {
+			int symbol = stack[--size];
+			int node = nodes[size];
+			int index = (int) (offset + position);
 			
-			S();
+			if(symbol >= nonterminalCount) {
+				if(symbol - nonterminalCount != lookahead) {
+					failingIndex = index;
+					break;
+				}
+				tree.setSpan(node, index, index + 1);
+				position++;
+				lookahead = lookahead();
+				continue;
+			}
 			
-			input = getNextInput();
-			requireSymbol('b');
+			sink.append(grammar.symbolName(symbol));
+			tree.setSpan(node, index, -1);
+			int production = table[symbol * terminalCount + lookahead];
 			
-			input = getNextInput();
-			requireSymbol('c');
+			if(production == Grammar.NO_PRODUCTION) {
+				failingIndex = index;
+				break;
+			}
 			
-		} else {
-			index--;
+			int start = productionStart[production];
+			int count = productionStart[production + 1] - start;
+			
+			if(size + count > nodes.length) {
+				int capacity = Math.max(nodes.length * 2, size + count);
+				nodes = this.nodes = Arrays.copyOf(nodes, capacity);
+				if(stack.length < capacity) {
+					stack = this.stack = Arrays.copyOf(stack, capacity);
+				}
+			}
 			
+			int previous = ParseTree.NONE;
+			for(int i = start + count - 1; i >= start; i--) {
+				int child = tree.add(productionSymbols[i]);
+				
+				if(previous == ParseTree.NONE) {
+					tree.setFirstChild(node, child);
+				} else {
+					tree.setNextSibling(previous, child);
+				}
+				
+				previous = child;
+				nodes[size + i - start] = child;
+			}
+			
+			System.arraycopy(productionSymbols, start, stack, size, count);
+			size += count;
+		}
+		
+		if(failingIndex < 0 && lookahead != Grammar.END) {
+			failingIndex = offset + position;
 		}
-	}
-	
-	/** Processes the state C. */
-	private void C() {
-		if(input == EOF) return;
 		
-		System.out.print("C");
-		A();
-		A();
+		tree.finish();
+		return failingIndex;
 	}
 	
 	/**
-	 * Returns the next input character.
+	 * Returns the terminal id of the lookahead character, without consuming it.
 	 * 
-	 * @return the next input character
+	 * @return the terminal id, {@link Grammar#END} at the end of the input
+	 * @throws IOException if the input cannot be read
 	 */
-	private char getNextInput() {
-		index++;
-		return (index >= sequence.length()) ? '$' : sequence.charAt(index);
+	private int lookahead() throws IOException {
+		if(position == limit && !fill()) {
+			return Grammar.END;
+		}
+		
+		char c = buffer[position];
+		return reader != null && Character.isWhitespace(c) ? Grammar.END : grammar.terminal(c);
 	}
 	
 	/**
-	 * A helper method which requires the given input
-	 * to be equal as the given argument {@code symbol}.
+	 * Replaces the consumed buffer with the next characters of the input.
 	 * 
-	 * @param symbol the required symbol
+	 * @return {@code true} if any characters were read, {@code false} at the end of the input
+	 * @throws IOException if the input cannot be read
 	 */
-	private void requireSymbol(char symbol) {
-		if(input != symbol) {
-			System.out.println();
-			System.out.print("NE");
-			System.exit(0);
+	private boolean fill() throws IOException {
+		offset += limit;
+		position = limit = 0;
+		
+		if(reader != null) {
+			limit = Math.max(reader.read(buffer), 0);
+		} else {
+			limit = Math.min(buffer.length, sequence.length() - copied);
+			if(sequence instanceof String) {
+				((String) sequence).getChars(copied, copied + limit, buffer, 0);
+			} else {
+				for(int i = 0; i < limit; i++) {
+					buffer[i] = sequence.charAt(copied + i);
+				}
+			}
+			copied += limit;
 		}
+		
+		return limit > 0;
 	}
 	
 	/**
@@ -143,13 +423,84 @@ public class Parser {
 	 * belongs to the specified grammar, the steps to achieve
 	 * the sequence will be shown and the message "DA" will
 	 * be printed. Otherwise, the steps until the parsing fails
-	 * will be shown and the message "NO" will be printed.
+	 * will be shown and the message "NE" will be printed.
+	 * <p>
+	 * With {@code --grammar=file} the grammar is read from the
+	 * file, in the notation described by {@link Grammar}.
+	 * <p>
+	 * With {@code --batch} every line of the standard input is parsed
+	 * as a separate sequence, and with {@code --batch=file} every line
+	 * of the file. The sequences are parsed on {@code --threads=n}
+	 * threads, one per processor by default, and "DA" or "NE" is
+	 * printed for each of them in the order of the lines. With
+	 * {@code --trace} the trace is printed before every result.
+	 * <p>
+	 * With {@code --tree=file} the parse tree of the sequence is
+	 * written to the file, in the format of {@link ParseTree#write}.
 	 * 
-	 * @param args none are used
+	 * @param args the options described above
+	 * @throws IOException if the grammar or the batch file cannot be read
 	 */
-	public static void main(String[] args) {
-		Scanner scanner = new Scanner(System.in);
-		new Parser(scanner.next()).parse();
-		scanner.close();
+	public static void main(String[] args) throws IOException {
+		Grammar grammar = null;
+		String batch = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean printTraces = false;
+		String treeFile = null;
+		
+		for(String arg : args) {
+			if(arg.startsWith("--grammar=")) {
+				try(DefinitionReader reader = DefinitionReader.open(Paths.get(arg.substring("--grammar=".length())))) {
+					grammar = new Grammar(reader);
+				}
+			} else if(arg.equals("--batch")) {
+				batch = "";
+			} else if(arg.startsWith("--batch=")) {
+				batch = arg.substring("--batch=".length());
+			} else if(arg.startsWith("--threads=")) {
+				threads = Integer.parseInt(arg.substring("--threads=".length()));
+			} else if(arg.equals("--trace")) {
+				printTraces = true;
+			} else if(arg.startsWith("--tree=")) {
+				treeFile = arg.substring("--tree=".length());
+			} else {
+				throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		if(grammar == null) {
+			grammar = new Grammar(DEFAULT_GRAMMAR);
+		}
+		
+		if(batch != null) {
+			if(treeFile != null) {
+				throw new IllegalArgumentException("A parse tree cannot be written in the batch mode");
+			}
+			
+			BatchParser batchParser = new BatchParser(grammar, threads, printTraces);
+			
+			try(BufferedReader reader = batch.isEmpty()
+					? new BufferedReader(new InputStreamReader(System.in))
+					: Files.newBufferedReader(Paths.get(batch))) {
+				batchParser.run(reader.lines().iterator());
+			}
+			return;
+		}
+		
+		Parser parser = new Parser(grammar);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+		
+		ParseTree tree = treeFile == null ? null : new ParseTree();
+		
+		ParseResult result = parser.parse(new InputStreamReader(System.in), out, tree);
+		out.write(System.lineSeparator());
+		out.write(result.isAccepted() ? "DA" : "NE");
+		out.flush();
+		
+		if(tree != null) {
+			try(DataOutputStream treeOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(treeFile))))) {
+				tree.write(treeOut);
+			}
+		}
 	}
 }
@@ -0,0 +1,850 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+import automaton.DefinitionReader;
+import automaton.StateSet;
+import automaton.SymbolTable;
+import automaton.TransitionTable;
+
+/**
+ * Minimizes a DFA whose transitions do not fit into memory. The definition
+ * is read from a file in the format of {@link MinDka}.
+ * <p>
+ * The transitions are kept in a memory-mapped file of a working directory,
+ * and the states are divided into blocks of equivalent states by passes of
+ * the partition refinement. Every pass gives each state a signature made of
+ * its block and the blocks of its next states. The signatures are sorted in
+ * runs which fit into the memory budget, the runs are merged, and every
+ * distinct signature becomes a block of the next pass. The passes stop once
+ * they no longer divide any block. Only the names of the states and a few
+ * bits per state are kept in memory.
+ * <p>
+ * The blocks of every pass are written to a file of their own. The number of
+ * the pass is recorded in a progress file only once the blocks are on the
+ * disk, and the blocks of the previous pass are deleted only after that, so
+ * an interrupted minimization which is run again with the same working
+ * directory continues from the last completed pass.
+ * <p>
+ * A missing transition is treated as a block of its own. For a complete DFA
+ * the result is therefore the same as that of {@link MinDka}: every block is
+ * represented by the first of its states in the alphabetical order.
+ * 
+ * @author Filip Nemec
+ */
+public class ExternalMinimization {
+	
+	/** The default memory budget of the sorting of signatures, in bytes. */
+	public static final long DEFAULT_MEMORY = 256L << 20;
+	
+	/** Size of the buffers of the files which are read or written sequentially. */
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+	
+	/** Name of the file of the parsed transitions, as triples of ids. */
+	private static final String PARSED = "parsed.bin";
+	
+	/** Name of the file of the transition table. */
+	private static final String TRANSITIONS = "transitions.bin";
+	
+	/** Name of the file of the names of the states, one per line. */
+	private static final String NAMES = "names.txt";
+	
+	/** Name of the file of the symbols, the alphabet and the initial state. */
+	private static final String HEADER = "header.txt";
+	
+	/** Name of the file of the last completed pass. */
+	private static final String PROGRESS = "progress.txt";
+	
+	/** Name of the file of the queue of the search for the reachable states. */
+	private static final String QUEUE = "queue.bin";
+	
+	/** Name of the file of the representative of every block. */
+	private static final String REPRESENTATIVES = "representatives.bin";
+	
+	/** The working directory. */
+	private final Path directory;
+	
+	/** The memory budget of the sorting of signatures, in bytes. */
+	private final long memory;
+	
+	/** Names of all the states, numbered in the order in which they are first seen. */
+	private SymbolTable stateNames;
+	
+	/** Names of all the symbols, numbered in the order in which they are first seen. */
+	private String[] symbolNames;
+	
+	/** The symbols of the alphabet, in the alphabetical order. */
+	private int[] alphabet;
+	
+	/** The initial state. */
+	private int initialState;
+	
+	/** The next state of every state and symbol, or {@link TransitionTable#NONE}. */
+	private MappedIntArray transitions;
+	
+	/** The last completed pass. */
+	private int pass;
+	
+	/** Number of the blocks after the last completed pass. */
+	private int blockCount;
+	
+	/** Whether the last completed pass has not divided any block. */
+	private boolean stable;
+	
+	/**
+	 * Constructs a new minimization which keeps its files in the given
+	 * directory.
+	 * 
+	 * @param directory the working directory, which is created if needed
+	 * @param memory    the memory budget of the sorting of signatures, in bytes
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ExternalMinimization(Path directory, long memory) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.memory = memory;
+	}
+	
+	/**
+	 * Minimizes the DFA of the given definition, continuing from the last
+	 * completed pass if the working directory holds an interrupted
+	 * minimization.
+	 * 
+	 * @param definition the file of the definition
+	 * @throws IOException if a file cannot be read or written
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 */
+	public void minimize(Path definition) throws IOException {
+		if(Files.exists(directory.resolve(PROGRESS))) {
+			resume();
+		} else {
+			load(definition);
+		}
+		
+		while(!stable) {
+			refine();
+		}
+	}
+	
+	/**
+	 * Reads the definition into the files of the working directory, and
+	 * writes the blocks of the final and the other reachable states as the
+	 * pass 0.
+	 * 
+	 * @param definition the file of the definition
+	 * @throws IOException if a file cannot be read or written
+	 */
+	private void load(Path definition) throws IOException {
+		stateNames = new SymbolTable();
+		SymbolTable symbols = new SymbolTable();
+		SymbolTable alphabetNames = new SymbolTable();
+		SymbolTable finalNames = new SymbolTable();
+		
+		Path parsed = directory.resolve(PARSED);
+		long transitionCount = 0;
+		
+		try(DefinitionReader reader = DefinitionReader.open(definition);
+				FileChannel out = FileChannel.open(parsed, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			reader.requireLine();
+			while(reader.hasField(",")) reader.field(stateNames, ",");
+			reader.requireLine();
+			while(reader.hasField(",")) symbols.intern(alphabetNames.name(reader.field(alphabetNames, ",")));
+			reader.requireLine();
+			while(reader.hasField(",")) stateNames.intern(finalNames.name(reader.field(finalNames, ",")));
+			reader.requireLine();
+			initialState = reader.rest(stateNames);
+			
+			// Every transition is written as its state, its symbol and its next state.
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+			
+			while(reader.readLine()) {
+				if(reader.isLineEmpty()) break;
+				
+				if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+				
+				int state = reader.field(stateNames, ",");
+				if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+				
+				int symbol = reader.field(symbols, ",");
+				if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+				
+				reader.endSection();
+				
+				if(buffer.remaining() < 12) write(out, buffer);
+				buffer.putInt(state).putInt(symbol).putInt(reader.rest(stateNames));
+				transitionCount++;
+			}
+			write(out, buffer);
+		}
+		
+		symbolNames = symbols.names();
+		alphabet = sortedIds(alphabetNames, symbols);
+		
+		long stateCount = stateNames.size();
+		transitions = new MappedIntArray(directory.resolve(TRANSITIONS), stateCount * symbolNames.length);
+		transitions.fill(TransitionTable.NONE);
+		
+		try(FileChannel in = FileChannel.open(parsed, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE - IO_BUFFER_SIZE % 12).order(ByteOrder.nativeOrder());
+			buffer.limit(0);
+			
+			for(long i = 0; i < transitionCount; i++) {
+				if(buffer.remaining() < 12) read(in, buffer, 12);
+				transitions.set((long) buffer.getInt() * symbolNames.length + buffer.getInt(), buffer.getInt());
+			}
+		}
+		transitions.force();
+		Files.delete(parsed);
+		
+		StateSet finalStates = new StateSet(stateNames.size());
+		for(int i = 0; i < finalNames.size(); i++) finalStates.add(stateNames.id(finalNames.name(i)));
+		
+		try(MappedIntArray blocks = new MappedIntArray(blocksFile(0), stateCount)) {
+			blockCount = findReachableStates(finalStates, blocks);
+			blocks.force();
+		}
+		
+		writeHeader();
+		writeProgress();
+	}
+	
+	/**
+	 * Returns the ids of the names of the given table in the other table,
+	 * in the alphabetical order of the names.
+	 * 
+	 * @param names the names
+	 * @param ids   the table of the ids
+	 * @return the ids
+	 */
+	private static int[] sortedIds(SymbolTable names, SymbolTable ids) {
+		String[] sorted = names.names();
+		Arrays.sort(sorted);
+		
+		int[] sortedIds = new int[sorted.length];
+		for(int i = 0; i < sorted.length; i++) {
+			sortedIds[i] = ids.id(sorted[i]);
+		}
+		return sortedIds;
+	}
+	
+	/**
+	 * Finds all of the states which can be reached from the initial state by
+	 * the transitions of any symbol, and puts the final ones into the block 1
+	 * and the others into the block 0. The other states are in no block.
+	 * 
+	 * @param finalStates the final states
+	 * @param blocks      receives the block of every state, or -1
+	 * @return number of the blocks which are not empty
+	 * @throws IOException if the queue of the search cannot be created
+	 */
+	private int findReachableStates(StateSet finalStates, MappedIntArray blocks) throws IOException {
+		blocks.fill(-1);
+		Path queueFile = directory.resolve(QUEUE);
+		boolean[] nonEmpty = new boolean[2];
+		
+		try(MappedIntArray queue = new MappedIntArray(queueFile, blocks.length())) {
+			long head = 0;
+			long tail = 0;
+			
+			queue.set(tail++, initialState);
+			blocks.set(initialState, finalStates.contains(initialState) ? 1 : 0);
+			
+			while(head < tail) {
+				int state = queue.get(head++);
+				nonEmpty[blocks.get(state)] = true;
+				
+				for(int symbol = 0; symbol < symbolNames.length; symbol++) {
+					int next = transitions.get((long) state * symbolNames.length + symbol);
+					
+					if(next != TransitionTable.NONE && blocks.get(next) < 0) {
+						blocks.set(next, finalStates.contains(next) ? 1 : 0);
+						queue.set(tail++, next);
+					}
+				}
+			}
+		}
+		Files.delete(queueFile);
+		
+		return (nonEmpty[0] ? 1 : 0) + (nonEmpty[1] ? 1 : 0);
+	}
+	
+	/**
+	 * Runs the next pass of the partition refinement, and records it as
+	 * completed.
+	 * 
+	 * @throws IOException if a file cannot be read or written
+	 */
+	private void refine() throws IOException {
+		int newBlockCount;
+		
+		try(MappedIntArray blocks = new MappedIntArray(blocksFile(pass), stateNames.size());
+				MappedIntArray newBlocks = new MappedIntArray(blocksFile(pass + 1), stateNames.size())) {
+			newBlockCount = new Signatures(blocks, newBlocks).number();
+			newBlocks.force();
+		}
+		
+		stable = newBlockCount == blockCount;
+		blockCount = newBlockCount;
+		pass++;
+		writeProgress();
+		
+		// The old blocks are deleted only once the progress no longer points to them.
+		// The blocks of the pass 0 tell which states are final, so they are kept.
+		if(pass > 1) Files.deleteIfExists(blocksFile(pass - 1));
+	}
+	
+	/**
+	 * The signatures of the states in a single pass, sorted in runs which fit
+	 * into the memory budget. A signature is stored as the block of its state,
+	 * the blocks of the next states by the symbols of the alphabet and the
+	 * state itself, so the signatures of different states are never equal.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private class Signatures {
+		
+		/** The blocks of the last pass. */
+		private final MappedIntArray blocks;
+		
+		/** Receives the blocks of this pass. */
+		private final MappedIntArray newBlocks;
+		
+		/** Number of the ints of a signature. */
+		private final int width;
+		
+		/** The signatures which are not written to a run yet. */
+		private final int[] records;
+		
+		/** The order of the signatures, after they are sorted. */
+		private final int[] order;
+		
+		/** Temporary space of the sorting. */
+		private final int[] temp;
+		
+		/** Number of the signatures which are not written to a run yet. */
+		private int count;
+		
+		/** The files of the sorted runs. */
+		private final List<Path> runs = new ArrayList<>();
+		
+		/** Number of the numbered blocks. */
+		private int numbered;
+		
+		/** The previous signature in the sorted order, or {@code null}. */
+		private int[] previous;
+		
+		/**
+		 * Constructs the signatures of the given pass.
+		 * 
+		 * @param blocks    the blocks of the last pass
+		 * @param newBlocks receives the blocks of this pass
+		 */
+		Signatures(MappedIntArray blocks, MappedIntArray newBlocks) {
+			this.blocks = blocks;
+			this.newBlocks = newBlocks;
+			this.width = alphabet.length + 2;
+			
+			long capacity = Math.max(1, Math.min(memory / (4L * width + 8), Integer.MAX_VALUE / width));
+			capacity = Math.min(capacity, Math.max(1, stateNames.size()));
+			
+			records = new int[(int) capacity * width];
+			order = new int[(int) capacity];
+			temp = new int[(int) capacity];
+		}
+		
+		/**
+		 * Numbers the distinct signatures in their sorted order, which gives
+		 * the blocks of this pass.
+		 * 
+		 * @return number of the blocks
+		 * @throws IOException if a run cannot be written or read
+		 */
+		int number() throws IOException {
+			for(int state = 0; state < stateNames.size(); state++) {
+				int block = blocks.get(state);
+				if(block < 0) {
+					newBlocks.set(state, -1);
+					continue;
+				}
+				
+				int offset = count * width;
+				records[offset] = block;
+				for(int i = 0; i < alphabet.length; i++) {
+					int next = transitions.get((long) state * symbolNames.length + alphabet[i]);
+					records[offset + 1 + i] = next == TransitionTable.NONE ? -1 : blocks.get(next);
+				}
+				records[offset + width - 1] = state;
+				
+				if(++count == order.length) writeRun();
+			}
+			
+			try {
+				if(runs.isEmpty()) {
+					sort();
+					for(int i = 0; i < count; i++) {
+						add(records, order[i] * width);
+					}
+				} else {
+					if(count > 0) writeRun();
+					merge();
+				}
+			} finally {
+				for(Path run : runs) Files.deleteIfExists(run);
+			}
+			
+			return numbered;
+		}
+		
+		/**
+		 * Gives the state of the given signature its block, which is a new one
+		 * if the signature differs from the previous one apart from the state.
+		 * 
+		 * @param record the array of the signature
+		 * @param offset index of the signature in the array
+		 */
+		private void add(int[] record, int offset) {
+			if(previous == null) {
+				previous = new int[width - 1];
+				numbered++;
+			} else if(compare(record, offset, previous, 0, width - 1) != 0) {
+				numbered++;
+			}
+			
+			System.arraycopy(record, offset, previous, 0, width - 1);
+			newBlocks.set(record[offset + width - 1], numbered - 1);
+		}
+		
+		/**
+		 * Sorts the signatures which are not written to a run yet, and writes
+		 * them to a new run.
+		 * 
+		 * @throws IOException if the run cannot be written
+		 */
+		private void writeRun() throws IOException {
+			sort();
+			
+			Path run = directory.resolve("run" + runs.size() + ".bin");
+			runs.add(run);
+			
+			try(FileChannel out = FileChannel.open(run, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(IO_BUFFER_SIZE, 4 * width)).order(ByteOrder.nativeOrder());
+				
+				for(int i = 0; i < count; i++) {
+					if(buffer.remaining() < 4 * width) write(out, buffer);
+					
+					int offset = order[i] * width;
+					for(int j = 0; j < width; j++) {
+						buffer.putInt(records[offset + j]);
+					}
+				}
+				write(out, buffer);
+			}
+			
+			count = 0;
+		}
+		
+		/**
+		 * Merges the sorted runs, numbering the signatures in their order.
+		 * 
+		 * @throws IOException if a run cannot be read
+		 */
+		private void merge() throws IOException {
+			PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> compare(a.record, 0, b.record, 0, width));
+			int bufferSize = (int) Math.max(4 * width, Math.min(Integer.MAX_VALUE, memory / (2 * runs.size())));
+			bufferSize -= bufferSize % (4 * width);
+			
+			try {
+				for(Path file : runs) {
+					Run run = new Run(file, bufferSize);
+					if(run.advance()) queue.add(run);
+					else run.close();
+				}
+				
+				while(!queue.isEmpty()) {
+					Run run = queue.poll();
+					add(run.record, 0);
+					
+					if(run.advance()) queue.add(run);
+					else run.close();
+				}
+			} finally {
+				for(Run run : queue) run.close();
+			}
+		}
+		
+		/**
+		 * Sorts the order of the signatures which are not written to a run yet,
+		 * by merging ever longer sorted parts of it.
+		 */
+		private void sort() {
+			for(int i = 0; i < count; i++) order[i] = i;
+			
+			for(int size = 1; size < count; size *= 2) {
+				for(int low = 0; low < count - size; low += 2 * size) {
+					int middle = low + size;
+					int high = Math.min(low + 2 * size, count);
+					
+					int i = low, j = middle, k = low;
+					while(i < middle && j < high) {
+						temp[k++] = compare(records, order[j] * width, records, order[i] * width, width) < 0 ? order[j++] : order[i++];
+					}
+					while(i < middle) temp[k++] = order[i++];
+					while(j < high) temp[k++] = order[j++];
+					
+					System.arraycopy(temp, low, order, low, high - low);
+				}
+			}
+		}
+		
+		/**
+		 * A sorted run, read one signature at a time.
+		 * 
+		 * @author Filip Nemec
+		 */
+		private class Run {
+			
+			/** The file of the run. */
+			private final FileChannel channel;
+			
+			/** The buffer of the file. */
+			private final ByteBuffer buffer;
+			
+			/** The current signature. */
+			private final int[] record = new int[width];
+			
+			/**
+			 * Opens the given run.
+			 * 
+			 * @param file       the file of the run
+			 * @param bufferSize size of the buffer, a multiple of the size of a signature
+			 * @throws IOException if the file cannot be opened
+			 */
+			Run(Path file, int bufferSize) throws IOException {
+				channel = FileChannel.open(file, StandardOpenOption.READ);
+				buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+				buffer.limit(0);
+			}
+			
+			/**
+			 * Reads the next signature.
+			 * 
+			 * @return {@code true} if there was one, {@code false} at the end of the run
+			 * @throws IOException if the file cannot be read
+			 */
+			boolean advance() throws IOException {
+				if(!buffer.hasRemaining() && !read(channel, buffer, 4 * width)) return false;
+				
+				for(int i = 0; i < width; i++) {
+					record[i] = buffer.getInt();
+				}
+				return true;
+			}
+			
+			/**
+			 * Closes the file of the run.
+			 * 
+			 * @throws IOException if the file cannot be closed
+			 */
+			void close() throws IOException {
+				channel.close();
+			}
+		}
+	}
+	
+	/**
+	 * Compares two arrays of ints lexicographically.
+	 * 
+	 * @param a       the first array
+	 * @param aOffset index of the first int compared in the first array
+	 * @param b       the second array
+	 * @param bOffset index of the first int compared in the second array
+	 * @param length  number of the compared ints
+	 * @return a negative number, zero or a positive number if the first ints
+	 *         are less than, equal to or greater than the second ones
+	 */
+	private static int compare(int[] a, int aOffset, int[] b, int bOffset, int length) {
+		for(int i = 0; i < length; i++) {
+			if(a[aOffset + i] != b[bOffset + i]) return Integer.compare(a[aOffset + i], b[bOffset + i]);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Writes the contents of the given buffer to the given file and empties
+	 * the buffer.
+	 * 
+	 * @param out    the file
+	 * @param buffer the buffer
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) out.write(buffer);
+		buffer.clear();
+	}
+	
+	/**
+	 * Reads the next part of the given file into the given buffer, keeping
+	 * its remaining contents.
+	 * 
+	 * @param in      the file
+	 * @param buffer  the buffer
+	 * @param minimum number of the bytes needed
+	 * @return {@code true} if the buffer holds the needed bytes, {@code false}
+	 *         at the end of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	private static boolean read(FileChannel in, ByteBuffer buffer, int minimum) throws IOException {
+		buffer.compact();
+		while(buffer.position() < minimum && in.read(buffer) >= 0) {
+			// The buffer is filled until it holds the needed bytes.
+		}
+		buffer.flip();
+		return buffer.remaining() >= minimum;
+	}
+	
+	/**
+	 * Returns the file of the blocks of the given pass.
+	 * 
+	 * @param pass the pass
+	 * @return the file
+	 */
+	private Path blocksFile(int pass) {
+		return directory.resolve("blocks" + pass + ".bin");
+	}
+	
+	/**
+	 * Writes the names of the states and of the symbols, the alphabet and the
+	 * initial state, so that a minimization can be resumed.
+	 * 
+	 * @throws IOException if a file cannot be written
+	 */
+	private void writeHeader() throws IOException {
+		try(Writer out = Files.newBufferedWriter(directory.resolve(NAMES), StandardCharsets.UTF_8)) {
+			for(int state = 0; state < stateNames.size(); state++) {
+				out.write(stateNames.name(state));
+				out.write('\n');
+			}
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.join(",", symbolNames)).append('\n');
+		for(int i = 0; i < alphabet.length; i++) {
+			if(i > 0) sb.append(',');
+			sb.append(alphabet[i]);
+		}
+		sb.append('\n').append(initialState).append('\n');
+		
+		Files.write(directory.resolve(HEADER), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Records the last completed pass. The record is written to the disk and
+	 * then replaces the old one at once, so it is never left half written,
+	 * and the directory is synced so that the replacement survives a crash.
+	 * 
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeProgress() throws IOException {
+		Path temporary = directory.resolve(PROGRESS + ".tmp");
+		ByteBuffer record = ByteBuffer.wrap((pass + " " + blockCount + " " + stable + "\n").getBytes(StandardCharsets.UTF_8));
+		
+		try(FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(record.hasRemaining()) out.write(record);
+			out.force(true);
+		}
+		Files.move(temporary, directory.resolve(PROGRESS), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		try(FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch(IOException e) {
+			// Some platforms cannot open a directory, there the atomic move is all that can be done.
+		}
+	}
+	
+	/**
+	 * Reads the files of an interrupted minimization.
+	 * 
+	 * @throws IOException if a file cannot be read
+	 */
+	private void resume() throws IOException {
+		stateNames = new SymbolTable();
+		try(BufferedReader in = Files.newBufferedReader(directory.resolve(NAMES), StandardCharsets.UTF_8)) {
+			for(String name = in.readLine(); name != null; name = in.readLine()) {
+				stateNames.intern(name);
+			}
+		}
+		
+		List<String> header = Files.readAllLines(directory.resolve(HEADER), StandardCharsets.UTF_8);
+		symbolNames = header.get(0).isEmpty() ? new String[0] : DefinitionReader.split(header.get(0), ",");
+		alphabet = header.get(1).isEmpty() ? new int[0] : Arrays.stream(header.get(1).split(",")).mapToInt(Integer::parseInt).toArray();
+		initialState = Integer.parseInt(header.get(2));
+		
+		String[] progress = Files.readAllLines(directory.resolve(PROGRESS), StandardCharsets.UTF_8).get(0).split(" ");
+		pass = Integer.parseInt(progress[0]);
+		blockCount = Integer.parseInt(progress[1]);
+		stable = Boolean.parseBoolean(progress[2]);
+		
+		transitions = new MappedIntArray(directory.resolve(TRANSITIONS), (long) stateNames.size() * symbolNames.length);
+	}
+	
+	/**
+	 * Returns the number of the states of the minimal DFA.
+	 * 
+	 * @return number of the states
+	 */
+	public int getStateCount() {
+		return blockCount;
+	}
+	
+	/**
+	 * Writes the minimal DFA in the format of {@link MinDka}. The states are
+	 * written in the alphabetical order of their names.
+	 * 
+	 * @param out the destination of the definition
+	 * @throws IOException if a file cannot be read or the definition cannot be written
+	 */
+	public void writeDefinition(Appendable out) throws IOException {
+		String lineSeparator = System.lineSeparator();
+		String[] sorted = stateNames.names();
+		Arrays.sort(sorted);
+		
+		try(MappedIntArray finalBlocks = new MappedIntArray(blocksFile(0), stateNames.size());
+				MappedIntArray blocks = new MappedIntArray(blocksFile(pass), stateNames.size());
+				MappedIntArray representatives = new MappedIntArray(directory.resolve(REPRESENTATIVES), blockCount)) {
+			representatives.fill(-1);
+			
+			// The representative of a block is its first state in the alphabetical order.
+			for(String name : sorted) {
+				int state = stateNames.id(name);
+				int block = blocks.get(state);
+				if(block >= 0 && representatives.get(block) < 0) representatives.set(block, state);
+			}
+			
+			for(int pick = 0; pick < 2; pick++) {
+				boolean first = true;
+				
+				for(String name : sorted) {
+					int state = stateNames.id(name);
+					int block = blocks.get(state);
+					if(block < 0 || representatives.get(block) != state || pick == 1 && finalBlocks.get(state) != 1) continue;
+					
+					if(!first) out.append(',');
+					out.append(name);
+					first = false;
+				}
+				out.append(lineSeparator);
+				
+				if(pick == 0) {
+					for(int i = 0; i < alphabet.length; i++) {
+						if(i > 0) out.append(',');
+						out.append(symbolNames[alphabet[i]]);
+					}
+					out.append(lineSeparator);
+				}
+			}
+			
+			out.append(stateNames.name(representatives.get(blocks.get(initialState)))).append(lineSeparator);
+			
+			for(String name : sorted) {
+				int state = stateNames.id(name);
+				int block = blocks.get(state);
+				if(block < 0 || representatives.get(block) != state) continue;
+				
+				for(int symbol : alphabet) {
+					int next = transitions.get((long) state * symbolNames.length + symbol);
+					
+					out.append(name).append(',').append(symbolNames[symbol]).append("->")
+					   .append(next == TransitionTable.NONE ? "null" : stateNames.name(representatives.get(blocks.get(next))))
+					   .append(lineSeparator);
+				}
+			}
+		}
+		Files.delete(directory.resolve(REPRESENTATIVES));
+	}
+	
+	/**
+	 * Deletes the files of the working directory, including those left by an
+	 * interrupted pass, and the directory itself if it is left empty.
+	 * 
+	 * @throws IOException if a file cannot be deleted
+	 */
+	public void deleteFiles() throws IOException {
+		if(transitions != null) transitions.close();
+		
+		List<String> names = List.of(PARSED, TRANSITIONS, NAMES, HEADER, PROGRESS, PROGRESS + ".tmp", QUEUE, REPRESENTATIVES);
+		try(Stream<Path> files = Files.list(directory)) {
+			for(Path file : (Iterable<Path>) files::iterator) {
+				String name = file.getFileName().toString();
+				if(names.contains(name) || name.matches("(blocks|run)\\d+\\.bin")) Files.delete(file);
+			}
+		}
+		
+		try(Stream<Path> rest = Files.list(directory)) {
+			if(rest.findAny().isEmpty()) Files.delete(directory);
+		}
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Minimizes the DFA of the file given as the first argument, and prints
+	 * it in the format of {@link MinDka}. The options, which follow the file,
+	 * are:
+	 * <ul>
+	 * <li><b>--dir=path</b> - the working directory, the file followed by
+	 * ".min" by default. A minimization which was interrupted is continued
+	 * from its files, which are deleted once the DFA is printed.</li>
+	 * <li><b>--memory=n</b> - the memory budget of the sorting of signatures
+	 * in MiB, 256 by default</li>
+	 * </ul>
+	 * 
+	 * @param args the file and the options
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) throw new IllegalArgumentException("Expected the file of the DFA");
+		
+		Path definition = Paths.get(args[0]);
+		Path directory = Paths.get(args[0] + ".min");
+		long memory = DEFAULT_MEMORY;
+		
+		for(int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--dir=":		directory = Paths.get(value); break;
+				case "--memory=":	memory = Long.parseLong(value) << 20; break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		ExternalMinimization minimization = new ExternalMinimization(directory, memory);
+		minimization.minimize(definition);
+		
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		minimization.writeDefinition(out);
+		out.flush();
+		
+		minimization.deleteFiles();
+	}
+}
@@ -0,0 +1,121 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An array of ints kept in a file, which is mapped into memory in windows so
+ * that the array can be longer than the largest mapping.
+ * 
+ * @author Filip Nemec
+ */
+class MappedIntArray implements Closeable {
+	
+	/** Binary logarithm of the number of ints in a window. */
+	private static final int WINDOW_SHIFT = 28;
+	
+	/** Mask of the index of an int within its window. */
+	private static final long WINDOW_MASK = (1L << WINDOW_SHIFT) - 1;
+	
+	/** The file. */
+	private final FileChannel channel;
+	
+	/** The mapped windows of the file. */
+	private final MappedByteBuffer[] mapped;
+	
+	/** The windows, viewed as ints. */
+	private final IntBuffer[] windows;
+	
+	/** Number of the ints. */
+	private final long length;
+	
+	/**
+	 * Maps the given file, which is created or resized to hold the given
+	 * number of ints if needed.
+	 * 
+	 * @param file   the file
+	 * @param length number of the ints
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	MappedIntArray(Path file, long length) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		this.length = length;
+		
+		int windowCount = (int) ((length + WINDOW_MASK) >>> WINDOW_SHIFT);
+		mapped = new MappedByteBuffer[windowCount];
+		windows = new IntBuffer[windowCount];
+		
+		try {
+			for(int window = 0; window < windowCount; window++) {
+				long start = (long) window << WINDOW_SHIFT;
+				long size = Math.min(1L << WINDOW_SHIFT, length - start);
+				
+				mapped[window] = channel.map(FileChannel.MapMode.READ_WRITE, 4 * start, 4 * size);
+				windows[window] = mapped[window].order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the int at the given index.
+	 * 
+	 * @param index the index
+	 * @return the int
+	 */
+	int get(long index) {
+		return windows[(int) (index >>> WINDOW_SHIFT)].get((int) (index & WINDOW_MASK));
+	}
+	
+	/**
+	 * Sets the int at the given index.
+	 * 
+	 * @param index the index
+	 * @param value the int
+	 */
+	void set(long index, int value) {
+		windows[(int) (index >>> WINDOW_SHIFT)].put((int) (index & WINDOW_MASK), value);
+	}
+	
+	/**
+	 * Sets every int to the given value.
+	 * 
+	 * @param value the value
+	 */
+	void fill(int value) {
+		for(IntBuffer window : windows) {
+			for(int i = 0; i < window.limit(); i++) {
+				window.put(i, value);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of the ints.
+	 * 
+	 * @return the length
+	 */
+	long length() {
+		return length;
+	}
+	
+	/**
+	 * Writes the changes of the ints to the file.
+	 */
+	void force() {
+		for(MappedByteBuffer window : mapped) {
+			window.force();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
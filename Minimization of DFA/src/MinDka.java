@@ -1,13 +1,14 @@
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Scanner;
-import java.util.Set;
-import java.util.TreeSet;
+
+import automaton.Counter;
+import automaton.DefinitionReader;
+import automaton.LatencyHistogram;
+import automaton.MetricRegistry;
+import automaton.StateSet;
+import automaton.SymbolTable;
+import automaton.TransitionTable;
 
 /**
  * Class that represents a deterministic finite automata
@@ -15,370 +16,674 @@ import java.util.TreeSet;
  * <p>
  * It uses the equivalence and divide method for achieving
  * the minimal possible automata.
+ * <p>
+ * The states and the symbols are numbered in the alphabetical order of their
+ * names, so every set of states, kept in a {@link StateSet} or in an ascending
+ * array of ids, is visited in the order in which it is printed.
+ * <p>
+ * Given a {@link MetricRegistry}, the DFA counts the minimizations, their
+ * rounds of refinement of the partitions and the states they removed, times
+ * them, and counts the sequences it checks.
  * 
  * @author Filip Nemec
  */
 public class MinDka {
 	
+	/** Names of all the states, numbered in the alphabetical order. */
+	private SymbolTable stateNames = new SymbolTable();
+	
+	/** Names of all the symbols, numbered in the alphabetical order. */
+	private SymbolTable symbolNames = new SymbolTable();
+	
 	/** All the possible states that this automata can be in. */
-	private Set<String> states = new TreeSet<>();
+	private StateSet states = new StateSet(0);
 	
-	/** All the possible symbols in the alphabet. */
-	private Set<String> alphabet = new TreeSet<>();
+	/** All the possible symbols in the alphabet, in ascending order. */
+	private int[] alphabet = new int[0];
 	
 	/** Set of all the final (accepted) states. */
-	private Set<String> finalStates = new TreeSet<>();
+	private StateSet finalStates = new StateSet(0);
 	
 	/** The starting state for this automata. */
-	private String initialState;
+	private int initialState = TransitionTable.NONE;
 	
 	/** Defines the next state for certain state-symbol pair. */
-	private Map<StateSymbolPair, String> transitionFunction = new HashMap<>();
+	private TransitionTable transitionFunction = new TransitionTable(0, 0);
+	
+	/** Counts the minimizations, or {@code null} if no metrics are collected. */
+	private Counter minimizationCount;
+	
+	/** Counts the rounds of refinement of the partitions, or {@code null} if no metrics are collected. */
+	private Counter refinementRounds;
+	
+	/** Counts the states removed by the minimizations, or {@code null} if no metrics are collected. */
+	private Counter removedStates;
+	
+	/** The running times of the minimizations, or {@code null} if no metrics are collected. */
+	private LatencyHistogram minimizationTimes;
+	
+	/** Counts the checked sequences, or {@code null} if no metrics are collected. */
+	private Counter sequenceCount;
 	
 	/**
-	 * Initializes this deterministic finite automata.
+	 * Constructs a new deterministic finite automata without any states,
+	 * whose definition is read by {@link #initialize()}.
+	 */
+	public MinDka() {
+	}
+	
+	/**
+	 * Constructs a new deterministic finite automata from the given definition.
+	 * 
+	 * @param reader the reader of the definition, described by {@link #main(String[])}
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 */
+	public MinDka(DefinitionReader reader) {
+		initialize(reader);
+	}
+	
+	/**
+	 * Initializes this deterministic finite automata from the definition
+	 * read from the standard input, replacing its current definition.
+	 * 
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
 	 */
 	public void initialize() {
-		try(Scanner scanner = new Scanner(System.in)) {
-			states.	 	addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			alphabet.	addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			finalStates.addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			initialState = scanner.nextLine().trim();
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			initialize(reader);
+		}
+	}
+	
+	/**
+	 * Initializes this deterministic finite automata from the given definition.
+	 * 
+	 * @param reader the reader of the definition, described by {@link #main(String[])}
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 */
+	private void initialize(DefinitionReader reader) {
+		// The names are interned in the order in which they are first seen,
+		// and numbered alphabetically once all of them are known.
+		SymbolTable stateList = new SymbolTable();
+		SymbolTable alphabetList = new SymbolTable();
+		SymbolTable finalList = new SymbolTable();
+		SymbolTable allStates = new SymbolTable();
+		SymbolTable allSymbols = new SymbolTable();
+		
+		reader.requireLine();
+		while(reader.hasField(",")) allStates.intern(stateList.name(reader.field(stateList, ",")));
+		reader.requireLine();
+		while(reader.hasField(",")) allSymbols.intern(alphabetList.name(reader.field(alphabetList, ",")));
+		reader.requireLine();
+		while(reader.hasField(",")) allStates.intern(finalList.name(reader.field(finalList, ",")));
+		reader.requireLine();
+		int initial = reader.rest(allStates);
+		
+		// Every transition is stored as its state, its symbol and its next state.
+		int[] definedTransitions = new int[3 * 64];
+		int size = 0;
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) break;
 			
-			while(scanner.hasNextLine()) {
-				String line = scanner.nextLine().trim();
-				
-				if(line.isEmpty()) break;
-				
-				String[] transition = line.split("->");
-				String[] stateSymbolPair = transition[0].split(",");
-				String nextState = transition[1];
+			if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int state = reader.field(allStates, ",");
+			if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int symbol = reader.field(allSymbols, ",");
+			if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			reader.endSection();
+			
+			if(size == definedTransitions.length) definedTransitions = Arrays.copyOf(definedTransitions, 2 * size);
+			definedTransitions[size++] = state;
+			definedTransitions[size++] = symbol;
+			definedTransitions[size++] = reader.rest(allStates);
+		}
+		
+		stateNames = sorted(allStates);
+		symbolNames = sorted(allSymbols);
+		
+		states = new StateSet(stateNames.size());
+		for(int i = 0; i < stateList.size(); i++) states.add(stateNames.id(stateList.name(i)));
+		
+		finalStates = new StateSet(stateNames.size());
+		for(int i = 0; i < finalList.size(); i++) finalStates.add(stateNames.id(finalList.name(i)));
+		
+		alphabet = new int[alphabetList.size()];
+		for(int i = 0; i < alphabet.length; i++) alphabet[i] = symbolNames.id(alphabetList.name(i));
+		Arrays.sort(alphabet);
+		
+		initialState = stateNames.id(allStates.name(initial));
+		
+		int[] stateRank = rank(allStates, stateNames);
+		int[] symbolRank = rank(allSymbols, symbolNames);
+		
+		transitionFunction = new TransitionTable(stateNames.size(), symbolNames.size());
+		for(int i = 0; i < size; i += 3) {
+			transitionFunction.set(stateRank[definedTransitions[i]], symbolRank[definedTransitions[i + 1]], stateRank[definedTransitions[i + 2]]);
+		}
+	}
+	
+	/**
+	 * Constructs a new deterministic finite automata from its transition
+	 * table, without writing and reading the text of its definition. Every
+	 * state and every symbol of the table is a state and a symbol of the
+	 * automata.
+	 * 
+	 * @param stateNames   names of the states, indexed by the states of the table
+	 * @param symbolNames  names of the symbols, indexed by the symbols of the table
+	 * @param finalStates  whether every state is final
+	 * @param initialState the initial state
+	 * @param transitions  the next state of every state and symbol, or
+	 *                     {@link TransitionTable#NONE} if there is none
+	 * @throws IllegalArgumentException if a name is repeated, or the sizes or
+	 *                                  the states do not match the names
+	 */
+	public MinDka(String[] stateNames, String[] symbolNames, boolean[] finalStates, int initialState, TransitionTable transitions) {
+		SymbolTable allStates = new SymbolTable(stateNames);
+		SymbolTable allSymbols = new SymbolTable(symbolNames);
+		
+		if(allStates.size() != stateNames.length || allSymbols.size() != symbolNames.length)
+			throw new IllegalArgumentException("The names of the states and of the symbols must be distinct");
+		
+		if(finalStates.length != stateNames.length || transitions.getStateCount() != stateNames.length
+				|| transitions.getSymbolCount() != symbolNames.length)
+			throw new IllegalArgumentException("The transition table does not match the states and the symbols");
+		
+		if(initialState < 0 || initialState >= stateNames.length)
+			throw new IllegalArgumentException("Invalid initial state '" + initialState + "'");
+		
+		this.stateNames = sorted(allStates);
+		this.symbolNames = sorted(allSymbols);
+		
+		int[] stateRank = rank(allStates, this.stateNames);
+		int[] symbolRank = rank(allSymbols, this.symbolNames);
+		
+		states = new StateSet(stateNames.length);
+		this.finalStates = new StateSet(stateNames.length);
+		for(int state = 0; state < stateNames.length; state++) {
+			states.add(stateRank[state]);
+			if(finalStates[state]) this.finalStates.add(stateRank[state]);
+		}
+		
+		alphabet = new int[symbolNames.length];
+		for(int symbol = 0; symbol < alphabet.length; symbol++) alphabet[symbol] = symbol;
+		
+		this.initialState = stateRank[initialState];
+		
+		transitionFunction = new TransitionTable(stateNames.length, symbolNames.length);
+		for(int state = 0; state < stateNames.length; state++) {
+			for(int symbol = 0; symbol < symbolNames.length; symbol++) {
+				int next = transitions.get(state, symbol);
+				if(next == TransitionTable.NONE) continue;
 				
-				StateSymbolPair pair = new StateSymbolPair(stateSymbolPair[0], stateSymbolPair[1]);
+				if(next < 0 || next >= stateNames.length)
+					throw new IllegalArgumentException("Invalid next state '" + next + "' of state '" + stateNames[state] + "'");
 				
-				transitionFunction.put(pair, nextState);
+				transitionFunction.set(stateRank[state], symbolRank[symbol], stateRank[next]);
 			}
 		}
 	}
 	
+	/**
+	 * Returns a new table of the names of the given one, numbered in the
+	 * alphabetical order.
+	 * 
+	 * @param names the names
+	 * @return the sorted names
+	 */
+	private static SymbolTable sorted(SymbolTable names) {
+		String[] sorted = names.names();
+		Arrays.sort(sorted);
+		return new SymbolTable(sorted);
+	}
+	
+	/**
+	 * Returns the id in the given sorted table of every name of the given table.
+	 * 
+	 * @param names  the names
+	 * @param sorted the same names, numbered in the alphabetical order
+	 * @return the sorted ids, indexed by the ids of the names
+	 */
+	private static int[] rank(SymbolTable names, SymbolTable sorted) {
+		int[] rank = new int[names.size()];
+		for(int i = 0; i < rank.length; i++) {
+			rank[i] = sorted.id(names.name(i));
+		}
+		return rank;
+	}
+	
+	/**
+	 * Sets the registry to which the metrics of this DFA are added, named
+	 * <b>dfa.minimizations</b>, <b>dfa.refinementRounds</b>,
+	 * <b>dfa.removedStates</b>, <b>dfa.minimizationTime</b> and
+	 * <b>dfa.sequences</b>.
+	 * 
+	 * @param registry the registry, or {@code null} to collect no metrics
+	 */
+	public void setMetricRegistry(MetricRegistry registry) {
+		minimizationCount = registry == null ? null : registry.counter("dfa.minimizations");
+		refinementRounds = registry == null ? null : registry.counter("dfa.refinementRounds");
+		removedStates = registry == null ? null : registry.counter("dfa.removedStates");
+		minimizationTimes = registry == null ? null : registry.histogram("dfa.minimizationTime");
+		sequenceCount = registry == null ? null : registry.counter("dfa.sequences");
+	}
+	
 	/**
 	 * Minimizes this deterministic finite automata using
 	 * the dividing method.
 	 */
 	public void minimize() {
-		findAllReachableStates();
+		long start = minimizationCount == null ? 0 : System.nanoTime();
+		int stateCount = states.size();
 		
-		Set<String> nonAccepted = new TreeSet<>();
-		Set<String> accepted = new TreeSet<>();
+		findAllReachableStates();
 		
-		states.forEach(state -> {
-			if(finalStates.contains(state)) {
-				accepted.add(state);
-			} else {
-				nonAccepted.add(state);
-			}
-		});
+		// An empty partition would be dropped by the first round, which
+		// would then not seem to have divided any partition.
+		List<int[]> allPartitions = new ArrayList<>();
+		for(int[] partition : new int[][] { select(states, true), select(states, false) }) {
+			if(partition.length > 0) allPartitions.add(partition);
+		}
 		
-		List<Set<String>> allPartitions = new LinkedList<Set<String>>();
-		allPartitions.add(accepted);
-		allPartitions.add(nonAccepted);
-
-		List<Set<String>> equivalentStates = minimizeRecursive(allPartitions);
-		Map<String, String> excessStateToFirst = new HashMap<>();
+		List<int[]> equivalentStates = minimizePartitions(allPartitions);
+		int[] excessStateToFirst = new int[stateNames.size()];
+		Arrays.fill(excessStateToFirst, TransitionTable.NONE);
 		
 		// Remove all excess states.
-		for(Set<String> sameStateSet : equivalentStates) {
-			Iterator<String> iter = sameStateSet.iterator();
-			String first = iter.next();
+		for(int[] sameStateSet : equivalentStates) {
+			int first = sameStateSet[0];
 			
-			while(iter.hasNext()) {
-				String excessState = iter.next();
-				
-				excessStateToFirst.put(excessState, first);
-				states.remove(excessState);
+			for(int i = 1; i < sameStateSet.length; i++) {
+				excessStateToFirst[sameStateSet[i]] = first;
+				states.remove(sameStateSet[i]);
 			}
 		}
 		
 		// Remove all transitions to the excess states.
-		for(String state : states) {
-			for(String symbol : alphabet) {
-				StateSymbolPair pair = new StateSymbolPair(state, symbol);
-				String nextState = transitionFunction.get(pair);
+		for(int state = states.next(0); state >= 0; state = states.next(state + 1)) {
+			for(int symbol : alphabet) {
+				int nextState = transitionFunction.get(state, symbol);
 				
-				if(!states.contains(nextState)) {
-					transitionFunction.put(pair, excessStateToFirst.get(nextState));
+				if(nextState == TransitionTable.NONE || !states.contains(nextState)) {
+					transitionFunction.set(state, symbol, nextState == TransitionTable.NONE ? nextState : excessStateToFirst[nextState]);
 				}
 			}
 		}
 		
 		// Remove all excess final states.
-		Iterator<String> iter = finalStates.iterator();
-		while(iter.hasNext()) {
-			String state = iter.next();
+		for(int state = finalStates.next(0); state >= 0; state = finalStates.next(state + 1)) {
 			if(!states.contains(state)) {
-				iter.remove();
+				finalStates.remove(state);
 			}
 		}
 		
 		// Checking if the initial state is excess.
 		// If yes, we need to change initial state to replacing state.
 		if(!states.contains(initialState)) {
-			initialState = excessStateToFirst.get(initialState);
+			initialState = excessStateToFirst[initialState];
+		}
+		
+		if(minimizationCount != null) {
+			minimizationCount.increment();
+			removedStates.add(stateCount - states.size());
+			minimizationTimes.record(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Checks whether this DFA accepts the given sequence of symbols. The DFA
+	 * rejects the sequence as soon as it has no transition for a symbol, and
+	 * the empty sequence is accepted if the initial state is final.
+	 * <p>
+	 * The DFA is not modified, so the method can be called from several
+	 * threads at once.
+	 * 
+	 * @param sequence the sequence of symbols separated by ','
+	 * @return {@code true} if the sequence is accepted, {@code false} otherwise
+	 */
+	public boolean accepts(String sequence) {
+		if(sequenceCount != null) sequenceCount.increment();
+		
+		int state = initialState;
+		if(sequence.isEmpty()) return finalStates.contains(state);
+		
+		for(String name : DefinitionReader.split(sequence, ",")) {
+			int symbol = symbolNames.id(name);
+			if(symbol == SymbolTable.NONE) return false;
+			
+			state = transitionFunction.get(state, symbol);
+			if(state == TransitionTable.NONE) return false;
 		}
+		
+		return finalStates.contains(state);
 	}
 	
 	/**
-	 * Prints the current definition of this DFA. "Current"
+	 * Returns a matcher which reads many sequences with the current
+	 * transitions of this DFA at once, as described by {@link StreamMatcher}.
+	 * Later changes of this DFA do not affect the matcher.
+	 * 
+	 * @return the matcher
+	 */
+	public StreamMatcher matcher() {
+		boolean[] accepting = new boolean[stateNames.size()];
+		for(int state = finalStates.next(0); state >= 0; state = finalStates.next(state + 1)) {
+			accepting[state] = true;
+		}
+		
+		return new StreamMatcher(symbolNames, transitionFunction, initialState, accepting);
+	}
+	
+	/**
+	 * Returns the current definition of this DFA. "Current"
 	 * because the definition can change if {@linkplain #minimize()}
 	 * method is called upon this DFA.
+	 * 
+	 * @return the definition, in the format read by {@link #main(String[])}
+	 */
+	public String getDefinition() {
+		StringBuilder sb = new StringBuilder();
+		
+		appendSet(sb, states, stateNames);
+		appendAlphabet(sb);
+		appendSet(sb, finalStates, stateNames);
+		sb.append(name(initialState)).append(System.lineSeparator());
+		appendTransitions(sb);
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Returns the names of the symbols of the alphabet, in the order in which
+	 * {@link #getDefinition()} lists them.
+	 * 
+	 * @return the names of the symbols
+	 */
+	public String[] getSymbolNames() {
+		String[] names = new String[alphabet.length];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = symbolNames.name(alphabet[i]);
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the current transitions of this DFA without the text of its
+	 * definition. The states are numbered from 0 in the order in which
+	 * {@link #getDefinition()} lists them, and the symbols as returned by
+	 * {@link #getSymbolNames()}.
+	 * 
+	 * @return the next state of every state and symbol, or
+	 *         {@link TransitionTable#NONE} if there is none
+	 */
+	public TransitionTable getTransitions() {
+		int[] numbers = numbers();
+		TransitionTable table = new TransitionTable(states.size(), alphabet.length);
+		
+		for(int state = states.next(0); state >= 0; state = states.next(state + 1)) {
+			for(int i = 0; i < alphabet.length; i++) {
+				int next = transitionFunction.get(state, alphabet[i]);
+				if(next != TransitionTable.NONE) table.set(numbers[state], i, numbers[next]);
+			}
+		}
+		return table;
+	}
+	
+	/**
+	 * Returns which of the current states are final, numbered as by
+	 * {@link #getTransitions()}.
+	 * 
+	 * @return whether every state is final
+	 */
+	public boolean[] getFinalStates() {
+		int[] numbers = numbers();
+		boolean[] accepting = new boolean[states.size()];
+		
+		for(int state = finalStates.next(0); state >= 0; state = finalStates.next(state + 1)) {
+			if(states.contains(state)) accepting[numbers[state]] = true;
+		}
+		return accepting;
+	}
+	
+	/**
+	 * Returns the initial state, numbered as by {@link #getTransitions()}.
+	 * 
+	 * @return the initial state
+	 */
+	public int getInitialState() {
+		return numbers()[initialState];
+	}
+	
+	/**
+	 * Numbers the current states from 0 in ascending order.
+	 * 
+	 * @return the number of every current state, indexed by its id
+	 */
+	private int[] numbers() {
+		int[] numbers = new int[stateNames.size()];
+		int count = 0;
+		
+		for(int state = states.next(0); state >= 0; state = states.next(state + 1)) {
+			numbers[state] = count++;
+		}
+		return numbers;
+	}
+	
+	/**
+	 * Prints the current definition of this DFA, as returned
+	 * by {@link #getDefinition()}.
 	 */
 	public void printDefinition() {
-		printSet(states);
-		printSet(alphabet);
-		printSet(finalStates);
-		System.out.println(initialState);
-		printTransitions();
+		System.out.print(getDefinition());
 	}
 	
 	/**
-	 * Prints all of the transitions that this DFA has.
+	 * Appends all of the transitions that this DFA has.
+	 * 
+	 * @param sb the builder to which the transitions are appended
 	 */
-	private void printTransitions() {
-		for(String state : states) {
-			for(String symbol : alphabet) {
-				StateSymbolPair pair = new StateSymbolPair(state, symbol);
-				String nextState = transitionFunction.get(pair);
-				System.out.println(state + "," + symbol + "->" + nextState);
+	private void appendTransitions(StringBuilder sb) {
+		for(int state = states.next(0); state >= 0; state = states.next(state + 1)) {
+			for(int symbol : alphabet) {
+				int nextState = transitionFunction.get(state, symbol);
+				sb.append(stateNames.name(state)).append(',').append(symbolNames.name(symbol)).append("->")
+				  .append(name(nextState)).append(System.lineSeparator());
 			}
 		}
 	}
 	
 	/**
-	 * Helping method used to print the given {@code String} set.
+	 * Helping method used to append the given set of states.
+	 * 
+	 * @param sb    the builder to which the set is appended
+	 * @param set   the set to be appended
+	 * @param names the names of the states
+	 */
+	private static void appendSet(StringBuilder sb, StateSet set, SymbolTable names) {
+		int first = set.next(0);
+		
+		for(int state = first; state >= 0; state = set.next(state + 1)) {
+			if(state != first) sb.append(',');
+			sb.append(names.name(state));
+		}
+		sb.append(System.lineSeparator());
+	}
+	
+	/**
+	 * Appends the alphabet.
 	 * 
-	 * @param set the set to be printed
+	 * @param sb the builder to which the alphabet is appended
 	 */
-	private void printSet(Set<String> set) {
-		if(set.isEmpty()) {
-			System.out.println();
-			return;
+	private void appendAlphabet(StringBuilder sb) {
+		for(int i = 0; i < alphabet.length; i++) {
+			if(i > 0) sb.append(',');
+			sb.append(symbolNames.name(alphabet[i]));
 		}
+		sb.append(System.lineSeparator());
+	}
+	
+	/**
+	 * Returns the name of the given state.
+	 * 
+	 * @param state the state, or {@link TransitionTable#NONE}
+	 * @return the name of the state, or "null" if there is no state
+	 */
+	private String name(int state) {
+		return state == TransitionTable.NONE ? "null" : stateNames.name(state);
+	}
+	
+	/**
+	 * Returns the states of the given set which are final, or which are not.
+	 * 
+	 * @param set   the states
+	 * @param accepted whether the final or the other states are returned
+	 * @return the selected states, in ascending order
+	 */
+	private int[] select(StateSet set, boolean accepted) {
+		int[] selected = new int[set.size()];
+		int count = 0;
 		
-		Iterator<String> iter = set.iterator();
-		while(true) {
-			System.out.print(iter.next());
-			
-			if(!iter.hasNext()) {
-				System.out.println();
-				break;
+		for(int state = set.next(0); state >= 0; state = set.next(state + 1)) {
+			if(finalStates.contains(state) == accepted) {
+				selected[count++] = state;
 			}
-			System.out.print(",");
 		}
+		return Arrays.copyOf(selected, count);
 	}
 	
 	/**
 	 * Minimizes all of the given partitions and returns the list
-	 * of sets each holding states that are equivalent one to another.
+	 * of arrays each holding states that are equivalent one to another.
+	 * The partitions are divided until no partition can be divided
+	 * any further.
 	 * 
 	 * @param allPartitions all the partitions that need to be minimizes
-	 * @return list of sets each holding states that are equivalent
+	 * @return list of arrays each holding states that are equivalent
 	 */
-	private List<Set<String>> minimizeRecursive(List<Set<String>> allPartitions) {
-		List<Set<String>> newPartitions = new LinkedList<Set<String>>();
+	private List<int[]> minimizePartitions(List<int[]> allPartitions) {
+		int[] partitionOf = new int[stateNames.size()];
 		
-		for(Set<String> partition : allPartitions) {
-			if(partition.size() == 1) {
-				newPartitions.add(partition);
-				continue;
+		for(int round = 1; ; round++) {
+			Arrays.fill(partitionOf, -1);
+			for(int i = 0; i < allPartitions.size(); i++) {
+				for(int state : allPartitions.get(i)) {
+					partitionOf[state] = i;
+				}
 			}
 			
-			List<Set<String>> splittedPartitions = processPartition(partition, allPartitions);
+			List<int[]> newPartitions = new ArrayList<>();
 			
-			if(splittedPartitions != null) {
-				splittedPartitions.forEach(newPartitions::add);
+			for(int[] partition : allPartitions) {
+				if(partition.length == 1) {
+					newPartitions.add(partition);
+					continue;
+				}
+				
+				processPartition(partition, partitionOf, newPartitions);
 			}
+			
+			if(newPartitions.size() <= allPartitions.size()) {
+				if(refinementRounds != null) refinementRounds.add(round);
+				return newPartitions;
+			}
+			
+			allPartitions = newPartitions;
 		}
-		
-		if(newPartitions.size() > allPartitions.size()) {
-			newPartitions = minimizeRecursive(newPartitions);
-		}
-		
-		return newPartitions;
 	}
 	
 	/**
 	 * Processes the given partition by minimizing it into maximal
 	 * number of sub-partitions possible.
 	 * 
-	 * @param partition the partition to minimize
-	 * @param allPartitions list of all partition used by the minimization process
-	 * @return the list of sets that are minimized sub-partitions
+	 * @param partition   the partition to minimize
+	 * @param partitionOf index of the partition of every state, or {@code -1}
+	 * @param result      the list to which the minimized sub-partitions are added
 	 */
-	private List<Set<String>> processPartition(Set<String> partition, List<Set<String>> allPartitions) {
-		if(partition.isEmpty()) return null;
-			
-		List<Set<String>> result = new LinkedList<Set<String>>();
-		Iterator<String> iter = partition.iterator();
+	private void processPartition(int[] partition, int[] partitionOf, List<int[]> result) {
+		if(partition.length == 0) return;
 		
-		Set<String> firstPartition = new TreeSet<>();
-		firstPartition.add(iter.next());
-		result.add(firstPartition);
+		int[][] subPartitions = new int[partition.length][];
+		int[] sizes = new int[partition.length];
+		int count = 0;
 		
-		while(iter.hasNext()) {
-			String checkingState = iter.next();
-			
+		for(int checkingState : partition) {
 			boolean foundMatchingPartition = false;
-			for(Set<String> p : result) {
-				String firstInPartition = p.iterator().next();
-				
-				if(areStatesEquivalent(checkingState, firstInPartition, allPartitions)) {
-					p.add(checkingState);
+			
+			for(int p = 0; p < count; p++) {
+				if(areStatesEquivalent(checkingState, subPartitions[p][0], partitionOf)) {
+					subPartitions[p][sizes[p]++] = checkingState;
 					foundMatchingPartition = true;
 					break;
 				}
 			}
 			
 			if(!foundMatchingPartition) {
-				Set<String> newPartition = new TreeSet<>();
-				newPartition.add(checkingState);
-				result.add(newPartition);
+				subPartitions[count] = new int[partition.length];
+				subPartitions[count][0] = checkingState;
+				sizes[count++] = 1;
 			}
 		}
 		
-		return result;
+		for(int p = 0; p < count; p++) {
+			result.add(Arrays.copyOf(subPartitions[p], sizes[p]));
+		}
 	}
 	
 	/**
 	 * Checks if the given states are equal, depending on the given
 	 * partitioning and transition functions. States will be equal
 	 * if transitions of every single alphabet symbol lead to states
-	 * that are being held in the same partition.
+	 * that are being held in the same partition. A missing transition
+	 * leads to an implicit dead state, which is in a partition of its own,
+	 * so the states are equal only if both of them are missing it.
 	 * 
 	 * @param s1 the first state
 	 * @param s2 the second state
-	 * @param allPartitions the partitions
+	 * @param partitionOf index of the partition of every state, or {@code -1}
 	 * @return {@code true} if equivalent, {@code false} otherwise
 	 */
-	private boolean areStatesEquivalent(String s1, String s2, List<Set<String>> allPartitions) {
-		for(String symbol : alphabet) {
-			String s1toState = transitionFunction.get(new StateSymbolPair(s1, symbol));
-			String s2toState = transitionFunction.get(new StateSymbolPair(s2, symbol));
+	private boolean areStatesEquivalent(int s1, int s2, int[] partitionOf) {
+		for(int symbol : alphabet) {
+			int s1toState = transitionFunction.get(s1, symbol);
+			int s2toState = transitionFunction.get(s2, symbol);
 			
-			for(Set<String> partition : allPartitions) {
-				if(partition.contains(s1toState)) {
-					if(!partition.contains(s2toState))
-						return false;
-					
-					break;
-				}
-			}
+			int s1toPartition = s1toState == TransitionTable.NONE ? -1 : partitionOf[s1toState];
+			int s2toPartition = s2toState == TransitionTable.NONE ? -1 : partitionOf[s2toState];
+			
+			if(s1toPartition != s2toPartition) return false;
 		}
 		
 		return true;
 	}
 	
 	/**
-	 * Finds all of the reachable states using recursive
-	 * approach.
+	 * Finds all of the states that can potentially be reached
+	 * by some input string, following the transitions of every
+	 * symbol, and makes them the states of this automata.
 	 */
 	private void findAllReachableStates() {
-		Set<String> statesToCheck = new TreeSet<>();
-		statesToCheck.add(initialState);
-		
-		Set<String> reachableStates = new TreeSet<>();
-		findAllReachableStatesRecursive(statesToCheck, reachableStates);
-		
-		states = reachableStates;
-	}
-	
-	/**
-	 * Finds all of the states that can potentially
-	 * be reached by some input string.
-	 */
-	private void findAllReachableStatesRecursive(Set<String> statesToCheck, Set<String> reachableStates) {
-		statesToCheck.forEach(reachableStates::add);
+		StateSet reachableStates = new StateSet(stateNames.size());
+		int[] statesToCheck = new int[stateNames.size()];
+		int count = 0;
 		
-		Set<String> newStatesToCheck = new TreeSet<>();
+		reachableStates.add(initialState);
+		statesToCheck[count++] = initialState;
 		
-		for(String wantedState : statesToCheck) {
+		while(count > 0) {
+			int state = statesToCheck[--count];
 			
-			transitionFunction.forEach((pair, state) -> {
-				if(pair.getState().equals(wantedState)) {
-					if(reachableStates.add(state)) {
-						newStatesToCheck.add(state);
-					}
+			for(int symbol = 0; symbol < symbolNames.size(); symbol++) {
+				int nextState = transitionFunction.get(state, symbol);
+				
+				if(nextState != TransitionTable.NONE && reachableStates.add(nextState)) {
+					statesToCheck[count++] = nextState;
 				}
-			});
-		}
-		
-		if(!newStatesToCheck.isEmpty()) {
-			findAllReachableStatesRecursive(newStatesToCheck, reachableStates);
-		}
-	}
-	
-	/**
-	 * Defines a pair (tuple) of state and symbol (state, symbol).
-	 * 
-	 * @author Filip Nemec
-	 */
-	private static class StateSymbolPair implements Comparable<StateSymbolPair> {
-		
-		/** The state. */
-		private String state;
-		
-		/** The symbol. */
-		private String symbol;
-		
-		/**
-		 * Constructs a new state-symbol pair.
-		 * 
-		 * @param state the state
-		 * @param symbol the symbol
-		 */
-		public StateSymbolPair(String state, String symbol) {
-			this.state = state;
-			this.symbol = symbol;
-		}
-		
-		/**
-		 * Returns the state part of this state-symbol pair.
-		 * 
-		 * @return the state part of this state-symbol pair
-		 */
-		public String getState() {
-			return state;
-		}
-		
-		@Override
-		public int hashCode() {
-			return Objects.hash(state, symbol);
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (!(obj instanceof StateSymbolPair))
-				return false;
-			StateSymbolPair other = (StateSymbolPair) obj;
-			return Objects.equals(state, other.state) && Objects.equals(symbol, other.symbol);
+			}
 		}
 		
-		@Override
-		public String toString() {
-			return "(" + state + ", " + symbol + ")";
-		}
-
-		@Override
-		public int compareTo(StateSymbolPair o) {
-			int r = state.compareTo(o.state);
-			
-			if(r != 0) return r;
-			
-			return symbol.compareTo(o.symbol);
-		}
+		states = reachableStates;
 	}
 	
 	/**
@@ -407,11 +712,11 @@ public class MinDka {
 	 * @param args none are used
 	 */
 	public static void main(String[] args) {
-		MinDka nka = new MinDka();
-		
-		nka.initialize();
-		nka.minimize();
-		
-		nka.printDefinition();
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			MinDka dka = new MinDka(reader);
+			
+			dka.minimize();
+			dka.printDefinition();
+		}
 	}
 }
@@ -0,0 +1,343 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import automaton.DefinitionReader;
+import automaton.SymbolTable;
+import automaton.TransitionTable;
+
+/**
+ * Runs a single DFA over many independent sequences of symbols.
+ * <p>
+ * Reading a sequence is a chain of table lookups, each of which has to wait
+ * for the one before it, so a single sequence leaves the processor mostly
+ * idle. The matcher therefore steps {@value #LANES} sequences at once, each
+ * in its own lane: every step reads the next symbol of every lane, so the
+ * lookups of different lanes are independent and overlap. The sequences are
+ * grouped by their lengths, the lanes of a group are stepped together up to
+ * the length of its shortest sequence, and the rest of every sequence, as
+ * well as the sequences which do not fill a group, are read one at a time.
+ * <p>
+ * The table has a row for every state and a dead state, which stands for the
+ * missing transitions, and a column for every symbol and one for the symbols
+ * which are not in the alphabet, so every sequence can be read to its end.
+ * The next states in the table are multiplied by the length of a row.
+ * 
+ * @author Filip Nemec
+ */
+public class StreamMatcher {
+	
+	/** Number of sequences which are stepped at once. */
+	public static final int LANES = 8;
+	
+	/** Names of all the symbols, as numbered by the DFA. */
+	private final SymbolTable symbolNames;
+	
+	/** The column of the symbols which are not in the alphabet. */
+	private final int unknownSymbol;
+	
+	/** Length of a row of the table. */
+	private final int rowLength;
+	
+	/** The next state of every state and symbol, {@code state * rowLength + symbol}. */
+	private final int[] table;
+	
+	/** The initial state, multiplied by the length of a row. */
+	private final int initialState;
+	
+	/** Whether every state is final, indexed by the states. */
+	private final boolean[] accepting;
+	
+	/**
+	 * Constructs a new matcher of the given DFA.
+	 * 
+	 * @param symbolNames        names of all the symbols, as numbered by the DFA
+	 * @param transitionFunction the transitions of the DFA
+	 * @param initialState       the initial state
+	 * @param finalStates        whether every state is final
+	 */
+	StreamMatcher(SymbolTable symbolNames, TransitionTable transitionFunction, int initialState, boolean[] finalStates) {
+		int stateCount = transitionFunction.getStateCount();
+		int deadState = stateCount;
+		
+		this.symbolNames = symbolNames;
+		this.unknownSymbol = transitionFunction.getSymbolCount();
+		this.rowLength = unknownSymbol + 1;
+		this.table = new int[(stateCount + 1) * rowLength];
+		this.initialState = initialState * rowLength;
+		this.accepting = Arrays.copyOf(finalStates, stateCount + 1);
+		
+		Arrays.fill(table, deadState * rowLength);
+		for(int state = 0; state < stateCount; state++) {
+			for(int symbol = 0; symbol < unknownSymbol; symbol++) {
+				int next = transitionFunction.get(state, symbol);
+				if(next != TransitionTable.NONE) table[state * rowLength + symbol] = next * rowLength;
+			}
+		}
+	}
+	
+	/**
+	 * Converts the given sequence into the symbols read by this matcher.
+	 * 
+	 * @param sequence the sequence of symbols separated by ','
+	 * @return the symbols of the sequence
+	 */
+	public int[] encode(String sequence) {
+		if(sequence.isEmpty()) return new int[0];
+		
+		String[] names = DefinitionReader.split(sequence, ",");
+		int[] symbols = new int[names.length];
+		
+		for(int i = 0; i < names.length; i++) {
+			int symbol = symbolNames.id(names[i]);
+			symbols[i] = symbol == SymbolTable.NONE ? unknownSymbol : symbol;
+		}
+		return symbols;
+	}
+	
+	/**
+	 * Checks whether the DFA accepts the given sequence, reading it alone.
+	 * 
+	 * @param sequence the symbols, as returned by {@link #encode(String)}
+	 * @return {@code true} if the sequence is accepted, {@code false} otherwise
+	 */
+	public boolean accepts(int[] sequence) {
+		return finish(initialState, sequence, 0);
+	}
+	
+	/**
+	 * Checks whether the DFA accepts each of the given sequences, stepping
+	 * several of them at once. The results are the same as those of
+	 * {@link #accepts(int[])}.
+	 * 
+	 * @param sequences the sequences, as returned by {@link #encode(String)}
+	 * @return whether every sequence is accepted
+	 */
+	public boolean[] acceptsAll(int[][] sequences) {
+		boolean[] accepted = new boolean[sequences.length];
+		int[] order = byLength(sequences);
+		
+		int i = 0;
+		for(; i + LANES <= order.length; i += LANES) {
+			step(sequences, order, i, accepted);
+		}
+		for(; i < order.length; i++) {
+			accepted[order[i]] = accepts(sequences[order[i]]);
+		}
+		
+		return accepted;
+	}
+	
+	/**
+	 * Returns the indices of the given sequences, ordered by the lengths of
+	 * the sequences.
+	 * 
+	 * @param sequences the sequences
+	 * @return the ordered indices
+	 */
+	private static int[] byLength(int[][] sequences) {
+		long[] keys = new long[sequences.length];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = (long) sequences[i].length << 32 | i;
+		}
+		Arrays.sort(keys);
+		
+		int[] order = new int[keys.length];
+		for(int i = 0; i < order.length; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+	
+	/**
+	 * Reads a group of {@value #LANES} sequences, stepping all of them at once
+	 * up to the length of the first one, which is the shortest.
+	 * 
+	 * @param sequences the sequences
+	 * @param order     the indices of the sequences, ordered by their lengths
+	 * @param first     position of the group in the order
+	 * @param accepted  receives whether every sequence of the group is accepted
+	 */
+	private void step(int[][] sequences, int[] order, int first, boolean[] accepted) {
+		int[] table = this.table;
+		int[] s0 = sequences[order[first]], s1 = sequences[order[first + 1]];
+		int[] s2 = sequences[order[first + 2]], s3 = sequences[order[first + 3]];
+		int[] s4 = sequences[order[first + 4]], s5 = sequences[order[first + 5]];
+		int[] s6 = sequences[order[first + 6]], s7 = sequences[order[first + 7]];
+		
+		int q0 = initialState, q1 = initialState, q2 = initialState, q3 = initialState;
+		int q4 = initialState, q5 = initialState, q6 = initialState, q7 = initialState;
+		
+		int length = s0.length;
+		for(int i = 0; i < length; i++) {
+			q0 = table[q0 + s0[i]];
+			q1 = table[q1 + s1[i]];
+			q2 = table[q2 + s2[i]];
+			q3 = table[q3 + s3[i]];
+			q4 = table[q4 + s4[i]];
+			q5 = table[q5 + s5[i]];
+			q6 = table[q6 + s6[i]];
+			q7 = table[q7 + s7[i]];
+		}
+		
+		accepted[order[first]] = finish(q0, s0, length);
+		accepted[order[first + 1]] = finish(q1, s1, length);
+		accepted[order[first + 2]] = finish(q2, s2, length);
+		accepted[order[first + 3]] = finish(q3, s3, length);
+		accepted[order[first + 4]] = finish(q4, s4, length);
+		accepted[order[first + 5]] = finish(q5, s5, length);
+		accepted[order[first + 6]] = finish(q6, s6, length);
+		accepted[order[first + 7]] = finish(q7, s7, length);
+	}
+	
+	/**
+	 * Reads the rest of a sequence alone.
+	 * 
+	 * @param state    the state reached so far
+	 * @param sequence the sequence
+	 * @param from     index of the first symbol which is not read yet
+	 * @return {@code true} if the sequence is accepted, {@code false} otherwise
+	 */
+	private boolean finish(int state, int[] sequence, int from) {
+		int[] table = this.table;
+		
+		for(int i = from; i < sequence.length; i++) {
+			state = table[state + sequence[i]];
+		}
+		return accepting[state / rowLength];
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Reads the DFA from the file given as the first argument, in the format
+	 * of {@link MinDka}, minimizes it and prints for every line of the
+	 * standard input, a sequence of symbols separated by ',', whether it is
+	 * accepted. The options, which follow the file, are:
+	 * <ul>
+	 * <li><b>--benchmark</b> - instead of printing the results, reads the
+	 * sequences both one at a time and stepping {@value #LANES} at once,
+	 * checks that the results are the same and prints the times</li>
+	 * <li><b>--runs=n</b> - number of runs of the benchmark, 5 by default</li>
+	 * <li><b>--random=n</b> - the sequences are n random sequences over the
+	 * alphabet instead of the lines of the standard input</li>
+	 * <li><b>--length=n</b> - the average length of the random sequences,
+	 * 1000 by default</li>
+	 * </ul>
+	 * 
+	 * @param args the file and the options
+	 * @throws IOException if the file or the standard input cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) throw new IllegalArgumentException("Expected the file of the DFA");
+		
+		boolean benchmark = false;
+		int runs = 5;
+		int randomCount = 0;
+		int length = 1000;
+		
+		for(int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--benchmark":	benchmark = true; break;
+				case "--runs=":		runs = Integer.parseInt(value); break;
+				case "--random=":	randomCount = Integer.parseInt(value); break;
+				case "--length=":	length = Integer.parseInt(value); break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		MinDka dfa;
+		try(DefinitionReader reader = DefinitionReader.open(Paths.get(args[0]))) {
+			dfa = new MinDka(reader);
+		}
+		dfa.minimize();
+		StreamMatcher matcher = dfa.matcher();
+		
+		int[][] sequences = randomCount > 0 ? matcher.random(randomCount, length, new Random(42)) : matcher.read();
+		
+		if(!benchmark) {
+			StringBuilder sb = new StringBuilder();
+			for(boolean accepted : matcher.acceptsAll(sequences)) {
+				sb.append(accepted ? '1' : '0').append(System.lineSeparator());
+			}
+			System.out.print(sb);
+			return;
+		}
+		
+		long symbols = 0;
+		for(int[] sequence : sequences) symbols += sequence.length;
+		
+		long scalarBest = Long.MAX_VALUE;
+		long lanesBest = Long.MAX_VALUE;
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			boolean[] scalar = new boolean[sequences.length];
+			for(int i = 0; i < sequences.length; i++) {
+				scalar[i] = matcher.accepts(sequences[i]);
+			}
+			long middle = System.nanoTime();
+			boolean[] lanes = matcher.acceptsAll(sequences);
+			long end = System.nanoTime();
+			
+			if(!Arrays.equals(scalar, lanes)) throw new IllegalStateException("The results of the lanes differ from the scalar ones");
+			
+			scalarBest = Math.min(scalarBest, middle - start);
+			lanesBest = Math.min(lanesBest, end - middle);
+		}
+		
+		System.out.println(String.format(Locale.ROOT, "%d sequences, %d symbols", sequences.length, symbols));
+		System.out.println(String.format(Locale.ROOT, "  scalar   %8.2f ms, %6.2f ns/symbol", scalarBest / 1e6, scalarBest / (double) Math.max(1, symbols)));
+		System.out.println(String.format(Locale.ROOT, "  %d lanes  %8.2f ms, %6.2f ns/symbol, %.2fx", LANES, lanesBest / 1e6,
+				lanesBest / (double) Math.max(1, symbols), scalarBest / (double) Math.max(1, lanesBest)));
+	}
+	
+	/**
+	 * Reads the sequences from the lines of the standard input.
+	 * 
+	 * @return the sequences
+	 * @throws IOException if the standard input cannot be read
+	 */
+	private int[][] read() throws IOException {
+		List<int[]> sequences = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		
+		for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+			sequences.add(encode(line));
+		}
+		return sequences.toArray(new int[0][]);
+	}
+	
+	/**
+	 * Generates random sequences over the alphabet, whose lengths are spread
+	 * evenly around the given average.
+	 * 
+	 * @param count  number of the sequences
+	 * @param length the average length
+	 * @param random the source of randomness
+	 * @return the sequences
+	 */
+	private int[][] random(int count, int length, Random random) {
+		int[][] sequences = new int[count][];
+		
+		for(int i = 0; i < count; i++) {
+			sequences[i] = new int[length / 2 + random.nextInt(length + 1)];
+			for(int j = 0; j < sequences[i].length; j++) {
+				sequences[i][j] = random.nextInt(Math.max(1, unknownSymbol));
+			}
+		}
+		return sequences;
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Names the symbols of automata whose alphabet is the set of bytes.
+ * <p>
+ * Letters and digits are named by themselves, and every other byte by
+ * <b>\x</b> followed by its two hexadecimal digits, so that no name collides
+ * with the epsilon, the empty set or the separators of the definitions.
+ * 
+ * @author Filip Nemec
+ */
+public final class ByteAlphabet {
+	
+	/** Number of bytes. */
+	public static final int SIZE = 256;
+	
+	/**
+	 * Prevents the construction of this class.
+	 */
+	private ByteAlphabet() {
+	}
+	
+	/**
+	 * Returns the name of the given byte.
+	 * 
+	 * @param b the byte, between 0 and 255
+	 * @return the name of the byte
+	 */
+	public static String name(int b) {
+		if(b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9') {
+			return String.valueOf((char) b);
+		}
+		return String.format("\\x%02X", b);
+	}
+	
+	/**
+	 * Returns the byte of the given name.
+	 * 
+	 * @param name the name
+	 * @return the byte, between 0 and 255
+	 * @throws IllegalArgumentException if the name is not the name of a byte
+	 */
+	public static int parse(String name) {
+		if(name.length() == 1) {
+			int b = name.charAt(0);
+			if(name(b).equals(name)) return b;
+		
+		} else if(name.length() == 4 && name.startsWith("\\x")) {
+			int high = Character.digit(name.charAt(2), 16);
+			int low = Character.digit(name.charAt(3), 16);
+			if(high >= 0 && low >= 0) return high << 4 | low;
+		}
+		
+		throw new IllegalArgumentException("Invalid byte symbol '" + name + "'");
+	}
+}
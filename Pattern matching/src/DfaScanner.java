@@ -0,0 +1,514 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import automaton.DefinitionReader;
+import automaton.SymbolTable;
+import automaton.TransitionTable;
+
+/**
+ * Finds the lines of files which are accepted by a DFA over bytes, reading
+ * the files through memory-mapped windows.
+ * <p>
+ * A line is accepted if the DFA reaches a final state while reading the line
+ * followed by its terminator, so a DFA built by {@link RegexCompiler} accepts
+ * exactly the lines with a match. The DFA starts over from its initial state
+ * at the start of every line.
+ * <p>
+ * The DFA is compiled into a table indexed by the state and the byte, whose
+ * entries are the next states already multiplied by the number of bytes, so
+ * reading a byte costs a single table lookup. All of the final states are
+ * merged into one, since the rest of a line no longer matters once it is
+ * accepted, and so are all of the states from which no final state can be
+ * reached. These two states are numbered after all of the others, so a single
+ * comparison per byte finds out whether the rest of the line can be skipped,
+ * which it then is by looking for the next terminator. A terminator read in
+ * any other state leads to one of these two states as well.
+ * 
+ * @author Filip Nemec
+ */
+public class DfaScanner {
+	
+	/** Size of the memory-mapped windows of a file. */
+	private static final int WINDOW_SIZE = 1 << 30;
+	
+	/** Size of the buffer through which the lines are written. */
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/** The next state of every state and byte, both multiplied by the number of bytes. */
+	private final int[] table;
+	
+	/** The initial state, multiplied by the number of bytes. */
+	private final int initialState;
+	
+	/** The final state, multiplied by the number of bytes. Every smaller state reads the next byte. */
+	private final int acceptState;
+	
+	/** The state from which no final state can be reached, multiplied by the number of bytes. */
+	private final int rejectState;
+	
+	/**
+	 * Constructs a new scanner of the DFA of the given definition.
+	 * 
+	 * @param reader the reader of the definition, in the format of {@link MinDka}
+	 *               with the symbols named by {@link ByteAlphabet}
+	 * @throws IllegalArgumentException if the definition is invalid
+	 */
+	public DfaScanner(DefinitionReader reader) {
+		this(read(reader));
+	}
+	
+	/**
+	 * Constructs a new scanner of the given DFA, without the text of its
+	 * definition.
+	 * 
+	 * @param dfa the DFA, with the symbols named by {@link ByteAlphabet}
+	 * @throws IllegalArgumentException if a symbol is not named by {@link ByteAlphabet}
+	 */
+	public DfaScanner(MinDka dfa) {
+		this(of(dfa));
+	}
+	
+	/**
+	 * Constructs a new scanner of the given DFA.
+	 * 
+	 * @param dfa the DFA, whose transitions are modified
+	 */
+	private DfaScanner(Dfa dfa) {
+		int[] next = dfa.next;
+		boolean[] accepting = dfa.accepting;
+		int initial = dfa.initial;
+		int stateCount = accepting.length;
+		
+		// A line which is not accepted by its terminator is rejected.
+		for(int state = 0; state < stateCount; state++) {
+			int target = next[state * ByteAlphabet.SIZE + '\n'];
+			if(target != SymbolTable.NONE && !accepting[target]) next[state * ByteAlphabet.SIZE + '\n'] = SymbolTable.NONE;
+		}
+		
+		boolean[] live = liveStates(next, accepting);
+		
+		// The live states which are not final keep their order, and are followed
+		// by the merged final state and the merged rejecting state.
+		int[] renumbered = new int[stateCount];
+		int liveCount = 0;
+		for(int state = 0; state < stateCount; state++) {
+			if(live[state] && !accepting[state]) renumbered[state] = liveCount++;
+		}
+		for(int state = 0; state < stateCount; state++) {
+			if(accepting[state]) renumbered[state] = liveCount;
+			else if(!live[state]) renumbered[state] = liveCount + 1;
+		}
+		
+		acceptState = liveCount * ByteAlphabet.SIZE;
+		rejectState = (liveCount + 1) * ByteAlphabet.SIZE;
+		initialState = renumbered[initial] * ByteAlphabet.SIZE;
+		
+		table = new int[(liveCount + 2) * ByteAlphabet.SIZE];
+		Arrays.fill(table, acceptState, acceptState + ByteAlphabet.SIZE, acceptState);
+		Arrays.fill(table, rejectState, rejectState + ByteAlphabet.SIZE, rejectState);
+		
+		for(int state = 0; state < stateCount; state++) {
+			if(!live[state] || accepting[state]) continue;
+			
+			for(int b = 0; b < ByteAlphabet.SIZE; b++) {
+				int target = next[state * ByteAlphabet.SIZE + b];
+				table[renumbered[state] * ByteAlphabet.SIZE + b] = target == SymbolTable.NONE ? rejectState : renumbered[target] * ByteAlphabet.SIZE;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the DFA of the given definition.
+	 * 
+	 * @param reader the reader of the definition
+	 * @return the DFA
+	 * @throws IllegalArgumentException if the definition is invalid
+	 */
+	private static Dfa read(DefinitionReader reader) {
+		SymbolTable states = new SymbolTable();
+		SymbolTable finalNames = new SymbolTable();
+		
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(states, ",");
+		reader.requireLine(); // The alphabet follows from the transitions.
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(finalNames, ",");
+		reader.requireLine();
+		int initial = reader.rest(states);
+		
+		// Every transition is stored as its state, its byte and its next state,
+		// where a missing next state is stored as NONE.
+		int[] definedTransitions = new int[3 * 64];
+		int size = 0;
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) break;
+			
+			if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int state = reader.field(states, ",");
+			if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int b;
+			try {
+				b = ByteAlphabet.parse(reader.field(","));
+			} catch(IllegalArgumentException e) {
+				throw reader.error(e.getMessage());
+			}
+			if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			reader.endSection();
+			
+			String next = reader.rest();
+			
+			if(size == definedTransitions.length) definedTransitions = Arrays.copyOf(definedTransitions, 2 * size);
+			definedTransitions[size++] = state;
+			definedTransitions[size++] = b;
+			definedTransitions[size++] = next.equals("null") ? SymbolTable.NONE : states.intern(next);
+		}
+		
+		int stateCount = states.size();
+		boolean[] accepting = new boolean[stateCount];
+		for(int name = 0; name < finalNames.size(); name++) {
+			int state = states.id(finalNames.name(name));
+			if(state != SymbolTable.NONE) accepting[state] = true;
+		}
+		
+		// The transitions of the DFA, with SymbolTable.NONE where missing.
+		int[] next = new int[stateCount * ByteAlphabet.SIZE];
+		Arrays.fill(next, SymbolTable.NONE);
+		for(int i = 0; i < size; i += 3) {
+			next[definedTransitions[i] * ByteAlphabet.SIZE + definedTransitions[i + 1]] = definedTransitions[i + 2];
+		}
+		
+		return new Dfa(next, accepting, initial);
+	}
+	
+	/**
+	 * Copies the transitions of the given DFA into a table indexed by bytes.
+	 * 
+	 * @param dfa the DFA, with the symbols named by {@link ByteAlphabet}
+	 * @return the DFA
+	 * @throws IllegalArgumentException if a symbol is not named by {@link ByteAlphabet}
+	 */
+	private static Dfa of(MinDka dfa) {
+		String[] symbolNames = dfa.getSymbolNames();
+		TransitionTable transitions = dfa.getTransitions();
+		int stateCount = transitions.getStateCount();
+		
+		int[] bytes = new int[symbolNames.length];
+		for(int symbol = 0; symbol < bytes.length; symbol++) {
+			bytes[symbol] = ByteAlphabet.parse(symbolNames[symbol]);
+		}
+		
+		int[] next = new int[stateCount * ByteAlphabet.SIZE];
+		Arrays.fill(next, SymbolTable.NONE);
+		for(int state = 0; state < stateCount; state++) {
+			for(int symbol = 0; symbol < bytes.length; symbol++) {
+				next[state * ByteAlphabet.SIZE + bytes[symbol]] = transitions.get(state, symbol);
+			}
+		}
+		
+		return new Dfa(next, dfa.getFinalStates(), dfa.getInitialState());
+	}
+	
+	/**
+	 * A DFA over bytes, before it is compiled into the table.
+	 */
+	private static class Dfa {
+		
+		/** The next state of every state and byte, or {@link SymbolTable#NONE}. */
+		final int[] next;
+		
+		/** Whether every state is final. */
+		final boolean[] accepting;
+		
+		/** The initial state. */
+		final int initial;
+		
+		/**
+		 * Constructs a new DFA.
+		 * 
+		 * @param next      the next state of every state and byte, or {@link SymbolTable#NONE}
+		 * @param accepting whether every state is final
+		 * @param initial   the initial state
+		 */
+		Dfa(int[] next, boolean[] accepting, int initial) {
+			this.next = next;
+			this.accepting = accepting;
+			this.initial = initial;
+		}
+	}
+	
+	/**
+	 * Finds the states from which a final state can be reached.
+	 * 
+	 * @param next      the next state of every state and byte, or {@link SymbolTable#NONE}
+	 * @param accepting whether every state is final
+	 * @return whether every state is live
+	 */
+	private static boolean[] liveStates(int[] next, boolean[] accepting) {
+		int stateCount = accepting.length;
+		boolean[] live = accepting.clone();
+		boolean changed = true;
+		
+		while(changed) {
+			changed = false;
+			
+			for(int state = 0; state < stateCount; state++) {
+				if(live[state]) continue;
+				
+				for(int b = 0; b < ByteAlphabet.SIZE; b++) {
+					int target = next[state * ByteAlphabet.SIZE + b];
+					
+					if(target != SymbolTable.NONE && live[target]) {
+						live[state] = true;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		
+		return live;
+	}
+	
+	/**
+	 * Returns the number of states of the table, including the merged final
+	 * and rejecting states.
+	 * 
+	 * @return the number of states
+	 */
+	public int getStateCount() {
+		return table.length / ByteAlphabet.SIZE;
+	}
+	
+	/**
+	 * Counts the accepted lines of the given file.
+	 * 
+	 * @param file the file
+	 * @return the number of accepted lines
+	 * @throws IOException if the file cannot be read
+	 */
+	public long count(Path file) throws IOException {
+		return scan(file, null, null);
+	}
+	
+	/**
+	 * Writes the accepted lines of the given file, each followed by a line
+	 * terminator.
+	 * 
+	 * @param file   the file
+	 * @param out    the stream to which the lines are written, or {@code null}
+	 *               if they are only counted
+	 * @param prefix the bytes written before every line, or {@code null}
+	 * @return the number of accepted lines
+	 * @throws IOException if the file cannot be read or the lines cannot be written
+	 */
+	public long scan(Path file, OutputStream out, byte[] prefix) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Scan scan = new Scan(channel, out, prefix);
+			long size = channel.size();
+			
+			for(long offset = 0; offset < size; offset += WINDOW_SIZE) {
+				scan.scan(channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, size - offset)), offset);
+			}
+			scan.finish(size);
+			
+			return scan.matches;
+		}
+	}
+	
+	/**
+	 * The scan of a single file, which continues from one window to the next.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private class Scan {
+		
+		/** The file. */
+		private final FileChannel channel;
+		
+		/** The stream to which the lines are written, or {@code null}. */
+		private final OutputStream out;
+		
+		/** The bytes written before every line, or {@code null}. */
+		private final byte[] prefix;
+		
+		/** The buffer through which the lines are written. */
+		private byte[] buffer;
+		
+		/** The current state. */
+		private int state = initialState;
+		
+		/** Offset of the first byte of the current line in the file. */
+		private long lineStart;
+		
+		/** Number of accepted lines. */
+		private long matches;
+		
+		/**
+		 * Constructs a new scan.
+		 * 
+		 * @param channel the file
+		 * @param out     the stream to which the lines are written, or {@code null}
+		 * @param prefix  the bytes written before every line, or {@code null}
+		 */
+		Scan(FileChannel channel, OutputStream out, byte[] prefix) {
+			this.channel = channel;
+			this.out = out;
+			this.prefix = prefix;
+		}
+		
+		/**
+		 * Scans the next window of the file.
+		 * 
+		 * @param window the window
+		 * @param offset offset of the window in the file
+		 * @throws IOException if a line cannot be written
+		 */
+		void scan(ByteBuffer window, long offset) throws IOException {
+			int[] table = DfaScanner.this.table;
+			int acceptState = DfaScanner.this.acceptState;
+			int limit = window.limit();
+			int state = this.state;
+			int i = 0;
+			
+			while(i < limit) {
+				if(state < acceptState) {
+					do {
+						state = table[state + (window.get(i++) & 0xFF)];
+					} while(state < acceptState && i < limit);
+					
+					if(state < acceptState) break;
+					
+					if(window.get(i - 1) == '\n') {
+						state = endLine(window, offset, i - 1, state);
+						continue;
+					}
+				}
+				
+				// The line is already decided, so only its end is looked for.
+				while(i < limit && window.get(i) != '\n') {
+					i++;
+				}
+				if(i == limit) break;
+				
+				state = endLine(window, offset, i, state);
+				i++;
+			}
+			
+			this.state = state;
+		}
+		
+		/**
+		 * Ends the current line, writing it if it was accepted.
+		 * 
+		 * @param window  the current window
+		 * @param offset  offset of the window in the file
+		 * @param newline index of the terminator of the line in the window
+		 * @param state   the state after the line
+		 * @return the initial state
+		 * @throws IOException if the line cannot be written
+		 */
+		private int endLine(ByteBuffer window, long offset, int newline, int state) throws IOException {
+			if(state == acceptState) {
+				matches++;
+				if(out != null) write(window, offset, offset + newline);
+			}
+			
+			lineStart = offset + newline + 1;
+			return initialState;
+		}
+		
+		/**
+		 * Ends the last line of the file, if it has no terminator.
+		 * 
+		 * @param size size of the file
+		 * @throws IOException if the line cannot be written
+		 */
+		void finish(long size) throws IOException {
+			if(lineStart == size) return;
+			
+			if(state < acceptState) {
+				state = table[state + '\n'];
+			}
+			
+			if(state == acceptState) {
+				matches++;
+				if(out != null) write(null, size, size);
+			}
+		}
+		
+		/**
+		 * Writes the current line, which ends in the given window, followed by
+		 * a line terminator.
+		 * 
+		 * @param window the window, or {@code null} if the line ends at the end of the file
+		 * @param offset offset of the window in the file
+		 * @param end    offset of the end of the line in the file
+		 * @throws IOException if the line cannot be read or written
+		 */
+		private void write(ByteBuffer window, long offset, long end) throws IOException {
+			if(buffer == null) buffer = new byte[BUFFER_SIZE];
+			if(prefix != null) out.write(prefix);
+			
+			for(long position = lineStart; position < end; ) {
+				int length = (int) Math.min(buffer.length, end - position);
+				
+				if(window != null && position >= offset) {
+					ByteBuffer part = window.duplicate();
+					part.position((int) (position - offset));
+					part.get(buffer, 0, length);
+				} else {
+					// The part of a line which is not in the window is read again.
+					if(window != null) length = (int) Math.min(length, offset - position);
+					
+					ByteBuffer part = ByteBuffer.wrap(buffer, 0, length);
+					while(part.hasRemaining()) {
+						if(channel.read(part, position + part.position()) < 0) throw new IOException("The file was truncated");
+					}
+				}
+				
+				out.write(buffer, 0, length);
+				position += length;
+			}
+			
+			out.write('\n');
+		}
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Reads a DFA over bytes, in the definition format of {@link MinDka}, and
+	 * prints the lines of the given files which it accepts. When more than one
+	 * file is given, every line is preceded by the name of its file.
+	 * 
+	 * @param args the files
+	 * @throws IOException if a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		DfaScanner scanner;
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			scanner = new DfaScanner(reader);
+		}
+		
+		OutputStream out = new BufferedOutputStream(System.out, BUFFER_SIZE);
+		for(String file : args) {
+			byte[] prefix = args.length > 1 ? (file + ":").getBytes(StandardCharsets.UTF_8) : null;
+			scanner.scan(Paths.get(file), out, prefix);
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,125 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import automaton.DefinitionReader;
+
+/**
+ * Prints the lines of files which match a regular expression.
+ * <p>
+ * The expression is compiled by a pipeline of separate stages, each of which
+ * is also a program of its own, reading the definition written by the one
+ * before it. Within this class, the DFAs are handed from stage to stage as
+ * transition tables instead, since their text grows with every state:
+ * <ol>
+ * <li>{@link RegexCompiler} builds an epsilon-NFA by the Thompson construction</li>
+ * <li>{@link SubsetConstruction} converts it into a DFA</li>
+ * <li>{@link MinDka} minimizes the DFA</li>
+ * <li>{@link DfaScanner} compiles the DFA into a table and scans the files</li>
+ * </ol>
+ * 
+ * @author Filip Nemec
+ */
+public class Grep {
+	
+	/** Size of the buffer of the printed lines. */
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Prevents the construction of this class.
+	 */
+	private Grep() {
+	}
+	
+	/**
+	 * Compiles the given regular expression into a scanner, through all of the
+	 * stages of the pipeline.
+	 * 
+	 * @param pattern the expression, in the syntax of {@link RegexCompiler}
+	 * @return the scanner of the lines which match the expression
+	 * @throws IllegalArgumentException if the expression is invalid
+	 */
+	public static DfaScanner compile(String pattern) {
+		RegexCompiler nfa = new RegexCompiler(pattern);
+		SubsetConstruction dfa = new SubsetConstruction(DefinitionReader.of(nfa.getDefinition()));
+		MinDka minimal = dfa.minimize();
+		
+		return new DfaScanner(minimal);
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Prints the lines of the given files which match the given expression,
+	 * each preceded by the name of its file when more than one file is given.
+	 * The options, given before the expression, are:
+	 * <ul>
+	 * <li><b>--count</b> - prints only the number of matching lines of every file</li>
+	 * <li><b>--stats</b> - prints the time of the compilation and of the scan,
+	 * and the throughput of the scan, to the standard error</li>
+	 * </ul>
+	 * 
+	 * @param args the options, the expression and the files
+	 * @throws IOException if a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean countOnly = false;
+		boolean stats = false;
+		int index = 0;
+		
+		for(; index < args.length && args[index].startsWith("--"); index++) {
+			switch(args[index]) {
+				case "--count":	countOnly = true; break;
+				case "--stats":	stats = true; break;
+				default: throw new IllegalArgumentException("Unknown option '" + args[index] + "'");
+			}
+		}
+		
+		if(index >= args.length)
+			throw new IllegalArgumentException("Expected the expression and the files");
+		
+		String pattern = args[index++];
+		List<Path> files = new ArrayList<>();
+		for(; index < args.length; index++) {
+			files.add(Paths.get(args[index]));
+		}
+		
+		long start = System.nanoTime();
+		DfaScanner scanner = compile(pattern);
+		long compiled = System.nanoTime();
+		
+		OutputStream out = new BufferedOutputStream(System.out, BUFFER_SIZE);
+		long bytes = 0;
+		long matches = 0;
+		
+		for(Path file : files) {
+			String name = files.size() > 1 ? file + ":" : "";
+			
+			if(countOnly) {
+				long count = scanner.count(file);
+				out.write((name + count + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+				matches += count;
+			} else {
+				matches += scanner.scan(file, out, name.isEmpty() ? null : name.getBytes(StandardCharsets.UTF_8));
+			}
+			bytes += Files.size(file);
+		}
+		out.flush();
+		
+		if(stats) {
+			long scanned = System.nanoTime();
+			System.err.println(String.format(Locale.ROOT, "Compiled to %d states in %.1f ms, scanned %d bytes in %.1f ms (%.2f GB/s), %d matching lines",
+					scanner.getStateCount(), (compiled - start) / 1e6, bytes, (scanned - compiled) / 1e6,
+					bytes / (double) Math.max(1, scanned - compiled), matches));
+		}
+	}
+}
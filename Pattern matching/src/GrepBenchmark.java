@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import automaton.DefinitionReader;
+
+/**
+ * Measures every stage of the pipeline of {@link Grep}, from the regular
+ * expression to the scan of a file.
+ * <p>
+ * Unless a file is given, a log of the given size is generated into a
+ * temporary file, whose lines look like
+ * <pre>
+ * 2024-03-07T14:05:09.123Z WARN  [worker-7] http.server: request id=3fa9c2 status=503 latency=87ms user=u4821
+ * </pre>
+ * and which is deleted afterwards. For every expression the time of every
+ * stage and the size of the automaton after it are printed, together with
+ * the best time and the throughput of several scans of the file.
+ * 
+ * @author Filip Nemec
+ */
+public class GrepBenchmark {
+	
+	/** The expressions measured when none are given. */
+	private static final String[] DEFAULT_PATTERNS = {
+			"ERROR",
+			"status=5\\d\\d",
+			"timeout|refused|reset by peer",
+			"^2024-03-0[1-7]T1[2-4]:.* (WARN|ERROR) ",
+			"id=[0-9a-f]*c0ffee",
+			"latency=\\d{4,}ms$"
+	};
+	
+	/** The levels of the generated lines. */
+	private static final String[] LEVELS = { "TRACE", "DEBUG", "INFO ", "INFO ", "INFO ", "WARN ", "ERROR" };
+	
+	/** The components of the generated lines. */
+	private static final String[] COMPONENTS = { "http.server", "db.pool", "cache", "auth", "scheduler", "mail" };
+	
+	/** The messages of the generated lines. */
+	private static final String[] MESSAGES = {
+			"request", "query finished", "connection refused", "cache miss", "job started",
+			"connection reset by peer", "read timeout", "login", "message queued"
+	};
+	
+	/** The statuses of the generated lines. */
+	private static final int[] STATUSES = { 200, 200, 200, 200, 201, 204, 301, 404, 500, 503 };
+	
+	/**
+	 * Prevents the construction of this class.
+	 */
+	private GrepBenchmark() {
+	}
+	
+	/**
+	 * Measures the stages of the pipeline for a single expression, and prints
+	 * the results.
+	 * 
+	 * @param pattern the expression
+	 * @param file    the scanned file
+	 * @param runs    number of scans of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	private static void measure(String pattern, Path file, int runs) throws IOException {
+		long start = System.nanoTime();
+		RegexCompiler regex = new RegexCompiler(pattern);
+		String nfa = regex.getDefinition();
+		long regexTime = System.nanoTime();
+		
+		SubsetConstruction subsets = new SubsetConstruction(DefinitionReader.of(nfa));
+		String dfa = subsets.getDefinition();
+		long subsetTime = System.nanoTime();
+		
+		MinDka minimal = new MinDka(DefinitionReader.of(dfa));
+		minimal.minimize();
+		String minimalDfa = minimal.getDefinition();
+		long minimizeTime = System.nanoTime();
+		
+		DfaScanner scanner = new DfaScanner(DefinitionReader.of(minimalDfa));
+		long scannerTime = System.nanoTime();
+		
+		long best = Long.MAX_VALUE;
+		long matches = 0;
+		for(int run = 0; run < runs; run++) {
+			long scanStart = System.nanoTime();
+			matches = scanner.count(file);
+			best = Math.min(best, System.nanoTime() - scanStart);
+		}
+		
+		long size = Files.size(file);
+		int nfaStates = nfa.split("\\R", 3)[1].split(",").length;
+		int minimalStates = minimalDfa.split("\\R", 2)[0].split(",").length;
+		
+		System.out.println(pattern);
+		System.out.println(String.format(Locale.ROOT,
+				"  regex %7.2f ms (%d states), subsets %7.2f ms (%d states), minimize %7.2f ms (%d states), table %6.2f ms (%d states)",
+				(regexTime - start) / 1e6, nfaStates, (subsetTime - regexTime) / 1e6, subsets.getStateCount(),
+				(minimizeTime - subsetTime) / 1e6, minimalStates, (scannerTime - minimizeTime) / 1e6, scanner.getStateCount()));
+		System.out.println(String.format(Locale.ROOT,
+				"  scan  %7.1f ms, %.2f GB/s, %d matching lines",
+				best / 1e6, size / (double) best, matches));
+	}
+	
+	/**
+	 * Generates a log of the given size.
+	 * 
+	 * @param file the file to which the log is written
+	 * @param size the size of the log in bytes
+	 * @param seed the seed of the random lines
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void generate(Path file, long size, long seed) throws IOException {
+		Random random = new Random(seed);
+		StringBuilder line = new StringBuilder(160);
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+		
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for(long written = 0; written < size; ) {
+				line.setLength(0);
+				line.append("2024-03-0").append(1 + random.nextInt(9)).append('T');
+				appendTwoDigits(line, random.nextInt(24)).append(':');
+				appendTwoDigits(line, random.nextInt(60)).append(':');
+				appendTwoDigits(line, random.nextInt(60)).append('.').append(100 + random.nextInt(900)).append("Z ");
+				line.append(LEVELS[random.nextInt(LEVELS.length)]);
+				line.append(" [worker-").append(random.nextInt(16)).append("] ");
+				line.append(COMPONENTS[random.nextInt(COMPONENTS.length)]).append(": ");
+				line.append(MESSAGES[random.nextInt(MESSAGES.length)]);
+				line.append(" id=").append(Long.toHexString(random.nextLong() >>> random.nextInt(48)));
+				line.append(" status=").append(STATUSES[random.nextInt(STATUSES.length)]);
+				line.append(" user=u").append(random.nextInt(10000));
+				line.append(" latency=").append((long) Math.exp(random.nextDouble() * 9)).append("ms\n");
+				
+				byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+				if(buffer.remaining() < bytes.length) {
+					buffer.flip();
+					while(buffer.hasRemaining()) channel.write(buffer);
+					buffer.clear();
+				}
+				buffer.put(bytes);
+				written += bytes.length;
+			}
+			
+			buffer.flip();
+			while(buffer.hasRemaining()) channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * Appends the given number with a leading zero if needed.
+	 * 
+	 * @param sb     the builder
+	 * @param number the number, below 100
+	 * @return the builder
+	 */
+	private static StringBuilder appendTwoDigits(StringBuilder sb, int number) {
+		if(number < 10) sb.append('0');
+		return sb.append(number);
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Runs the benchmark. The options, which may be followed by the measured
+	 * expressions, are:
+	 * <ul>
+	 * <li><b>--file=path</b> - the scanned file, instead of a generated log</li>
+	 * <li><b>--size=n</b> - the size of the generated log in MiB, 256 by default</li>
+	 * <li><b>--keep=path</b> - the generated log is written to the given file
+	 * and kept</li>
+	 * <li><b>--runs=n</b> - number of scans of the file for every expression,
+	 * 3 by default</li>
+	 * </ul>
+	 * 
+	 * @param args the options and the expressions
+	 * @throws IOException if the file cannot be read or generated
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = null;
+		Path kept = null;
+		long size = 256;
+		int runs = 3;
+		List<String> patterns = new ArrayList<>();
+		
+		for(String arg : args) {
+			String option = arg.startsWith("--") && arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : "";
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--file=":	file = Paths.get(value); break;
+				case "--size=":	size = Long.parseLong(value); break;
+				case "--keep=":	kept = Paths.get(value); break;
+				case "--runs=":	runs = Integer.parseInt(value); break;
+				case "":		patterns.add(arg); break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		if(patterns.isEmpty()) {
+			patterns.addAll(List.of(DEFAULT_PATTERNS));
+		}
+		
+		boolean generated = file == null;
+		if(generated) {
+			file = kept != null ? kept : Files.createTempFile("grep-benchmark", ".log");
+			
+			long start = System.nanoTime();
+			generate(file, size << 20, 42);
+			System.out.println(String.format(Locale.ROOT, "Generated %d MiB in %.1f s", size, (System.nanoTime() - start) / 1e9));
+		}
+		
+		try {
+			for(String pattern : patterns) {
+				measure(pattern, file, runs);
+			}
+		} finally {
+			if(generated && kept == null) Files.delete(file);
+		}
+	}
+}
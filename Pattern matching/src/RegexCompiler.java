@@ -0,0 +1,713 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a regular expression into an epsilon-NFA by the Thompson
+ * construction, and writes the epsilon-NFA in the definition format of
+ * {@code SimEnka}, over the bytes named by {@link ByteAlphabet}.
+ * <p>
+ * The expression is matched against the bytes of a single line, so the
+ * supported syntax is:
+ * <ul>
+ * <li>a character, which matches its UTF-8 bytes</li>
+ * <li><b>.</b>, which matches any byte except the line terminator</li>
+ * <li><b>[...]</b> and <b>[^...]</b>, which match a byte in, or not in, the
+ * given set of single byte characters, ranges and classes</li>
+ * <li><b>\d \w \s</b> and their complements <b>\D \W \S</b>, the escapes
+ * <b>\t \n \r \f \v \xHH</b>, and any other escaped punctuation character
+ * which matches itself</li>
+ * <li><b>(...)</b>, <b>|</b> and the repetitions <b>* + ? {m} {m,} {m,n}</b></li>
+ * <li><b>^</b> at the start of an alternative of the whole expression, which
+ * anchors the alternative to the start of the line, and <b>$</b>, which
+ * matches the line terminator</li>
+ * </ul>
+ * Unless they are anchored to the start of the line, the alternatives are
+ * searched for: the epsilon-NFA accepts every line which has a match as a
+ * prefix of some of its suffixes. The epsilon-NFA therefore accepts as soon
+ * as a match is read, whatever follows it. The line terminator is always in
+ * the alphabet, even if no transition reads it.
+ * 
+ * @author Filip Nemec
+ */
+public class RegexCompiler {
+	
+	/** Largest number of repetitions given by bounds. */
+	private static final int MAX_REPETITIONS = 1000;
+	
+	/** Upper bound of a repetition without a limit. */
+	private static final int UNBOUNDED = -1;
+	
+	/** The expression. */
+	private final String pattern;
+	
+	/** Index of the next character of the expression. */
+	private int position;
+	
+	/** Number of states. */
+	private int stateCount;
+	
+	/** The bytes read by the symbol transition of every state, four words per state. */
+	private long[] byteSets = new long[4 * 64];
+	
+	/** The next state of the symbol transition of every state. */
+	private int[] byteTargets = new int[64];
+	
+	/** Pairs of the state and the next state of every epsilon transition. */
+	private int[] epsilons = new int[2 * 64];
+	
+	/** Number of epsilon transitions. */
+	private int epsilonCount;
+	
+	/** The final state. */
+	private final int finalState;
+	
+	/**
+	 * Compiles the given expression, whose alternatives are searched for in
+	 * the lines unless they are anchored.
+	 * 
+	 * @param pattern the expression
+	 * @throws IllegalArgumentException if the expression is invalid
+	 */
+	public RegexCompiler(String pattern) {
+		this.pattern = pattern;
+		
+		Node anyPrefix = new Node(0, UNBOUNDED, Node.bytes(anyByte()));
+		List<Node> alternatives = new ArrayList<>();
+		
+		while(true) {
+			boolean anchored = position < pattern.length() && pattern.charAt(position) == '^';
+			if(anchored) position++;
+			
+			Node alternative = parseConcatenation();
+			alternatives.add(anchored ? alternative : new Node(Node.CONCATENATION, null, List.of(anyPrefix, alternative)));
+			
+			if(position == pattern.length()) break;
+			if(pattern.charAt(position) == ')') throw error("Unmatched ')'");
+			position++;
+		}
+		
+		Node node = alternatives.size() == 1 ? alternatives.get(0) : new Node(Node.ALTERNATION, null, alternatives);
+		finalState = build(node, newState());
+	}
+	
+	/**
+	 * Returns the epsilon-NFA, in the definition format of {@code SimEnka},
+	 * without any input sequences.
+	 * 
+	 * @return the definition
+	 */
+	public String getDefinition() {
+		StringBuilder sb = new StringBuilder();
+		String lineSeparator = System.lineSeparator();
+		sb.append(lineSeparator);
+		
+		for(int state = 0; state < stateCount; state++) {
+			if(state > 0) sb.append(',');
+			sb.append('q').append(state);
+		}
+		sb.append(lineSeparator);
+		
+		long[] alphabet = set('\n');
+		for(int state = 0; state < stateCount; state++) {
+			for(int i = 0; i < 4; i++) {
+				alphabet[i] |= byteSets[4 * state + i];
+			}
+		}
+		
+		boolean first = true;
+		for(int b = 0; b < ByteAlphabet.SIZE; b++) {
+			if(!contains(alphabet, 0, b)) continue;
+			
+			if(!first) sb.append(',');
+			sb.append(ByteAlphabet.name(b));
+			first = false;
+		}
+		sb.append(lineSeparator);
+		
+		sb.append('q').append(finalState).append(lineSeparator);
+		sb.append("q0").append(lineSeparator);
+		
+		// The epsilon transitions of a state are written on a single line.
+		long[] sorted = new long[epsilonCount];
+		for(int i = 0; i < epsilonCount; i++) {
+			sorted[i] = (long) epsilons[2 * i] << 32 | epsilons[2 * i + 1];
+		}
+		Arrays.sort(sorted);
+		
+		int next = 0;
+		for(int state = 0; state < stateCount; state++) {
+			if(next < sorted.length && (int) (sorted[next] >>> 32) == state) {
+				sb.append('q').append(state).append(",$->");
+				
+				for(int i = next; next < sorted.length && (int) (sorted[next] >>> 32) == state; next++) {
+					if(next > i) sb.append(',');
+					sb.append('q').append((int) sorted[next]);
+				}
+				sb.append(lineSeparator);
+			}
+			
+			for(int b = 0; b < ByteAlphabet.SIZE; b++) {
+				if(contains(byteSets, 4 * state, b)) {
+					sb.append('q').append(state).append(',').append(ByteAlphabet.name(b))
+					  .append("->q").append(byteTargets[state]).append(lineSeparator);
+				}
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	//-------------------------------------------------------------
+	//						Thompson construction
+	//-------------------------------------------------------------
+	
+	/**
+	 * Builds the states of the given expression, starting from the given
+	 * state, which has no transitions yet.
+	 * 
+	 * @param node  the expression
+	 * @param start the state in which the expression starts
+	 * @return the state in which the expression ends, which has no transitions yet
+	 */
+	private int build(Node node, int start) {
+		switch(node.type) {
+			case Node.BYTES: {
+				int end = newState();
+				System.arraycopy(node.bytes, 0, byteSets, 4 * start, 4);
+				byteTargets[start] = end;
+				return end;
+			}
+			
+			case Node.CONCATENATION: {
+				int state = start;
+				for(Node child : node.children) {
+					state = build(child, state);
+				}
+				return state;
+			}
+			
+			case Node.ALTERNATION: {
+				int end = newState();
+				for(Node child : node.children) {
+					int childStart = newState();
+					addEpsilon(start, childStart);
+					addEpsilon(build(child, childStart), end);
+				}
+				return end;
+			}
+			
+			default: {
+				Node child = node.children.get(0);
+				int state = start;
+				
+				for(int i = 0; i < node.min; i++) {
+					state = build(child, state);
+				}
+				
+				int end = newState();
+				
+				if(node.max == UNBOUNDED) {
+					int loop = newState();
+					addEpsilon(state, loop);
+					addEpsilon(build(child, loop), loop);
+					addEpsilon(loop, end);
+				} else {
+					for(int i = node.min; i < node.max; i++) {
+						addEpsilon(state, end);
+						state = build(child, state);
+					}
+					addEpsilon(state, end);
+				}
+				return end;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a new state without any transitions.
+	 * 
+	 * @return the new state
+	 */
+	private int newState() {
+		if(stateCount == byteTargets.length) {
+			byteTargets = Arrays.copyOf(byteTargets, 2 * stateCount);
+			byteSets = Arrays.copyOf(byteSets, 8 * stateCount);
+		}
+		byteTargets[stateCount] = -1;
+		return stateCount++;
+	}
+	
+	/**
+	 * Adds an epsilon transition.
+	 * 
+	 * @param from the state
+	 * @param to   the next state
+	 */
+	private void addEpsilon(int from, int to) {
+		if(2 * epsilonCount == epsilons.length) {
+			epsilons = Arrays.copyOf(epsilons, 2 * epsilons.length);
+		}
+		epsilons[2 * epsilonCount] = from;
+		epsilons[2 * epsilonCount + 1] = to;
+		epsilonCount++;
+	}
+	
+	//-------------------------------------------------------------
+	//							Parsing
+	//-------------------------------------------------------------
+	
+	/**
+	 * Parses alternatives separated by <b>|</b>.
+	 * 
+	 * @return the expression
+	 */
+	private Node parseAlternation() {
+		List<Node> alternatives = new ArrayList<>();
+		alternatives.add(parseConcatenation());
+		
+		while(position < pattern.length() && pattern.charAt(position) == '|') {
+			position++;
+			alternatives.add(parseConcatenation());
+		}
+		
+		return alternatives.size() == 1 ? alternatives.get(0) : new Node(Node.ALTERNATION, null, alternatives);
+	}
+	
+	/**
+	 * Parses a sequence of repetitions, up to the end of the alternative.
+	 * 
+	 * @return the expression
+	 */
+	private Node parseConcatenation() {
+		List<Node> items = new ArrayList<>();
+		
+		while(position < pattern.length() && pattern.charAt(position) != '|' && pattern.charAt(position) != ')') {
+			items.add(parseRepetition());
+		}
+		
+		return items.size() == 1 ? items.get(0) : new Node(Node.CONCATENATION, null, items);
+	}
+	
+	/**
+	 * Parses an atom followed by any number of repetition operators.
+	 * 
+	 * @return the expression
+	 */
+	private Node parseRepetition() {
+		Node node = parseAtom();
+		
+		while(position < pattern.length()) {
+			char c = pattern.charAt(position);
+			
+			if(c == '*') {
+				node = new Node(0, UNBOUNDED, node);
+			} else if(c == '+') {
+				node = new Node(1, UNBOUNDED, node);
+			} else if(c == '?') {
+				node = new Node(0, 1, node);
+			} else if(c == '{') {
+				node = parseBounds(node);
+				continue;
+			} else {
+				break;
+			}
+			position++;
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Parses the bounds of a repetition, starting at <b>{</b>.
+	 * 
+	 * @param node the repeated expression
+	 * @return the repetition
+	 */
+	private Node parseBounds(Node node) {
+		position++;
+		int min = parseNumber();
+		int max = min;
+		
+		if(position < pattern.length() && pattern.charAt(position) == ',') {
+			position++;
+			max = position < pattern.length() && pattern.charAt(position) == '}' ? UNBOUNDED : parseNumber();
+		}
+		
+		if(position >= pattern.length() || pattern.charAt(position) != '}') throw error("Unclosed repetition");
+		position++;
+		
+		if(max != UNBOUNDED && max < min) throw error("Invalid repetition {" + min + "," + max + "}");
+		return new Node(min, max, node);
+	}
+	
+	/**
+	 * Parses the number of repetitions.
+	 * 
+	 * @return the number
+	 */
+	private int parseNumber() {
+		int start = position;
+		while(position < pattern.length() && Character.isDigit(pattern.charAt(position))) {
+			position++;
+		}
+		
+		if(position == start || position - start > 4) throw error("Invalid number of repetitions");
+		
+		int number = Integer.parseInt(pattern.substring(start, position));
+		if(number > MAX_REPETITIONS) throw error("More than " + MAX_REPETITIONS + " repetitions");
+		return number;
+	}
+	
+	/**
+	 * Parses a single character, set of bytes or group.
+	 * 
+	 * @return the expression
+	 */
+	private Node parseAtom() {
+		int c = pattern.codePointAt(position);
+		position += Character.charCount(c);
+		
+		switch(c) {
+			case '(': {
+				Node node = parseAlternation();
+				if(position >= pattern.length()) throw error("Unclosed group");
+				position++;
+				return node;
+			}
+			
+			case '[':	return Node.bytes(parseSet());
+			case '.':	return Node.bytes(anyByte());
+			case '$':	return Node.bytes(set('\n'));
+			case '\\':	return Node.bytes(parseEscape());
+			
+			case '^':	throw error("'^' is allowed only at the start of an alternative of the whole expression");
+			case '*':
+			case '+':
+			case '?':
+			case '{':	throw error("Nothing to repeat");
+		}
+		
+		byte[] bytes = new String(Character.toChars(c)).getBytes(StandardCharsets.UTF_8);
+		if(bytes.length == 1) return Node.bytes(set(c));
+		
+		List<Node> sequence = new ArrayList<>();
+		for(byte b : bytes) {
+			sequence.add(Node.bytes(set(b & 0xFF)));
+		}
+		return new Node(Node.CONCATENATION, null, sequence);
+	}
+	
+	/**
+	 * Parses a set of bytes, after its <b>[</b>.
+	 * 
+	 * @return the bytes of the set
+	 */
+	private long[] parseSet() {
+		boolean negated = position < pattern.length() && pattern.charAt(position) == '^';
+		if(negated) position++;
+		
+		long[] set = new long[4];
+		int start = position;
+		
+		while(true) {
+			if(position >= pattern.length()) throw error("Unclosed set");
+			
+			char c = pattern.charAt(position);
+			if(c == ']' && position > start) break;
+			position++;
+			
+			long[] item = c == '\\' ? parseEscape() : set(singleByte(c));
+			
+			if(position + 1 < pattern.length() && pattern.charAt(position) == '-' && pattern.charAt(position + 1) != ']') {
+				int from = onlyByte(item);
+				position++;
+				
+				char d = pattern.charAt(position++);
+				int to = onlyByte(d == '\\' ? parseEscape() : set(singleByte(d)));
+				if(to < from) throw error("Invalid range");
+				
+				for(int b = from; b <= to; b++) {
+					add(set, b);
+				}
+			} else {
+				for(int i = 0; i < 4; i++) {
+					set[i] |= item[i];
+				}
+			}
+		}
+		position++;
+		
+		return negated ? complement(set) : set;
+	}
+	
+	/**
+	 * Parses an escape, after its <b>\</b>.
+	 * 
+	 * @return the bytes matched by the escape
+	 */
+	private long[] parseEscape() {
+		if(position >= pattern.length()) throw error("Incomplete escape");
+		char c = pattern.charAt(position++);
+		
+		switch(c) {
+			case 'd':	return digits();
+			case 'D':	return complement(digits());
+			case 'w':	return wordBytes();
+			case 'W':	return complement(wordBytes());
+			case 's':	return spaces();
+			case 'S':	return complement(spaces());
+			case 't':	return set('\t');
+			case 'n':	return set('\n');
+			case 'r':	return set('\r');
+			case 'f':	return set('\f');
+			case 'v':	return set(0x0B);
+			
+			case 'x': {
+				int high = position < pattern.length() ? Character.digit(pattern.charAt(position), 16) : -1;
+				int low = position + 1 < pattern.length() ? Character.digit(pattern.charAt(position + 1), 16) : -1;
+				if(high < 0 || low < 0) throw error("Invalid escape '\\x'");
+				
+				position += 2;
+				return set(high << 4 | low);
+			}
+		}
+		
+		if(Character.isLetterOrDigit(c)) throw error("Invalid escape '\\" + c + "'");
+		return set(singleByte(c));
+	}
+	
+	/**
+	 * Returns the given character of a set, which must be a single byte.
+	 * 
+	 * @param c the character
+	 * @return the byte
+	 */
+	private int singleByte(char c) {
+		if(c >= 0x80) throw error("Only single byte characters are allowed in sets");
+		return c;
+	}
+	
+	/**
+	 * Returns the only byte of the given set, which is an end of a range.
+	 * 
+	 * @param set the set
+	 * @return the byte
+	 */
+	private int onlyByte(long[] set) {
+		int count = 0;
+		int only = -1;
+		for(int b = 0; b < ByteAlphabet.SIZE; b++) {
+			if(contains(set, 0, b)) {
+				count++;
+				only = b;
+			}
+		}
+		
+		if(count != 1) throw error("Invalid range");
+		return only;
+	}
+	
+	/**
+	 * Creates the exception reporting an invalid expression.
+	 * 
+	 * @param message what is invalid
+	 * @return the exception
+	 */
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Invalid pattern '" + pattern + "' at index " + position + ": " + message);
+	}
+	
+	//-------------------------------------------------------------
+	//							Byte sets
+	//-------------------------------------------------------------
+	
+	/**
+	 * Returns the set of every byte except the line terminator.
+	 * 
+	 * @return the set
+	 */
+	private static long[] anyByte() {
+		return complement(new long[4]);
+	}
+	
+	/**
+	 * Returns the set of the decimal digits.
+	 * 
+	 * @return the set
+	 */
+	private static long[] digits() {
+		long[] set = new long[4];
+		for(int b = '0'; b <= '9'; b++) add(set, b);
+		return set;
+	}
+	
+	/**
+	 * Returns the set of the letters, the digits and the underscore.
+	 * 
+	 * @return the set
+	 */
+	private static long[] wordBytes() {
+		long[] set = digits();
+		for(int b = 'a'; b <= 'z'; b++) add(set, b);
+		for(int b = 'A'; b <= 'Z'; b++) add(set, b);
+		add(set, '_');
+		return set;
+	}
+	
+	/**
+	 * Returns the set of the whitespace bytes, except the line terminator.
+	 * 
+	 * @return the set
+	 */
+	private static long[] spaces() {
+		long[] set = set(' ');
+		add(set, '\t');
+		add(set, '\r');
+		add(set, '\f');
+		add(set, 0x0B);
+		return set;
+	}
+	
+	/**
+	 * Returns the set of a single byte.
+	 * 
+	 * @param b the byte
+	 * @return the set
+	 */
+	private static long[] set(int b) {
+		long[] set = new long[4];
+		add(set, b);
+		return set;
+	}
+	
+	/**
+	 * Returns the bytes not in the given set, except the line terminator.
+	 * 
+	 * @param set the set
+	 * @return the complement of the set
+	 */
+	private static long[] complement(long[] set) {
+		long[] complement = new long[4];
+		for(int i = 0; i < 4; i++) {
+			complement[i] = ~set[i];
+		}
+		complement[0] &= ~(1L << '\n');
+		return complement;
+	}
+	
+	/**
+	 * Adds a byte to a set.
+	 * 
+	 * @param set the set
+	 * @param b   the byte
+	 */
+	private static void add(long[] set, int b) {
+		set[b >>> 6] |= 1L << b;
+	}
+	
+	/**
+	 * Checks whether a set holds a byte.
+	 * 
+	 * @param sets   the array holding the set
+	 * @param offset index of the first word of the set
+	 * @param b      the byte
+	 * @return {@code true} if the set holds the byte, {@code false} otherwise
+	 */
+	private static boolean contains(long[] sets, int offset, int b) {
+		return (sets[offset + (b >>> 6)] & 1L << b) != 0;
+	}
+	
+	/**
+	 * A node of the parsed expression.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class Node {
+		
+		/** A single byte of the given set. */
+		static final int BYTES = 0;
+		
+		/** The children one after another. */
+		static final int CONCATENATION = 1;
+		
+		/** Any of the children. */
+		static final int ALTERNATION = 2;
+		
+		/** The only child, repeated between the minimum and the maximum number of times. */
+		static final int REPETITION = 3;
+		
+		/** The type of the node. */
+		final int type;
+		
+		/** The bytes matched by a {@link #BYTES} node. */
+		final long[] bytes;
+		
+		/** The children. */
+		final List<Node> children;
+		
+		/** The minimum number of repetitions. */
+		final int min;
+		
+		/** The maximum number of repetitions, or {@link #UNBOUNDED}. */
+		final int max;
+		
+		/**
+		 * Constructs a new node which is not a repetition.
+		 * 
+		 * @param type     the type
+		 * @param bytes    the bytes of a {@link #BYTES} node
+		 * @param children the children
+		 */
+		Node(int type, long[] bytes, List<Node> children) {
+			this.type = type;
+			this.bytes = bytes;
+			this.children = children;
+			this.min = 1;
+			this.max = 1;
+		}
+		
+		/**
+		 * Constructs a new repetition.
+		 * 
+		 * @param min   the minimum number of repetitions
+		 * @param max   the maximum number of repetitions, or {@link #UNBOUNDED}
+		 * @param child the repeated node
+		 */
+		Node(int min, int max, Node child) {
+			this.type = REPETITION;
+			this.bytes = null;
+			this.children = List.of(child);
+			this.min = min;
+			this.max = max;
+		}
+		
+		/**
+		 * Creates a node matching a single byte of the given set.
+		 * 
+		 * @param bytes the set
+		 * @return the node
+		 */
+		static Node bytes(long[] bytes) {
+			return new Node(BYTES, bytes, List.of());
+		}
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Prints the epsilon-NFA of the expression given as the only argument,
+	 * in the definition format of {@code SimEnka}.
+	 * 
+	 * @param args the expression
+	 */
+	public static void main(String[] args) {
+		if(args.length != 1)
+			throw new IllegalArgumentException("Expected the expression as the only argument");
+		
+		System.out.print(new RegexCompiler(args[0]).getDefinition());
+	}
+}
@@ -0,0 +1,669 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import automaton.DefinitionReader;
+import automaton.StateSet;
+import automaton.SymbolTable;
+import automaton.TransitionRelation;
+import automaton.TransitionTable;
+
+/**
+ * Converts an epsilon-NFA into an equivalent DFA by the subset construction.
+ * <p>
+ * Every state of the DFA is the epsilon-closure of a set of states of the
+ * epsilon-NFA, reachable from the closure of its initial state. The empty set
+ * is an ordinary state whose transitions all lead back to it, so the DFA has
+ * a transition for every state and every symbol.
+ * <p>
+ * Symbols which lead from every state of the epsilon-NFA to the same states
+ * cannot be told apart by the DFA either, so the next state of a set is
+ * computed only once for every class of such symbols. Over a large alphabet,
+ * such as the bytes of a regular expression, there are usually only a few
+ * classes.
+ * <p>
+ * The sets are found level by level, breadth first. The sets of a level are
+ * expanded in parallel on a fork/join pool, and the sets they lead to are
+ * interned in a concurrent table which gives every new set the next free
+ * number. Since the numbers given within a level depend on the order in
+ * which the threads get to them, the states are renumbered in breadth first
+ * order once all of them are found, so the DFA does not depend on the number
+ * of threads. The construction is stopped if the DFA would have more states
+ * than the given limit.
+ * 
+ * @author Filip Nemec
+ */
+public class SubsetConstruction {
+	
+	/** Name of the epsilon symbol. */
+	private static final String EPSILON = "$";
+	
+	/** Name of the state standing for the empty set of states. */
+	private static final String EMPTY_SET = "#";
+	
+	/** The default limit of the number of states of the DFA. */
+	public static final int DEFAULT_MAX_STATES = 1 << 20;
+	
+	/** Number of sets of a level which are expanded by a single task. */
+	private static final int EXPANSION_BATCH = 16;
+	
+	/** Names of the symbols of the DFA, indexed by their ids. */
+	private final String[] symbolNames;
+	
+	/** The class of every symbol of the DFA. */
+	private final int[] symbolClass;
+	
+	/** Number of classes of the symbols. */
+	private final int classCount;
+	
+	/** The limit of the number of states of the DFA. */
+	private final int maxStates;
+	
+	/** The sets of states of the epsilon-NFA which make the states of the DFA. */
+	private final List<StateSet> sets = new ArrayList<>();
+	
+	/** The next state of every state and class of symbols, {@code state * classCount + class}. */
+	private int[] transitions;
+	
+	/** Whether every state of the DFA is final. */
+	private boolean[] finalStates;
+	
+	/**
+	 * Constructs the DFA of the epsilon-NFA of the given definition, with at
+	 * most {@link #DEFAULT_MAX_STATES} states and on as many threads as there
+	 * are processors.
+	 * 
+	 * @param reader the reader of the definition, in the format of {@code SimEnka}
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 * @throws IllegalStateException if the DFA has too many states
+	 */
+	public SubsetConstruction(DefinitionReader reader) {
+		this(reader, DEFAULT_MAX_STATES, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructs the DFA of the epsilon-NFA of the given definition.
+	 * 
+	 * @param reader    the reader of the definition, in the format of {@code SimEnka}
+	 * @param maxStates the limit of the number of states of the DFA
+	 * @param threads   number of threads which expand the sets
+	 * @throws IllegalArgumentException if the definition contains an invalid transition,
+	 *                                  or the limit or the number of threads is not positive
+	 * @throws IllegalStateException if the DFA has more states than the limit
+	 */
+	public SubsetConstruction(DefinitionReader reader, int maxStates, int threads) {
+		if(maxStates < 1) throw new IllegalArgumentException("Invalid limit of states '" + maxStates + "'");
+		if(threads < 1) throw new IllegalArgumentException("Invalid number of threads '" + threads + "'");
+		this.maxStates = maxStates;
+		
+		SymbolTable states = new SymbolTable();
+		SymbolTable symbols = new SymbolTable();
+		SymbolTable finalNames = new SymbolTable();
+		
+		int epsilon = symbols.intern(EPSILON);
+		int emptySet = states.intern(EMPTY_SET);
+		
+		reader.nextLine(); // The input sequences are not used.
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(states, ",");
+		reader.requireLine();
+		while(reader.hasField(",")) {
+			String symbol = reader.field(",");
+			if(!symbol.isEmpty()) symbols.intern(symbol);
+		}
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(finalNames, ",");
+		reader.requireLine();
+		int initialState = reader.rest(states);
+		
+		// Every transition is stored as its state, its symbol, the number of
+		// the next states and the next states.
+		int[] definedTransitions = new int[64];
+		int size = 0;
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) break;
+			
+			if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int state = reader.field(states, ",");
+			if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int symbol = reader.field(symbols, ",");
+			if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			reader.endSection();
+			
+			int countIndex = size + 2;
+			if(size + 3 > definedTransitions.length) definedTransitions = Arrays.copyOf(definedTransitions, 2 * definedTransitions.length);
+			definedTransitions[size++] = state;
+			definedTransitions[size++] = symbol;
+			definedTransitions[size++] = 0;
+			
+			boolean empty = false;
+			while(reader.hasField(",")) {
+				int next = reader.field(states, ",");
+				if(next == emptySet) empty = true;
+				
+				if(size == definedTransitions.length) definedTransitions = Arrays.copyOf(definedTransitions, 2 * size);
+				definedTransitions[size++] = next;
+				definedTransitions[countIndex]++;
+			}
+			
+			// As in SimEnka, next states which include the empty set stand for the empty set.
+			if(empty) {
+				size = countIndex + 1;
+				definedTransitions[countIndex] = 0;
+			}
+		}
+		
+		TransitionRelation relation = new TransitionRelation(states.size(), symbols.size());
+		for(int i = 0; i < size; i += 3 + definedTransitions[i + 2]) {
+			relation.set(definedTransitions[i], definedTransitions[i + 1], Arrays.copyOfRange(definedTransitions, i + 3, i + 3 + definedTransitions[i + 2]));
+		}
+		
+		StateSet acceptable = new StateSet(states.size());
+		for(int name = 0; name < finalNames.size(); name++) {
+			int state = states.id(finalNames.name(name));
+			if(state != SymbolTable.NONE) acceptable.add(state);
+		}
+		
+		// The symbols of the DFA are the symbols of the epsilon-NFA without the epsilon.
+		symbolNames = Arrays.copyOfRange(symbols.names(), 1, symbols.size());
+		symbolClass = new int[symbolNames.length];
+		classCount = classify(relation, states.size(), symbolClass);
+		
+		int[] representatives = new int[classCount];
+		for(int symbol = symbolNames.length - 1; symbol >= 0; symbol--) {
+			representatives[symbolClass[symbol]] = symbol + 1;
+		}
+		
+		StateSet[] closures = closures(relation, epsilon);
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			construct(pool, relation, closures, closures[initialState], representatives, acceptable);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Divides the symbols into classes of symbols which lead from every state
+	 * to the same states.
+	 * 
+	 * @param relation    the transitions of the epsilon-NFA
+	 * @param stateCount  number of states of the epsilon-NFA
+	 * @param symbolClass filled with the class of every symbol of the DFA
+	 * @return number of classes
+	 */
+	private static int classify(TransitionRelation relation, int stateCount, int[] symbolClass) {
+		Map<Column, Integer> classes = new HashMap<>();
+		
+		for(int symbol = 0; symbol < symbolClass.length; symbol++) {
+			int[][] next = new int[stateCount][];
+			for(int state = 0; state < stateCount; state++) {
+				next[state] = relation.get(state, symbol + 1);
+			}
+			
+			Column column = new Column(next);
+			Integer symbolClassId = classes.get(column);
+			
+			if(symbolClassId == null) {
+				symbolClassId = classes.size();
+				classes.put(column, symbolClassId);
+			}
+			symbolClass[symbol] = symbolClassId;
+		}
+		
+		return classes.size();
+	}
+	
+	/**
+	 * Computes the epsilon-closure of every state of the epsilon-NFA.
+	 * 
+	 * @param relation the transitions of the epsilon-NFA
+	 * @param epsilon  the epsilon symbol
+	 * @return the closures, indexed by the states
+	 */
+	private static StateSet[] closures(TransitionRelation relation, int epsilon) {
+		int stateCount = relation.getStateCount();
+		StateSet[] closures = new StateSet[stateCount];
+		int[] pending = new int[stateCount];
+		
+		for(int state = 0; state < stateCount; state++) {
+			StateSet closure = new StateSet(stateCount);
+			closure.add(state);
+			pending[0] = state;
+			int count = 1;
+			
+			while(count > 0) {
+				for(int next : relation.get(pending[--count], epsilon)) {
+					if(closure.add(next)) {
+						pending[count++] = next;
+					}
+				}
+			}
+			closures[state] = closure;
+		}
+		
+		return closures;
+	}
+	
+	/**
+	 * Finds every set reachable from the initial one, and the transitions
+	 * between them.
+	 * 
+	 * @param pool            the pool on which the sets are expanded
+	 * @param relation        the transitions of the epsilon-NFA
+	 * @param closures        the epsilon-closure of every state of the epsilon-NFA
+	 * @param initial         the initial set
+	 * @param representatives a symbol of every class, as a symbol of the epsilon-NFA
+	 * @param acceptable      the final states of the epsilon-NFA
+	 * @throws IllegalStateException if there are more sets than the limit of states
+	 */
+	private void construct(ForkJoinPool pool, TransitionRelation relation, StateSet[] closures, StateSet initial,
+			int[] representatives, StateSet acceptable) {
+		Expansion expansion = new Expansion(relation, closures, representatives, initial);
+		
+		// The sets found while expanding a level are numbered after it, so every
+		// level is a range of numbers.
+		for(int levelStart = 0, levelEnd = 1; levelStart < levelEnd; ) {
+			expansion.ensureCapacity(levelStart, levelEnd);
+			
+			try {
+				pool.invoke(expansion.new Task(levelStart, levelEnd));
+			} catch(RuntimeException e) {
+				// An exception thrown on another thread is rethrown as a copy of it
+				// which wraps the original, so the original is thrown instead.
+				Throwable cause = e.getCause();
+				throw cause != null && cause.getClass() == e.getClass() ? (RuntimeException) cause : e;
+			}
+			
+			levelStart = levelEnd;
+			levelEnd = expansion.count.get();
+		}
+		
+		renumber(expansion.found, expansion.transitions, expansion.count.get());
+		
+		finalStates = new boolean[sets.size()];
+		for(int id = 0; id < finalStates.length; id++) {
+			StateSet set = sets.get(id);
+			
+			for(int state = set.next(0); state >= 0; state = set.next(state + 1)) {
+				if(acceptable.contains(state)) {
+					finalStates[id] = true;
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Numbers the found sets in the order in which a breadth first search
+	 * from the initial one reaches them, trying the classes of symbols in
+	 * order, and stores them with their transitions.
+	 * 
+	 * @param found       the found sets, by the numbers given while expanding
+	 * @param transitions the transitions between them, by the same numbers
+	 * @param count       number of the found sets
+	 */
+	private void renumber(StateSet[] found, int[] transitions, int count) {
+		int[] order = new int[count];
+		int[] renumbered = new int[count];
+		Arrays.fill(renumbered, -1);
+		renumbered[0] = 0;
+		
+		int ordered = 1;
+		for(int i = 0; i < ordered; i++) {
+			for(int symbolClassId = 0; symbolClassId < classCount; symbolClassId++) {
+				int next = transitions[order[i] * classCount + symbolClassId];
+				
+				if(renumbered[next] < 0) {
+					renumbered[next] = ordered;
+					order[ordered++] = next;
+				}
+			}
+		}
+		
+		this.transitions = new int[Math.max(1, count * classCount)];
+		for(int id = 0; id < count; id++) {
+			sets.add(found[order[id]]);
+			
+			for(int symbolClassId = 0; symbolClassId < classCount; symbolClassId++) {
+				this.transitions[id * classCount + symbolClassId] = renumbered[transitions[order[id] * classCount + symbolClassId]];
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of states of the DFA.
+	 * 
+	 * @return the number of states
+	 */
+	public int getStateCount() {
+		return sets.size();
+	}
+	
+	/**
+	 * Returns the DFA, in the definition format of {@link MinDka}. The states
+	 * are named <b>p0</b>, <b>p1</b> and so on, where <b>p0</b> is the initial
+	 * state.
+	 * 
+	 * @return the definition
+	 */
+	public String getDefinition() {
+		StringBuilder sb = new StringBuilder();
+		
+		try {
+			writeDefinition(sb);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Writes the DFA, as returned by {@link #getDefinition()}, line by line.
+	 * 
+	 * @param out the destination of the definition
+	 * @throws IOException if the definition cannot be written
+	 */
+	public void writeDefinition(Appendable out) throws IOException {
+		String lineSeparator = System.lineSeparator();
+		
+		for(int state = 0; state < sets.size(); state++) {
+			if(state > 0) out.append(',');
+			out.append('p').append(Integer.toString(state));
+		}
+		out.append(lineSeparator);
+		
+		out.append(String.join(",", symbolNames)).append(lineSeparator);
+		
+		boolean first = true;
+		for(int state = 0; state < sets.size(); state++) {
+			if(!finalStates[state]) continue;
+			
+			if(!first) out.append(',');
+			out.append('p').append(Integer.toString(state));
+			first = false;
+		}
+		out.append(lineSeparator);
+		
+		out.append("p0").append(lineSeparator);
+		
+		for(int state = 0; state < sets.size(); state++) {
+			String name = "p" + state + ",";
+			
+			for(int symbol = 0; symbol < symbolNames.length; symbol++) {
+				out.append(name).append(symbolNames[symbol]).append("->p")
+				   .append(Integer.toString(transitions[state * classCount + symbolClass[symbol]])).append(lineSeparator);
+			}
+		}
+	}
+	
+	/**
+	 * Minimizes the DFA by {@link MinDka}, which is given the transition
+	 * table directly rather than the text of the definition. The states are
+	 * named as in {@link #getDefinition()}.
+	 * 
+	 * @return the minimal DFA
+	 * @throws IllegalArgumentException if the DFA is too large for a transition table
+	 */
+	public MinDka minimize() {
+		String[] stateNames = new String[sets.size()];
+		TransitionTable table = new TransitionTable(sets.size(), symbolNames.length);
+		
+		for(int state = 0; state < stateNames.length; state++) {
+			stateNames[state] = "p" + state;
+			
+			for(int symbol = 0; symbol < symbolNames.length; symbol++) {
+				table.set(state, symbol, transitions[state * classCount + symbolClass[symbol]]);
+			}
+		}
+		
+		MinDka minimal = new MinDka(stateNames, symbolNames, finalStates, 0, table);
+		minimal.minimize();
+		return minimal;
+	}
+	
+	/**
+	 * The next states of a single symbol from every state, compared by their
+	 * contents.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private static class Column {
+		
+		/** The next states, indexed by the states. */
+		private final int[][] next;
+		
+		/** The hash of the next states. */
+		private final int hash;
+		
+		/**
+		 * Constructs a new column.
+		 * 
+		 * @param next the next states, indexed by the states
+		 */
+		Column(int[][] next) {
+			this.next = next;
+			this.hash = Arrays.deepHashCode(next);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Column && Arrays.deepEquals(next, ((Column) obj).next);
+		}
+	}
+	
+	/**
+	 * The state of the construction shared by the tasks which expand the
+	 * sets: the table of the found sets and the transitions between them.
+	 * 
+	 * @author Filip Nemec
+	 */
+	private class Expansion {
+		
+		/** The transitions of the epsilon-NFA. */
+		private final TransitionRelation relation;
+		
+		/** The epsilon-closure of every state of the epsilon-NFA. */
+		private final StateSet[] closures;
+		
+		/** A symbol of every class, as a symbol of the epsilon-NFA. */
+		private final int[] representatives;
+		
+		/** The number of every found set. */
+		private final Map<StateSet, Integer> ids = new ConcurrentHashMap<>();
+		
+		/** Number of the found sets, which is also the number of the next one. */
+		private final AtomicInteger count = new AtomicInteger(1);
+		
+		/** The found sets, by their numbers. */
+		private StateSet[] found = new StateSet[16];
+		
+		/** The next set of every expanded set and class of symbols, {@code set * classCount + class}. */
+		private int[] transitions;
+		
+		/**
+		 * Constructs a new expansion, which has found only the initial set.
+		 * 
+		 * @param relation        the transitions of the epsilon-NFA
+		 * @param closures        the epsilon-closure of every state of the epsilon-NFA
+		 * @param representatives a symbol of every class, as a symbol of the epsilon-NFA
+		 * @param initial         the initial set
+		 */
+		Expansion(TransitionRelation relation, StateSet[] closures, int[] representatives, StateSet initial) {
+			this.relation = relation;
+			this.closures = closures;
+			this.representatives = representatives;
+			this.transitions = new int[Math.max(1, 16 * classCount)];
+			
+			ids.put(initial, 0);
+			found[0] = initial;
+		}
+		
+		/**
+		 * Makes room for the transitions of the given level, and for every set
+		 * which expanding it can find.
+		 * 
+		 * @param levelStart number of the first set of the level
+		 * @param levelEnd   number after the last set of the level
+		 */
+		void ensureCapacity(int levelStart, int levelEnd) {
+			if(levelEnd * classCount > transitions.length) {
+				transitions = Arrays.copyOf(transitions, Math.max(levelEnd * classCount, 2 * transitions.length));
+			}
+			
+			long mostFound = Math.min(maxStates, levelEnd + (long) (levelEnd - levelStart) * classCount);
+			if(mostFound > found.length) {
+				found = Arrays.copyOf(found, (int) Math.max(mostFound, Math.min(maxStates, 2L * found.length)));
+			}
+		}
+		
+		/**
+		 * Returns the number of the given set, numbering it first if it was not
+		 * found before.
+		 * 
+		 * @param set the set, which is copied if it is new
+		 * @return the number of the set
+		 * @throws IllegalStateException if there are more sets than the limit of states
+		 */
+		int intern(StateSet set) {
+			Integer id = ids.get(set);
+			if(id != null) return id;
+			
+			return ids.computeIfAbsent(new StateSet(set), copy -> {
+				int newId = count.getAndIncrement();
+				if(newId >= maxStates) throw new IllegalStateException("The DFA has more than " + maxStates + " states");
+				
+				found[newId] = copy;
+				return newId;
+			});
+		}
+		
+		/**
+		 * Expands a range of the sets of the current level, splitting it among
+		 * more tasks if it is large.
+		 * 
+		 * @author Filip Nemec
+		 */
+		private class Task extends RecursiveAction {
+			
+			/** Version of the serialized form. */
+			private static final long serialVersionUID = 1L;
+			
+			/** Number of the first expanded set. */
+			private final int from;
+			
+			/** Number after the last expanded set. */
+			private final int to;
+			
+			/**
+			 * Constructs a new task.
+			 * 
+			 * @param from number of the first expanded set
+			 * @param to   number after the last expanded set
+			 */
+			Task(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+			
+			@Override
+			protected void compute() {
+				if(to - from > EXPANSION_BATCH) {
+					int middle = (from + to) >>> 1;
+					invokeAll(new Task(from, middle), new Task(middle, to));
+					return;
+				}
+				
+				StateSet next = new StateSet(closures.length);
+				for(int id = from; id < to; id++) {
+					StateSet set = found[id];
+					
+					for(int symbolClassId = 0; symbolClassId < classCount; symbolClassId++) {
+						next.clear();
+						
+						for(int state = set.next(0); state >= 0; state = set.next(state + 1)) {
+							for(int target : relation.get(state, representatives[symbolClassId])) {
+								next.addAll(closures[target]);
+							}
+						}
+						
+						transitions[id * classCount + symbolClassId] = intern(next);
+					}
+				}
+			}
+		}
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Reads an epsilon-NFA in the definition format of {@code SimEnka} and
+	 * prints the equivalent DFA in the definition format of {@link MinDka}.
+	 * The options are:
+	 * <ul>
+	 * <li><b>--max-states=n</b> - the limit of the number of states of the DFA,
+	 * {@value #DEFAULT_MAX_STATES} by default</li>
+	 * <li><b>--threads=n</b> - number of threads which expand the sets, the
+	 * number of processors by default</li>
+	 * <li><b>--minimize</b> - the DFA is minimized before it is printed</li>
+	 * </ul>
+	 * 
+	 * @param args the options
+	 * @throws IOException if the DFA cannot be printed
+	 */
+	public static void main(String[] args) throws IOException {
+		int maxStates = DEFAULT_MAX_STATES;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean minimize = false;
+		
+		for(String arg : args) {
+			String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--max-states=":	maxStates = Integer.parseInt(value); break;
+				case "--threads=":		threads = Integer.parseInt(value); break;
+				case "--minimize":		minimize = true; break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		SubsetConstruction dfa;
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			dfa = new SubsetConstruction(reader, maxStates, threads);
+		}
+		
+		if(minimize) {
+			dfa.minimize().printDefinition();
+			return;
+		}
+		
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		dfa.writeDefinition(out);
+		out.flush();
+	}
+}
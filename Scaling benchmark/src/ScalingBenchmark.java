@@ -0,0 +1,245 @@
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import automaton.DefinitionReader;
+
+/**
+ * Measures how the engines scale: every engine is run on definitions
+ * generated by {@link WorkloadGenerator} for every value of one swept
+ * parameter, and a line of CSV is written for every run.
+ * <p>
+ * The measured engines are
+ * <ul>
+ * <li><b>dfa</b> - {@link MinDka#minimize()},</li>
+ * <li><b>enka</b> - {@link SimEnka#process(String)},</li>
+ * <li><b>dpda</b> - {@link SimPa#process(String)} and</li>
+ * <li><b>tm</b> - the simulation of {@link SimTS}.</li>
+ * </ul>
+ * Every line holds the parameters of the definition, its size, the time of
+ * loading the definition and of running the engine, the bytes allocated by
+ * both, the sum of the peak usages of the heap memory pools and the length of
+ * the output. Every measurement is repeated, and the one of the shortest
+ * total time is written.
+ * <p>
+ * The allocation is measured by the thread of the benchmark, which needs the
+ * {@code com.sun.management} extension of the JVM. Without it the allocated
+ * bytes are written as <b>-1</b>.
+ * 
+ * @author Filip Nemec
+ */
+public class ScalingBenchmark {
+	
+	/** The header of the written CSV. */
+	private static final String HEADER = "engine," + WorkloadGenerator.PARAMETER_NAMES
+			+ ",definition_bytes,load_ms,run_ms,allocated_bytes,peak_heap_bytes,output_chars";
+	
+	/** The engines measured when none are given. */
+	private static final String[] DEFAULT_ENGINES = { "dfa", "enka", "dpda", "tm" };
+	
+	/** The values of the number of states when no values are given. */
+	private static final String[] DEFAULT_VALUES = { "100", "200", "400", "800", "1600", "3200", "6400", "12800" };
+	
+	/** The heap memory pools, whose peak usages are reset before every run. */
+	private static final List<MemoryPoolMXBean> HEAP_POOLS = new ArrayList<>();
+	
+	static {
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP && pool.isValid()) HEAP_POOLS.add(pool);
+		}
+	}
+	
+	/**
+	 * Prevents the construction of this class.
+	 */
+	private ScalingBenchmark() {
+	}
+	
+	/**
+	 * Loads the given definition into the given engine.
+	 * 
+	 * @param engine     the engine
+	 * @param definition the definition
+	 * @param stepLimit  number of steps after which a Turing machine is stopped
+	 * @return the loaded engine
+	 */
+	private static Object load(String engine, String definition, long stepLimit) {
+		switch(engine) {
+			case "dfa":		return new MinDka(DefinitionReader.of(definition));
+			case "enka":	return new SimEnka(DefinitionReader.of(definition));
+			case "dpda":	return new SimPa(DefinitionReader.of(definition));
+			case "tm":
+				SimTS machine = new SimTS(DefinitionReader.of(definition));
+				machine.setStepLimit(stepLimit);
+				return machine;
+			default: throw new IllegalArgumentException("Invalid engine '" + engine + "'");
+		}
+	}
+	
+	/**
+	 * Runs the given loaded engine on the input of its definition.
+	 * 
+	 * @param loaded     the loaded engine
+	 * @param definition the definition, whose first line is the input of an
+	 *                   epsilon-NFA or a pushdown automaton
+	 * @return the output of the engine
+	 */
+	private static String run(Object loaded, String definition) {
+		if(loaded instanceof MinDka) {
+			MinDka dfa = (MinDka) loaded;
+			dfa.minimize();
+			return dfa.getDefinition();
+		}
+		
+		String input = definition.substring(0, definition.indexOf('\n'));
+		if(loaded instanceof SimEnka) return ((SimEnka) loaded).process(input);
+		if(loaded instanceof SimPa) return ((SimPa) loaded).process(input);
+		return ((SimTS) loaded).simulate();
+	}
+	
+	/**
+	 * Measures the given engine on the given definition and writes the line
+	 * of the fastest run.
+	 * 
+	 * @param engine     the engine
+	 * @param generator  the generator of the definition
+	 * @param runs       number of runs
+	 * @param stepLimit  number of steps after which a Turing machine is stopped
+	 * @param csv        the stream to which the line is written
+	 */
+	private static void measure(String engine, WorkloadGenerator generator, int runs, long stepLimit, PrintStream csv) {
+		String definition = generator.generate(engine);
+		
+		long bestLoad = 0;
+		long bestRun = Long.MAX_VALUE;
+		long allocated = 0;
+		long peak = 0;
+		int outputLength = 0;
+		
+		for(int i = 0; i < runs; i++) {
+			System.gc();
+			for(MemoryPoolMXBean pool : HEAP_POOLS) pool.resetPeakUsage();
+			long allocatedBefore = allocatedBytes();
+			
+			long start = System.nanoTime();
+			Object loaded = load(engine, definition, stepLimit);
+			long loadEnd = System.nanoTime();
+			String output = run(loaded, definition);
+			long end = System.nanoTime();
+			
+			long allocatedAfter = allocatedBytes();
+			
+			if(end - start < bestLoad + bestRun) {
+				bestLoad = loadEnd - start;
+				bestRun = end - loadEnd;
+				allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+				peak = 0;
+				for(MemoryPoolMXBean pool : HEAP_POOLS) peak += pool.getPeakUsage().getUsed();
+				outputLength = output.length();
+			}
+		}
+		
+		csv.println(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%d,%d,%d", engine, generator.parameters(), definition.length(),
+				bestLoad / 1e6, bestRun / 1e6, allocated, peak, outputLength));
+		csv.flush();
+	}
+	
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 * 
+	 * @return the number of bytes, or <b>-1</b> if it cannot be measured
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Runs the benchmark. The options are the ones of
+	 * {@link WorkloadGenerator#main(String[])}, which fix the parameters that
+	 * are not swept, and
+	 * <ul>
+	 * <li><b>--engine=name</b> - a measured engine, <b>dfa</b>, <b>enka</b>,
+	 * <b>dpda</b> or <b>tm</b>, all of them by default; may be repeated</li>
+	 * <li><b>--sweep=parameter</b> - the swept parameter, the name of one of
+	 * the options of the generator without the dashes, <b>states</b> by
+	 * default</li>
+	 * <li><b>--values=v1,v2,...</b> - the values of the swept parameter, from
+	 * 100 to 12800 states by default</li>
+	 * <li><b>--runs=n</b> - number of runs of every measurement, 3 by
+	 * default</li>
+	 * <li><b>--max-steps=n</b> - number of steps after which a Turing machine
+	 * is stopped, 100000000 by default</li>
+	 * <li><b>--out=path</b> - the CSV file, instead of the standard
+	 * output</li>
+	 * </ul>
+	 * 
+	 * @param args the options
+	 * @throws FileNotFoundException if the CSV file cannot be created
+	 */
+	public static void main(String[] args) throws FileNotFoundException {
+		WorkloadGenerator generator = new WorkloadGenerator();
+		List<String> engines = new ArrayList<>();
+		String sweep = "states";
+		String[] values = null;
+		int runs = 3;
+		long stepLimit = 100_000_000;
+		String out = null;
+		
+		for(String arg : args) {
+			if(generator.setOption(arg)) continue;
+			
+			String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--engine=":		engines.add(value); break;
+				case "--sweep=":		sweep = value; break;
+				case "--values=":		values = DefinitionReader.split(value, ","); break;
+				case "--runs=":			runs = Integer.parseInt(value); break;
+				case "--max-steps=":	stepLimit = Long.parseLong(value); break;
+				case "--out=":			out = value; break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		if(engines.isEmpty()) engines.addAll(List.of(DEFAULT_ENGINES));
+		if(values == null) {
+			if(!sweep.equals("states")) throw new IllegalArgumentException("Expected the values of '" + sweep + "'");
+			values = DEFAULT_VALUES;
+		}
+		if(runs < 1) throw new IllegalArgumentException("Invalid number of runs '" + runs + "'");
+		
+		// Every value is checked before anything is measured.
+		for(String value : values) {
+			if(!new WorkloadGenerator().setOption("--" + sweep + "=" + value))
+				throw new IllegalArgumentException("Invalid swept parameter '" + sweep + "'");
+		}
+		
+		PrintStream csv = out == null ? System.out : new PrintStream(out);
+		try {
+			csv.println(HEADER);
+			
+			for(String engine : engines) {
+				for(String value : values) {
+					generator.setOption("--" + sweep + "=" + value);
+					measure(engine, generator, runs, stepLimit, csv);
+				}
+			}
+		} finally {
+			if(out != null) csv.close();
+		}
+	}
+}
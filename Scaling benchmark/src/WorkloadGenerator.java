@@ -0,0 +1,469 @@
+import java.util.Random;
+
+/**
+ * Generates random definitions of large automata in the exact input formats
+ * of {@link MinDka}, {@link SimEnka}, {@link SimPa} and {@link SimTS}.
+ * <p>
+ * The definitions are determined by the parameters alone: every call of a
+ * method generating a definition starts from the seed again, so the same
+ * parameters always give the same definition. The parameters are
+ * <ul>
+ * <li>the seed,</li>
+ * <li>the number of states,</li>
+ * <li>the size of the alphabet,</li>
+ * <li>the density, which is the probability that a transition is defined for
+ * a state and a symbol,</li>
+ * <li>the epsilon ratio, which is the probability that a state has an
+ * epsilon transition,</li>
+ * <li>the stack depth, which the inputs of a pushdown automaton repeatedly
+ * fill its stack up to, and</li>
+ * <li>the input length, which is the number of symbols of the input or the
+ * number of cells of the tape.</li>
+ * </ul>
+ * 
+ * @author Filip Nemec
+ */
+public class WorkloadGenerator {
+	
+	/** The characters which are the symbols of the generated Turing machines and stack symbols of the pushdown automata. */
+	private static final String CHARACTERS = "0123456789abcdefghijklmnopqrstuvwxyzACDEFGHIJLMNOPQRSTUVWXYZ";
+	
+	/** The empty cell of the generated Turing machines. */
+	private static final char EMPTY_CELL = 'B';
+	
+	/** The symbol initially on the stack of the generated pushdown automata. */
+	private static final char INITIAL_STACK_SYMBOL = 'K';
+	
+	/** The names of the parameters, separated by <b>,</b> in the order of {@link #parameters()}. */
+	static final String PARAMETER_NAMES = "seed,states,alphabet,density,epsilon_ratio,stack_depth,input_length";
+	
+	/** The seed of every generated definition. */
+	private long seed = 42;
+	
+	/** Number of states. */
+	private int states = 100;
+	
+	/** Size of the alphabet. */
+	private int alphabet = 4;
+	
+	/** Probability that a transition is defined for a state and a symbol. */
+	private double density = 1;
+	
+	/** Probability that a state has an epsilon transition. */
+	private double epsilonRatio = 0.1;
+	
+	/** Depth up to which the inputs of a pushdown automaton fill its stack. */
+	private int stackDepth = 100;
+	
+	/** Number of symbols of the input or cells of the tape. */
+	private int inputLength = 1000;
+	
+	/**
+	 * Sets the seed of every generated definition, 42 by default.
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * Sets the number of states, 100 by default.
+	 * 
+	 * @param states number of states
+	 * @throws IllegalArgumentException if the number is not positive
+	 */
+	public void setStates(int states) {
+		if(states < 1) throw new IllegalArgumentException("Invalid number of states '" + states + "'");
+		this.states = states;
+	}
+	
+	/**
+	 * Sets the size of the alphabet, 4 by default. The stack symbols of a
+	 * pushdown automaton and the symbols of a Turing machine are single
+	 * characters, so their alphabets are limited.
+	 * 
+	 * @param alphabet size of the alphabet
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public void setAlphabet(int alphabet) {
+		if(alphabet < 1) throw new IllegalArgumentException("Invalid alphabet size '" + alphabet + "'");
+		this.alphabet = alphabet;
+	}
+	
+	/**
+	 * Sets the probability that a transition is defined for a state and a
+	 * symbol, 1 by default.
+	 * 
+	 * @param density the probability
+	 * @throws IllegalArgumentException if the probability is not between 0 and 1
+	 */
+	public void setDensity(double density) {
+		if(!(density >= 0 && density <= 1)) throw new IllegalArgumentException("Invalid density '" + density + "'");
+		this.density = density;
+	}
+	
+	/**
+	 * Sets the probability that a state has an epsilon transition, 0.1 by
+	 * default.
+	 * 
+	 * @param epsilonRatio the probability
+	 * @throws IllegalArgumentException if the probability is not between 0 and 1
+	 */
+	public void setEpsilonRatio(double epsilonRatio) {
+		if(!(epsilonRatio >= 0 && epsilonRatio <= 1)) throw new IllegalArgumentException("Invalid epsilon ratio '" + epsilonRatio + "'");
+		this.epsilonRatio = epsilonRatio;
+	}
+	
+	/**
+	 * Sets the depth up to which the inputs of a pushdown automaton fill its
+	 * stack, 100 by default.
+	 * 
+	 * @param stackDepth the depth
+	 * @throws IllegalArgumentException if the depth is not positive
+	 */
+	public void setStackDepth(int stackDepth) {
+		if(stackDepth < 1) throw new IllegalArgumentException("Invalid stack depth '" + stackDepth + "'");
+		this.stackDepth = stackDepth;
+	}
+	
+	/**
+	 * Sets the number of symbols of the input or cells of the tape, 1000 by
+	 * default.
+	 * 
+	 * @param inputLength the length
+	 * @throws IllegalArgumentException if the length is not positive
+	 */
+	public void setInputLength(int inputLength) {
+		if(inputLength < 1) throw new IllegalArgumentException("Invalid input length '" + inputLength + "'");
+		this.inputLength = inputLength;
+	}
+	
+	/**
+	 * Returns the values of the parameters, separated by <b>,</b> in the order
+	 * of {@link #PARAMETER_NAMES}.
+	 * 
+	 * @return the values of the parameters
+	 */
+	String parameters() {
+		return seed + "," + states + "," + alphabet + "," + density + "," + epsilonRatio + "," + stackDepth + "," + inputLength;
+	}
+	
+	/**
+	 * Generates a DFA in the format of {@link MinDka}. Half of its states are
+	 * acceptable.
+	 * 
+	 * @return the definition
+	 */
+	public String dfa() {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		
+		appendNames(sb, "q", states).append('\n');
+		appendNames(sb, "a", alphabet).append('\n');
+		appendFinalStates(sb, random, 2).append('\n');
+		sb.append("q0\n");
+		
+		for(int state = 0; state < states; state++) {
+			for(int symbol = 0; symbol < alphabet; symbol++) {
+				if(random.nextDouble() >= density) continue;
+				sb.append('q').append(state).append(",a").append(symbol).append("->q").append(random.nextInt(states)).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Generates an epsilon-NFA in the format of {@link SimEnka}, together with
+	 * an input. Every defined transition leads to one to three states, and
+	 * every epsilon transition to one or two, and a quarter of the states are
+	 * acceptable.
+	 * 
+	 * @return the definition
+	 */
+	public String enka() {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		
+		appendInput(sb, random).append('\n');
+		appendNames(sb, "q", states).append('\n');
+		appendNames(sb, "a", alphabet).append('\n');
+		appendFinalStates(sb, random, 4).append('\n');
+		sb.append("q0\n");
+		
+		for(int state = 0; state < states; state++) {
+			for(int symbol = 0; symbol < alphabet; symbol++) {
+				if(random.nextDouble() >= density) continue;
+				sb.append('q').append(state).append(",a").append(symbol).append("->");
+				appendTargets(sb, random, 1 + random.nextInt(3)).append('\n');
+			}
+			
+			if(random.nextDouble() < epsilonRatio) {
+				sb.append('q').append(state).append(",$->");
+				appendTargets(sb, random, 1 + random.nextInt(2)).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Generates a deterministic pushdown automaton in the format of
+	 * {@link SimPa}, together with an input.
+	 * <p>
+	 * Every symbol of an even index pushes a stack symbol of its own, and
+	 * every symbol of an odd index pops the top of the stack, except for the
+	 * initial stack symbol. The input fills the stack up to the stack depth
+	 * and empties it again until it has the input length. An epsilon
+	 * transition only leads to a state of a higher index, so the automaton
+	 * always stops.
+	 * 
+	 * @return the definition
+	 * @throws IllegalArgumentException if there are more symbols of even
+	 *                                  indices than stack symbols
+	 */
+	public String dpda() {
+		int pushing = (alphabet + 1) / 2;
+		int popping = alphabet / 2;
+		if(pushing > CHARACTERS.length()) throw new IllegalArgumentException("Invalid alphabet size '" + alphabet + "' for a pushdown automaton");
+		
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		
+		boolean rising = true;
+		for(int i = 0, depth = 0; i < inputLength; i++) {
+			if(i > 0) sb.append(',');
+			
+			if(popping == 0 || depth == 0) rising = true;
+			else if(depth == stackDepth) rising = false;
+			
+			sb.append('a').append(rising ? 2 * random.nextInt(pushing) : 2 * random.nextInt(popping) + 1);
+			depth += rising ? 1 : -1;
+		}
+		sb.append('\n');
+		
+		appendNames(sb, "q", states).append('\n');
+		appendNames(sb, "a", alphabet).append('\n');
+		sb.append(INITIAL_STACK_SYMBOL);
+		for(int symbol = 0; symbol < pushing; symbol++) {
+			sb.append(',').append(CHARACTERS.charAt(symbol));
+		}
+		sb.append('\n');
+		appendFinalStates(sb, random, 2).append('\n');
+		sb.append("q0\n");
+		sb.append(INITIAL_STACK_SYMBOL).append('\n');
+		
+		for(int state = 0; state < states; state++) {
+			for(int top = -1; top < pushing; top++) {
+				char topSymbol = top < 0 ? INITIAL_STACK_SYMBOL : CHARACTERS.charAt(top);
+				
+				for(int symbol = 0; symbol < alphabet; symbol++) {
+					if(random.nextDouble() >= density) continue;
+					
+					sb.append('q').append(state).append(",a").append(symbol).append(',').append(topSymbol);
+					sb.append("->q").append(random.nextInt(states)).append(',');
+					if(symbol % 2 == 0) sb.append(CHARACTERS.charAt(symbol / 2)).append(topSymbol);
+					else sb.append(top < 0 ? INITIAL_STACK_SYMBOL : '$');
+					sb.append('\n');
+				}
+				
+				if(state + 1 < states && random.nextDouble() < epsilonRatio) {
+					sb.append('q').append(state).append(",$,").append(topSymbol);
+					sb.append("->q").append(state + 1 + random.nextInt(states - state - 1)).append(',').append(topSymbol).append('\n');
+				}
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Generates a Turing machine in the format of {@link SimTS}, whose tape
+	 * holds the input followed by an empty cell, and whose head starts at the
+	 * first cell.
+	 * <p>
+	 * Three quarters of the transitions on the input symbols move the head
+	 * right, so the machine mostly walks towards the end of the input, where
+	 * it moves to its only final state, the last one, and halts.
+	 * 
+	 * @return the definition
+	 * @throws IllegalArgumentException if the symbols are not single
+	 *                                  characters or there is only one state
+	 */
+	public String turingMachine() {
+		if(alphabet > CHARACTERS.length()) throw new IllegalArgumentException("Invalid alphabet size '" + alphabet + "' for a Turing machine");
+		if(states < 2) throw new IllegalArgumentException("Invalid number of states '" + states + "' for a Turing machine");
+		
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		int finalState = states - 1;
+		
+		String inputAlphabet = String.join(",", CHARACTERS.substring(0, alphabet).split(""));
+		appendNames(sb, "q", states).append('\n');
+		sb.append(inputAlphabet).append('\n');
+		sb.append(inputAlphabet).append(',').append(EMPTY_CELL).append('\n');
+		sb.append(EMPTY_CELL).append('\n');
+		
+		for(int i = 0; i < inputLength; i++) {
+			sb.append(CHARACTERS.charAt(random.nextInt(alphabet)));
+		}
+		sb.append(EMPTY_CELL).append('\n');
+		
+		sb.append('q').append(finalState).append('\n');
+		sb.append("q0\n");
+		sb.append("0\n");
+		
+		for(int state = 0; state < finalState; state++) {
+			for(int symbol = 0; symbol < alphabet; symbol++) {
+				if(random.nextDouble() >= density) continue;
+				
+				sb.append('q').append(state).append(',').append(CHARACTERS.charAt(symbol));
+				sb.append("->q").append(random.nextInt(finalState)).append(',').append(CHARACTERS.charAt(random.nextInt(alphabet)));
+				sb.append(random.nextInt(4) == 0 ? ",L" : ",R").append('\n');
+			}
+			sb.append('q').append(state).append(',').append(EMPTY_CELL);
+			sb.append("->q").append(finalState).append(',').append(EMPTY_CELL).append(",S\n");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Appends a random input of the input length.
+	 * 
+	 * @param sb     the builder to which the input is appended
+	 * @param random the source of randomness
+	 * @return the builder
+	 */
+	private StringBuilder appendInput(StringBuilder sb, Random random) {
+		for(int i = 0; i < inputLength; i++) {
+			if(i > 0) sb.append(',');
+			sb.append('a').append(random.nextInt(alphabet));
+		}
+		return sb;
+	}
+	
+	/**
+	 * Appends the given number of random states, separated by <b>,</b>.
+	 * 
+	 * @param sb     the builder to which the states are appended
+	 * @param random the source of randomness
+	 * @param count  number of states
+	 * @return the builder
+	 */
+	private StringBuilder appendTargets(StringBuilder sb, Random random, int count) {
+		for(int i = 0; i < count; i++) {
+			if(i > 0) sb.append(',');
+			sb.append('q').append(random.nextInt(states));
+		}
+		return sb;
+	}
+	
+	/**
+	 * Appends every state with the given probability, separated by
+	 * <b>,</b>.
+	 * 
+	 * @param sb     the builder to which the states are appended
+	 * @param random the source of randomness
+	 * @param ratio  the inverse of the probability that a state is appended
+	 * @return the builder
+	 */
+	private StringBuilder appendFinalStates(StringBuilder sb, Random random, int ratio) {
+		boolean first = true;
+		for(int state = 0; state < states; state++) {
+			if(random.nextInt(ratio) != 0) continue;
+			
+			if(!first) sb.append(',');
+			sb.append('q').append(state);
+			first = false;
+		}
+		return sb;
+	}
+	
+	/**
+	 * Appends the given number of names with the given prefix, numbered from
+	 * zero and separated by <b>,</b>.
+	 * 
+	 * @param sb     the builder to which the names are appended
+	 * @param prefix the prefix of the names
+	 * @param count  number of names
+	 * @return the builder
+	 */
+	private static StringBuilder appendNames(StringBuilder sb, String prefix, int count) {
+		for(int i = 0; i < count; i++) {
+			if(i > 0) sb.append(',');
+			sb.append(prefix).append(i);
+		}
+		return sb;
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Prints a generated definition. The first argument is the kind of the
+	 * automaton, <b>dfa</b>, <b>enka</b>, <b>dpda</b> or <b>tm</b>, and the
+	 * options following it are:
+	 * <ul>
+	 * <li><b>--seed=n</b> - the seed</li>
+	 * <li><b>--states=n</b> - number of states</li>
+	 * <li><b>--alphabet=n</b> - size of the alphabet</li>
+	 * <li><b>--density=p</b> - probability that a transition is defined</li>
+	 * <li><b>--epsilon=p</b> - probability that a state has an epsilon
+	 * transition</li>
+	 * <li><b>--stack=n</b> - depth up to which the stack is filled</li>
+	 * <li><b>--length=n</b> - length of the input or the tape</li>
+	 * </ul>
+	 * 
+	 * @param args the kind and the options
+	 */
+	public static void main(String[] args) {
+		if(args.length == 0) throw new IllegalArgumentException("Expected the kind of the automaton");
+		
+		WorkloadGenerator generator = new WorkloadGenerator();
+		for(int i = 1; i < args.length; i++) {
+			if(!generator.setOption(args[i])) throw new IllegalArgumentException("Unknown option '" + args[i] + "'");
+		}
+		
+		System.out.print(generator.generate(args[0]));
+	}
+	
+	/**
+	 * Sets the parameter of the given option, in the format described by
+	 * {@link #main(String[])}.
+	 * 
+	 * @param arg the option
+	 * @return {@code true} if the option sets a parameter, {@code false} otherwise
+	 */
+	boolean setOption(String arg) {
+		String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+		String value = arg.substring(option.length());
+		
+		switch(option) {
+			case "--seed=":		setSeed(Long.parseLong(value)); break;
+			case "--states=":	setStates(Integer.parseInt(value)); break;
+			case "--alphabet=":	setAlphabet(Integer.parseInt(value)); break;
+			case "--density=":	setDensity(Double.parseDouble(value)); break;
+			case "--epsilon=":	setEpsilonRatio(Double.parseDouble(value)); break;
+			case "--stack=":	setStackDepth(Integer.parseInt(value)); break;
+			case "--length=":	setInputLength(Integer.parseInt(value)); break;
+			default: return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Generates the definition of the given kind of automaton.
+	 * 
+	 * @param kind <b>dfa</b>, <b>enka</b>, <b>dpda</b> or <b>tm</b>
+	 * @return the definition
+	 * @throws IllegalArgumentException if the kind is unknown
+	 */
+	String generate(String kind) {
+		switch(kind) {
+			case "dfa":		return dfa();
+			case "enka":	return enka();
+			case "dpda":	return dpda();
+			case "tm":		return turingMachine();
+			default: throw new IllegalArgumentException("Invalid kind of automaton '" + kind + "'");
+		}
+	}
+}
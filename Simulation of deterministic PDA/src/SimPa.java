@@ -1,15 +1,25 @@
+import java.io.PrintStream;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Scanner;
-import java.util.Set;
-import java.util.Stack;
+
+import automaton.Counter;
+import automaton.DefinitionReader;
+import automaton.Maximum;
+import automaton.MetricRegistry;
+import automaton.StateSet;
+import automaton.SymbolTable;
+import automaton.TransitionTable;
 
 /**
  * A simple simulation of the deterministic pushdown
  * automata (DPDA).
+ * <p>
+ * The states, the input symbols and the stack symbols are interned to ids
+ * by the definition. The transitions are kept in a {@link TransitionTable}
+ * indexed by the state and by the pair of the input symbol and the top of
+ * the stack, and the stack itself is an array of stack symbol ids.
+ * <p>
+ * Given a {@link MetricRegistry}, the automaton counts the inputs and the
+ * transitions, and records the deepest stack.
  * 
  * @author Filip Nemec
  */
@@ -20,330 +30,406 @@ public class SimPa {
 	 */
 	private static final String EPSILON = "$";
 	
+	/**
+	 * Length of the output after which it is printed while processing,
+	 * so that a never-ending sequence of epsilon transitions does not
+	 * keep all of its output.
+	 */
+	private static final int FLUSH_LENGTH = 8192;
+	
 	/**
 	 * All of the input strings that need to be processed.
 	 */
-	private String[] inputStrings;
+	private String[] inputStrings = new String[0];
 	
 	/**
-	 * A set of all the existing states. This set is usually
-	 * denoted as 'Q'.
+	 * All the existing states. This set is usually denoted as 'Q'.
 	 */
-	private Set<String> states = new HashSet<>();
+	private final SymbolTable states = new SymbolTable();
 	
 	/**
-	 * A set of all the existing symbols in the alphabet. This
-	 * set is usually denoted as a Greek big sigma symbol.
+	 * All the input symbols read by the transitions, including the epsilon.
 	 */
-	private Set<String> alphabet = new HashSet<>();
+	private final SymbolTable symbols = new SymbolTable();
 	
 	/**
-	 * A set of all the existing symbols in the stack alphabet.
-	 * This set is usually denoted as a Greek big gamma symbol.
+	 * All the symbols that can be on the stack or read from it, including
+	 * the epsilon which is read from the empty stack.
 	 */
-	private Set<String> stackAlphabet = new HashSet<>();
+	private final SymbolTable stackSymbols = new SymbolTable();
 	
 	/**
-	 * A set of all the final states. This set is usually denoted 
+	 * A set of all the final states. This set is usually denoted
 	 * as 'F'.
 	 */
-	private Set<String> finalStates = new HashSet<>();
+	private StateSet finalStates;
 	
 	/**
 	 * The initial (starting) state 'q0'.
 	 */
-	private String initialState;
+	private int initialState;
 	
 	/**
 	 * The initial (starting) stack symbol 'Z'.
 	 */
-	private String initialStackSymbol;
+	private int initialStackSymbol;
+	
+	/**
+	 * The epsilon input symbol.
+	 */
+	private int epsilon;
+	
+	/**
+	 * The epsilon stack symbol, read from the empty stack.
+	 */
+	private int emptyStack;
 	
 	/**
-	 * Maps the input tuple (current state, input symbol, stack symbol)
-	 * to the output tuple (next state, stack symbols).
+	 * Maps the current state and the pair of the input symbol and the
+	 * stack symbol, {@code symbol * stackSymbolCount + stackSymbol}, to
+	 * the index of the transition.
 	 */
-	private Map<InputTuple, OutputTuple> transition = new HashMap<>();
+	private TransitionTable transition;
 	
 	/**
-	 * A {@cod Writer} implementation which writes the given
-	 * string to the console.
+	 * The next state of every transition.
 	 */
-	private final Writer CONSOLE_WRITER = string -> System.out.print(string);
+	private int[] nextStates;
 	
 	/**
-	 * Initializes this PDA using the provided definition.
+	 * The stack symbols pushed by every transition, in the order in which
+	 * they are pushed, so that the most left one ends on top of the stack.
+	 */
+	private int[][] pushedSymbols;
+	
+	/**
+	 * The stack, with its top at {@code stackSize - 1}.
+	 */
+	private int[] stack = new int[16];
+	
+	/**
+	 * Number of symbols on the stack.
+	 */
+	private int stackSize;
+	
+	/**
+	 * Counts the inputs, or {@code null} if no metrics are collected.
+	 */
+	private Counter inputCount;
+	
+	/**
+	 * Counts the transitions, or {@code null} if no metrics are collected.
+	 */
+	private Counter transitionCount;
+	
+	/**
+	 * Counts the epsilon transitions, or {@code null} if no metrics are collected.
+	 */
+	private Counter epsilonTransitionCount;
+	
+	/**
+	 * The deepest stack, or {@code null} if no metrics are collected.
+	 */
+	private Maximum maxStackDepth;
+	
+	/**
+	 * Constructs a new PDA without any input strings, whose definition
+	 * is read by {@link #initialize()}.
+	 */
+	public SimPa() {
+	}
+	
+	/**
+	 * Constructs a new PDA from the given definition.
+	 * 
+	 * @param reader the reader of the definition, described by {@link #main(String[])}
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 */
+	public SimPa(DefinitionReader reader) {
+		initialize(reader);
+	}
+	
+	/**
+	 * Initializes this PDA using the definition read from the
+	 * standard input.
+	 * 
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
 	 */
 	public void initialize() {
-		try(Scanner scanner = new Scanner(System.in)) {
-			inputStrings = scanner.nextLine().trim().split("\\|");
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			initialize(reader);
+		}
+	}
+	
+	/**
+	 * Initializes this PDA using the given definition.
+	 * 
+	 * @param reader the reader of the definition, described by {@link #main(String[])}
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 */
+	private void initialize(DefinitionReader reader) {
+		inputStrings = DefinitionReader.split(reader.nextLine().trim(), "|");
+		
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(states, ",");
+		reader.requireLine(); // The alphabet follows from the transitions.
+		reader.requireLine(); // The stack alphabet follows from the transitions.
+		
+		SymbolTable finalNames = new SymbolTable();
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(finalNames, ",");
+		
+		reader.requireLine();
+		initialState = reader.rest(states);
+		reader.requireLine();
+		initialStackSymbol = reader.rest(stackSymbols);
+		epsilon = symbols.intern(EPSILON);
+		emptyStack = stackSymbols.intern(EPSILON);
+		
+		// Every transition is stored as its state, its input symbol and its
+		// stack symbol, together with its next state and pushed symbols.
+		int[] definedTransitions = new int[3 * 64];
+		int[] next = new int[64];
+		int[][] pushed = new int[64][];
+		int count = 0;
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) break;
 			
-			states		 .addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			alphabet	 .addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			stackAlphabet.addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			finalStates	 .addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
+			if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
 			
-			initialState 	   = scanner.nextLine().trim();
-			initialStackSymbol = scanner.nextLine().trim();
+			if(count == next.length) {
+				definedTransitions = Arrays.copyOf(definedTransitions, 6 * count);
+				next = Arrays.copyOf(next, 2 * count);
+				pushed = Arrays.copyOf(pushed, 2 * count);
+			}
 			
-			while(scanner.hasNextLine()) {
-				String line = scanner.nextLine().trim();
-				
-				if(line.isEmpty()) break;
-				
-				String[] side = line.split("->");
-				String[] input = side[0].split(",");
-				String[] output = side[1].split(",");
-				
-				InputTuple inputTuple =   new InputTuple(input[0], input[1], input[2]);
-				OutputTuple outputTuple = new OutputTuple(output[0], output[1]);
-				
-				transition.put(inputTuple, outputTuple);
+			for(int i = 0; i < 3; i++) {
+				if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+				definedTransitions[3 * count + i] = reader.field(i == 0 ? states : i == 1 ? symbols : stackSymbols, ",");
 			}
+			if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			reader.endSection();
+			
+			if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			next[count] = reader.field(states, ",");
+			
+			if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			pushed[count] = pushOrder(reader.field(","));
+			
+			if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			count++;
+		}
+		
+		finalStates = new StateSet(states.size());
+		for(int i = 0; i < finalNames.size(); i++) {
+			int id = states.id(finalNames.name(i));
+			if(id != SymbolTable.NONE) finalStates.add(id);
+		}
+		
+		transition = new TransitionTable(states.size(), symbols.size() * stackSymbols.size());
+		nextStates = Arrays.copyOf(next, count);
+		pushedSymbols = Arrays.copyOf(pushed, count);
+		
+		for(int i = 0; i < count; i++) {
+			transition.set(definedTransitions[3 * i], column(definedTransitions[3 * i + 1], definedTransitions[3 * i + 2]), i);
 		}
 	}
 	
+	/**
+	 * Returns the stack symbols of the given {@code String}, in the order
+	 * in which they are pushed: from last to first since the most left
+	 * symbol must be on top of stack, without the epsilons.
+	 * 
+	 * @param pushed the {@code String} that contains all of the symbols
+	 * @return the ids of the symbols
+	 */
+	private int[] pushOrder(String pushed) {
+		int[] ids = new int[pushed.length()];
+		int count = 0;
+		
+		for(int i = pushed.length() - 1; i >= 0; i--) {
+			if(pushed.charAt(i) == '$') continue;
+			ids[count++] = stackSymbols.intern(String.valueOf(pushed.charAt(i)));
+		}
+		
+		return Arrays.copyOf(ids, count);
+	}
+	
+	/**
+	 * Sets the registry to which the metrics of this automaton are added,
+	 * named <b>dpda.inputs</b>, <b>dpda.transitions</b>,
+	 * <b>dpda.epsilonTransitions</b> and <b>dpda.maxStackDepth</b>.
+	 * 
+	 * @param registry the registry, or {@code null} to collect no metrics
+	 */
+	public void setMetricRegistry(MetricRegistry registry) {
+		inputCount = registry == null ? null : registry.counter("dpda.inputs");
+		transitionCount = registry == null ? null : registry.counter("dpda.transitions");
+		epsilonTransitionCount = registry == null ? null : registry.counter("dpda.epsilonTransitions");
+		maxStackDepth = registry == null ? null : registry.maximum("dpda.maxStackDepth");
+	}
+	
 	/**
 	 * Processes all of the input strings.
 	 */
 	public void processInputStrings() {
+		StringBuilder sb = new StringBuilder();
+		
 		for(String input : inputStrings) {
-			process(input);
-			CONSOLE_WRITER.write("\n");
+			process(input, sb, System.out);
+			System.out.print(sb.append('\n'));
+			sb.setLength(0);
 		}
 	}
 	
+	/**
+	 * Processes the given input string and returns the states of the
+	 * automata it went through, followed by 1 if the string is accepted
+	 * or by 0 otherwise.
+	 * 
+	 * @param input the input string, whose symbols are separated by ','
+	 * @return the output of the automata
+	 */
+	public String process(String input) {
+		StringBuilder sb = new StringBuilder();
+		process(input, sb, null);
+		return sb.toString();
+	}
+	
 	/**
 	 * Processes the given input string.
 	 * 
 	 * @param input the input string
+	 * @param sb    the builder to which the output is appended
+	 * @param out   the stream to which the builder is printed whenever it
+	 *              grows too long, or {@code null} if it must not be printed
 	 */
-	private void process(String input) {
-		String currentState = initialState;
+	private void process(String input, StringBuilder sb, PrintStream out) {
+		int currentState = initialState;
+		
+		stackSize = 0;
+		push(initialStackSymbol);
 		
-		Stack<String> stack = new Stack<String>();
-		stack.push(initialStackSymbol);
+		appendCurrentAutomataState(sb, currentState);
 		
-		printCurrentAutomataState(currentState, stack);
+		String[] inputSymbols = DefinitionReader.split(input, ",");
+		int[] transitions = transition.array();
+		int columns = transition.getSymbolCount();
 		
-		String[] symbols = input.split(",");
+		// Counted in local variables, which costs next to nothing even when no metrics are collected.
+		int transitionsMade = 0;
+		int epsilonTransitionsMade = 0;
+		int maxDepth = stackSize;
+		boolean failed = false;
 		
 		for(int i = 0; ; i++) {
 			boolean wasEpsilonTransition = false;
-			boolean shouldPop = false;
-			OutputTuple output = null;
+			int stackTop = stackSize == 0 ? emptyStack : stack[stackSize - 1];
+			int output = TransitionTable.NONE;
 			
-			if(i < symbols.length) {
-				if(stack.isEmpty()) {
-					output = transition.get(new InputTuple(currentState, symbols[i], EPSILON));
-				} else {
-					output = transition.get(new InputTuple(currentState, symbols[i], stack.peek()));
-					shouldPop = true;
+			if(i < inputSymbols.length) {
+				int symbol = symbols.id(inputSymbols[i]);
+				
+				if(symbol != SymbolTable.NONE) {
+					output = transitions[currentState * columns + column(symbol, stackTop)];
 				}
 			} else {
 				if(finalStates.contains(currentState)) break;
 			}
 			
-			if(output == null) {
-				if(stack.isEmpty()) {
-					output = transition.get(new InputTuple(currentState, EPSILON, EPSILON));
-				} else {
-					output = transition.get(new InputTuple(currentState, EPSILON, stack.peek()));
-					shouldPop = true;
-				}
-				
+			if(output == TransitionTable.NONE) {
+				output = transitions[currentState * columns + column(epsilon, stackTop)];
 				wasEpsilonTransition = true;
 			}
 			
-			if(output == null) {
-				if(i >= symbols.length) break;
-				
-				CONSOLE_WRITER.write("fail|0");
-				return;
+			if(output == TransitionTable.NONE) {
+				failed = i < inputSymbols.length;
+				break;
 			}
 			
 			if(wasEpsilonTransition) {
 				i--;
+				epsilonTransitionsMade++;
 			}
+			transitionsMade++;
 			
-			if(shouldPop) {
-				stack.pop();
+			if(stackSize > 0) {
+				stackSize--;
 			}
 			
-			currentState = output.getState();
-			addSymbolsToStack(stack, output.getStackSymbols());
+			currentState = nextStates[output];
+			for(int symbol : pushedSymbols[output]) {
+				push(symbol);
+			}
+			if(stackSize > maxDepth) maxDepth = stackSize;
 			
-			printCurrentAutomataState(currentState, stack);
+			appendCurrentAutomataState(sb, currentState);
+			
+			if(out != null && sb.length() >= FLUSH_LENGTH) {
+				out.print(sb);
+				sb.setLength(0);
+			}
 		}
 		
-		CONSOLE_WRITER.write(finalStates.contains(currentState) ? "1" : "0");
-	}
-	
-	/**
-	 * Adds all of the symbols from the given {@code String} to the
-	 * given stack.
-	 * 
-	 * @param stack the stack to be filled
-	 * @param stackSymbols the {@code String} that contains all of the symbols
-	 */
-	private void addSymbolsToStack(Stack<String> stack, String stackSymbols) {
-		char[] symbols = stackSymbols.toCharArray();
-		
-		// Add from last to first since the most left symbol
-		// must be on top of stack.
-		for(int i = symbols.length - 1; i >= 0; i--) {
-			if(symbols[i] == '$') continue;
-			stack.add(String.valueOf(symbols[i]));
+		if(inputCount != null) {
+			inputCount.increment();
+			transitionCount.add(transitionsMade);
+			epsilonTransitionCount.add(epsilonTransitionsMade);
+			maxStackDepth.record(maxDepth);
 		}
-	}
-	
-	/**
-	 * Prints the current automata state, that is prints the
-	 * current state and all of the current symbols on the stack.
-	 * 
-	 * @param state the current state
-	 * @param stack the current stack
-	 */
-	private void printCurrentAutomataState(String state, Stack<String> stack) {
-		CONSOLE_WRITER.write(state + "#");
 		
-		if(stack.isEmpty()) {
-			CONSOLE_WRITER.write("$");
+		if(failed) {
+			sb.append("fail|0");
 		} else {
-			String[] symbols = stack.toArray(new String[0]);
-			
-			for(int i = symbols.length - 1; i >= 0; i--) {
-				CONSOLE_WRITER.write(symbols[i]);
-			}
+			sb.append(finalStates.contains(currentState) ? '1' : '0');
 		}
-		
-		CONSOLE_WRITER.write("|");
 	}
 	
-	//-------------------------------------------------------------
-	//						Writer strategy
-	//-------------------------------------------------------------
-	
 	/**
-	 * A strategy that defines how the given string should
-	 * be written. For example, this could be writing to 
-	 * the console or writing to a file.
+	 * Returns the column of the transition table of the given input symbol
+	 * and stack symbol.
 	 * 
-	 * @author Filip Nemec
+	 * @param symbol      the input symbol
+	 * @param stackSymbol the stack symbol
+	 * @return the column
 	 */
-	private interface Writer {
-		void write(String string);
+	private int column(int symbol, int stackSymbol) {
+		return symbol * stackSymbols.size() + stackSymbol;
 	}
 	
-	//-------------------------------------------------------------
-	//						Helping classes
-	//-------------------------------------------------------------
-	
 	/**
-	 * Defines an input tuple which represents the input of
-	 * a transition function. It consists of the current state,
-	 * input symbol and a stack symbol.
+	 * Pushes the given symbol onto the stack.
 	 * 
-	 * @author Filip Nemec
+	 * @param symbol the stack symbol
 	 */
-	private static class InputTuple {
-		
-		/** The current state. */
-		private final String state;
-		
-		/** The input symbol. */
-		private final String symbol;
-		
-		/** The stack symbol. */
-		private final String stackSymbol;
-		
-		/**
-		 * Constructs a new input tuple that consists of the
-		 * current state, input symbol and a stack symbol.
-		 * 
-		 * @param state the current state
-		 * @param symbol the input symbol
-		 * @param stackSymbol the stack symbol
-		 */
-		public InputTuple(String state, String symbol, String stackSymbol) {
-			this.state = state;
-			this.symbol = symbol;
-			this.stackSymbol = stackSymbol;
-		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hash(stackSymbol, state, symbol);
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (!(obj instanceof InputTuple))
-				return false;
-			InputTuple other = (InputTuple) obj;
-			return Objects.equals(stackSymbol, other.stackSymbol) && Objects.equals(state, other.state)
-					&& Objects.equals(symbol, other.symbol);
-		}
-		
-		@Override
-		public String toString() {
-			return state + "," + symbol + "," + stackSymbol;
+	private void push(int symbol) {
+		if(stackSize == stack.length) {
+			stack = Arrays.copyOf(stack, stackSize * 2);
 		}
+		stack[stackSize++] = symbol;
 	}
 	
 	/**
-	 * Defines an output tuple which represents the output of
-	 * a transition function. It consists of the next state and
-	 * symbols that will be pushed onto a stack.
+	 * Appends the current automata state, that is the
+	 * current state and all of the current symbols on the stack.
 	 * 
-	 * @author Filip Nemec
+	 * @param sb    the builder to which the automata state is appended
+	 * @param state the current state
 	 */
-	private static class OutputTuple {
-		
-		/** The next state. */
-		private final String state;
-		
-		/** The stack symbols. */
-		private String stackSymbols;
+	private void appendCurrentAutomataState(StringBuilder sb, int state) {
+		sb.append(states.name(state)).append('#');
 		
-		/**
-		 * Constructs a new output tuple that consists
-		 * of the next state and stack symbols.
-		 * 
-		 * @param state
-		 * @param stackSymbols
-		 */
-		public OutputTuple(String state, String stackSymbols) {
-			this.state = state;
-			this.stackSymbols = stackSymbols;
-		}
-		
-		/**
-		 * Returns the state.
-		 * 
-		 * @return the state
-		 */
-		public String getState() {
-			return state;
-		}
-		
-		/**
-		 * Returns the stack symbols.
-		 * 
-		 * @return the stack symbols
-		 */
-		public String getStackSymbols() {
-			return stackSymbols;
+		if(stackSize == 0) {
+			sb.append(EPSILON);
+		} else {
+			for(int i = stackSize - 1; i >= 0; i--) {
+				sb.append(stackSymbols.name(stack[i]));
+			}
 		}
 		
-		@Override
-		public String toString() {
-			return state + "," + stackSymbols;
-		}
+		sb.append('|');
 	}
 	
 	//-------------------------------------------------------------
@@ -352,14 +438,19 @@ public class SimPa {
 	
 	/**
 	 * A simple program that creates the pushdown automata
-	 * and prompts the user to initialize it with the given
-	 * definition.
+	 * from the definition given by the user and processes
+	 * its input strings.
+	 * <p>
+	 * The definition consists of the input strings separated by "|",
+	 * the states, the alphabet, the stack alphabet, the final states,
+	 * the initial state, the initial stack symbol and the transitions
+	 * of format "state,symbol,stackSymbol->state,stackSymbols".
 	 * 
 	 * @param args none are used
 	 */
 	public static void main(String[] args) {
-		SimPa PDA = new SimPa();
-		PDA.initialize();
-		PDA.processInputStrings();
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			new SimPa(reader).processInputStrings();
+		}
 	}
 }
@@ -1,240 +1,569 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Scanner;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
+
+import automaton.Counter;
+import automaton.DefinitionReader;
+import automaton.MetricRegistry;
+import automaton.StateSet;
+import automaton.SymbolTable;
+import automaton.TransitionRelation;
 
 /**
  * A simple class created to simulate the workings
  * of the epsilon non-deterministic finite automata.
+ * <p>
+ * The states and the symbols are interned to ids by the definition, and the
+ * states are numbered in the alphabetical order of their names, so the
+ * current states, kept in a {@link StateSet}, are visited in the order in
+ * which they are printed.
+ * <p>
+ * A simulation keeps visiting the same few sets of states, so every set
+ * reached after the epsilon transitions is interned to an id, together with
+ * its printed form already encoded in UTF-8, and the id reached from every
+ * set by every symbol is remembered. Once a set and a symbol have been seen,
+ * the step costs a single lookup and printing the set a single copy of its
+ * bytes into the output buffer.
+ * <p>
+ * Given a {@link MetricRegistry}, the automaton counts the sequences, the
+ * symbols, the next sets which were not known yet, and the transitions and
+ * the epsilon expansions made while computing them.
  * 
  * @author Filip Nemec
  */
 public class SimEnka {
 	
+	/** Name of the state printed for the empty set of states. */
+	private static final String EMPTY_SET = "#";
+	
+	/** Name of the epsilon symbol. */
+	private static final String EPSILON = "$";
+	
+	/** Number of interned sets after which they are forgotten, also in the middle of a sequence. */
+	private static final int MAX_SETS = 1 << 16;
+	
+	/** Length of the output after which it is written, also in the middle of a sequence. */
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+	
+	/** Value of the set and symbol pairs whose next set is not known yet. */
+	private static final int UNKNOWN = -1;
+	
 	/** All the sequences that will be tested on this NKA. */
-	private String[] inputSequences;
+	private final String[] inputSequences;
 	
-	/** All the possible states that this automata can be in. */
-	private Set<String> possibleStates = new HashSet<>();
+	/** All the states, numbered in the alphabetical order. */
+	private final SymbolTable states;
 	
-	/** All the possible symbols in the alphabet. */
-	private Set<String> alphabet = new HashSet<>();
+	/** All the symbols used by the transitions. */
+	private final SymbolTable symbols = new SymbolTable();
 	
 	/** All the states that are will be accepted after finishing automata. */
-	private Set<String> acceptableStates = new HashSet<>();
+	private final StateSet acceptableStates;
 	
 	/** The starting state for this automata. */
-	private String initialState;
+	private final int initialState;
 	
-	/** Set of states that this automata is currently in. */
-	private TreeSet<String> currentStates = new TreeSet<String>();
+	/** The state standing for the empty set of states. */
+	private final int emptySetState;
+	
+	/** The epsilon symbol. */
+	private final int epsilon;
 	
 	/** Defines the next state(s) for certain state-symbol pair. */
-	private Map<StateSymbolPair, TreeSet<String>> transitionFunction = new TreeMap<>();
+	private final TransitionRelation transitionFunction;
+	
+	/** Set of states that this automata is currently in. */
+	private StateSet currentStates;
+	
+	/** Set of states that this automata will be in after the current symbol. */
+	private StateSet nextStates;
+	
+	/** States whose epsilon transitions are not processed yet. */
+	private final int[] pending;
+	
+	/** The id of every interned set of states. */
+	private final Map<StateSet, Integer> setIds = new HashMap<>();
+	
+	/** The interned sets of states, indexed by their ids. */
+	private StateSet[] sets = new StateSet[16];
+	
+	/** The printed form of every interned set, encoded in UTF-8. */
+	private byte[][] renderedSets = new byte[16][];
+	
+	/** The next set of every set and symbol, {@code set * (symbols.size() + 1) + symbol}, or {@link #UNKNOWN}. */
+	private int[] successors = new int[0];
+	
+	/** Number of the interned sets. */
+	private int setCount;
+	
+	/** The id of the set before the first symbol, or {@link #UNKNOWN} if it is not interned. */
+	private int initialSet = UNKNOWN;
+	
+	/** Counts the sequences, or {@code null} if no metrics are collected. */
+	private Counter sequenceCount;
+	
+	/** Counts the symbols of the sequences, or {@code null} if no metrics are collected. */
+	private Counter symbolCount;
+	
+	/** Counts the next sets which were not known yet, or {@code null} if no metrics are collected. */
+	private Counter setMisses;
+	
+	/** Counts the transitions by symbols, or {@code null} if no metrics are collected. */
+	private Counter transitionCount;
+	
+	/** Counts the states whose epsilon transitions were followed, or {@code null} if no metrics are collected. */
+	private Counter epsilonExpansions;
+	
+	/** The output of the sequences, encoded in UTF-8. */
+	private byte[] output = new byte[1 << 12];
+	
+	/** Number of the bytes of the output. */
+	private int outputLength;
 	
 	/**
-	 * Initializes this epsilon-NFA.
+	 * Constructs a new epsilon-NFA whose definition is read from the
+	 * standard input.
+	 * 
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
 	 */
-	private void initialize() {
-		try(Scanner scanner = new Scanner(System.in)) {
-			inputSequences = scanner.nextLine().trim().split("\\|");
-			possibleStates.	 addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			alphabet.		 addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			acceptableStates.addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			initialState = scanner.nextLine().trim();
-			currentStates.add(initialState);
+	public SimEnka() {
+		this(new DefinitionReader(System.in));
+	}
+	
+	/**
+	 * Constructs a new epsilon-NFA from the given definition.
+	 * 
+	 * @param reader the reader of the definition, described by {@link #main(String[])}
+	 * @throws IllegalArgumentException if the definition contains an invalid transition
+	 */
+	public SimEnka(DefinitionReader reader) {
+		inputSequences = DefinitionReader.split(reader.nextLine().trim(), "|");
+		
+		// The states are interned in the order in which they are first seen,
+		// and numbered alphabetically once all of them are known.
+		SymbolTable names = new SymbolTable();
+		SymbolTable acceptableNames = new SymbolTable();
+		
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(names, ",");
+		reader.requireLine(); // The alphabet follows from the transitions.
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(acceptableNames, ",");
+		reader.requireLine();
+		int initialName = reader.rest(names);
+		int emptySetName = names.intern(EMPTY_SET);
+		
+		epsilon = symbols.intern(EPSILON);
+		
+		// Every transition is stored as its state, its symbol, the number of
+		// the next states and the next states.
+		int[] definedTransitions = new int[64];
+		int size = 0;
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) break;
+			
+			if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
 			
-			while(scanner.hasNextLine()) {
-				String line = scanner.nextLine().trim();
-				
-				if(line.trim().isEmpty()) break;
-				
-				String[] transition = line.split("->");
-				String[] stateSymbolPair = transition[0].split(",");
-				String[] nextStates = transition[1].split(",");
-				
-				StateSymbolPair pair = new StateSymbolPair(stateSymbolPair[0], stateSymbolPair[1]);
-				TreeSet<String> set = new TreeSet<String>();
-				set.addAll(Arrays.asList(nextStates));
-				
-				transitionFunction.put(pair, set);
+			int state = reader.field(names, ",");
+			if(!reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			int symbol = reader.field(symbols, ",");
+			if(reader.hasField(",")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			reader.endSection();
+			
+			int countIndex = size + 2;
+			if(size + 3 > definedTransitions.length) definedTransitions = Arrays.copyOf(definedTransitions, 2 * definedTransitions.length);
+			definedTransitions[size++] = state;
+			definedTransitions[size++] = symbol;
+			definedTransitions[size++] = 0;
+			
+			while(reader.hasField(",")) {
+				if(size == definedTransitions.length) definedTransitions = Arrays.copyOf(definedTransitions, 2 * size);
+				definedTransitions[size++] = reader.field(names, ",");
+				definedTransitions[countIndex]++;
 			}
 		}
+		
+		String[] sortedNames = names.names();
+		Arrays.sort(sortedNames);
+		states = new SymbolTable(sortedNames);
+		
+		int[] rank = new int[names.size()];
+		for(int name = 0; name < rank.length; name++) {
+			rank[name] = states.id(names.name(name));
+		}
+		
+		initialState = rank[initialName];
+		emptySetState = rank[emptySetName];
+		
+		acceptableStates = new StateSet(states.size());
+		for(int name = 0; name < acceptableNames.size(); name++) {
+			int state = states.id(acceptableNames.name(name));
+			if(state != SymbolTable.NONE) acceptableStates.add(state);
+		}
+		
+		transitionFunction = new TransitionRelation(states.size(), symbols.size());
+		
+		for(int i = 0; i < size; i += 3 + definedTransitions[i + 2]) {
+			int[] next = new int[definedTransitions[i + 2]];
+			for(int j = 0; j < next.length; j++) {
+				next[j] = rank[definedTransitions[i + 3 + j]];
+			}
+			next = distinctSorted(next);
+			
+			// A set whose first state is "#" stands for the empty set.
+			if(next.length == 0 || next[0] == emptySetState) {
+				transitionFunction.set(rank[definedTransitions[i]], definedTransitions[i + 1], null);
+			} else {
+				transitionFunction.set(rank[definedTransitions[i]], definedTransitions[i + 1], next);
+			}
+		}
+		
+		currentStates = new StateSet(states.size());
+		nextStates = new StateSet(states.size());
+		pending = new int[states.size()];
+	}
+	
+	/**
+	 * Sorts the given states and removes the duplicates.
+	 * 
+	 * @param states the states
+	 * @return the distinct states in ascending order
+	 */
+	private static int[] distinctSorted(int[] states) {
+		Arrays.sort(states);
+		
+		int count = 0;
+		for(int i = 0; i < states.length; i++) {
+			if(i == 0 || states[i] != states[i - 1]) states[count++] = states[i];
+		}
+		return count == states.length ? states : Arrays.copyOf(states, count);
+	}
+	
+	/**
+	 * Sets the registry to which the metrics of this automaton are added,
+	 * named <b>enka.sequences</b>, <b>enka.symbols</b>, <b>enka.setMisses</b>,
+	 * <b>enka.transitions</b> and <b>enka.epsilonExpansions</b>.
+	 * 
+	 * @param registry the registry, or {@code null} to collect no metrics
+	 */
+	public void setMetricRegistry(MetricRegistry registry) {
+		sequenceCount = registry == null ? null : registry.counter("enka.sequences");
+		symbolCount = registry == null ? null : registry.counter("enka.symbols");
+		setMisses = registry == null ? null : registry.counter("enka.setMisses");
+		transitionCount = registry == null ? null : registry.counter("enka.transitions");
+		epsilonExpansions = registry == null ? null : registry.counter("enka.epsilonExpansions");
 	}
 	
 	/**
-	 * Processes each provided input sequence.
+	 * Processes each provided input sequence and prints
+	 * the states after every symbol.
+	 * 
+	 * @throws UncheckedIOException if the states cannot be printed
 	 */
 	public void process() {
+		try {
+			process(System.out);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Processes each provided input sequence and writes the states after
+	 * every symbol to the given stream, in large blocks of UTF-8 bytes. The
+	 * stream is flushed, but not closed.
+	 * 
+	 * @param out the stream
+	 * @throws IOException if the states cannot be written
+	 */
+	public void process(OutputStream out) throws IOException {
 		for(String sequence : inputSequences) {
-			processSequence(sequence);
-			reset();
+			processSequence(sequence, out);
+			appendOutput((byte) '\n');
+			
+			if(outputLength >= OUTPUT_BUFFER_SIZE) flush(out);
 		}
+		flush(out);
+		out.flush();
 	}
-
+	
+	/**
+	 * Writes the output to the given stream and empties it.
+	 * 
+	 * @param out the stream
+	 * @throws IOException if the output cannot be written
+	 */
+	private void flush(OutputStream out) throws IOException {
+		out.write(output, 0, outputLength);
+		outputLength = 0;
+	}
+	
 	/**
-	 * Processes the given sequence of symbols.
+	 * Processes the given sequence of symbols and returns the states
+	 * after every symbol.
+	 * 
 	 * @param sequence the sequence of symbols separated by ','
+	 * @return the states before the first symbol and after every symbol,
+	 *         separated by '|'
 	 */
-	private void processSequence(String sequence) {
-		processEpsilonTransitions();
-		printCurrentStates();
-		System.out.print("|");
-		
-		String[] inputSymbols = sequence.split(",");
-		
-		for(int i = 0; i < inputSymbols.length; i++) {
-			processSymbol(inputSymbols[i]);
-			processEpsilonTransitions();
-			printCurrentStates();
-			
-			if(i != inputSymbols.length - 1) {
-				System.out.print("|");
-			}
+	public String process(String sequence) {
+		try {
+			processSequence(sequence, null);
+		} catch(IOException e) {
+			// Nothing is written without a stream.
+			throw new UncheckedIOException(e);
 		}
+		
+		String states = new String(output, 0, outputLength, StandardCharsets.UTF_8);
+		outputLength = 0;
+		return states;
 	}
 	
-	/**	
-	 * Processes all of the epsilon transitions for all of the current states.
-	 * If new epsilon states are found, this method will recursively call itself
-	 * on the new set of those transitioned states and check for new epsilon
-	 * transitions.
+	/**
+	 * Processes the given sequence of symbols, starting from the initial
+	 * state, and appends the states to the output.
+	 * <p>
+	 * Before every symbol, the output is written to the given stream once it
+	 * is long enough, and the interned sets but the current one are forgotten
+	 * once there are too many of them, so that neither grows with the length
+	 * of the sequence.
+	 * 
+	 * @param sequence the sequence of symbols separated by ','
+	 * @param out      the stream to which the output is written, or
+	 *                 {@code null} if all of it must be kept
+	 * @throws IOException if the output cannot be written
 	 */
-	private void processEpsilonTransitions() {
-		TreeSet<String> transitionedStates = new TreeSet<String>();
+	private void processSequence(String sequence, OutputStream out) throws IOException {
+		if(setCount >= MAX_SETS) forgetSets();
 		
-		// We need a copy because we are modifying the original tree.
-		TreeSet<String> currentStatesCopy = new TreeSet<String>(currentStates);
+		if(initialSet == UNKNOWN) {
+			currentStates.clear();
+			currentStates.add(initialState);
+			processEpsilonTransitions();
+			initialSet = intern(currentStates);
+		}
+		
+		int set = initialSet;
+		appendOutput(renderedSets[set]);
+		appendOutput((byte) '|');
 		
-		for(String state : currentStatesCopy) {
-			TreeSet<String> nextStates = transitionFunction.get(new StateSymbolPair(state, "$"));
+		// The symbols are read as DefinitionReader.split would give them, without
+		// an array of all of them: the trailing empty symbols are dropped, but an
+		// empty sequence is a single empty symbol.
+		int end = sequence.length();
+		while(end > 0 && sequence.charAt(end - 1) == ',') end--;
+		
+		int symbolsRead = 0;
+		for(int start = 0; start < end || (start == 0 && sequence.isEmpty()); ) {
+			int comma = sequence.indexOf(',', start);
+			if(comma < 0 || comma > end) comma = end;
 			
-			if(nextStates != null) {
-				if(nextStates.first().equals("#")) continue;
-				
-				for(String s : nextStates) {
-					if(!currentStates.contains(s)) {
-						currentStates.add(s);
-						transitionedStates.add(s);
-					}
-				}
-			}
+			if(out != null && outputLength >= OUTPUT_BUFFER_SIZE) flush(out);
+			if(setCount >= MAX_SETS) set = forgetSetsBut(set);
+			
+			if(symbolsRead++ > 0) appendOutput((byte) '|');
+			set = next(set, symbols.id(sequence.substring(start, comma)));
+			appendOutput(renderedSets[set]);
+			
+			start = comma + 1;
 		}
 		
-		if(transitionedStates.size() > 0) {
-			processEpsilonTransitions();
+		if(sequenceCount != null) {
+			sequenceCount.increment();
+			symbolCount.add(symbolsRead);
 		}
 	}
-
+	
 	/**
-	 * Processes all the current states with the given symbol.
-	 * @param symbol the symbol for processing all the current states
+	 * Returns the set of states reached from the given set by the given
+	 * symbol and the epsilon transitions after it.
+	 * 
+	 * @param set    the id of the set
+	 * @param symbol the symbol, or {@link SymbolTable#NONE} if no transition reads it
+	 * @return the id of the next set
 	 */
-	private void processSymbol(String symbol) {
-		TreeSet<String> nextCurrentStates = new TreeSet<String>();
+	private int next(int set, int symbol) {
+		int index = set * (symbols.size() + 1) + (symbol == SymbolTable.NONE ? symbols.size() : symbol);
+		if(successors[index] != UNKNOWN) return successors[index];
+		if(setMisses != null) setMisses.increment();
 		
-		for(String state : currentStates) {
-			StateSymbolPair pair = new StateSymbolPair(state, symbol);
-			TreeSet<String> nextStates = transitionFunction.get(pair);
-			
-			if(nextStates == null || nextStates.first().equals("#")) continue;
-			
-			for(String nextState : nextStates) {
-				nextCurrentStates.add(nextState);
-			}
+		currentStates.copyFrom(sets[set]);
+		processSymbol(symbol);
+		processEpsilonTransitions();
+		
+		int next = intern(currentStates);
+		successors[index] = next;
+		return next;
+	}
+	
+	/**
+	 * Returns the id of the given set, interning a copy of it first if it is
+	 * new.
+	 * 
+	 * @param set the set
+	 * @return the id of the set
+	 */
+	private int intern(StateSet set) {
+		Integer id = setIds.get(set);
+		if(id != null) return id;
+		
+		if(setCount == sets.length) {
+			sets = Arrays.copyOf(sets, 2 * setCount);
+			renderedSets = Arrays.copyOf(renderedSets, 2 * setCount);
 		}
 		
-		if(nextCurrentStates.isEmpty()) {
-			nextCurrentStates.add("#");
+		int rowLength = symbols.size() + 1;
+		if((setCount + 1) * rowLength > successors.length) {
+			int oldLength = successors.length;
+			successors = Arrays.copyOf(successors, Math.max(16 * rowLength, 2 * oldLength));
+			Arrays.fill(successors, oldLength, successors.length, UNKNOWN);
 		}
 		
-		currentStates = nextCurrentStates;
+		StateSet copy = new StateSet(set);
+		sets[setCount] = copy;
+		renderedSets[setCount] = render(copy);
+		setIds.put(copy, setCount);
+		return setCount++;
 	}
 	
 	/**
-	 * Prints all the current states in the following format:
-	 * <br>s1,s2,s3,s4</br>
+	 * Forgets all of the interned sets, so that their number stays bounded.
+	 */
+	private void forgetSets() {
+		setIds.clear();
+		Arrays.fill(sets, null);
+		Arrays.fill(renderedSets, null);
+		Arrays.fill(successors, UNKNOWN);
+		setCount = 0;
+		initialSet = UNKNOWN;
+	}
+	
+	/**
+	 * Forgets all of the interned sets but the given one, which is interned
+	 * again.
+	 * 
+	 * @param set the id of the kept set
+	 * @return the new id of the kept set
 	 */
-	private void printCurrentStates() {
-		Iterator<String> iterator = currentStates.iterator();
-	    while (iterator.hasNext()) {
-	        String state = iterator.next();
-	        System.out.print(state);
-	        
-	        if (iterator.hasNext()) {
-	        	System.out.print(",");
-	        }
-	     }
+	private int forgetSetsBut(int set) {
+		currentStates.copyFrom(sets[set]);
+		forgetSets();
+		return intern(currentStates);
 	}
 	
 	/**
-	 * Resets this automata to the default settings.
+	 * Appends the given bytes to the output.
+	 * 
+	 * @param bytes the bytes
 	 */
-	private void reset() {
-		currentStates.clear();
-		currentStates.add(initialState);
-		System.out.print("\n");
+	private void appendOutput(byte[] bytes) {
+		if(outputLength + bytes.length > output.length) {
+			output = Arrays.copyOf(output, Math.max(2 * output.length, outputLength + bytes.length));
+		}
+		System.arraycopy(bytes, 0, output, outputLength, bytes.length);
+		outputLength += bytes.length;
 	}
 	
 	/**
-	 * Defines a pair (tuple) of state and symbol (state, symbol).
+	 * Appends the given byte to the output.
 	 * 
-	 * @author Filip Nemec
+	 * @param b the byte
+	 */
+	private void appendOutput(byte b) {
+		if(outputLength == output.length) output = Arrays.copyOf(output, 2 * output.length);
+		output[outputLength++] = b;
+	}
+	
+	/**
+	 * Adds to the current states all of the states reachable from them
+	 * by epsilon transitions.
 	 */
-	private static class StateSymbolPair implements Comparable<StateSymbolPair> {
+	private void processEpsilonTransitions() {
+		int count = 0;
+		for(int s = currentStates.next(0); s >= 0; s = currentStates.next(s + 1)) {
+			pending[count++] = s;
+		}
 		
-		/** The state. */
-		private String state;
+		int expanded = 0;
+		while(count > 0) {
+			int state = pending[--count];
+			expanded++;
+			
+			for(int next : transitionFunction.get(state, epsilon)) {
+				if(currentStates.add(next)) {
+					pending[count++] = next;
+				}
+			}
+		}
 		
-		/** The symbol. */
-		private String symbol;
+		if(epsilonExpansions != null) epsilonExpansions.add(expanded);
+	}
+	
+	/**
+	 * Processes all the current states with the given symbol.
+	 * 
+	 * @param symbol the symbol for processing all the current states,
+	 *               or {@link SymbolTable#NONE} if no transition reads it
+	 */
+	private void processSymbol(int symbol) {
+		nextStates.clear();
 		
-		/**
-		 * Constructs a new state-symbol pair.
-		 * 
-		 * @param state the state
-		 * @param symbol the symbol
-		 */
-		public StateSymbolPair(String state, String symbol) {
-			this.state = state;
-			this.symbol = symbol;
+		if(symbol != SymbolTable.NONE) {
+			int fired = 0;
+			
+			for(int s = currentStates.next(0); s >= 0; s = currentStates.next(s + 1)) {
+				for(int next : transitionFunction.get(s, symbol)) {
+					nextStates.add(next);
+					fired++;
+				}
+			}
+			
+			if(transitionCount != null) transitionCount.add(fired);
 		}
 		
-		@Override
-		public int hashCode() {
-			return Objects.hash(state, symbol);
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (!(obj instanceof StateSymbolPair))
-				return false;
-			StateSymbolPair other = (StateSymbolPair) obj;
-			return Objects.equals(state, other.state) && Objects.equals(symbol, other.symbol);
+		if(nextStates.isEmpty()) {
+			nextStates.add(emptySetState);
 		}
 		
-		@Override
-		public String toString() {
-			return "(" + state + ", " + symbol + ")";
-		}
-
-		@Override
-		public int compareTo(StateSymbolPair o) {
-			int r = state.compareTo(o.state);
-			
-			if(r != 0) return r;
-			
-			return symbol.compareTo(o.symbol);
+		StateSet swap = currentStates;
+		currentStates = nextStates;
+		nextStates = swap;
+	}
+	
+	/**
+	 * Returns the given states in the following format, encoded in UTF-8:
+	 * <br>s1,s2,s3,s4</br>
+	 * 
+	 * @param set the states
+	 * @return the printed states
+	 */
+	private byte[] render(StateSet set) {
+		StringBuilder sb = new StringBuilder();
+		int first = set.next(0);
+		
+		for(int s = first; s >= 0; s = set.next(s + 1)) {
+			if(s != first) sb.append(',');
+			sb.append(states.name(s));
 		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Checks whether the given state is one of the acceptable states.
+	 * 
+	 * @param state the name of the state
+	 * @return {@code true} if the state is acceptable, {@code false} otherwise
+	 */
+	public boolean isAcceptable(String state) {
+		int id = states.id(state);
+		return id != SymbolTable.NONE && acceptableStates.contains(id);
 	}
 	
 	/**
@@ -256,7 +585,7 @@ public class SimEnka {
 	 * <br> symbol is defined by a "$".
 	 * <br>
 	 * <br> Example of a valid definition:
-	 * <br> 
+	 * <br>
 	 * <br> a,b,a
 	 * <br> s1,s2,s3,s4,s5,s6,s7
 	 * <br> a,b,c,d
@@ -286,9 +615,8 @@ public class SimEnka {
 	 * @param args none are used
 	 */
 	public static void main(String[] args) {
-		SimEnka nka = new SimEnka();
-		
-		nka.initialize();
-		nka.process();
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			new SimEnka(reader).process();
+		}
 	}
 }
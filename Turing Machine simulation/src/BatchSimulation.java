@@ -0,0 +1,103 @@
+import java.util.Iterator;
+import java.util.List;
+
+import automaton.ChunkedBatch;
+
+/**
+ * Runs a single {@link SimTS} definition on many initial tapes.
+ * <p>
+ * The inputs are simulated in chunks by a {@link ChunkedBatch}. Each thread
+ * owns a private copy of the machine which shares the compiled definition,
+ * so the tape buffers are reused from one input to the next and no
+ * simulation state is shared between threads. The results are printed in
+ * the order of the inputs.
+ * 
+ * @author FICHEKK
+ */
+class BatchSimulation {
+	
+	/** Number of inputs simulated by a single task. */
+	private static final int CHUNK_SIZE = 256;
+	
+	/** The chunks of inputs, simulated in parallel. */
+	private final ChunkedBatch<SimTS, Chunk> batch;
+	
+	/**
+	 * Constructs a new batch simulation.
+	 * 
+	 * @param definition the machine whose definition is simulated
+	 * @param threads    number of simulation threads
+	 * @throws IllegalArgumentException if the number of threads is not positive
+	 */
+	public BatchSimulation(SimTS definition, int threads) {
+		this.batch = new ChunkedBatch<>(threads, CHUNK_SIZE, () -> new SimTS(definition));
+	}
+	
+	/**
+	 * Simulates the machine once for every line and prints the results in the
+	 * order of the lines. A line holds the initial tapes, optionally followed by
+	 * the initial head positions. Blank lines are skipped.
+	 * 
+	 * @param lines the inputs
+	 * @throws IllegalArgumentException if any of the inputs is invalid
+	 */
+	public void run(Iterator<String> lines) {
+		batch.run(lines, BatchSimulation::simulate, chunk -> {
+			System.out.print(chunk.output);
+			System.err.print(chunk.errors);
+		});
+	}
+	
+	/**
+	 * Simulates the given machine on every input of a chunk.
+	 * 
+	 * @param machine   the machine to simulate
+	 * @param inputs    the inputs of the chunk
+	 * @param firstLine number of the line holding the first input
+	 * @return the results of the chunk
+	 * @throws IllegalArgumentException if any of the inputs is invalid
+	 */
+	private static Chunk simulate(SimTS machine, List<String> inputs, long firstLine) {
+		Chunk chunk = new Chunk();
+		
+		for(int i = 0; i < inputs.size(); i++) {
+			String input = inputs.get(i).trim();
+			long line = firstLine + i;
+			
+			if(input.isEmpty()) continue;
+			
+			String[] parts = input.split("\\s+");
+			
+			try {
+				if(parts.length > 2)
+					throw new IllegalArgumentException("Expected the tapes and the head positions, but got '" + input + "'");
+				
+				machine.reset(parts[0], parts.length == 2 ? parts[1] : null);
+			} catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid input on line " + line + ": " + e.getMessage(), e);
+			}
+			
+			chunk.output.append(machine.simulate()).append(System.lineSeparator());
+			
+			if(machine.getStopReason() != null) {
+				chunk.errors.append("Line ").append(line).append(": ").append(machine.getStopReason()).append(System.lineSeparator());
+			}
+		}
+		
+		return chunk;
+	}
+	
+	/**
+	 * The results of a single chunk of inputs.
+	 * 
+	 * @author FICHEKK
+	 */
+	private static class Chunk {
+		
+		/** The results, one line per input. */
+		final StringBuilder output = new StringBuilder();
+		
+		/** The reasons why some of the simulations stopped early. */
+		final StringBuilder errors = new StringBuilder();
+	}
+}
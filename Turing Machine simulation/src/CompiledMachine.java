@@ -0,0 +1,582 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single tape {@link SimTS} definition compiled to JVM bytecode.
+ * <p>
+ * {@link #compile} generates a class whose {@link #run} method holds a block
+ * of code for every state. A block reads the symbol under the head and jumps
+ * through a {@code tableswitch} straight to the code of the transition, which
+ * writes the new symbol, moves the head and jumps to the block of the next
+ * state. The current state is therefore never looked up in a table, it is
+ * the position in the code, and the JIT compiles the whole machine into
+ * native branches.
+ * <p>
+ * The tape is the same bit-packed tape the interpreter uses. The word under
+ * the head is kept in a local variable rotated so that the current cell sits
+ * in its lowest bits, exactly as in the interpreted step loop.
+ * <p>
+ * The class is written by hand in the class file version 49 format, which
+ * does not need stack map frames, and is defined by its own class loader,
+ * so it can be unloaded together with the machine.
+ * 
+ * @author FICHEKK
+ */
+public abstract class CompiledMachine {
+	
+	/**
+	 * The largest generated method, in bytes. Longer methods are not compiled
+	 * by the JIT at all, so interpreting them would be slower than running the
+	 * table-driven step loop.
+	 */
+	private static final int MAX_CODE_LENGTH = 8000;
+	
+	/** Index of the state in the configuration array. */
+	static final int STATE = 0;
+	
+	/** Index of the head position in the configuration array. */
+	static final int HEAD = 1;
+	
+	/** Index of the halt flag in the configuration array. */
+	static final int HALTED = 2;
+	
+	/**
+	 * Makes at most {@code limit} steps, starting from the given configuration.
+	 * The configuration array is updated with the final state and head
+	 * position, and whether the machine halted.
+	 * 
+	 * @param words  the words of the packed tape
+	 * @param last   the position of the last cell of the tape
+	 * @param config the state, the head position and the halt flag
+	 * @param limit  the maximum number of steps
+	 * @return the number of steps made
+	 */
+	public abstract int run(long[] words, int last, int[] config, int limit);
+	
+	/**
+	 * Compiles the given transition table.
+	 * 
+	 * @param transitions the packed transition table of {@link SimTS}
+	 * @param stateCount  number of states
+	 * @param symbolBits  number of bits used by a symbol id in the table index
+	 * @param symbolCount number of tape symbols
+	 * @param cellShift   base 2 logarithm of the number of bits in a tape cell
+	 * @return the compiled machine, or {@code null} if the machine is too large
+	 *         to be compiled into a single method
+	 */
+	static CompiledMachine compile(int[] transitions, int stateCount, int symbolBits, int symbolCount, int cellShift) {
+		byte[] code = new Generator(transitions, stateCount, symbolBits, symbolCount, cellShift).generate();
+		if(code == null) return null;
+		
+		String name = "CompiledMachine$Generated";
+		byte[] bytes = classFile(name, code);
+		
+		Class<?> type = new ClassLoader(CompiledMachine.class.getClassLoader()) {
+			Class<?> define() {
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		}.define();
+		
+		try {
+			return (CompiledMachine) type.getConstructor().newInstance();
+		} catch(ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot instantiate the compiled machine", e);
+		}
+	}
+	
+	/**
+	 * Writes the class file of a subclass with the given {@link #run} code.
+	 * 
+	 * @param name the binary name of the class
+	 * @param code the bytecode of the run method
+	 * @return the class file
+	 */
+	private static byte[] classFile(String name, byte[] code) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			
+			out.writeShort(Generator.CONSTANT_COUNT);
+			utf8(out, name);											// 1
+			out.writeByte(7); out.writeShort(1);						// 2 this class
+			utf8(out, "CompiledMachine");								// 3
+			out.writeByte(7); out.writeShort(3);						// 4 super class
+			utf8(out, "<init>");										// 5
+			utf8(out, "()V");											// 6
+			out.writeByte(12); out.writeShort(5); out.writeShort(6);	// 7
+			out.writeByte(10); out.writeShort(4); out.writeShort(7);	// 8 super constructor
+			utf8(out, "run");											// 9
+			utf8(out, "([JI[II)I");										// 10
+			utf8(out, "Code");											// 11
+			utf8(out, "java/lang/Long");								// 12
+			out.writeByte(7); out.writeShort(12);						// 13
+			utf8(out, "rotateLeft");									// 14
+			utf8(out, "(JI)J");											// 15
+			out.writeByte(12); out.writeShort(14); out.writeShort(15);	// 16
+			out.writeByte(10); out.writeShort(13); out.writeShort(16);	// 17 Long.rotateLeft
+			utf8(out, "rotateRight");									// 18
+			out.writeByte(12); out.writeShort(18); out.writeShort(15);	// 19
+			out.writeByte(10); out.writeShort(13); out.writeShort(19);	// 20 Long.rotateRight
+			
+			out.writeShort(0x0001 | 0x0010 | 0x0020);
+			out.writeShort(2);
+			out.writeShort(4);
+			out.writeShort(0);
+			out.writeShort(0);
+			
+			out.writeShort(2);
+			
+			out.writeShort(0x0001);
+			out.writeShort(5);
+			out.writeShort(6);
+			out.writeShort(1);
+			out.writeShort(11);
+			out.writeInt(12 + 5);
+			out.writeShort(1);
+			out.writeShort(1);
+			out.writeInt(5);
+			out.write(new byte[] { 0x2a, (byte) 0xb7, 0, 8, (byte) 0xb1 });
+			out.writeShort(0);
+			out.writeShort(0);
+			
+			out.writeShort(0x0001);
+			out.writeShort(9);
+			out.writeShort(10);
+			out.writeShort(1);
+			out.writeShort(11);
+			out.writeInt(12 + code.length);
+			out.writeShort(Generator.MAX_STACK);
+			out.writeShort(Generator.MAX_LOCALS);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0);
+			out.writeShort(0);
+			
+			out.writeShort(0);
+			return bytes.toByteArray();
+		
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Writes a UTF-8 entry of the constant pool.
+	 * 
+	 * @param out  the output
+	 * @param text the text
+	 * @throws IOException if the text cannot be written
+	 */
+	private static void utf8(DataOutputStream out, String text) throws IOException {
+		out.writeByte(1);
+		out.writeUTF(text);
+	}
+	
+	/**
+	 * Generates the bytecode of the {@link CompiledMachine#run} method.
+	 * <p>
+	 * The code starts with a {@code tableswitch} on the initial state. The
+	 * block of a state is followed by its transitions, and the code which
+	 * moves the head and enters a state is shared by all of the transitions
+	 * into that state. Jumps are written with placeholder offsets, which are
+	 * filled in once all of the labels are placed.
+	 * 
+	 * @author FICHEKK
+	 */
+	private static class Generator {
+		
+		/** Number of entries of the constant pool, plus one. */
+		static final int CONSTANT_COUNT = 21;
+		
+		/** Largest operand stack depth of the generated code. */
+		static final int MAX_STACK = 8;
+		
+		/** Number of local variable slots used by the generated code. */
+		static final int MAX_LOCALS = 11;
+		
+		/** Local variable holding the words of the tape. */
+		private static final int WORDS = 1;
+		
+		/** Local variable holding the position of the last cell. */
+		private static final int LAST = 2;
+		
+		/** Local variable holding the configuration array. */
+		private static final int CONFIG = 3;
+		
+		/** Local variable holding the step limit. */
+		private static final int LIMIT = 4;
+		
+		/** Local variable holding the head position. */
+		private static final int POSITION = 5;
+		
+		/** Local variable holding the index of the word under the head. */
+		private static final int INDEX = 6;
+		
+		/** Local variable holding the rotated word under the head, two slots. */
+		private static final int WORD = 7;
+		
+		/** Local variable holding the number of remaining steps. */
+		private static final int REMAINING = 9;
+		
+		/** Local variable holding the state when the run ends. */
+		private static final int FINAL_STATE = 10;
+		
+		/** The packed transition table. */
+		private final int[] transitions;
+		
+		/** Number of states. */
+		private final int stateCount;
+		
+		/** Number of bits used by a symbol id in the table index. */
+		private final int symbolBits;
+		
+		/** Number of tape symbols. */
+		private final int symbolCount;
+		
+		/** Base 2 logarithm of the number of bits in a tape cell. */
+		private final int cellShift;
+		
+		/** The generated code. */
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		
+		/** Code offsets of the labels, {@code -1} if not placed yet. */
+		private final List<Integer> labels = new ArrayList<>();
+		
+		/** Jumps to patch: the offset of the instruction, of the operand, the label and the operand size. */
+		private final List<int[]> jumps = new ArrayList<>();
+		
+		/**
+		 * Constructs a new generator.
+		 * 
+		 * @param transitions the packed transition table
+		 * @param stateCount  number of states
+		 * @param symbolBits  number of bits used by a symbol id in the table index
+		 * @param symbolCount number of tape symbols
+		 * @param cellShift   base 2 logarithm of the number of bits in a tape cell
+		 */
+		Generator(int[] transitions, int stateCount, int symbolBits, int symbolCount, int cellShift) {
+			this.transitions = transitions;
+			this.stateCount = stateCount;
+			this.symbolBits = symbolBits;
+			this.symbolCount = symbolCount;
+			this.cellShift = cellShift;
+		}
+		
+		/**
+		 * Generates the code.
+		 * 
+		 * @return the bytecode, or {@code null} if it would be too long
+		 */
+		byte[] generate() {
+			if(stateCount > Short.MAX_VALUE) return null;
+			
+			final int cellBits = 1 << cellShift;
+			final int offsetMask = (1 << (6 - cellShift)) - 1;
+			
+			int halted = label();
+			int stopped = label();
+			int[] enter = labels(stateCount);
+			int[] left = labels(stateCount);
+			int[] right = labels(stateCount);
+			int[] edge = labels(stateCount);
+			boolean[] usedLeft = new boolean[stateCount];
+			boolean[] usedRight = new boolean[stateCount];
+			
+			// position = config[HEAD], word = words[position >>> indexShift] rotated to the head
+			load(CONFIG); push(HEAD); op(0x2e); store(POSITION);
+			load(POSITION); push(6 - cellShift); op(0x7c); store(INDEX);
+			load(WORDS); load(INDEX); op(0x2f);
+			load(POSITION); push(offsetMask); op(0x7e); push(cellShift); op(0x78);
+			op(0xb8); u2(20);
+			op(0x37); u1(WORD);
+			load(LIMIT); store(REMAINING);
+			load(CONFIG); push(CompiledMachine.STATE); op(0x2e); op(0x59); store(FINAL_STATE);
+			tableswitch(enter, halted);
+			
+			for(int state = 0; state < stateCount; state++) {
+				int noTransition = label();
+				int limit = label();
+				int[] symbols = labels(symbolCount);
+				
+				place(enter[state]);
+				op(0x16); u1(WORD); op(0x88);
+				if(cellBits == 16) op(0x92); else { push((1 << cellBits) - 1); op(0x7e); }
+				
+				int[] targets = new int[symbolCount];
+				for(int symbol = 0; symbol < symbolCount; symbol++) {
+					int transition = transitions[(state << symbolBits) | symbol];
+					targets[symbol] = transition == SimTS.NO_TRANSITION ? noTransition : symbols[symbol];
+				}
+				tableswitch(targets, noTransition);
+				
+				place(noTransition);
+				push(state); store(FINAL_STATE); jump(0xa7, halted);
+				
+				place(limit);
+				push(state); store(FINAL_STATE); jump(0xa7, stopped);
+				
+				for(int symbol = 0; symbol < symbolCount; symbol++) {
+					int transition = transitions[(state << symbolBits) | symbol];
+					if(transition == SimTS.NO_TRANSITION) continue;
+					
+					int next = transition >>> (symbolBits + SimTS.DIRECTION_BITS);
+					int write = (transition >>> SimTS.DIRECTION_BITS) & ((1 << symbolBits) - 1);
+					int direction = transition & SimTS.DIRECTION_MASK;
+					
+					place(symbols[symbol]);
+					load(REMAINING); jump(0x9e, limit);
+					iinc(REMAINING, -1);
+					
+					if(write != symbol) {
+						// the cell holds the read symbol, so word ^= symbol ^ write
+						op(0x16); u1(WORD);
+						push((short) (symbol ^ write));
+						if((symbol ^ write) > Short.MAX_VALUE) op(0x92);
+						op(0x85); op(0x83);
+						op(0x37); u1(WORD);
+					}
+					
+					if(direction == SimTS.LEFT) {
+						usedLeft[next] = true;
+						jump(0xa7, left[next]);
+					} else if(direction == SimTS.RIGHT) {
+						usedRight[next] = true;
+						jump(0xa7, right[next]);
+					} else {
+						jump(0xa7, enter[next]);
+					}
+				}
+				
+				if(code.size() > MAX_CODE_LENGTH) return null;
+			}
+			
+			for(int state = 0; state < stateCount; state++) {
+				if(usedLeft[state]) {
+					int sameWord = label();
+					
+					place(left[state]);
+					load(POSITION); jump(0x99, edge[state]);
+					load(POSITION); push(offsetMask); op(0x7e); jump(0x9a, sameWord);
+					load(WORDS); load(INDEX); op(0x16); u1(WORD); op(0x50);
+					iinc(INDEX, -1);
+					load(WORDS); load(INDEX); op(0x2f); op(0x37); u1(WORD);
+					place(sameWord);
+					op(0x16); u1(WORD); push(cellBits); op(0xb8); u2(17); op(0x37); u1(WORD);
+					iinc(POSITION, -1);
+					jump(0xa7, enter[state]);
+				}
+				
+				if(usedRight[state]) {
+					place(right[state]);
+					load(POSITION); load(LAST); jump(0x9f, edge[state]);
+					op(0x16); u1(WORD); push(cellBits); op(0xb8); u2(20); op(0x37); u1(WORD);
+					iinc(POSITION, 1);
+					load(POSITION); push(offsetMask); op(0x7e); jump(0x9a, enter[state]);
+					load(WORDS); load(INDEX); op(0x16); u1(WORD); op(0x50);
+					iinc(INDEX, 1);
+					load(WORDS); load(INDEX); op(0x2f); op(0x37); u1(WORD);
+					jump(0xa7, enter[state]);
+				}
+				
+				if(usedLeft[state] || usedRight[state]) {
+					place(edge[state]);
+					push(state); store(FINAL_STATE); jump(0xa7, halted);
+				}
+				
+				if(code.size() > MAX_CODE_LENGTH) return null;
+			}
+			
+			int end = label();
+			
+			place(stopped);
+			load(CONFIG); push(HALTED); push(0); op(0x4f); jump(0xa7, end);
+			
+			place(halted);
+			load(CONFIG); push(HALTED); push(1); op(0x4f);
+			
+			// words[index] = word rotated back, then the configuration and the step count
+			place(end);
+			load(WORDS); load(INDEX); op(0x16); u1(WORD);
+			load(POSITION); push(offsetMask); op(0x7e); push(cellShift); op(0x78);
+			op(0xb8); u2(17); op(0x50);
+			load(CONFIG); push(CompiledMachine.STATE); load(FINAL_STATE); op(0x4f);
+			load(CONFIG); push(HEAD); load(POSITION); op(0x4f);
+			load(LIMIT); load(REMAINING); op(0x64); op(0xac);
+			
+			if(code.size() > MAX_CODE_LENGTH) return null;
+			
+			byte[] bytes = code.toByteArray();
+			for(int[] jump : jumps) {
+				int offset = labels.get(jump[2]) - jump[0];
+				
+				if(jump[3] == 2) {
+					bytes[jump[1]] = (byte) (offset >> 8);
+					bytes[jump[1] + 1] = (byte) offset;
+				} else {
+					for(int i = 0; i < 4; i++) {
+						bytes[jump[1] + i] = (byte) (offset >> (24 - 8 * i));
+					}
+				}
+			}
+			return bytes;
+		}
+		
+		/**
+		 * Creates a new label which is not placed yet.
+		 * 
+		 * @return the label
+		 */
+		private int label() {
+			labels.add(-1);
+			return labels.size() - 1;
+		}
+		
+		/**
+		 * Creates the given number of new labels.
+		 * 
+		 * @param count number of labels
+		 * @return the labels
+		 */
+		private int[] labels(int count) {
+			int[] created = new int[count];
+			for(int i = 0; i < count; i++) {
+				created[i] = label();
+			}
+			return created;
+		}
+		
+		/**
+		 * Places the label at the current code offset.
+		 * 
+		 * @param label the label
+		 */
+		private void place(int label) {
+			labels.set(label, code.size());
+		}
+		
+		/**
+		 * Writes a jump instruction with a 16-bit offset.
+		 * 
+		 * @param opcode the jump instruction
+		 * @param label  the jump target
+		 */
+		private void jump(int opcode, int label) {
+			int start = code.size();
+			op(opcode);
+			jumps.add(new int[] { start, code.size(), label, 2 });
+			u2(0);
+		}
+		
+		/**
+		 * Writes a {@code tableswitch} on the int at the top of the stack,
+		 * whose cases start at zero.
+		 * 
+		 * @param targets      the target of every case
+		 * @param defaultLabel the target of the values out of range
+		 */
+		private void tableswitch(int[] targets, int defaultLabel) {
+			int start = code.size();
+			op(0xaa);
+			while(code.size() % 4 != 0) u1(0);
+			
+			jumps.add(new int[] { start, code.size(), defaultLabel, 4 });
+			u4(0);
+			u4(0);
+			u4(targets.length - 1);
+			
+			for(int target : targets) {
+				jumps.add(new int[] { start, code.size(), target, 4 });
+				u4(0);
+			}
+		}
+		
+		/**
+		 * Writes the shortest instruction which pushes the given int constant.
+		 * 
+		 * @param value the constant, between {@code -32768} and {@code 32767}
+		 */
+		private void push(int value) {
+			if(value >= -1 && value <= 5) {
+				op(0x03 + value);
+			} else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(0x10); u1(value);
+			} else {
+				op(0x11); u2(value);
+			}
+		}
+		
+		/**
+		 * Writes an instruction which loads an int or a reference local variable.
+		 * 
+		 * @param local the local variable
+		 */
+		private void load(int local) {
+			op(local == WORDS || local == CONFIG ? 0x19 : 0x15); u1(local);
+		}
+		
+		/**
+		 * Writes an instruction which stores an int local variable.
+		 * 
+		 * @param local the local variable
+		 */
+		private void store(int local) {
+			op(0x36); u1(local);
+		}
+		
+		/**
+		 * Writes an instruction which increments an int local variable.
+		 * 
+		 * @param local the local variable
+		 * @param value the increment
+		 */
+		private void iinc(int local, int value) {
+			op(0x84); u1(local); u1(value);
+		}
+		
+		/**
+		 * Writes an opcode.
+		 * 
+		 * @param opcode the opcode
+		 */
+		private void op(int opcode) {
+			code.write(opcode);
+		}
+		
+		/**
+		 * Writes a single byte operand.
+		 * 
+		 * @param value the operand
+		 */
+		private void u1(int value) {
+			code.write(value);
+		}
+		
+		/**
+		 * Writes a two byte operand.
+		 * 
+		 * @param value the operand
+		 */
+		private void u2(int value) {
+			code.write(value >> 8);
+			code.write(value);
+		}
+		
+		/**
+		 * Writes a four byte operand.
+		 * 
+		 * @param value the operand
+		 */
+		private void u4(int value) {
+			u2(value >> 16);
+			u2(value);
+		}
+	}
+}
@@ -0,0 +1,603 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An accelerated simulator for the compiled {@link SimTS} transition table.
+ * <p>
+ * The tape is split into blocks of {@code k} cells and stored as two stacks of
+ * run-length encoded blocks, one on each side of the tape head. The head always
+ * sits on a block boundary and the machine is advanced one block at a time by
+ * a <i>macro transition</i>: the result of running the ordinary machine inside
+ * a single block until the head leaves it. Macro transitions are computed once
+ * and cached, so repeated sweeps over the same block contents cost a single
+ * table lookup.
+ * <p>
+ * Both caches are bounded. The macro transition cache is an open-addressed
+ * table which is cleared once it has grown to {@link #MAX_CAPACITY} slots, and
+ * once more than {@link #MAX_BLOCKS} blocks have been seen, the blocks which are
+ * no longer on the tape are forgotten and the remaining ones renumbered.
+ * <p>
+ * When a macro transition leaves the block on the opposite side in the very
+ * same state, the machine would do the same thing for every block of the run
+ * in front of it. Such a run is crossed in one macro step, no matter how long
+ * it is. With {@code k = 1} this accelerates states that sweep over long
+ * uniform runs of cells, while larger blocks also compress periodic patterns.
+ * <p>
+ * The final state, head position and tape are always the same as the ones
+ * produced by the step-by-step simulation.
+ * 
+ * @author FICHEKK
+ */
+class MacroMachine {
+	
+	/** Marks a free slot of the macro transition cache. */
+	private static final long EMPTY = -1;
+	
+	/** Initial number of slots of the macro transition cache. */
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	
+	/** Number of slots of the macro transition cache above which it is cleared instead of grown. */
+	private static final int MAX_CAPACITY = 1 << 21;
+	
+	/** Number of blocks above which the blocks which are no longer on the tape are forgotten. */
+	private static final int MAX_BLOCKS = 1 << 16;
+	
+	/** The head entered the block through its left edge. */
+	private static final int FROM_LEFT = 0;
+	
+	/** The head entered the block through its right edge. */
+	private static final int FROM_RIGHT = 1;
+	
+	/** Exit code of a block simulation which left the block over its left edge. */
+	private static final int EXIT_LEFT = -1;
+	
+	/** Exit code of a block simulation which left the block over its right edge. */
+	private static final int EXIT_RIGHT = -2;
+	
+	/** The compiled transition table. */
+	private final int[] transitions;
+	
+	/** Number of bits used by a symbol id in the transition table. */
+	private final int symbolBits;
+	
+	/** Number of states of the machine. */
+	private final int stateCount;
+	
+	/** Number of cells in a block. */
+	private final int blockSize;
+	
+	/** Contents of all the blocks seen so far, indexed by the block id. */
+	private final List<char[]> blocks = new ArrayList<>();
+	
+	/** Maps the block contents to the block id. */
+	private final Map<String, Integer> blockIds = new HashMap<>();
+	
+	/** Number of blocks above which the blocks no longer on the tape are forgotten. */
+	private int blockLimit = MAX_BLOCKS;
+	
+	/** Keys of the cached macro transitions, {@link #EMPTY} for a free slot. */
+	private long[] macroKeys;
+	
+	/** Next state of a cached macro transition. */
+	private int[] macroState;
+	
+	/** Block written by a cached macro transition. */
+	private int[] macroBlock;
+	
+	/** Exit code of a cached macro transition. */
+	private int[] macroExit;
+	
+	/** Number of ordinary steps made by a cached macro transition. */
+	private long[] macroSteps;
+	
+	/** Number of cached macro transitions. */
+	private int macroCount;
+	
+	/** State reached by the last block simulation. */
+	private int blockState;
+	
+	/** Number of steps made by the last block simulation. */
+	private long blockSteps;
+	
+	/** Runs to the left of the head, the top one being the closest. */
+	private final RunStack left = new RunStack();
+	
+	/** Runs to the right of the head, the top one being the closest. */
+	private final RunStack right = new RunStack();
+	
+	/** The head position after the last run. */
+	private int head;
+	
+	/** Number of ordinary steps made by the last run. */
+	private long steps;
+	
+	/**
+	 * Constructs a new macro machine over the given compiled transition table.
+	 * 
+	 * @param transitions the compiled transition table
+	 * @param symbolBits  number of bits used by a symbol id in the table
+	 * @param stateCount  number of states of the machine
+	 * @param blockSize   number of cells in a block
+	 * @throws IllegalArgumentException if the block size is not positive
+	 */
+	public MacroMachine(int[] transitions, int symbolBits, int stateCount, int blockSize) {
+		if(blockSize < 1)
+			throw new IllegalArgumentException("Block size must be positive. Given size was '" + blockSize + "'");
+		
+		this.transitions = transitions;
+		this.symbolBits = symbolBits;
+		this.stateCount = stateCount;
+		this.blockSize = blockSize;
+		allocateTransitions(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Runs the machine on the given tape until it halts. The tape is
+	 * overwritten with the final tape contents.
+	 * 
+	 * @param tape   the tape, holding symbol ids
+	 * @param length the number of cells of the tape
+	 * @param head   the initial head position
+	 * @param state  the initial state
+	 * @return the final state
+	 */
+	public int run(char[] tape, int length, int head, int state) {
+		steps = 0;
+		left.clear();
+		right.clear();
+		
+		if(blocks.size() > blockLimit) forgetBlocks();
+		
+		int headBlock = head / blockSize;
+		for(int start = (length - 1) / blockSize * blockSize; start > headBlock * blockSize; start -= blockSize) {
+			right.push(intern(Arrays.copyOfRange(tape, start, Math.min(start + blockSize, length))), 1);
+		}
+		for(int start = 0; start < headBlock * blockSize; start += blockSize) {
+			left.push(intern(Arrays.copyOfRange(tape, start, start + blockSize)), 1);
+		}
+		
+		// The head starts inside a block, so the first block is simulated without the cache.
+		char[] cells = Arrays.copyOfRange(tape, headBlock * blockSize, Math.min((headBlock + 1) * blockSize, length));
+		int exit = simulateBlock(state, cells, head - headBlock * blockSize);
+		state = blockState;
+		steps += blockSteps;
+		
+		if(exit >= 0) {
+			return halt(tape, intern(cells), exit, state);
+		}
+		
+		boolean movingRight = exit == EXIT_RIGHT;
+		(movingRight ? left : right).push(intern(cells), 1);
+		
+		while(true) {
+			if(blocks.size() > blockLimit) forgetBlocks();
+			
+			RunStack ahead = movingRight ? right : left;
+			RunStack behind = movingRight ? left : right;
+			
+			if(ahead.isEmpty()) {
+				return halt(tape, -1, movingRight ? blockLength(behind.top()) - 1 : 0, state);
+			}
+			
+			int block = ahead.top();
+			int key = macroTransition(state, block, movingRight ? FROM_LEFT : FROM_RIGHT);
+			int next = macroBlock[key];
+			
+			exit = macroExit[key];
+			
+			if(exit >= 0) {
+				ahead.pop(1);
+				steps += macroSteps[key];
+				return halt(tape, next, exit, macroState[key]);
+			}
+			
+			boolean exitsRight = exit == EXIT_RIGHT;
+			
+			if(exitsRight == movingRight && macroState[key] == state) {
+				// The whole run in front of the head is rewritten the same way.
+				int count = ahead.topCount();
+				ahead.pop(count);
+				behind.push(next, count);
+				steps += count * macroSteps[key];
+				continue;
+			}
+			
+			ahead.pop(1);
+			steps += macroSteps[key];
+			state = macroState[key];
+			(exitsRight ? left : right).push(next, 1);
+			movingRight = exitsRight;
+		}
+	}
+	
+	/**
+	 * Returns the number of cells in a block.
+	 * 
+	 * @return the block size
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * Returns the head position after the last run.
+	 * 
+	 * @return the head position
+	 */
+	public int getHead() {
+		return head;
+	}
+	
+	/**
+	 * Returns the number of ordinary steps made by the last run.
+	 * 
+	 * @return the number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * Writes the final configuration back to the tape.
+	 * 
+	 * @param tape   the tape to overwrite
+	 * @param block  id of the block between the two stacks which holds the head,
+	 *               or {@code -1} if the head is on the edge of the tape
+	 * @param offset the head offset inside the head block, or inside the
+	 *               nearest block if the head is on the edge
+	 * @param state  the final state
+	 * @return the final state
+	 */
+	private int halt(char[] tape, int block, int offset, int state) {
+		int position = left.writeBottomUp(tape, 0);
+		
+		if(block >= 0) {
+			char[] cells = blocks.get(block);
+			System.arraycopy(cells, 0, tape, position, cells.length);
+			head = position + offset;
+			position += cells.length;
+		
+		} else {
+			head = left.isEmpty() ? offset : position - blockLength(left.top()) + offset;
+		}
+		
+		right.writeTopDown(tape, position);
+		return state;
+	}
+	
+	/**
+	 * Returns the slot of the cached macro transition for the given state, block
+	 * and entry side, computing the transition first if needed. The slot is
+	 * valid until the next call.
+	 * 
+	 * @param state the state in which the head enters the block
+	 * @param block the block id
+	 * @param side  the side through which the head enters the block
+	 * @return the slot of the macro transition
+	 */
+	private int macroTransition(int state, int block, int side) {
+		long key = (((long) block * stateCount + state) << 1) | side;
+		int slot = find(key);
+		
+		if(macroKeys[slot] == key) return slot;
+		
+		char[] cells = blocks.get(block).clone();
+		int exit = simulateBlock(state, cells, side == FROM_LEFT ? 0 : cells.length - 1);
+		int next = intern(cells);
+		
+		if(2 * (macroCount + 1) > macroKeys.length) {
+			allocateTransitions(macroKeys.length < MAX_CAPACITY ? macroKeys.length * 2 : macroKeys.length);
+			slot = find(key);
+		}
+		
+		macroKeys[slot] = key;
+		macroState[slot] = blockState;
+		macroBlock[slot] = next;
+		macroExit[slot] = exit;
+		macroSteps[slot] = blockSteps;
+		macroCount++;
+		return slot;
+	}
+	
+	/**
+	 * Returns the slot holding the given key, or the free slot in which it
+	 * would be stored.
+	 * 
+	 * @param key the key of a macro transition
+	 * @return the slot
+	 */
+	private int find(long key) {
+		int mask = macroKeys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		
+		while(macroKeys[slot] != EMPTY && macroKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/**
+	 * Replaces the macro transition cache with one of the given number of
+	 * slots. The cached transitions are moved over if the cache grows, and
+	 * dropped otherwise.
+	 * 
+	 * @param capacity the number of slots, a power of two
+	 */
+	private void allocateTransitions(int capacity) {
+		long[] oldKeys = macroKeys;
+		int[] oldState = macroState;
+		int[] oldBlock = macroBlock;
+		int[] oldExit = macroExit;
+		long[] oldSteps = macroSteps;
+		
+		macroKeys = new long[capacity];
+		macroState = new int[capacity];
+		macroBlock = new int[capacity];
+		macroExit = new int[capacity];
+		macroSteps = new long[capacity];
+		macroCount = 0;
+		Arrays.fill(macroKeys, EMPTY);
+		
+		if(oldKeys == null || oldKeys.length >= capacity) return;
+		
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] == EMPTY) continue;
+			
+			int slot = find(oldKeys[i]);
+			macroKeys[slot] = oldKeys[i];
+			macroState[slot] = oldState[i];
+			macroBlock[slot] = oldBlock[i];
+			macroExit[slot] = oldExit[i];
+			macroSteps[slot] = oldSteps[i];
+			macroCount++;
+		}
+	}
+	
+	/**
+	 * Forgets all of the blocks which are not on the run stacks and renumbers
+	 * the remaining ones. The macro transitions refer to the old block ids, so
+	 * they are all dropped.
+	 */
+	private void forgetBlocks() {
+		List<char[]> kept = new ArrayList<>();
+		int[] ids = new int[blocks.size()];
+		Arrays.fill(ids, -1);
+		
+		blockIds.clear();
+		left.renumber(ids, kept);
+		right.renumber(ids, kept);
+		
+		blocks.clear();
+		blocks.addAll(kept);
+		blockLimit = Math.max(MAX_BLOCKS, 2 * kept.size());
+		allocateTransitions(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Runs the ordinary machine inside a single block until the head leaves
+	 * the block or the machine halts. The reached state and the number of steps
+	 * are stored in {@link #blockState} and {@link #blockSteps}.
+	 * 
+	 * @param state  the initial state
+	 * @param cells  the block contents, which are overwritten
+	 * @param offset the initial head offset inside the block
+	 * @return {@link #EXIT_LEFT}, {@link #EXIT_RIGHT} or the offset at which the
+	 *         machine halted
+	 */
+	private int simulateBlock(int state, char[] cells, int offset) {
+		final int symbolMask = (1 << symbolBits) - 1;
+		final int last = cells.length - 1;
+		
+		long count = 0;
+		int exit;
+		
+		while(true) {
+			int transition = transitions[(state << symbolBits) | cells[offset]];
+			
+			if(transition == SimTS.NO_TRANSITION) {
+				exit = offset;
+				break;
+			}
+			
+			count++;
+			state = transition >>> (symbolBits + SimTS.DIRECTION_BITS);
+			cells[offset] = (char) ((transition >>> SimTS.DIRECTION_BITS) & symbolMask);
+			
+			int direction = transition & SimTS.DIRECTION_MASK;
+			
+			if(direction == SimTS.LEFT) {
+				if(offset == 0) {
+					exit = EXIT_LEFT;
+					break;
+				}
+				offset--;
+			
+			} else if(direction == SimTS.RIGHT) {
+				if(offset == last) {
+					exit = EXIT_RIGHT;
+					break;
+				}
+				offset++;
+			}
+		}
+		
+		blockState = state;
+		blockSteps = count;
+		return exit;
+	}
+	
+	/**
+	 * Returns the id of the block with the given contents, assigning
+	 * it a new id if the contents have not been seen before.
+	 * 
+	 * @param cells the block contents
+	 * @return the block id
+	 */
+	private int intern(char[] cells) {
+		return blockIds.computeIfAbsent(String.valueOf(cells), k -> {
+			blocks.add(cells);
+			return blocks.size() - 1;
+		});
+	}
+	
+	/**
+	 * Returns the number of cells in the given block.
+	 * 
+	 * @param block the block id
+	 * @return the block length
+	 */
+	private int blockLength(int block) {
+		return blocks.get(block).length;
+	}
+	
+	/**
+	 * A stack of runs of identical blocks. Pushing a block which is equal
+	 * to the top block extends the top run instead of adding a new one.
+	 * 
+	 * @author FICHEKK
+	 */
+	private class RunStack {
+		
+		/** Block ids of the runs, bottom first. */
+		private int[] runBlocks = new int[16];
+		
+		/** Lengths of the runs, bottom first. */
+		private int[] runCounts = new int[16];
+		
+		/** Number of runs on the stack. */
+		private int size;
+		
+		/**
+		 * Pushes {@code count} copies of the given block.
+		 * 
+		 * @param block the block id
+		 * @param count the number of copies
+		 */
+		void push(int block, int count) {
+			if(size > 0 && runBlocks[size - 1] == block) {
+				runCounts[size - 1] += count;
+				return;
+			}
+			
+			if(size == runBlocks.length) {
+				runBlocks = Arrays.copyOf(runBlocks, size * 2);
+				runCounts = Arrays.copyOf(runCounts, size * 2);
+			}
+			
+			runBlocks[size] = block;
+			runCounts[size] = count;
+			size++;
+		}
+		
+		/**
+		 * Removes {@code count} blocks from the top run.
+		 * 
+		 * @param count the number of blocks, at most {@link #topCount()}
+		 */
+		void pop(int count) {
+			runCounts[size - 1] -= count;
+			if(runCounts[size - 1] == 0) size--;
+		}
+		
+		/**
+		 * Returns the block id of the top run.
+		 * 
+		 * @return the top block id
+		 */
+		int top() {
+			return runBlocks[size - 1];
+		}
+		
+		/**
+		 * Returns the number of blocks in the top run.
+		 * 
+		 * @return the length of the top run
+		 */
+		int topCount() {
+			return runCounts[size - 1];
+		}
+		
+		/**
+		 * Checks whether there are no blocks on this stack.
+		 * 
+		 * @return {@code true} if the stack is empty, {@code false} otherwise
+		 */
+		boolean isEmpty() {
+			return size == 0;
+		}
+		
+		/** Removes all of the runs. */
+		void clear() {
+			size = 0;
+		}
+		
+		/**
+		 * Gives the blocks of the runs new ids. A block which has no new id
+		 * yet is appended to the kept blocks and interned under the next id.
+		 * 
+		 * @param ids  the new id of each old block id, {@code -1} if not assigned yet
+		 * @param kept the blocks which keep being interned, in the order of the new ids
+		 */
+		void renumber(int[] ids, List<char[]> kept) {
+			for(int i = 0; i < size; i++) {
+				int block = runBlocks[i];
+				
+				if(ids[block] < 0) {
+					ids[block] = kept.size();
+					kept.add(blocks.get(block));
+					blockIds.put(String.valueOf(blocks.get(block)), ids[block]);
+				}
+				runBlocks[i] = ids[block];
+			}
+		}
+		
+		/**
+		 * Writes the blocks to the tape starting with the bottom one.
+		 * 
+		 * @param tape     the tape
+		 * @param position the tape position of the first cell
+		 * @return the position after the last written cell
+		 */
+		int writeBottomUp(char[] tape, int position) {
+			for(int i = 0; i < size; i++) {
+				position = writeRun(tape, position, i);
+			}
+			return position;
+		}
+		
+		/**
+		 * Writes the blocks to the tape starting with the top one.
+		 * 
+		 * @param tape     the tape
+		 * @param position the tape position of the first cell
+		 * @return the position after the last written cell
+		 */
+		int writeTopDown(char[] tape, int position) {
+			for(int i = size - 1; i >= 0; i--) {
+				position = writeRun(tape, position, i);
+			}
+			return position;
+		}
+		
+		/**
+		 * Writes a single run to the tape.
+		 * 
+		 * @param tape     the tape
+		 * @param position the tape position of the first cell
+		 * @param run      the run index
+		 * @return the position after the last written cell
+		 */
+		private int writeRun(char[] tape, int position, int run) {
+			char[] cells = blocks.get(runBlocks[run]);
+			
+			for(int i = 0; i < runCounts[run]; i++) {
+				System.arraycopy(cells, 0, tape, position, cells.length);
+				position += cells.length;
+			}
+			return position;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+import java.util.Arrays;
+
+/**
+ * A Turing machine with several tapes, each one with its own head. A single
+ * transition reads the symbols under all of the heads, and then writes a new
+ * symbol and moves the head on every tape independently.
+ * <p>
+ * Like the single tape {@link SimTS}, the machine works with interned state
+ * and symbol ids. The transition table is indexed by the state and all of the
+ * read symbols packed into a single integer, and holds the index of the
+ * transition whose next state, written symbols and moves are stored in flat
+ * arrays.
+ * <p>
+ * The machine halts when there is no transition for the current state and
+ * symbols, or when a head cannot move because it is at the edge of its tape.
+ * In the latter case the step is completed on all of the other tapes first.
+ * 
+ * @author FICHEKK
+ */
+class MultiTapeMachine {
+	
+	/** The largest number of entries the transition table may have. */
+	private static final int MAX_TABLE_SIZE = 1 << 28;
+	
+	/** Number of tapes. */
+	private final int tapeCount;
+	
+	/** Number of bits used by a single symbol id in the table index. */
+	private final int symbolBits;
+	
+	/** Maps the packed (state, symbols) index to the transition index. */
+	private final int[] table;
+	
+	/** Next state of each transition. */
+	private int[] nextStates;
+	
+	/** Written symbols of each transition, {@link #tapeCount} per transition. */
+	private char[] writes;
+	
+	/** Head moves of each transition, {@link #tapeCount} per transition. */
+	private byte[] moves;
+	
+	/** Number of transitions. */
+	private int transitionCount;
+	
+	/** The tapes, holding symbol ids. */
+	private final char[][] tapes;
+	
+	/** The head position on each tape. */
+	private final int[] heads;
+	
+	/** Whether the machine halted during the last run. */
+	private boolean halted;
+	
+	/** Number of steps made by the last run. */
+	private long steps;
+	
+	/**
+	 * Constructs a new multi-tape machine without any transitions.
+	 * 
+	 * @param stateCount number of states
+	 * @param symbolBits number of bits needed to store any symbol id
+	 * @param tapes      the tapes, holding symbol ids
+	 * @param heads      the initial head position on each tape
+	 * @throws IllegalArgumentException if the transition table would be too large
+	 */
+	public MultiTapeMachine(int stateCount, int symbolBits, char[][] tapes, int[] heads) {
+		this.tapeCount = tapes.length;
+		this.symbolBits = symbolBits;
+		this.tapes = tapes;
+		this.heads = heads;
+		
+		long size = (long) stateCount << (tapeCount * symbolBits);
+		if(tapeCount * symbolBits >= Integer.SIZE || size > MAX_TABLE_SIZE) {
+			String msg = stateCount + " states and " + tapeCount + " tapes do not fit in the transition table";
+			throw new IllegalArgumentException(msg);
+		}
+		
+		table = new int[(int) size];
+		Arrays.fill(table, SimTS.NO_TRANSITION);
+		
+		nextStates = new int[16];
+		writes = new char[16 * tapeCount];
+		moves = new byte[16 * tapeCount];
+	}
+	
+	/**
+	 * Constructs a new multi-tape machine which shares the transitions
+	 * of the given machine, but runs on its own tapes.
+	 * 
+	 * @param machine the machine whose transitions are shared
+	 * @param tapes   the tapes, holding symbol ids
+	 * @param heads   the initial head position on each tape
+	 */
+	public MultiTapeMachine(MultiTapeMachine machine, char[][] tapes, int[] heads) {
+		this.tapeCount = machine.tapeCount;
+		this.symbolBits = machine.symbolBits;
+		this.table = machine.table;
+		this.nextStates = machine.nextStates;
+		this.writes = machine.writes;
+		this.moves = machine.moves;
+		this.transitionCount = machine.transitionCount;
+		this.tapes = tapes;
+		this.heads = heads;
+	}
+	
+	/**
+	 * Adds a transition to this machine, replacing the previous transition
+	 * for the same state and read symbols.
+	 * 
+	 * @param state  the current state
+	 * @param reads  the symbol read from each tape
+	 * @param next   the next state
+	 * @param writes the symbol written to each tape
+	 * @param moves  the head move on each tape
+	 */
+	public void addTransition(int state, int[] reads, int next, int[] writes, int[] moves) {
+		int index = state;
+		for(int read : reads) {
+			index = (index << symbolBits) | read;
+		}
+		
+		if(transitionCount == nextStates.length) {
+			nextStates = Arrays.copyOf(nextStates, transitionCount * 2);
+			this.writes = Arrays.copyOf(this.writes, transitionCount * 2 * tapeCount);
+			this.moves = Arrays.copyOf(this.moves, transitionCount * 2 * tapeCount);
+		}
+		
+		nextStates[transitionCount] = next;
+		for(int t = 0; t < tapeCount; t++) {
+			this.writes[transitionCount * tapeCount + t] = (char) writes[t];
+			this.moves[transitionCount * tapeCount + t] = (byte) moves[t];
+		}
+		
+		table[index] = transitionCount++;
+	}
+	
+	/**
+	 * Makes at most {@code limit} steps, starting from the given state and the
+	 * current tapes and heads.
+	 * 
+	 * @param state the current state
+	 * @param limit the maximum number of steps
+	 * @return the state after the last step
+	 */
+	public int run(int state, long limit) {
+		final int[] table = this.table;
+		final char[][] tapes = this.tapes;
+		final int[] heads = this.heads;
+		final int tapeCount = this.tapeCount;
+		final int symbolBits = this.symbolBits;
+		
+		long remaining = limit;
+		halted = true;
+		
+		while(true) {
+			int index = state;
+			for(int t = 0; t < tapeCount; t++) {
+				index = (index << symbolBits) | tapes[t][heads[t]];
+			}
+			
+			int transition = table[index];
+			
+			if(transition == SimTS.NO_TRANSITION) break;
+			
+			if(remaining <= 0) {
+				halted = false;
+				break;
+			}
+			
+			remaining--;
+			state = nextStates[transition];
+			
+			boolean blocked = false;
+			int base = transition * tapeCount;
+			
+			for(int t = 0; t < tapeCount; t++) {
+				char[] tape = tapes[t];
+				int position = heads[t];
+				int move = moves[base + t];
+				
+				tape[position] = writes[base + t];
+				
+				if(move == SimTS.LEFT) {
+					if(position == 0) blocked = true;
+					else heads[t] = position - 1;
+				
+				} else if(move == SimTS.RIGHT) {
+					if(position == tape.length - 1) blocked = true;
+					else heads[t] = position + 1;
+				}
+			}
+			
+			if(blocked) break;
+		}
+		
+		steps = limit - remaining;
+		return state;
+	}
+	
+	/**
+	 * Checks whether the machine halted during the last run.
+	 * 
+	 * @return {@code true} if the machine halted, {@code false} if it
+	 *         reached the step limit
+	 */
+	public boolean isHalted() {
+		return halted;
+	}
+	
+	/**
+	 * Returns the number of steps made by the last run.
+	 * 
+	 * @return the number of steps
+	 */
+	public long getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * Returns the tapes of this machine.
+	 * 
+	 * @return the tapes, holding symbol ids
+	 */
+	public char[][] getTapes() {
+		return tapes;
+	}
+	
+	/**
+	 * Returns the head positions of this machine.
+	 * 
+	 * @return the head position on each tape
+	 */
+	public int[] getHeads() {
+		return heads;
+	}
+}
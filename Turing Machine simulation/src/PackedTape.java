@@ -0,0 +1,298 @@
+import java.util.Arrays;
+
+/**
+ * A tape of symbol ids, packed into {@code long} words once it is long enough
+ * for the footprint to matter.
+ * <p>
+ * A packed cell takes the smallest power of two bits that can hold any symbol
+ * id, so the common alphabets of up to 2, 4, 16 or 256 symbols take 1, 2, 4 or
+ * 8 bits per cell instead of the 16 bits of a {@code char}. Rounding the width
+ * up to a power of two means that a cell never straddles two words, and the
+ * word and the offset of a cell are found by a shift and a mask.
+ * <p>
+ * The bits after the last cell are always zero, so two tapes of the same
+ * length hold the same contents exactly when their used words are equal.
+ * <p>
+ * Packing saves memory, not time: the step loop over packed words needs a
+ * mask and a rotate for every step, which makes it slower than the loop over
+ * one {@code char} per cell whenever the tape fits in the cache. Tapes shorter
+ * than {@link #PACKING_THRESHOLD} cells are therefore kept one cell per
+ * {@code char}, unless the tape is made to be always packed for the code
+ * which reads the words directly.
+ * 
+ * @author FICHEKK
+ */
+class PackedTape {
+	
+	/** Number of cells from which a tape is packed, 2 MB of {@code char} cells. */
+	static final int PACKING_THRESHOLD = 1 << 20;
+	
+	/**
+	 * Number of cells from which a tape is packed, {@link #PACKING_THRESHOLD}
+	 * unless it is changed by the benchmark or the tests.
+	 */
+	private static int packingThreshold = PACKING_THRESHOLD;
+	
+	/** Base 2 logarithm of the number of bits in a cell. */
+	private final int cellShift;
+	
+	/** Base 2 logarithm of the number of cells in a word. */
+	private final int indexShift;
+	
+	/** Mask of a single cell at the lowest bits of a word. */
+	private final long cellMask;
+	
+	/** The cells, packed from the lowest bits of every word. */
+	private long[] words = new long[0];
+	
+	/** The cells, one symbol id per {@code char}. */
+	private char[] cells = new char[0];
+	
+	/** Whether the cells are held in {@link #words} rather than {@link #cells}. */
+	private boolean packed;
+	
+	/** Whether the tape is packed whatever its length. */
+	private boolean alwaysPacked;
+	
+	/** Number of cells. */
+	private int length;
+	
+	/**
+	 * Constructs a new empty tape.
+	 * 
+	 * @param symbolBits number of bits needed to store any symbol id
+	 */
+	public PackedTape(int symbolBits) {
+		cellShift = 32 - Integer.numberOfLeadingZeros(symbolBits - 1);
+		indexShift = 6 - cellShift;
+		cellMask = (1L << (1 << cellShift)) - 1;
+	}
+	
+	/**
+	 * Constructs a copy of the given tape.
+	 * 
+	 * @param tape the tape to copy
+	 */
+	public PackedTape(PackedTape tape) {
+		cellShift = tape.cellShift;
+		indexShift = tape.indexShift;
+		cellMask = tape.cellMask;
+		alwaysPacked = tape.alwaysPacked;
+		copyFrom(tape);
+	}
+	
+	/**
+	 * Changes the number of cells from which the tapes are packed, so that the
+	 * benchmark and the tests can run either layout at any length. It affects
+	 * every tape reset afterwards, and should only be changed while no machine
+	 * is running.
+	 * 
+	 * @param threshold the number of cells, {@code 0} to pack every tape and
+	 *                  {@link Integer#MAX_VALUE} to pack none
+	 */
+	static void setPackingThreshold(int threshold) {
+		packingThreshold = threshold;
+	}
+	
+	/**
+	 * Makes the tape packed whatever its length, or only from the packing
+	 * threshold, converting the current contents if needed.
+	 * 
+	 * @param alwaysPacked {@code true} to always pack the tape, {@code false} otherwise
+	 */
+	public void setAlwaysPacked(boolean alwaysPacked) {
+		this.alwaysPacked = alwaysPacked;
+		
+		if(packed != (alwaysPacked || length >= packingThreshold)) {
+			char[] ids = toIds();
+			load(ids, ids.length);
+		}
+	}
+	
+	/**
+	 * Clears the tape and changes its length, which decides whether the tape
+	 * is packed. The arrays are reused whenever they are large enough.
+	 * 
+	 * @param length the new number of cells
+	 */
+	public void reset(int length) {
+		this.length = length;
+		packed = alwaysPacked || length >= packingThreshold;
+		
+		if(packed) {
+			int count = wordCount();
+			if(cells.length > 0) cells = new char[0];
+			
+			if(words.length < count) {
+				words = new long[count];
+			} else {
+				Arrays.fill(words, 0, count, 0);
+			}
+		
+		} else {
+			if(words.length > 0) words = new long[0];
+			
+			if(cells.length < length) {
+				cells = new char[length];
+			} else {
+				Arrays.fill(cells, 0, length, (char) 0);
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the contents of this tape with a copy of the given tape, which
+	 * holds cells of the same width.
+	 * 
+	 * @param tape the tape to copy
+	 */
+	public void copyFrom(PackedTape tape) {
+		length = tape.length;
+		packed = tape.packed;
+		
+		if(packed) {
+			int count = wordCount();
+			if(words.length < count) words = new long[count];
+			System.arraycopy(tape.words, 0, words, 0, count);
+		
+		} else {
+			if(cells.length < length) cells = new char[length];
+			System.arraycopy(tape.cells, 0, cells, 0, length);
+		}
+	}
+	
+	/**
+	 * Checks whether this tape holds the same cells as the given tape, which
+	 * holds cells of the same width.
+	 * 
+	 * @param tape the tape to compare with
+	 * @return {@code true} if the contents are equal, {@code false} otherwise
+	 */
+	public boolean contentEquals(PackedTape tape) {
+		if(length != tape.length || packed != tape.packed) return false;
+		
+		return packed
+				? Arrays.equals(words, 0, wordCount(), tape.words, 0, wordCount())
+				: Arrays.equals(cells, 0, length, tape.cells, 0, length);
+	}
+	
+	/**
+	 * Replaces the contents of the tape with the given symbol ids.
+	 * 
+	 * @param ids    the symbol ids
+	 * @param length number of cells to take
+	 */
+	public void load(char[] ids, int length) {
+		reset(length);
+		
+		if(!packed) {
+			System.arraycopy(ids, 0, cells, 0, length);
+			return;
+		}
+		for(int i = 0; i < length; i++) {
+			set(i, ids[i]);
+		}
+	}
+	
+	/**
+	 * Returns the contents of the tape as an array of symbol ids.
+	 * 
+	 * @return the symbol ids
+	 */
+	public char[] toIds() {
+		if(!packed) return Arrays.copyOf(cells, length);
+		
+		char[] ids = new char[length];
+		for(int i = 0; i < length; i++) {
+			ids[i] = (char) get(i);
+		}
+		return ids;
+	}
+	
+	/**
+	 * Returns the symbol id in the given cell.
+	 * 
+	 * @param position the cell
+	 * @return the symbol id
+	 */
+	public int get(int position) {
+		if(!packed) return cells[position];
+		
+		int offset = (position & ((1 << indexShift) - 1)) << cellShift;
+		return (int) ((words[position >>> indexShift] >>> offset) & cellMask);
+	}
+	
+	/**
+	 * Writes the symbol id to the given cell.
+	 * 
+	 * @param position the cell
+	 * @param id       the symbol id
+	 */
+	public void set(int position, int id) {
+		if(!packed) {
+			cells[position] = (char) id;
+			return;
+		}
+		
+		int offset = (position & ((1 << indexShift) - 1)) << cellShift;
+		int index = position >>> indexShift;
+		words[index] = (words[index] & ~(cellMask << offset)) | ((long) id << offset);
+	}
+	
+	/**
+	 * Checks whether the cells are packed into words.
+	 * 
+	 * @return {@code true} if the tape is packed, {@code false} if it holds a
+	 *         {@code char} per cell
+	 */
+	boolean isPacked() {
+		return packed;
+	}
+	
+	/**
+	 * Returns the words holding the cells of a packed tape, which the step
+	 * loops read and write directly.
+	 * 
+	 * @return the words
+	 */
+	long[] getWords() {
+		return words;
+	}
+	
+	/**
+	 * Returns the cells of a tape which is not packed, which the step loops
+	 * read and write directly.
+	 * 
+	 * @return the cells
+	 */
+	char[] getCells() {
+		return cells;
+	}
+	
+	/**
+	 * Returns the base 2 logarithm of the number of bits in a cell.
+	 * 
+	 * @return the cell shift
+	 */
+	int getCellShift() {
+		return cellShift;
+	}
+	
+	/**
+	 * Returns the number of cells.
+	 * 
+	 * @return the tape length
+	 */
+	public int length() {
+		return length;
+	}
+	
+	/**
+	 * Returns the number of words used by the cells of a packed tape.
+	 * 
+	 * @return the number of used words
+	 */
+	public int wordCount() {
+		return (int) (((long) length + (1 << indexShift) - 1) >>> indexShift);
+	}
+}
@@ -1,45 +1,172 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Scanner;
 import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import automaton.Counter;
+import automaton.DefinitionReader;
+import automaton.LatencyHistogram;
+import automaton.MetricRegistry;
+import automaton.SymbolTable;
 
 /**
  * A simple simulator that demonstrates the workings
  * of a Turing machine.
+ * <p>
+ * The definition is compiled once, when it is loaded: every state and
+ * every tape symbol is interned to a small integer and the transition
+ * function is stored as a dense table of packed integers. Because of
+ * that, all of the validation happens at load time and the simulation
+ * itself does not allocate anything.
+ * <p>
+ * Given a {@link MetricRegistry}, the machine counts its simulations, their
+ * steps and the ones stopped before halting, and times them. Unlike the
+ * {@link SimulationMetrics}, these are added once per simulation, so they
+ * work with every mode of the simulation and do not slow it down.
  * 
  * @author FICHEKK
  */
 public class SimTS {
 	
-	/** All the states that this Turing machine can be in. */
-	private Set<String> states = new HashSet<>();
+	/** Marks a (state, symbol) pair that has no transition. */
+	static final int NO_TRANSITION = -1;
+	
+	/** Packed direction of a transition that moves the head left. */
+	static final int LEFT = 0;
+	
+	/** Packed direction of a transition that moves the head right. */
+	static final int RIGHT = 1;
+	
+	/** Packed direction of a transition that leaves the head where it is. */
+	static final int STAY = 2;
+	
+	/** Number of bits used by the direction in a packed transition. */
+	static final int DIRECTION_BITS = 2;
+	
+	/** Mask of the direction in a packed transition. */
+	static final int DIRECTION_MASK = (1 << DIRECTION_BITS) - 1;
+	
+	/** Largest number of steps made between two checks of the limits and checkpoints. */
+	private static final long STEPS_PER_CHUNK = 1 << 24;
 	
-	/** All the possible symbols in the alphabet. */
-	private Set<String> alphabet = new HashSet<>();
+	/** Number of steps of the first chunk, made before the step rate is known. */
+	private static final long FIRST_CHUNK = 1 << 12;
 	
-	/** All the possible tape symbols. */
-	private Set<String> tapeAlphabet = new HashSet<>();
+	/** Wall-clock time aimed for between two checks of the limits, in nanoseconds. */
+	private static final long CHUNK_TIME = 10_000_000;
+	
+	/** Marks the start of a checkpoint file. */
+	private static final int CHECKPOINT_MAGIC = 0x53544d43;
+	
+	/** Version of the checkpoint file format. */
+	private static final int CHECKPOINT_VERSION = 1;
+	
+	/** Names of all the states, indexed by the state id. */
+	private String[] states;
+	
+	/** Tape symbols, indexed by the symbol id. */
+	private char[] symbols;
+	
+	/** Symbol ids, indexed by the tape symbol, {@code -1} for unknown symbols. */
+	private int[] symbolIds;
+	
+	/** Number of bits needed to store any symbol id. */
+	private int symbolBits;
 	
 	/** The empty cell symbol. */
 	private String emptyCell;
 	
-	/** The input tape. */
-	private char[] tape;
+	/**
+	 * The input tape, holding symbol ids rather than the symbols themselves,
+	 * packed at the smallest width that can hold any of them once it is long
+	 * enough for the footprint to matter.
+	 */
+	private PackedTape tape;
 	
-	/** A set of all the final states. */
-	private Set<String> finalStates = new HashSet<>();
+	/** Marks which state ids are final. */
+	private boolean[] finalStates;
 	
-	/** The starting state for this Turing machine. */
-	private String initialState;
+	/** Id of the starting state for this Turing machine. */
+	private int initialState;
 	
 	/** The tape head position. */
 	private int head;
 	
-	/** Transition mapping. */
-	private Map<Input, Output> transitions = new HashMap<>();
+	/** The initial head position on each tape. */
+	private int[] initialHeads;
+	
+	/** Id of the current state. */
+	private int state;
+	
+	/** Number of steps made since the initial configuration. */
+	private long steps;
+	
+	/**
+	 * Transition table, indexed by {@code (state << symbolBits) | symbol}.
+	 * Each entry is either {@link #NO_TRANSITION} or the packed
+	 * {@code (next state, written symbol, direction)} triple.
+	 */
+	private int[] transitions;
+	
+	/** The machine used instead of the single tape if more tapes are defined. */
+	private MultiTapeMachine multiTape;
+	
+	/** Maximum number of steps, counted from the initial configuration. */
+	private long stepLimit = Long.MAX_VALUE;
+	
+	/** Maximum running time of the simulation in nanoseconds. */
+	private long timeLimit = Long.MAX_VALUE;
+	
+	/** Detects repeated configurations, or {@code null} if detection is disabled. */
+	private CycleDetector cycleDetector;
+	
+	/** The file to which checkpoints are saved, or {@code null} if there is none. */
+	private Path checkpointFile;
+	
+	/** Number of steps between two checkpoints. */
+	private long checkpointInterval = Long.MAX_VALUE;
+	
+	/** The accelerated simulator, or {@code null} if the machine runs step by step. */
+	private MacroMachine macroMachine;
+	
+	/** Why the last simulation stopped before halting, or {@code null} if it halted. */
+	private String stopReason;
+	
+	/** The collected runtime metrics, or {@code null} if none are collected. */
+	private SimulationMetrics metrics;
+	
+	/** The definition compiled to bytecode, or {@code null} if the machine is interpreted. */
+	private CompiledMachine compiledMachine;
+	
+	/** Counts the simulations, or {@code null} if no metrics are added to a registry. */
+	private Counter runCount;
+	
+	/** Counts the steps of the simulations, or {@code null} if no metrics are added to a registry. */
+	private Counter stepCount;
+	
+	/** Counts the simulations stopped before halting, or {@code null} if no metrics are added to a registry. */
+	private Counter stoppedCount;
+	
+	/** The running times of the simulations, or {@code null} if no metrics are added to a registry. */
+	private LatencyHistogram runTimes;
 	
 	/**
 	 * Creates a new Turing machine and prompts the user to provide
@@ -79,10 +206,114 @@ public class SimTS {
 	 * 		<li> q3,B->q4,B,R </li>
 	 * </ol>
 	 * 
-	 * @param args none are used
+	 * <p>
+	 * A machine with {@code k} tapes is defined the same way, except that the
+	 * 5. line holds all of the initial tapes separated by <b>|</b>, the 8. line
+	 * holds all of the initial head positions separated by <b>,</b> and every
+	 * transition reads {@code k} symbols, and then writes {@code k} symbols
+	 * and makes {@code k} head shifts, for example {@code q0,0,B->q1,X,0,R,S}.
+	 * Any head can also stay in place with the shift {@code S}.
+	 * <p>
+	 * The machine is simulated step by step, unless the {@code --macro} option
+	 * is given. {@code --macro=k} runs the accelerated simulation which moves
+	 * over whole runs of {@code k}-cell blocks at once, {@code --macro} alone
+	 * uses single-cell blocks.
+	 * <p>
+	 * The step-by-step simulation also accepts these options:
+	 * <ul>
+	 * 		<li> {@code --max-steps=n} stops the machine after {@code n} steps </li>
+	 * 		<li> {@code --max-seconds=n} stops the machine after {@code n} seconds </li>
+	 * 		<li> {@code --detect-cycles} stops the machine once it repeats a configuration </li>
+	 * 		<li> {@code --checkpoint=file} saves the configuration to the file when the machine is stopped </li>
+	 * 		<li> {@code --checkpoint-every=n} also saves it after every {@code n} steps </li>
+	 * 		<li> {@code --resume=file} continues from a saved configuration </li>
+	 * </ul>
+	 * <p>
+	 * With {@code --batch} the machine is run once for every line of the
+	 * standard input after the definition and an empty line, and with
+	 * {@code --batch=file} for every line of the file. A line holds the initial
+	 * tapes in the format of the 5. line, optionally followed by a space and
+	 * the head positions in the format of the 8. line. The inputs are simulated on {@code --threads=n} threads,
+	 * by default one per processor, and the results are printed in the order
+	 * of the inputs.
+	 * <p>
+	 * With {@code --metrics=file} a single tape machine is simulated by an
+	 * instrumented loop, and the step count, the step rate, the number of steps
+	 * made in every state and the range of the head positions are written to
+	 * the file as JSON once the machine stops. Independently of the options,
+	 * the simulation emits the {@link SimulationEvents} for the JDK Flight
+	 * Recorder.
+	 * <p>
+	 * With {@code --compile} a single tape machine is compiled to bytecode by
+	 * {@link CompiledMachine} and runs without the transition table, unless it
+	 * is too large to be compiled, in which case it is interpreted as usual.
+	 * 
+	 * @param args the options described above
+	 * @throws IOException if the checkpoint to resume from or the batch file
+	 *                     cannot be read, or the metrics cannot be written
 	 */
-	public static void main(String[] args) {
-		new SimTS().start();
+	public static void main(String[] args) throws IOException {
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			SimTS machine = new SimTS(reader);
+			String batch = null;
+			Path metricsFile = null;
+			int threads = Runtime.getRuntime().availableProcessors();
+			
+			for(String arg : args) {
+				String option = arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : arg;
+				String value = arg.substring(option.length());
+				
+				switch(option) {
+					case "--macro":				machine.setBlockSize(1); break;
+					case "--macro=":			machine.setBlockSize(Integer.parseInt(value)); break;
+					case "--max-steps=":		machine.setStepLimit(Long.parseLong(value)); break;
+					case "--max-seconds=":		machine.setTimeLimit(Long.parseLong(value) * 1_000_000_000L); break;
+					case "--detect-cycles":		machine.setCycleDetection(true); break;
+					case "--checkpoint=":		machine.setCheckpointFile(Paths.get(value)); break;
+					case "--checkpoint-every=":	machine.setCheckpointInterval(Long.parseLong(value)); break;
+					case "--resume=":			machine.resume(Paths.get(value)); break;
+					case "--batch":				batch = ""; break;
+					case "--batch=":			batch = value; break;
+					case "--threads=":			threads = Integer.parseInt(value); break;
+					case "--metrics=":			metricsFile = Paths.get(value); break;
+					case "--compile":			machine.setCompilation(true); break;
+					default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+				}
+			}
+			
+			if(metricsFile != null) {
+				if(batch != null)
+					throw new IllegalArgumentException("Metrics cannot be collected in the batch mode");
+				
+				machine.setMetricsCollection(true);
+			}
+			
+			if(batch == null) {
+				machine.start();
+				
+				if(metricsFile != null) {
+					machine.getMetrics().write(metricsFile, machine.states);
+				}
+			
+			} else if(batch.isEmpty()) {
+				new BatchSimulation(machine, threads).run(new Iterator<String>() {
+					@Override
+					public boolean hasNext() {
+						return reader.hasNextLine();
+					}
+					
+					@Override
+					public String next() {
+						return reader.nextLine();
+					}
+				});
+			
+			} else {
+				try(BufferedReader lines = Files.newBufferedReader(Paths.get(batch))) {
+					new BatchSimulation(machine, threads).run(lines.lines().iterator());
+				}
+			}
+		}
 	}
 	
 	/**
@@ -90,216 +321,1254 @@ public class SimTS {
 	 * the user to enter its definition.
 	 */
 	public SimTS() {
-		initialize();
+		try(DefinitionReader reader = new DefinitionReader(System.in)) {
+			initialize(reader);
+		}
+	}
+	
+	/**
+	 * Constructs a new Turing machine whose definition is read from the given
+	 * reader. The reader is left open and positioned after the definition.
+	 * 
+	 * @param reader the reader providing the definition
+	 */
+	public SimTS(DefinitionReader reader) {
+		initialize(reader);
+	}
+	
+	/**
+	 * Constructs a new Turing machine which shares the compiled definition and
+	 * the simulation settings of the given machine, but has its own tapes.
+	 * The new machine starts in the initial configuration of the given one.
+	 * The checkpoint file is not shared, since several machines would
+	 * overwrite each other's checkpoints.
+	 * 
+	 * @param definition the machine whose definition is shared
+	 */
+	SimTS(SimTS definition) {
+		states = definition.states;
+		symbols = definition.symbols;
+		symbolIds = definition.symbolIds;
+		symbolBits = definition.symbolBits;
+		emptyCell = definition.emptyCell;
+		finalStates = definition.finalStates;
+		initialState = definition.initialState;
+		initialHeads = definition.initialHeads;
+		transitions = definition.transitions;
+		compiledMachine = definition.compiledMachine;
+		runCount = definition.runCount;
+		stepCount = definition.stepCount;
+		stoppedCount = definition.stoppedCount;
+		runTimes = definition.runTimes;
+		stepLimit = definition.stepLimit;
+		timeLimit = definition.timeLimit;
+		checkpointInterval = definition.checkpointInterval;
+		
+		if(definition.cycleDetector != null) cycleDetector = new CycleDetector();
+		if(definition.macroMachine != null) setBlockSize(definition.macroMachine.getBlockSize());
+		
+		if(definition.multiTape != null) {
+			multiTape = new MultiTapeMachine(definition.multiTape, copyTapes(definition.multiTape.getTapes()), initialHeads.clone());
+		} else {
+			tape = new PackedTape(definition.tape);
+			head = initialHeads[0];
+		}
+		
+		state = initialState;
 	}
 	
 	/**
-	 * Initializes the Turing machine.
+	 * Initializes the Turing machine and compiles its definition.
+	 * 
+	 * @param reader the reader providing the definition
+	 * @throws IllegalArgumentException if the definition contains a transition
+	 *                                  that could never be performed
 	 */
-	private void initialize() {
-		try(Scanner scanner = new Scanner(System.in)) {
-			states		.addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			alphabet	.addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			tapeAlphabet.addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			emptyCell 	 = scanner.nextLine().trim();
-			tape 		 = scanner.nextLine().trim().toCharArray();
-			finalStates .addAll(Arrays.asList(scanner.nextLine().trim().split(",")));
-			initialState = scanner.nextLine().trim();
-			head	 	 = Integer.parseInt(scanner.nextLine().trim());
+	private void initialize(DefinitionReader reader) {
+		SymbolTable stateIds = new SymbolTable();
+		Map<Character, Integer> symbolIds = new LinkedHashMap<>();
+		Set<String> tapeAlphabet = new HashSet<>();
+		Map<String, String[][]> definedTransitions = new LinkedHashMap<>();
+		
+		String[] initialTapes;
+		String[] initialPositions;
+		String[] finalStateNames;
+		
+		reader.requireLine();
+		while(reader.hasField(",")) reader.field(stateIds, ",");
+		reader.requireLine(); // The input alphabet is not needed by the simulation.
+		reader.requireLine();
+		tapeAlphabet.addAll(Arrays.asList(fields(reader, ",")));
+		reader.requireLine();
+		emptyCell 	 	= reader.rest();
+		reader.requireLine();
+		initialTapes 	= fields(reader, "|");
+		reader.requireLine();
+		finalStateNames = fields(reader, ",");
+		reader.requireLine();
+		initialState 	= reader.rest(stateIds);
+		reader.requireLine();
+		initialPositions = fields(reader, ",");
+		
+		if(initialPositions.length != initialTapes.length) {
+			String msg = initialTapes.length + " tapes were given, but " + initialPositions.length + " head positions";
+			throw reader.error(msg);
+		}
+		
+		state = initialState;
+		
+		for(String symbol : tapeAlphabet) {
+			if(!symbol.isEmpty()) intern(symbolIds, symbol.charAt(0));
+		}
+		for(String initialTape : initialTapes) {
+			for(char symbol : initialTape.toCharArray()) intern(symbolIds, symbol);
+		}
+		
+		while(reader.readLine()) {
+			if(reader.isLineEmpty()) break;
 			
-			while(scanner.hasNextLine()) {
-				String line = scanner.nextLine().trim();
-				
-				if(line.trim().isEmpty()) break;
+			if(!reader.beginSection("->")) throw reader.error("Invalid transition '" + reader.getLine() + "'");
+			
+			String[] i = fields(reader, ",");
+			reader.endSection();
+			String[] o = fields(reader, ",");
+			
+			validateTransition(reader, i, o, initialTapes.length, tapeAlphabet);
+			
+			stateIds.intern(i[0]);
+			stateIds.intern(o[0]);
+			for(int t = 1; t < i.length; t++) intern(symbolIds, i[t].charAt(0));
+			
+			definedTransitions.put(String.join(",", i), new String[][] { i, o });
+		}
+		
+		states = stateIds.names();
+		symbols = new char[symbolIds.size()];
+		symbolIds.forEach((symbol, id) -> symbols[id] = symbol);
+		
+		int maxSymbol = 0;
+		for(char symbol : symbols) maxSymbol = Math.max(maxSymbol, symbol);
+		
+		this.symbolIds = new int[maxSymbol + 1];
+		Arrays.fill(this.symbolIds, -1);
+		symbolIds.forEach((symbol, id) -> this.symbolIds[symbol] = id);
+		symbolBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(symbols.length - 1));
+		
+		int stateBits = 32 - Integer.numberOfLeadingZeros(states.length - 1);
+		if(stateBits + symbolBits + DIRECTION_BITS > Integer.SIZE - 1) {
+			String msg = states.length + " states and " + symbols.length + " tape symbols do not fit in the transition table";
+			throw new IllegalArgumentException(msg);
+		}
+		
+		finalStates = new boolean[states.length];
+		for(String state : finalStateNames) {
+			int id = stateIds.id(state);
+			if(id != SymbolTable.NONE) finalStates[id] = true;
+		}
+		
+		char[][] tapes = new char[initialTapes.length][];
+		int[] heads = new int[initialTapes.length];
+		
+		for(int t = 0; t < tapes.length; t++) {
+			tapes[t] = new char[initialTapes[t].length()];
+			for(int i = 0; i < tapes[t].length; i++) {
+				tapes[t][i] = (char) symbolIds.get(initialTapes[t].charAt(i)).intValue();
+			}
+			heads[t] = Integer.parseInt(initialPositions[t].trim());
+		}
+		
+		initialHeads = heads.clone();
+		
+		if(tapes.length > 1) {
+			multiTape = new MultiTapeMachine(states.length, symbolBits, tapes, heads);
+			
+			for(String[][] t : definedTransitions.values()) {
+				int[] reads = new int[tapes.length];
+				int[] writes = new int[tapes.length];
+				int[] moves = new int[tapes.length];
 				
-				String[] transition = line.split("->");
-				String[] i = transition[0].split(",");
-				String[] o = transition[1].split(",");
+				for(int i = 0; i < tapes.length; i++) {
+					reads[i] = symbolIds.get(t[0][1 + i].charAt(0));
+					writes[i] = symbolIds.get(t[1][1 + i].charAt(0));
+					moves[i] = direction(t[1][1 + tapes.length + i]);
+				}
 				
-				transitions.put(new Input(i[0], i[1]), new Output(o[0], o[1], o[2]));
+				multiTape.addTransition(stateIds.id(t[0][0]), reads, stateIds.id(t[1][0]), writes, moves);
 			}
+			return;
+		}
+		
+		tape = new PackedTape(symbolBits);
+		tape.load(tapes[0], tapes[0].length);
+		head = heads[0];
+		
+		transitions = new int[states.length << symbolBits];
+		Arrays.fill(transitions, NO_TRANSITION);
+		
+		for(String[][] t : definedTransitions.values()) {
+			int state = stateIds.id(t[0][0]);
+			int read = symbolIds.get(t[0][1].charAt(0));
+			int next = stateIds.id(t[1][0]);
+			int write = symbolIds.get(t[1][1].charAt(0));
+			
+			transitions[(state << symbolBits) | read] = (((next << symbolBits) | write) << DIRECTION_BITS) | direction(t[1][2]);
 		}
 	}
 	
+	/**
+	 * Checks that the given transition can be performed by this machine: it must
+	 * read a single symbol from every tape, write a symbol of the tape alphabet
+	 * to every tape and shift every head left, right or not at all.
+	 * 
+	 * @param reader       the reader positioned at the transition
+	 * @param input        the (state, symbols) part of the transition
+	 * @param output       the (state, symbols, shifts) part of the transition
+	 * @param tapeCount    the number of tapes
+	 * @param tapeAlphabet all the possible tape symbols
+	 * @throws IllegalArgumentException if the transition is invalid
+	 */
+	private static void validateTransition(DefinitionReader reader, String[] input, String[] output, int tapeCount, Set<String> tapeAlphabet) {
+		String line = reader.getLine();
+		
+		if(input.length != 1 + tapeCount || output.length != 1 + 2 * tapeCount)
+			throw reader.error("Invalid transition '" + line + "' for " + tapeCount + " tapes");
+		
+		for(int t = 1; t <= tapeCount; t++) {
+			if(input[t].length() != 1)
+				throw reader.error("Invalid tape symbol '" + input[t] + "' in transition '" + line + "'");
+			
+			if(!tapeAlphabet.contains(output[t]))
+				throw reader.error("Invalid tape symbol '" + output[t] + "' in transition '" + line + "'");
+			
+			String shift = output[tapeCount + t];
+			if(!shift.equals("L") && !shift.equals("R") && !shift.equals("S")) {
+				String msg = "Valid shifts are 'L' (left), 'R' (right) and 'S' (stay). Given shift was '" + shift + "'";
+				throw reader.error(msg);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the remaining fields of the current section of the line.
+	 * 
+	 * @param reader    the reader positioned at the line
+	 * @param delimiter the delimiter separating the fields
+	 * @return the fields
+	 */
+	private static String[] fields(DefinitionReader reader, String delimiter) {
+		List<String> fields = new ArrayList<>();
+		while(reader.hasField(delimiter)) {
+			fields.add(reader.field(delimiter));
+		}
+		return fields.toArray(new String[0]);
+	}
+	
+	/**
+	 * Returns the packed direction of the given, already validated, shift.
+	 * 
+	 * @param shift the shift
+	 * @return the packed direction
+	 */
+	private static int direction(String shift) {
+		switch(shift) {
+			case "L": return LEFT;
+			case "R": return RIGHT;
+			default:  return STAY;
+		}
+	}
+	
+	/**
+	 * Returns the id of the given key, assigning it the next free
+	 * id if it has not been seen before.
+	 * 
+	 * @param <T> the type of the key
+	 * @param ids the mapping of already interned keys
+	 * @param key the key to intern
+	 * @return the id of the key
+	 */
+	private static <T> int intern(Map<T, Integer> ids, T key) {
+		return ids.computeIfAbsent(key, k -> ids.size());
+	}
+	
+	/**
+	 * Makes the machine run on the accelerated {@link MacroMachine}, which
+	 * stores the tape as runs of blocks and crosses a whole run in a single
+	 * step whenever it can. The result is the same as the one of the
+	 * step-by-step simulation.
+	 * 
+	 * @param blockSize number of tape cells in a block
+	 */
+	public void setBlockSize(int blockSize) {
+		macroMachine = new MacroMachine(transitions, symbolBits, states.length, blockSize);
+	}
+	
+	/**
+	 * Sets the maximum number of steps the machine may make, counted from the
+	 * initial configuration. If the machine does not halt before that, it is
+	 * stopped and its current configuration is displayed.
+	 * 
+	 * @param stepLimit the maximum number of steps
+	 */
+	public void setStepLimit(long stepLimit) {
+		this.stepLimit = stepLimit;
+	}
+	
+	/**
+	 * Sets the maximum time the machine may run. If the machine does not halt
+	 * before that, it is stopped and its current configuration is displayed.
+	 * 
+	 * @param timeLimit the maximum running time in nanoseconds
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+	
+	/**
+	 * Enables or disables the cycle detection. A machine with a finite tape
+	 * which repeats a configuration will never halt, so it is stopped as soon
+	 * as the repetition is found.
+	 * 
+	 * @param enabled {@code true} to detect cycles, {@code false} otherwise
+	 */
+	public void setCycleDetection(boolean enabled) {
+		cycleDetector = enabled ? new CycleDetector() : null;
+	}
+	
+	/**
+	 * Enables or disables the collection of the runtime metrics. The metrics
+	 * are collected by an instrumented step loop, so they are supported only
+	 * for the step-by-step simulation of a single tape without cycle detection.
+	 * 
+	 * @param enabled {@code true} to collect the metrics, {@code false} otherwise
+	 */
+	public void setMetricsCollection(boolean enabled) {
+		metrics = enabled ? new SimulationMetrics(states.length) : null;
+	}
+	
+	/**
+	 * Sets the registry to which the metrics of this machine, and of the
+	 * machines constructed from it later, are added, named <b>tm.runs</b>,
+	 * <b>tm.steps</b>, <b>tm.stopped</b> and <b>tm.runTime</b>.
+	 * 
+	 * @param registry the registry, or {@code null} to add no metrics
+	 */
+	public void setMetricRegistry(MetricRegistry registry) {
+		runCount = registry == null ? null : registry.counter("tm.runs");
+		stepCount = registry == null ? null : registry.counter("tm.steps");
+		stoppedCount = registry == null ? null : registry.counter("tm.stopped");
+		runTimes = registry == null ? null : registry.histogram("tm.runTime");
+	}
+	
+	/**
+	 * Enables or disables the compilation of the definition to bytecode. The
+	 * compiled machine replaces the step-by-step loop of a single tape, but
+	 * it cannot be combined with the cycle detection, the metrics or the
+	 * accelerated simulation.
+	 * 
+	 * @param enabled {@code true} to compile the definition, {@code false} to interpret it
+	 * @return {@code true} if the machine is compiled, {@code false} if it is
+	 *         interpreted, also when it was too large to be compiled
+	 * @throws IllegalStateException if the machine has more than one tape
+	 */
+	public boolean setCompilation(boolean enabled) {
+		if(multiTape != null)
+			throw new IllegalStateException("Compilation is supported only for a single tape");
+		
+		compiledMachine = enabled ? CompiledMachine.compile(transitions, states.length, symbolBits, symbols.length, tape.getCellShift()) : null;
+		return compiledMachine != null;
+	}
+	
+	/**
+	 * Returns the runtime metrics collected by all of the simulations since
+	 * the collection was enabled.
+	 * 
+	 * @return the metrics, or {@code null} if they are not collected
+	 */
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the file to which the configuration is saved whenever the machine is
+	 * stopped before halting, and after every checkpoint interval.
+	 * 
+	 * @param checkpointFile the checkpoint file
+	 * @see #setCheckpointInterval(long)
+	 */
+	public void setCheckpointFile(Path checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+	
+	/**
+	 * Sets the number of steps between two checkpoints.
+	 * 
+	 * @param checkpointInterval the number of steps
+	 * @throws IllegalArgumentException if the interval is not positive
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		if(checkpointInterval <= 0)
+			throw new IllegalArgumentException("Checkpoint interval must be positive. Given interval was '" + checkpointInterval + "'");
+		
+		this.checkpointInterval = checkpointInterval;
+	}
+	
 	/**
 	 * Starts the Turing machine which processes the tape until an unsupported
 	 * transition occurs, at which point the machine will stop. In the end,
 	 * processing information will be displayed in the following format:
 	 * <p>
 	 * finishing state <b>|</b> head position <b>|</b> tape with symbols <b>|</b> string acceptance
+	 * <p>
+	 * If the machine is stopped by a limit or by the cycle detection, the
+	 * reason is reported to the standard error and the displayed information
+	 * describes the configuration in which the machine was stopped.
+	 * <p>
+	 * A machine with more than one tape displays the head positions separated
+	 * by <b>,</b> and every tape followed by a <b>|</b>.
+	 * 
+	 * @throws UncheckedIOException  if a checkpoint cannot be saved
+	 * @throws IllegalStateException if cycle detection or checkpoints are used
+	 *                               with more than one tape
 	 */
 	public void start() {
-		String currentState = initialState;
+		System.out.println(simulate());
+		
+		if(stopReason != null) {
+			System.err.println(stopReason);
+		}
+	}
+	
+	/**
+	 * Starts the Turing machine just like {@link #start()}, but runs it on the
+	 * accelerated {@link MacroMachine}.
+	 * 
+	 * @param blockSize number of tape cells in a block
+	 * @see #setBlockSize(int)
+	 */
+	public void startAccelerated(int blockSize) {
+		setBlockSize(blockSize);
+		start();
+	}
+	
+	/**
+	 * Runs the machine from the current configuration until it halts or is
+	 * stopped, and returns the processing information in the format described
+	 * by {@link #start()}.
+	 * 
+	 * @return the processing information
+	 * @throws UncheckedIOException  if a checkpoint cannot be saved
+	 * @throws IllegalStateException if the chosen options cannot be combined
+	 */
+	String simulate() {
+		if(multiTape != null && (cycleDetector != null || checkpointFile != null || macroMachine != null))
+			throw new IllegalStateException("Cycle detection, checkpoints and acceleration are supported only for a single tape");
+		
+		if(macroMachine != null && (cycleDetector != null || checkpointFile != null || stepLimit != Long.MAX_VALUE || timeLimit != Long.MAX_VALUE))
+			throw new IllegalStateException("The accelerated simulation cannot be combined with limits or checkpoints");
+		
+		if(metrics != null && (multiTape != null || macroMachine != null || cycleDetector != null))
+			throw new IllegalStateException("Metrics are collected only for a single tape simulated step by step without cycle detection");
+		
+		if(compiledMachine != null && (macroMachine != null || cycleDetector != null || metrics != null))
+			throw new IllegalStateException("The compiled machine cannot be combined with acceleration, cycle detection or metrics");
+		
+		SimulationEvents.Run event = SimulationEvents.isRecording() ? new SimulationEvents.Run() : null;
+		if(event != null) event.begin();
+		
+		long startTime = System.nanoTime();
+		long startSteps = steps;
+		stopReason = null;
+		
+		if(macroMachine != null) {
+			char[] ids = tape.toIds();
+			state = macroMachine.run(ids, ids.length, head, state);
+			tape.load(ids, ids.length);
+			head = macroMachine.getHead();
+			steps += macroMachine.getSteps();
+		} else {
+			// The compiled machine and the instrumented loop read the packed words directly.
+			if(multiTape == null) tape.setAlwaysPacked(compiledMachine != null || metrics != null);
+			runInChunks(startTime);
+		}
+		
+		if(metrics != null) {
+			metrics.addRun(steps - startSteps, System.nanoTime() - startTime);
+		}
+		
+		if(runCount != null) {
+			runCount.increment();
+			stepCount.add(steps - startSteps);
+			if(stopReason != null) stoppedCount.increment();
+			runTimes.record(System.nanoTime() - startTime);
+		}
+		
+		if(event != null && event.shouldCommit()) {
+			event.steps = steps - startSteps;
+			event.tapes = initialHeads.length;
+			event.accelerated = macroMachine != null;
+			event.finalState = states[state];
+			event.accepted = finalStates[state];
+			event.stopReason = stopReason;
+			event.commit();
+		}
+		
+		return result();
+	}
+	
+	/**
+	 * Runs the machine step by step in chunks until it halts or is stopped. The
+	 * limits are checked, the checkpoints are saved and a progress event is
+	 * emitted between two chunks.
+	 * <p>
+	 * The chunks are sized by time rather than by steps: every chunk is scaled
+	 * from the step rate of the previous one to take about {@link #CHUNK_TIME},
+	 * up to {@link #STEPS_PER_CHUNK} steps, so the time limit is overrun by
+	 * about that much however slow the steps are.
+	 * 
+	 * @param startTime the value of {@link System#nanoTime()} when the simulation started
+	 * @throws UncheckedIOException if a checkpoint cannot be saved
+	 */
+	private void runInChunks(long startTime) {
+		long startSteps = steps;
+		long nextCheckpoint = checkpointFile == null ? Long.MAX_VALUE : steps + Math.min(checkpointInterval, Long.MAX_VALUE - steps);
+		long stride = FIRST_CHUNK;
+		
+		if(cycleDetector != null) {
+			cycleDetector.reset(state, head, tape);
+		}
 		
 		while(true) {
-			Input input = new Input(currentState, String.valueOf(tape[head]));
-			Output output = transitions.get(input);
+			// A resumed run may already be past the step limit, then it only checks whether the machine halted.
+			long chunk = steps >= stepLimit ? 0 : Math.min(stride, Math.min(stepLimit, nextCheckpoint) - steps);
+			long chunkStart = System.nanoTime();
+			boolean halted;
 			
-			if(output == null) break;
+			if(multiTape != null) {
+				state = multiTape.run(state, chunk);
+				steps += multiTape.getSteps();
+				halted = multiTape.isHalted();
 			
-			currentState = output.state;
-			overwriteTape(output.symbol, head);
-
-			if(!shiftHead(output.shift)) break;
+			} else if(metrics != null) {
+				halted = runCollectingMetrics(chunk);
+			
+			} else if(compiledMachine != null) {
+				halted = runCompiled(chunk);
+			
+			} else if(cycleDetector != null) {
+				halted = runDetectingCycles(chunk);
+			
+			} else {
+				halted = tape.isPacked() ? runPacked(chunk) : run(chunk);
+			}
+			
+			if(halted) break;
+			
+			long now = System.nanoTime();
+			long elapsed = Math.max(1, now - chunkStart);
+			if(elapsed > CHUNK_TIME) {
+				stride = Math.max(1, stride * CHUNK_TIME / elapsed);
+			} else if(elapsed < CHUNK_TIME / 2 && chunk == stride) {
+				stride = Math.min(STEPS_PER_CHUNK, stride * 2);
+			}
+			
+			SimulationEvents.Progress progress = SimulationEvents.isRecording() ? new SimulationEvents.Progress() : null;
+			if(progress != null && progress.shouldCommit()) {
+				progress.steps = steps;
+				progress.stepsPerSecond = (steps - startSteps) * 1e9 / Math.max(1, now - startTime);
+				progress.state = states[state];
+				progress.head = multiTape == null ? head : multiTape.getHeads()[0];
+				progress.commit();
+			}
+			
+			if(cycleDetector != null && cycleDetector.getPeriod() > 0) {
+				stopReason = "Stopped after " + steps + " steps, the configuration repeats every " + cycleDetector.getPeriod() + " steps";
+				break;
+			}
+			
+			if(steps >= stepLimit) {
+				stopReason = "Stopped after reaching the limit of " + stepLimit + " steps";
+				break;
+			}
+			
+			if(now - startTime >= timeLimit) {
+				stopReason = "Stopped after reaching the time limit, " + steps + " steps were made";
+				break;
+			}
+			
+			if(steps >= nextCheckpoint) {
+				saveCheckpoint();
+				nextCheckpoint += Math.min(checkpointInterval, Long.MAX_VALUE - nextCheckpoint);
+			}
 		}
 		
-		boolean accepted = finalStates.contains(currentState);
-		System.out.println(currentState + "|" + head + "|" + String.valueOf(tape) + "|" + (accepted ? "1" : "0"));
+		if(stopReason != null && checkpointFile != null) {
+			saveCheckpoint();
+		}
 	}
 	
 	/**
-	 * Shifts the tape head left or right, defined by the provided {@code shift}
-	 * argument.
+	 * Returns why the last simulation stopped before the machine halted.
 	 * 
-	 * <p>
-	 * If the tape head is at the start of the tape, and left shift was provided,
-	 * this method will return {@code false}, indicating that the shifting could not
-	 * be performed. The same situation happens if the tape head is at the last tape
-	 * index, and user provided a right shift.
+	 * @return the reason, or {@code null} if the machine halted
+	 */
+	String getStopReason() {
+		return stopReason;
+	}
+	
+	/**
+	 * Replaces the current configuration with the initial configuration given
+	 * in the definition format: the tapes separated by <b>|</b> and the head
+	 * positions separated by <b>,</b>. The single tape is reused whenever it is
+	 * large enough.
+	 * 
+	 * @param tapes the initial tapes
+	 * @param heads the initial head positions, or {@code null} to use the ones
+	 *              from the definition
+	 * @throws IllegalArgumentException if the configuration is invalid
+	 */
+	void reset(String tapes, String heads) {
+		String[] tapeStrings = DefinitionReader.split(tapes, "|");
+		int[] positions = initialHeads.clone();
+		
+		if(tapeStrings.length != positions.length)
+			throw new IllegalArgumentException("Expected " + positions.length + " tapes, but " + tapeStrings.length + " were given");
+		
+		if(heads != null) {
+			String[] headStrings = DefinitionReader.split(heads, ",");
+			
+			if(headStrings.length != positions.length)
+				throw new IllegalArgumentException("Expected " + positions.length + " head positions, but " + headStrings.length + " were given");
+			
+			for(int t = 0; t < positions.length; t++) {
+				positions[t] = Integer.parseInt(headStrings[t].trim());
+			}
+		}
+		
+		for(int t = 0; t < positions.length; t++) {
+			if(positions[t] < 0 || positions[t] >= tapeStrings[t].length())
+				throw new IllegalArgumentException("Invalid head position '" + positions[t] + "' for tape '" + tapeStrings[t] + "'");
+		}
+		
+		if(multiTape != null) {
+			char[][] encoded = new char[tapeStrings.length][];
+			for(int t = 0; t < encoded.length; t++) {
+				encoded[t] = encode(tapeStrings[t], new char[tapeStrings[t].length()]);
+			}
+			multiTape = new MultiTapeMachine(multiTape, encoded, positions);
+		
+		} else {
+			tape.reset(tapeStrings[0].length());
+			for(int i = 0; i < tapeStrings[0].length(); i++) {
+				tape.set(i, symbolId(tapeStrings[0], i));
+			}
+			head = positions[0];
+		}
+		
+		state = initialState;
+		steps = 0;
+	}
+	
+	/**
+	 * Writes the symbol ids of the given tape contents to the given array.
+	 * 
+	 * @param contents the tape contents
+	 * @param tape     the array to write to
+	 * @return the given array
+	 * @throws IllegalArgumentException if the tape contains an unknown symbol
+	 */
+	private char[] encode(String contents, char[] tape) {
+		for(int i = 0; i < contents.length(); i++) {
+			tape[i] = (char) symbolId(contents, i);
+		}
+		return tape;
+	}
+	
+	/**
+	 * Returns the symbol id of the given cell of the tape contents.
+	 * 
+	 * @param contents the tape contents
+	 * @param position the cell
+	 * @return the symbol id
+	 * @throws IllegalArgumentException if the cell holds an unknown symbol
+	 */
+	private int symbolId(String contents, int position) {
+		char symbol = contents.charAt(position);
+		int id = symbol < symbolIds.length ? symbolIds[symbol] : -1;
+		
+		if(id < 0)
+			throw new IllegalArgumentException("Invalid tape symbol '" + symbol + "' in tape '" + contents + "'");
+		
+		return id;
+	}
+	
+	/**
+	 * Returns a deep copy of the given tapes.
+	 * 
+	 * @param tapes the tapes
+	 * @return the copy
+	 */
+	private static char[][] copyTapes(char[][] tapes) {
+		char[][] copy = new char[tapes.length][];
+		for(int t = 0; t < tapes.length; t++) {
+			copy[t] = tapes[t].clone();
+		}
+		return copy;
+	}
+	
+	/**
+	 * Makes at most {@code limit} steps, starting from the current configuration.
+	 * The tape must not be packed.
 	 * 
-	 * @param shift the shifting argument
-	 * @return {@code true} if shifting was performed successfully, {@code false}
-	 *         otherwise
+	 * @param limit the maximum number of steps
+	 * @return {@code true} if the machine halted, {@code false} if the limit was reached
 	 */
-	private boolean shiftHead(String shift) {
-		if(shift.equals("L")) {
-			if(head == 0) return false;
+	private boolean run(long limit) {
+		final int[] transitions = this.transitions;
+		final char[] cells = tape.getCells();
+		final int symbolBits = this.symbolBits;
+		final int symbolMask = (1 << symbolBits) - 1;
+		final int last = tape.length() - 1;
+		
+		int state = this.state;
+		int position = head;
+		long remaining = limit;
+		boolean halted = true;
+		
+		while(true) {
+			int transition = transitions[(state << symbolBits) | cells[position]];
 			
-			head = head - 1;
+			if(transition == NO_TRANSITION) break;
 			
-		} else if(shift.equals("R")) {
-			if(head == tape.length - 1) return false;
+			if(remaining <= 0) {
+				halted = false;
+				break;
+			}
 			
-			head = head + 1;
+			remaining--;
+			state = transition >>> (symbolBits + DIRECTION_BITS);
+			cells[position] = (char) ((transition >>> DIRECTION_BITS) & symbolMask);
 			
-		} else {
-			String msg = "Valid shifts are 'L' (left) and 'R' (right). Given shift was '" + shift + "'";
-			throw new IllegalArgumentException(msg);
+			int direction = transition & DIRECTION_MASK;
+			
+			if(direction == LEFT) {
+				if(position == 0) break;
+				position--;
+			
+			} else if(direction == RIGHT) {
+				if(position == last) break;
+				position++;
+			}
 		}
 		
-		return true;
+		this.state = state;
+		head = position;
+		steps += limit - remaining;
+		return halted;
 	}
-
+	
 	/**
-	 * Overwrites the tape symbol at the given tape position.
+	 * Makes at most {@code limit} steps just like {@link #run(long)}, but on a
+	 * packed tape. The word under the head is kept rotated so that the current
+	 * cell sits in its lowest bits, and is written back only when the head
+	 * leaves it.
 	 * 
-	 * @param symbol the new symbol
-	 * @param index  the tape position
-	 * @throws IllegalArgumentException  if the given tape symbol is not a part of
-	 *                                   the tape alphabet
-	 * @throws IndexOutOfBoundsException if the given tape position is invalid
+	 * @param limit the maximum number of steps
+	 * @return {@code true} if the machine halted, {@code false} if the limit was reached
 	 */
-	private void overwriteTape(String symbol, int index) {
-		if(!tapeAlphabet.contains(symbol))
-			throw new IllegalArgumentException("Invalid tape symbol '" + symbol + "'");
+	private boolean runPacked(long limit) {
+		final int[] transitions = this.transitions;
+		final long[] words = tape.getWords();
+		final int symbolBits = this.symbolBits;
+		final int symbolMask = (1 << symbolBits) - 1;
+		final int cellShift = tape.getCellShift();
+		final int cellBits = 1 << cellShift;
+		final int indexShift = 6 - cellShift;
+		final int offsetMask = (1 << indexShift) - 1;
+		final long cellMask = (1L << cellBits) - 1;
+		final int last = tape.length() - 1;
 		
-		if(index < 0 || index >= tape.length)
-			throw new IndexOutOfBoundsException("For tape position '" + index + "'");
+		int state = this.state;
+		int position = head;
+		int index = position >>> indexShift;
+		long word = Long.rotateRight(words[index], (position & offsetMask) << cellShift);
+		long remaining = limit;
+		boolean halted = true;
+		
+		while(true) {
+			int transition = transitions[(state << symbolBits) | (int) (word & cellMask)];
+			
+			if(transition == NO_TRANSITION) break;
+			
+			if(remaining <= 0) {
+				halted = false;
+				break;
+			}
+			
+			remaining--;
+			state = transition >>> (symbolBits + DIRECTION_BITS);
+			word = (word & ~cellMask) | ((transition >>> DIRECTION_BITS) & symbolMask);
+			
+			int direction = transition & DIRECTION_MASK;
+			
+			if(direction == LEFT) {
+				if(position == 0) break;
+				if((position-- & offsetMask) == 0) {
+					words[index] = word;
+					word = Long.rotateLeft(words[--index], cellBits);
+				} else {
+					word = Long.rotateLeft(word, cellBits);
+				}
+			
+			} else if(direction == RIGHT) {
+				if(position == last) break;
+				word = Long.rotateRight(word, cellBits);
+				if((++position & offsetMask) == 0) {
+					words[index] = word;
+					word = words[++index];
+				}
+			}
+		}
 		
-		tape[index] = symbol.charAt(0);
+		words[index] = Long.rotateLeft(word, (position & offsetMask) << cellShift);
+		this.state = state;
+		head = position;
+		steps += limit - remaining;
+		return halted;
 	}
 	
 	/**
-	 * Encapsulates the Turing machine input in the transition
-	 * function: the current state and tape symbol.
+	 * Makes at most {@code limit} steps just like {@link #run(long)}, but also
+	 * stops as soon as the {@link #cycleDetector} finds a repeated configuration.
 	 * 
-	 * @author FICHEKK
+	 * @param limit the maximum number of steps
+	 * @return {@code true} if the machine halted, {@code false} otherwise
 	 */
-	private static class Input {
+	private boolean runDetectingCycles(long limit) {
+		final int[] transitions = this.transitions;
+		final PackedTape tape = this.tape;
+		final int symbolBits = this.symbolBits;
+		final int symbolMask = (1 << symbolBits) - 1;
+		final int last = tape.length() - 1;
+		final CycleDetector detector = cycleDetector;
 		
-		/** The current state. */
-		final String state;
+		int state = this.state;
+		int position = head;
+		long remaining = limit;
+		boolean halted = true;
+		
+		while(true) {
+			int read = tape.get(position);
+			int transition = transitions[(state << symbolBits) | read];
+			
+			if(transition == NO_TRANSITION) break;
+			
+			if(remaining <= 0) {
+				halted = false;
+				break;
+			}
+			
+			remaining--;
+			state = transition >>> (symbolBits + DIRECTION_BITS);
+			
+			int symbol = (transition >>> DIRECTION_BITS) & symbolMask;
+			detector.write(position, read, symbol);
+			tape.set(position, symbol);
+			
+			int direction = transition & DIRECTION_MASK;
+			
+			if(direction == LEFT) {
+				if(position == 0) break;
+				position--;
+			
+			} else if(direction == RIGHT) {
+				if(position == last) break;
+				position++;
+			}
+			
+			if(detector.repeats(state, position, tape)) {
+				halted = false;
+				break;
+			}
+		}
 		
-		/** The current tape symbol. */
-		final String symbol;
+		this.state = state;
+		head = position;
+		steps += limit - remaining;
+		return halted;
+	}
+	
+	/**
+	 * Makes at most {@code limit} steps just like {@link #run(long)}, but runs
+	 * the {@link #compiledMachine} instead of the step loop.
+	 * 
+	 * @param limit the maximum number of steps, at most {@link #STEPS_PER_CHUNK}
+	 * @return {@code true} if the machine halted, {@code false} if the limit was reached
+	 */
+	private boolean runCompiled(long limit) {
+		int[] config = new int[3];
+		config[CompiledMachine.STATE] = state;
+		config[CompiledMachine.HEAD] = head;
 		
-		/**
-		 * Constructs a new input.
-		 * 
-		 * @param state the current state
-		 * @param symbol the tape symbol
-		 */
-		public Input(String state, String symbol) {
-			this.state = state;
-			this.symbol = symbol;
+		steps += compiledMachine.run(tape.getWords(), tape.length() - 1, config, (int) limit);
+		state = config[CompiledMachine.STATE];
+		head = config[CompiledMachine.HEAD];
+		return config[CompiledMachine.HALTED] == 1;
+	}
+	
+	/**
+	 * Makes at most {@code limit} steps just like {@link #runPacked(long)}, but also
+	 * counts the steps made in every state and the head moves, and tracks the
+	 * range of the head positions in the {@link #metrics}.
+	 * 
+	 * @param limit the maximum number of steps
+	 * @return {@code true} if the machine halted, {@code false} if the limit was reached
+	 */
+	private boolean runCollectingMetrics(long limit) {
+		final int[] transitions = this.transitions;
+		final long[] words = tape.getWords();
+		final int symbolBits = this.symbolBits;
+		final int symbolMask = (1 << symbolBits) - 1;
+		final int cellShift = tape.getCellShift();
+		final int cellBits = 1 << cellShift;
+		final int indexShift = 6 - cellShift;
+		final int offsetMask = (1 << indexShift) - 1;
+		final long cellMask = (1L << cellBits) - 1;
+		final int last = tape.length() - 1;
+		final long[] stateHits = metrics.getStateHits();
+		
+		int state = this.state;
+		int position = head;
+		int index = position >>> indexShift;
+		long word = Long.rotateRight(words[index], (position & offsetMask) << cellShift);
+		int min = position;
+		int max = position;
+		long moves = 0;
+		long remaining = limit;
+		boolean halted = true;
+		
+		while(true) {
+			int transition = transitions[(state << symbolBits) | (int) (word & cellMask)];
+			
+			if(transition == NO_TRANSITION) break;
+			
+			if(remaining <= 0) {
+				halted = false;
+				break;
+			}
+			
+			remaining--;
+			stateHits[state]++;
+			state = transition >>> (symbolBits + DIRECTION_BITS);
+			word = (word & ~cellMask) | ((transition >>> DIRECTION_BITS) & symbolMask);
+			
+			int direction = transition & DIRECTION_MASK;
+			
+			if(direction == LEFT) {
+				if(position == 0) break;
+				if((position-- & offsetMask) == 0) {
+					words[index] = word;
+					word = Long.rotateLeft(words[--index], cellBits);
+				} else {
+					word = Long.rotateLeft(word, cellBits);
+				}
+				moves++;
+				if(position < min) min = position;
+			
+			} else if(direction == RIGHT) {
+				if(position == last) break;
+				word = Long.rotateRight(word, cellBits);
+				if((++position & offsetMask) == 0) {
+					words[index] = word;
+					word = words[++index];
+				}
+				moves++;
+				if(position > max) max = position;
+			}
 		}
 		
-		@Override
-		public String toString() {
-			return "(" + state + ", " + symbol + ")";
+		words[index] = Long.rotateLeft(word, (position & offsetMask) << cellShift);
+		metrics.addHead(min, max, moves);
+		this.state = state;
+		head = position;
+		steps += limit - remaining;
+		return halted;
+	}
+	
+	/**
+	 * Saves the current configuration to the checkpoint file. The file is
+	 * replaced atomically, so a crash never leaves a partially written
+	 * checkpoint behind.
+	 * 
+	 * @throws UncheckedIOException if the checkpoint cannot be saved
+	 */
+	private void saveCheckpoint() {
+		Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new DeflaterOutputStream(Files.newOutputStream(temporary), new Deflater(Deflater.BEST_SPEED))))) {
+			
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeLong(fingerprint());
+			out.writeLong(steps);
+			out.writeInt(state);
+			out.writeInt(head);
+			out.writeInt(tape.length());
+			
+			for(int i = 0; i < tape.length(); i++) {
+				if(symbols.length <= 256) {
+					out.writeByte(tape.get(i));
+				} else {
+					out.writeChar(tape.get(i));
+				}
+			}
+		
+		} catch(IOException e) {
+			throw new UncheckedIOException("Could not save the checkpoint to '" + checkpointFile + "'", e);
 		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hash(state, symbol);
+		
+		try {
+			Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			throw new UncheckedIOException("Could not save the checkpoint to '" + checkpointFile + "'", e);
 		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (!(obj instanceof Input))
-				return false;
-			Input other = (Input) obj;
-			return Objects.equals(state, other.state) &&
-				   Objects.equals(symbol, other.symbol);
+	}
+	
+	/**
+	 * Restores the configuration saved in the given checkpoint file, so that
+	 * the next {@link #start()} continues exactly where the saved run stopped.
+	 * 
+	 * @param file the checkpoint file
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a valid checkpoint of this machine
+	 * @throws IllegalStateException    if the machine has more than one tape
+	 */
+	public void resume(Path file) throws IOException {
+		if(multiTape != null)
+			throw new IllegalStateException("Checkpoints are supported only for a single tape");
+		
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new InflaterInputStream(Files.newInputStream(file))))) {
+			
+			if(in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION)
+				throw new IllegalArgumentException("File '" + file + "' is not a checkpoint");
+			
+			if(in.readLong() != fingerprint())
+				throw new IllegalArgumentException("Checkpoint '" + file + "' was saved by a different machine");
+			
+			long savedSteps = in.readLong();
+			int savedState = in.readInt();
+			int savedHead = in.readInt();
+			
+			if(in.readInt() != tape.length())
+				throw new IllegalArgumentException("Checkpoint '" + file + "' was saved with a different tape length");
+			
+			if(savedSteps < 0 || savedState < 0 || savedState >= states.length || savedHead < 0 || savedHead >= tape.length())
+				throw new IllegalArgumentException("Checkpoint '" + file + "' holds an invalid configuration");
+			
+			// The whole checkpoint is validated before any of it is applied, so a bad file leaves the machine as it was.
+			char[] ids = new char[tape.length()];
+			for(int i = 0; i < ids.length; i++) {
+				int symbol = symbols.length <= 256 ? in.readUnsignedByte() : in.readChar();
+				
+				if(symbol >= symbols.length)
+					throw new IllegalArgumentException("Checkpoint '" + file + "' holds an invalid symbol '" + symbol + "'");
+				ids[i] = (char) symbol;
+			}
+			
+			tape.load(ids, ids.length);
+			steps = savedSteps;
+			state = savedState;
+			head = savedHead;
 		}
 	}
 	
 	/**
-	 * Encapsulates the Turing machine output in the transition
-	 * function: the next state, new tape symbol and tape shift.
+	 * Returns a hash of the compiled definition, used to make sure that a
+	 * checkpoint is resumed by the same machine that saved it.
+	 * 
+	 * @return the definition fingerprint
+	 */
+	private long fingerprint() {
+		long hash = Arrays.hashCode(states);
+		hash = hash * 31 + Arrays.hashCode(symbols);
+		hash = hash * 31 + Arrays.hashCode(transitions);
+		hash = hash * 31 + Arrays.hashCode(finalStates);
+		return hash;
+	}
+	
+	/**
+	 * Returns the processing information in the following format:
+	 * <p>
+	 * finishing state <b>|</b> head position <b>|</b> tape with symbols <b>|</b> string acceptance
+	 * 
+	 * @return the processing information
+	 */
+	private String result() {
+		boolean accepted = finalStates[state];
+		
+		if(multiTape == null) {
+			return states[state] + "|" + head + "|" + tapeToString(tape.toIds()) + "|" + (accepted ? "1" : "0");
+		}
+		
+		StringBuilder sb = new StringBuilder(states[state]).append("|");
+		int[] heads = multiTape.getHeads();
+		
+		for(int t = 0; t < heads.length; t++) {
+			sb.append(t == 0 ? "" : ",").append(heads[t]);
+		}
+		for(char[] tape : multiTape.getTapes()) {
+			sb.append("|").append(tapeToString(tape));
+		}
+		
+		return sb.append("|").append(accepted ? "1" : "0").toString();
+	}
+	
+	/**
+	 * Returns the given tape with every symbol id translated back to its symbol.
+	 * 
+	 * @param tape the tape, holding symbol ids
+	 * @return the tape contents
+	 */
+	private String tapeToString(char[] tape) {
+		char[] chars = new char[tape.length];
+		
+		for(int i = 0; i < tape.length; i++) {
+			chars[i] = symbols[tape[i]];
+		}
+		
+		return String.valueOf(chars);
+	}
+	
+	/**
+	 * Detects a repeated configuration using Brent's algorithm. The detector
+	 * remembers a single configuration, which is replaced after every power
+	 * of two steps, and compares it with every new configuration. The tape is
+	 * compared through an incrementally maintained hash first, so a full
+	 * comparison is made only for the configurations that really match.
 	 * 
 	 * @author FICHEKK
 	 */
-	private static class Output {
+	private static class CycleDetector {
+		
+		/** Hash of the current tape contents. */
+		private long tapeHash;
 		
-		/** The next state. */
-		final String state;
+		/** State of the remembered configuration. */
+		private int savedState;
 		
-		/** The new tape symbol. */
-		final String symbol;
+		/** Head position of the remembered configuration. */
+		private int savedHead;
 		
-		/** The tape head shift direction. */
-		final String shift;
+		/** Tape hash of the remembered configuration. */
+		private long savedHash;
+		
+		/** Tape of the remembered configuration. */
+		private PackedTape savedTape;
+		
+		/** Number of steps after which the remembered configuration is replaced. */
+		private long power;
+		
+		/** Number of steps made since the configuration was remembered. */
+		private long distance;
+		
+		/** Length of the found cycle, or {@code 0} if none was found. */
+		private long period;
 		
 		/**
-		 * Constructs a new output.
+		 * Starts the detection from the given configuration.
 		 * 
-		 * @param state the next state
-		 * @param symbol the new tape symbol
-		 * @param shift the tape head shift direction
+		 * @param state the current state
+		 * @param head  the head position
+		 * @param tape  the tape
 		 */
-		public Output(String state, String symbol, String shift) {
-			this.state = state;
-			this.symbol = symbol;
-			this.shift = shift;
+		void reset(int state, int head, PackedTape tape) {
+			tapeHash = 0;
+			for(int i = 0; i < tape.length(); i++) {
+				tapeHash ^= hash(i, tape.get(i));
+			}
+			
+			if(savedTape == null) {
+				savedTape = new PackedTape(tape);
+			}
+			
+			power = 1;
+			period = 0;
+			remember(state, head, tape);
 		}
 		
-		@Override
-		public String toString() {
-			return "(" + state + ", " + symbol + ", " + shift + ")";
-		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hash(state, shift, symbol);
+		/**
+		 * Updates the tape hash after a symbol is overwritten.
+		 * 
+		 * @param position  the tape position
+		 * @param oldSymbol the overwritten symbol
+		 * @param newSymbol the written symbol
+		 */
+		void write(int position, int oldSymbol, int newSymbol) {
+			tapeHash ^= hash(position, oldSymbol) ^ hash(position, newSymbol);
 		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
+		
+		/**
+		 * Checks whether the given configuration, reached by the next step,
+		 * is equal to the remembered one.
+		 * 
+		 * @param state the current state
+		 * @param head  the head position
+		 * @param tape  the tape
+		 * @return {@code true} if a cycle was found, {@code false} otherwise
+		 */
+		boolean repeats(int state, int head, PackedTape tape) {
+			distance++;
+			
+			if(state == savedState && head == savedHead && tapeHash == savedHash && tape.contentEquals(savedTape)) {
+				period = distance;
 				return true;
-			if (obj == null)
-				return false;
-			if (!(obj instanceof Output))
-				return false;
-			Output other = (Output) obj;
-			return Objects.equals(state, other.state) &&
-				   Objects.equals(shift, other.shift) &&
-				   Objects.equals(symbol, other.symbol);
+			}
+			
+			if(distance == power) {
+				power <<= 1;
+				remember(state, head, tape);
+			}
+			
+			return false;
+		}
+		
+		/**
+		 * Returns the length of the found cycle.
+		 * 
+		 * @return the number of steps in the cycle, or {@code 0} if none was found
+		 */
+		long getPeriod() {
+			return period;
+		}
+		
+		/**
+		 * Remembers the given configuration.
+		 * 
+		 * @param state the current state
+		 * @param head  the head position
+		 * @param tape  the tape
+		 */
+		private void remember(int state, int head, PackedTape tape) {
+			savedState = state;
+			savedHead = head;
+			savedHash = tapeHash;
+			savedTape.copyFrom(tape);
+			distance = 0;
+		}
+		
+		/**
+		 * Returns the hash of a symbol at the given tape position.
+		 * 
+		 * @param position the tape position
+		 * @param symbol   the symbol id
+		 * @return the hash
+		 */
+		private static long hash(int position, int symbol) {
+			long z = (((long) position << 16) | symbol) * 0x9E3779B97F4A7C15L;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
 		}
 	}
 }
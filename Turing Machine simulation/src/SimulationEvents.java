@@ -0,0 +1,102 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events emitted by {@link SimTS}.
+ * <p>
+ * The events are committed outside of the step loops, once per simulation
+ * and once per chunk of steps, so they cost nothing measurable when no
+ * recording is running. To record them, start the simulator with
+ * {@code -XX:StartFlightRecording=filename=simts.jfr} and inspect the
+ * recording with {@code jfr print --events SimTS.Run,SimTS.Progress simts.jfr}.
+ * 
+ * @author FICHEKK
+ */
+final class SimulationEvents {
+	
+	/**
+	 * Prevents instantiation, this class only groups the events.
+	 */
+	private SimulationEvents() {
+	}
+	
+	/**
+	 * Checks whether the Flight Recorder is running. The event classes are
+	 * loaded only when it is, because loading them initializes the recorder
+	 * infrastructure, which would add a noticeable delay to every start of
+	 * the simulator.
+	 * 
+	 * @return {@code true} if the events can be recorded, {@code false} otherwise
+	 */
+	static boolean isRecording() {
+		return FlightRecorder.isInitialized();
+	}
+	
+	/**
+	 * A single simulation, from its start until the machine halts or is stopped.
+	 * 
+	 * @author FICHEKK
+	 */
+	@Name("SimTS.Run")
+	@Label("Turing Machine Run")
+	@Category("SimTS")
+	@Description("A simulation of a Turing machine")
+	static class Run extends Event {
+		
+		/** Number of steps made by the simulation. */
+		@Label("Steps")
+		long steps;
+		
+		/** Number of tapes of the machine. */
+		@Label("Tapes")
+		int tapes;
+		
+		/** Whether the simulation was accelerated by macro steps. */
+		@Label("Accelerated")
+		boolean accelerated;
+		
+		/** The state in which the simulation ended. */
+		@Label("Final State")
+		String finalState;
+		
+		/** Whether the machine accepted the input. */
+		@Label("Accepted")
+		boolean accepted;
+		
+		/** Why the machine was stopped before halting, {@code null} if it halted. */
+		@Label("Stop Reason")
+		String stopReason;
+	}
+	
+	/**
+	 * A progress sample taken after every chunk of steps of a long simulation.
+	 * 
+	 * @author FICHEKK
+	 */
+	@Name("SimTS.Progress")
+	@Label("Turing Machine Progress")
+	@Category("SimTS")
+	@Description("A periodic progress sample of a running Turing machine")
+	static class Progress extends Event {
+		
+		/** Number of steps made since the initial configuration. */
+		@Label("Steps")
+		long steps;
+		
+		/** Average number of steps per second since the simulation started. */
+		@Label("Steps per Second")
+		double stepsPerSecond;
+		
+		/** The current state. */
+		@Label("State")
+		String state;
+		
+		/** The head position on the first tape. */
+		@Label("Head")
+		int head;
+	}
+}
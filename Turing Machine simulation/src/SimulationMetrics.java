@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runtime counters of a single tape {@link SimTS} simulation: the number of
+ * steps and the running time, how often every state was entered, and how far
+ * the head travelled.
+ * <p>
+ * The counters are filled by a separate instrumented step loop, so the
+ * ordinary loop is not slowed down when they are not collected. The head
+ * moves by a single cell, so the tape cells it touched are exactly the ones
+ * between its leftmost and rightmost position.
+ * 
+ * @author FICHEKK
+ */
+class SimulationMetrics {
+	
+	/** Number of steps made in every state, indexed by the state id. */
+	private final long[] stateHits;
+	
+	/** Number of simulations. */
+	private long runs;
+	
+	/** Total number of steps. */
+	private long steps;
+	
+	/** Total number of steps that moved the head. */
+	private long headMoves;
+	
+	/** Total running time in nanoseconds. */
+	private long nanos;
+	
+	/** The leftmost head position. */
+	private int minHead = Integer.MAX_VALUE;
+	
+	/** The rightmost head position. */
+	private int maxHead = Integer.MIN_VALUE;
+	
+	/**
+	 * Constructs new empty metrics.
+	 * 
+	 * @param stateCount number of states of the machine
+	 */
+	public SimulationMetrics(int stateCount) {
+		stateHits = new long[stateCount];
+	}
+	
+	/**
+	 * Returns the per-state step counters, which the step loop updates in place.
+	 * 
+	 * @return number of steps made in every state, indexed by the state id
+	 */
+	long[] getStateHits() {
+		return stateHits;
+	}
+	
+	/**
+	 * Records the head positions and moves of a part of a simulation.
+	 * 
+	 * @param min   the leftmost head position
+	 * @param max   the rightmost head position
+	 * @param moves number of steps that moved the head
+	 */
+	void addHead(int min, int max, long moves) {
+		minHead = Math.min(minHead, min);
+		maxHead = Math.max(maxHead, max);
+		headMoves += moves;
+	}
+	
+	/**
+	 * Records a finished simulation.
+	 * 
+	 * @param steps number of steps made
+	 * @param nanos running time in nanoseconds
+	 */
+	void addRun(long steps, long nanos) {
+		this.runs++;
+		this.steps += steps;
+		this.nanos += nanos;
+	}
+	
+	/**
+	 * Returns the metrics as a JSON object.
+	 * 
+	 * @param states names of the states, indexed by the state id
+	 * @return the JSON text
+	 */
+	public String toJson(String[] states) {
+		double seconds = nanos / 1e9;
+		StringBuilder sb = new StringBuilder("{\n");
+		
+		sb.append("  \"runs\": ").append(runs).append(",\n");
+		sb.append("  \"steps\": ").append(steps).append(",\n");
+		sb.append("  \"seconds\": ").append(seconds).append(",\n");
+		sb.append("  \"stepsPerSecond\": ").append(nanos == 0 ? 0 : Math.round(steps / seconds)).append(",\n");
+		sb.append("  \"headMoves\": ").append(headMoves).append(",\n");
+		
+		if(minHead <= maxHead) {
+			sb.append("  \"minHead\": ").append(minHead).append(",\n");
+			sb.append("  \"maxHead\": ").append(maxHead).append(",\n");
+			sb.append("  \"cellsTouched\": ").append(maxHead - minHead + 1).append(",\n");
+		}
+		
+		sb.append("  \"stateHits\": {");
+		for(int s = 0; s < stateHits.length; s++) {
+			sb.append(s == 0 ? "\n" : ",\n").append("    ").append(quote(states[s])).append(": ").append(stateHits[s]);
+		}
+		
+		return sb.append("\n  }\n}\n").toString();
+	}
+	
+	/**
+	 * Writes the metrics as a JSON object to the given file.
+	 * 
+	 * @param file   the file to write to
+	 * @param states names of the states, indexed by the state id
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(Path file, String[] states) throws IOException {
+		Files.write(file, toJson(states).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Returns the given text as a JSON string literal.
+	 * 
+	 * @param text the text
+	 * @return the quoted and escaped text
+	 */
+	private static String quote(String text) {
+		StringBuilder sb = new StringBuilder("\"");
+		
+		for(char c : text.toCharArray()) {
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		
+		return sb.append('"').toString();
+	}
+}
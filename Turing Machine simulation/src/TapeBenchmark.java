@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import automaton.DefinitionReader;
+
+/**
+ * Compares the two tape layouts of {@link SimTS}: one {@code char} per cell
+ * and cells packed into {@code long} words.
+ * <p>
+ * For every tape length, a machine sweeps back and forth between the two
+ * ends of the tape, flipping every cell it passes, until it reaches the step
+ * limit. The sweep is run with every tape packed and with no tape packed,
+ * and the best time of several runs and the step rate are printed for both,
+ * together with the memory taken by the cells. The times include rendering
+ * the final tape, which is the same for both layouts.
+ * 
+ * @author FICHEKK
+ */
+public class TapeBenchmark {
+	
+	/** The tape lengths measured when none are given. */
+	private static final int[] DEFAULT_LENGTHS = { 32, 30_000, 1 << 20, 20_000_000 };
+	
+	/**
+	 * Prevents the construction of this class.
+	 */
+	private TapeBenchmark() {
+	}
+	
+	/**
+	 * Returns the definition of a machine which sweeps a tape of the given
+	 * length. The tape is marked by {@code S} and {@code E} at its ends, and
+	 * the machine never halts by itself.
+	 * 
+	 * @param length number of cells of the tape, at least 3
+	 * @return the definition
+	 */
+	private static String sweep(int length) {
+		StringBuilder sb = new StringBuilder(length + 200);
+		sb.append("r,l,h\n");
+		sb.append("0,1\n");
+		sb.append("0,1,S,E,B\n");
+		sb.append("B\n");
+		sb.append('S');
+		for(int i = 2; i < length; i++) sb.append('0');
+		sb.append("E\n");
+		sb.append("h\n");
+		sb.append("r\n");
+		sb.append("1\n");
+		sb.append("r,0->r,1,R\n");
+		sb.append("r,1->r,0,R\n");
+		sb.append("r,E->l,E,L\n");
+		sb.append("l,0->l,1,L\n");
+		sb.append("l,1->l,0,L\n");
+		sb.append("l,S->r,S,R\n");
+		return sb.toString();
+	}
+	
+	/**
+	 * Measures the sweep of a tape of the given length in a single layout, and
+	 * prints the results.
+	 * 
+	 * @param machine the machine
+	 * @param tape    the initial tape
+	 * @param packed  {@code true} to pack the tape, {@code false} otherwise
+	 * @param steps   number of steps of every run
+	 * @param runs    number of runs
+	 */
+	private static void measure(SimTS machine, String tape, boolean packed, long steps, int runs) {
+		PackedTape.setPackingThreshold(packed ? 0 : Integer.MAX_VALUE);
+		
+		long best = Long.MAX_VALUE;
+		for(int run = 0; run < runs; run++) {
+			machine.reset(tape, null);
+			long start = System.nanoTime();
+			machine.simulate();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		
+		// Packed cells of the 5 symbols take 4 bits each.
+		double megabytes = (packed ? tape.length() / 2.0 : tape.length() * 2.0) / (1 << 20);
+		
+		System.out.println(String.format(Locale.ROOT,
+				"  %-6s %8.1f ms, %7.1f M steps/s, %8.2f MiB of cells",
+				packed ? "packed" : "char", best / 1e6, steps * 1e3 / best, megabytes));
+	}
+	
+	//-------------------------------------------------------------
+	//							main
+	//-------------------------------------------------------------
+	
+	/**
+	 * Runs the benchmark. The options, which may be followed by the measured
+	 * tape lengths, are:
+	 * <ul>
+	 * <li><b>--steps=n</b> - number of steps of every run, 400 million by default</li>
+	 * <li><b>--runs=n</b> - number of runs of every layout, 3 by default</li>
+	 * </ul>
+	 * 
+	 * @param args the options and the tape lengths
+	 */
+	public static void main(String[] args) {
+		long stepLimit = 400_000_000;
+		int runs = 3;
+		List<Integer> lengths = new ArrayList<>();
+		
+		for(String arg : args) {
+			String option = arg.startsWith("--") && arg.contains("=") ? arg.substring(0, arg.indexOf('=') + 1) : "";
+			String value = arg.substring(option.length());
+			
+			switch(option) {
+				case "--steps=":	stepLimit = Long.parseLong(value); break;
+				case "--runs=":		runs = Integer.parseInt(value); break;
+				case "":			lengths.add(Integer.parseInt(arg)); break;
+				default: throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			}
+		}
+		
+		if(lengths.isEmpty()) {
+			for(int length : DEFAULT_LENGTHS) lengths.add(length);
+		}
+		
+		try {
+			for(int length : lengths) {
+				if(length < 3)
+					throw new IllegalArgumentException("Invalid tape length '" + length + "'");
+				
+				String definition = sweep(length);
+				SimTS machine = new SimTS(DefinitionReader.of(definition));
+				machine.setStepLimit(stepLimit);
+				String tape = definition.split("\n", 6)[4];
+				
+				System.out.println(length + " cells, " + stepLimit + " steps");
+				measure(machine, tape, false, stepLimit, runs);
+				measure(machine, tape, true, stepLimit, runs);
+			}
+		} finally {
+			PackedTape.setPackingThreshold(PackedTape.PACKING_THRESHOLD);
+		}
+	}
+}